@@ -0,0 +1,252 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.OutputStreams;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Filters many files in a single JVM, several at a time, with the {@link CountingStreamFilter}s provided by the configured supplier:
+ * - each worker thread gets its own {@code StreamFilter}, hence its own compiled XPath expressions, predicate and transformer,
+ * and reuses it for all the files it processes, so that these are only created, and warmed up, once per thread,
+ * - files are taken one at a time from a queue shared by all workers, so that workers which are done with small files pick up the remaining ones,
+ * - outputs are either merged, in the same order as the input files, or written to one output file per input file, first to a temporary file
+ * in the output directory, moved to its final path once complete, so that a failure does not leave a truncated output behind.
+ * Merged outputs are staged in temporary files, in the default temporary directory, i.e. {@code java.io.tmpdir}, and only files at most
+ * twice the number of jobs ahead of the next one to merge are filtered, so that a slow file delays the others, rather than letting
+ * the outputs of all files after it pile up on disk.
+ * Gzipped files are automatically detected, like for any other input stream.
+ */
+public final class BatchXmlStreamFilter {
+    private static final String GZIP_EXTENSION = ".gz";
+
+    private final Supplier<CountingStreamFilter> streamFilterSupplier;
+    private final int jobs;
+    private final Path outputDirectory;
+
+    private BatchXmlStreamFilter(final Builder builder) {
+        this.streamFilterSupplier = checkNotNull(builder.streamFilterSupplier, "StreamFilter supplier must NOT be null.");
+        checkArgument(builder.jobs > 0, "Number of jobs must be strictly positive.");
+        checkArgument((builder.outputDirectory == null) || Files.isDirectory(builder.outputDirectory), "Output directory must be an existing directory.");
+        this.jobs = builder.jobs;
+        this.outputDirectory = builder.outputDirectory;
+    }
+
+    public static Builder builder(final Supplier<CountingStreamFilter> streamFilterSupplier) {
+        return new Builder(streamFilterSupplier);
+    }
+
+    /**
+     * @param inputs files to filter.
+     * @param out    stream where the merged outputs of all files are written, in the same order as the input files,
+     *               unless an output directory was configured, in which case nothing is written to it.
+     * @return the number of selected elements, in all files.
+     */
+    public long filter(final List<Path> inputs, final OutputStream out) throws XMLStreamException, IOException {
+        checkNotNull(inputs, "Inputs must NOT be null.");
+        checkNotNull(out, "OutputStream must NOT be null.");
+        if (outputDirectory != null) {
+            checkUniqueOutputs(inputs);
+        }
+
+        final ExecutorService workers = Executors.newFixedThreadPool(jobs, new ThreadFactoryBuilder().setNameFormat("xml-stream-filter-job-%d").setDaemon(true).build());
+        final ThreadLocal<CountingStreamFilter> streamFilters = ThreadLocal.withInitial(streamFilterSupplier);
+        final List<Future<Output>> outputs = new ArrayList<>(inputs.size());
+        int merged = 0;
+        long selected = 0;
+        try {
+            if (outputDirectory == null) {
+                final OutputStream bufferedOut = OutputStreams.buffered(out);
+                for (; merged < inputs.size(); ++merged) {
+                    // At most "jobs" files are being filtered, and as many are waiting to be merged:
+                    while ((outputs.size() < inputs.size()) && (outputs.size() < merged + (2 * jobs))) {
+                        final Path input = inputs.get(outputs.size());
+                        outputs.add(workers.submit(() -> filter(streamFilters.get(), input)));
+                    }
+                    final Output output = get(outputs.get(merged));
+                    try {
+                        Files.copy(output.path, bufferedOut);
+                    } finally {
+                        Files.deleteIfExists(output.path);
+                    }
+                    selected += output.selected;
+                }
+                bufferedOut.flush();
+            } else {
+                for (final Path input : inputs) {
+                    outputs.add(workers.submit(() -> filter(streamFilters.get(), input)));
+                }
+                for (; merged < outputs.size(); ++merged) {
+                    selected += get(outputs.get(merged)).selected;
+                }
+            }
+            return selected;
+        } finally {
+            workers.shutdownNow();
+            if (outputDirectory == null) {
+                outputs.subList(merged, outputs.size()).forEach(BatchXmlStreamFilter::deleteQuietly);
+            }
+        }
+    }
+
+    /**
+     * Runs on a worker thread.
+     *
+     * @return the output file, either in the output directory, or a temporary file to merge.
+     */
+    private Output filter(final CountingStreamFilter streamFilter, final Path input) throws XMLStreamException, IOException {
+        final Path output = (outputDirectory == null)
+                ? Files.createTempFile("xml-stream-filter-", ".out")
+                : Files.createTempFile(outputDirectory, ".xml-stream-filter-", ".tmp");
+        final long selected;
+        boolean filtered = false;
+        try {
+            try (final InputStream in = Files.newInputStream(input);
+                 final OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+                selected = streamFilter.filterAndCount(in, out);
+            } catch (XMLStreamException e) {
+                throw new XMLStreamException("Failed to filter " + input + ": " + e.getMessage(), e);
+            } catch (IOException | UncheckedIOException e) {
+                throw new IOException("Failed to filter " + input + ".", e);
+            }
+            if (outputDirectory == null) {
+                filtered = true;
+                return new Output(output, selected);
+            }
+            final Path finalOutput = Files.move(output, outputFor(input), StandardCopyOption.REPLACE_EXISTING);
+            filtered = true;
+            return new Output(finalOutput, selected);
+        } finally {
+            // Temporary files are only deleted once merged, or moved, hence these would otherwise be left behind:
+            if (!filtered) {
+                Files.deleteIfExists(output);
+            }
+        }
+    }
+
+    /**
+     * @return path of the output file for the provided input, in the output directory, named after the input, without any ".gz" extension.
+     */
+    private Path outputFor(final Path input) {
+        final String name = input.getFileName().toString();
+        return outputDirectory.resolve(name.endsWith(GZIP_EXTENSION) ? name.substring(0, name.length() - GZIP_EXTENSION.length()) : name);
+    }
+
+    /**
+     * Outputs replace existing files, hence these must neither be shared by several inputs, nor be an input.
+     */
+    private void checkUniqueOutputs(final List<Path> inputs) throws IOException {
+        final Set<Path> realInputs = new HashSet<>();
+        for (final Path input : inputs) {
+            realInputs.add(input.toRealPath());
+        }
+        final Set<Path> outputs = new HashSet<>();
+        for (final Path input : inputs) {
+            final Path output = outputFor(input);
+            checkArgument(outputs.add(output), "Several input files would be written to the same output file: %s.", output);
+            checkArgument(!Files.exists(output) || !realInputs.contains(output.toRealPath()), "Input file would be overwritten by its output: %s.", output);
+        }
+    }
+
+    private static Output get(final Future<Output> output) throws XMLStreamException, IOException {
+        try {
+            return output.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while filtering files.");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Failed to filter files.", cause);
+        }
+    }
+
+    private static void deleteQuietly(final Future<Output> output) {
+        output.cancel(true);
+        try {
+            if (output.isDone() && !output.isCancelled()) {
+                Files.deleteIfExists(output.get().path);
+            }
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            // Voluntarily swallowed: processing already failed, and its error is being reported.
+        }
+    }
+
+    /**
+     * Output file of an input file, and number of elements selected in it.
+     */
+    private static final class Output {
+        private final Path path;
+        private final long selected;
+
+        private Output(final Path path, final long selected) {
+            this.path = path;
+            this.selected = selected;
+        }
+    }
+
+    public static final class Builder {
+        private final Supplier<CountingStreamFilter> streamFilterSupplier;
+        private int jobs = 1;
+        private Path outputDirectory;
+
+        private Builder(final Supplier<CountingStreamFilter> streamFilterSupplier) {
+            this.streamFilterSupplier = streamFilterSupplier;
+        }
+
+        /**
+         * @param jobs number of files processed concurrently. Default: 1.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder jobs(final int jobs) {
+            this.jobs = jobs;
+            return this;
+        }
+
+        /**
+         * @param outputDirectory existing directory where to write one output file per input file, named after it.
+         *                        Default: none, i.e. outputs are merged.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder outputDirectory(final Path outputDirectory) {
+            this.outputDirectory = outputDirectory;
+            return this;
+        }
+
+        public BatchXmlStreamFilter build() {
+            return new BatchXmlStreamFilter(this);
+        }
+    }
+}
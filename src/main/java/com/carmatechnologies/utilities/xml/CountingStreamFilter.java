@@ -0,0 +1,24 @@
+package com.carmatechnologies.utilities.xml;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * {@link StreamFilter} which also reports how many elements it selected, e.g. for the command line interface to exit with a status telling
+ * whether any element was found.
+ */
+public interface CountingStreamFilter extends StreamFilter {
+    /**
+     * @param in  stream to read.
+     * @param out stream where selected elements are written.
+     * @return the number of selected elements.
+     */
+    long filterAndCount(final InputStream in, final OutputStream out) throws XMLStreamException, IOException;
+
+    @Override
+    default void filter(final InputStream in, final OutputStream out) throws XMLStreamException, IOException {
+        filterAndCount(in, out);
+    }
+}
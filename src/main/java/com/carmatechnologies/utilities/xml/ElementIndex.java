@@ -0,0 +1,657 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.MappedFile;
+import com.carmatechnologies.utilities.xml.common.SidecarFiles;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.common.XmlElementScanner;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPath;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPathPredicate;
+import com.google.common.io.CountingOutputStream;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sidecar index of an uncompressed XML file, recording, for each element with the configured local name, its byte offset and length,
+ * under each value selected in it by the configured key queries, so that looking elements up by key only reads and parses these elements,
+ * rather than the whole file. The index is built once, see {@link ElementIndex#build}, and memory-mapped:
+ * - entries are sorted by key query, then by value, as UTF-8 bytes, and grouped in blocks of a fixed number of entries,
+ * - the start of each block is recorded in a sparse directory, loaded in memory, hence each lookup is a binary search over blocks,
+ * reading only their first value, followed by a scan of a block or two.
+ * Values are trimmed, like {@link StreamingXPathPredicate#in} does, so that white-lists look elements up exactly as they would select them.
+ * Elements are parsed out of their context, like {@link SplitXmlStreamFilter} does, hence only namespaces declared on the file's root element
+ * are supported, and the file is expected to be UTF-8. Gzipped files are NOT supported, even with a {@link com.carmatechnologies.utilities.xml.common.GzipIndex},
+ * as offsets are offsets in the file itself. The size and modification time of the file are recorded, so that stale indexes are detected.
+ * File layout, in big-endian order:
+ * - header: magic number, number of entries, number of blocks, offset of the directory, size and modification time of the indexed file,
+ * - local name of the elements, number of key queries and key queries, each preceded by its length in bytes,
+ * - entries, each made of its key query's index, its value's length and value, and its element's offset and length,
+ * all integers being variable-length, 7 bits per byte,
+ * - directory, i.e. the absolute offset of each block, as longs.
+ */
+public final class ElementIndex implements Closeable {
+    private static final long MAGIC = 0x585346494E444558L; // "XSFINDEX"
+    private static final int HEADER_SIZE = 64;
+    private static final int ENTRIES_PER_BLOCK = 64;
+    private static final long MAX_RUN_SIZE = 64 * 1024 * 1024;
+    private static final int ENTRY_OVERHEAD = 64; // Estimated size of an entry in memory, besides its value.
+
+    private final MappedFile file;
+    private final String elementLocalName;
+    private final List<String> keyQueries;
+    private final long inputSize;
+    private final long inputLastModified;
+    private final long[] directory;
+    private final long entriesEnd;
+
+    private ElementIndex(final MappedFile file, final Path path) throws IOException {
+        this.file = file;
+        if ((file.size() < HEADER_SIZE) || (file.getLong(0) != MAGIC)) {
+            throw new IOException("Not an element index file: " + path + ".");
+        }
+        final int blockCount = (int) file.getLong(16);
+        final long directoryOffset = file.getLong(24);
+        this.entriesEnd = directoryOffset;
+        this.inputSize = file.getLong(32);
+        this.inputLastModified = file.getLong(40);
+        final long[] position = {HEADER_SIZE};
+        this.elementLocalName = readString(position);
+        final int keyQueryCount = (int) readVarLong(position);
+        final List<String> keyQueries = new ArrayList<>(keyQueryCount);
+        for (int i = 0; i < keyQueryCount; ++i) {
+            keyQueries.add(readString(position));
+        }
+        this.keyQueries = Collections.unmodifiableList(keyQueries);
+        this.directory = new long[blockCount];
+        for (int i = 0; i < blockCount; ++i) {
+            directory[i] = file.getLong(directoryOffset + ((long) i * Long.BYTES));
+        }
+    }
+
+    /**
+     * @param index index file, as built by {@link ElementIndex#build}.
+     * @return the index, to close once done with it.
+     * @throws IOException if the file cannot be mapped, or is not an index file.
+     */
+    public static ElementIndex open(final Path index) throws IOException {
+        checkNotNull(index, "Index file must NOT be null.");
+        final MappedFile file = new MappedFile(index);
+        try {
+            return new ElementIndex(file, index);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Builds the index of the provided file, in a single pass: elements are located by a {@link XmlElementScanner}, and only these are parsed,
+     * to evaluate the key queries while parsing. Entries are sorted in memory, in runs of at most 64 MB, spilled to temporary files next to the index
+     * if there are several, and merged while written to the index, atomically, see {@link SidecarFiles#writeAtomically}.
+     *
+     * @param input            uncompressed XML file to index.
+     * @param elementLocalName local name of the elements to index.
+     * @param keyQueries       XPath queries, in the streamable subset of XPath, see {@link StreamingXPath}, selecting the values to index each element under.
+     *                         All values selected in an element are indexed.
+     * @param index            index file to create or replace.
+     * @return the number of elements indexed.
+     * @throws IllegalArgumentException if a key query is NOT in the streamable subset of XPath, or if the file is gzipped.
+     */
+    public static long build(final Path input, final String elementLocalName, final List<String> keyQueries, final Path index) throws IOException, XMLStreamException {
+        return build(input, elementLocalName, keyQueries, index, MAX_RUN_SIZE);
+    }
+
+    /**
+     * @param maxRunSize estimated size, in bytes, of the entries sorted in memory, beyond which these are spilled to a temporary file.
+     */
+    static long build(final Path input, final String elementLocalName, final List<String> keyQueries, final Path index, final long maxRunSize)
+            throws IOException, XMLStreamException {
+        checkNotNull(input, "Input file must NOT be null.");
+        checkNotNull(elementLocalName, "XML element's local name must NOT be null.");
+        checkNotNull(keyQueries, "Key queries must NOT be null.");
+        checkArgument(!keyQueries.isEmpty(), "Key queries must NOT be empty.");
+        checkNotNull(index, "Index file must NOT be null.");
+        checkArgument(maxRunSize > 0, "Run size must be strictly positive.");
+
+        final List<Set<String>> values = new ArrayList<>(keyQueries.size());
+        final List<StreamingXPathPredicate> keys = new ArrayList<>(keyQueries.size());
+        for (final String keyQuery : keyQueries) {
+            final StreamingXPath path = StreamingXPath.compile(keyQuery)
+                    .orElseThrow(() -> new IllegalArgumentException("Key query is NOT in the streamable subset of XPath: " + keyQuery + "."));
+            final Set<String> keyValues = new LinkedHashSet<>();
+            values.add(keyValues);
+            keys.add(new StreamingXPathPredicate(path, (text, start, length) -> {
+                keyValues.add(trim(text, start, length));
+                return false; // So that all selected nodes are evaluated.
+            }));
+        }
+
+        final long inputSize = Files.size(input);
+        final long inputLastModified = SidecarFiles.lastModified(input);
+        long elements = 0;
+        try (final MappedFile file = new MappedFile(input);
+             final SortedRuns entries = new SortedRuns(index, maxRunSize)) {
+            final MappedFile.Cursor cursor = file.newCursor();
+            checkArgument((cursor.get(0) | (cursor.get(1) << 8)) != GZIPInputStream.GZIP_MAGIC, "Gzipped files cannot be indexed: %s.", input);
+            final XmlElementScanner scanner = new XmlElementScanner(cursor, elementLocalName, 0, file.size());
+            final Deque<long[]> ranges = new ArrayDeque<>();
+            final XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(
+                    newInputStream(cursor, new ScannedRanges(scanner, ranges)));
+            try {
+                int depth = 0;
+                while (reader.hasNext()) {
+                    final int event = reader.next();
+                    if (event == XMLEvent.START_ELEMENT) {
+                        ++depth;
+                    }
+                    if (depth >= 2) {
+                        if ((depth == 2) && (event == XMLEvent.START_ELEMENT)) {
+                            keys.forEach(StreamingXPathPredicate::reset);
+                        }
+                        for (final StreamingXPathPredicate key : keys) {
+                            key.accept(reader);
+                        }
+                    }
+                    if (event == XMLEvent.END_ELEMENT) {
+                        if (depth == 2) {
+                            final long[] range = ranges.removeFirst();
+                            for (int i = 0; i < values.size(); ++i) {
+                                for (final String value : values.get(i)) {
+                                    entries.add(new Entry(i, value.getBytes(UTF_8), range[0], range[1] - range[0]));
+                                }
+                                values.get(i).clear();
+                            }
+                            ++elements;
+                        }
+                        --depth;
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+            write(entries.sorted(), elementLocalName, keyQueries, inputSize, inputLastModified, index);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        return elements;
+    }
+
+    private static void write(final SortedRuns.Merge entries, final String elementLocalName, final List<String> keyQueries,
+                              final long inputSize, final long inputLastModified, final Path index) throws IOException {
+        SidecarFiles.writeAtomically(index, temporaryIndex -> {
+            final List<Long> directory = new ArrayList<>();
+            long entryCount = 0;
+            final long directoryOffset;
+            try (final CountingOutputStream counter = new CountingOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryIndex)));
+                 final DataOutputStream out = new DataOutputStream(counter)) {
+                out.write(new byte[HEADER_SIZE]);
+                writeString(out, elementLocalName);
+                SidecarFiles.writeVarLong(out, keyQueries.size());
+                for (final String keyQuery : keyQueries) {
+                    writeString(out, keyQuery);
+                }
+                for (Entry entry = entries.next(); entry != null; entry = entries.next(), ++entryCount) {
+                    if ((entryCount % ENTRIES_PER_BLOCK) == 0) {
+                        directory.add(counter.getCount());
+                    }
+                    entry.writeTo(out);
+                }
+                // Longs are aligned, so that none straddles two windows of the mapped file:
+                while ((counter.getCount() % Long.BYTES) != 0) {
+                    out.write(0);
+                }
+                directoryOffset = counter.getCount();
+                for (final long blockOffset : directory) {
+                    out.writeLong(blockOffset);
+                }
+            }
+            try (final FileChannel channel = FileChannel.open(temporaryIndex, StandardOpenOption.WRITE)) {
+                final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                header.putLong(MAGIC).putLong(entryCount).putLong(directory.size()).putLong(directoryOffset)
+                        .putLong(inputSize).putLong(inputLastModified).flip();
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+            }
+        });
+    }
+
+    public String elementLocalName() {
+        return elementLocalName;
+    }
+
+    public List<String> keyQueries() {
+        return keyQueries;
+    }
+
+    /**
+     * @return {@code true} if the provided file has the same size and modification time as the indexed file had.
+     */
+    public boolean isUpToDate(final Path input) throws IOException {
+        return SidecarFiles.isUpToDate(input, inputSize, inputLastModified);
+    }
+
+    /**
+     * @param keyQuery key query, exactly as provided when building the index.
+     * @param values   values to look up, trimmed.
+     * @return the offset and length of each element indexed under any of the provided values, in file order, each only once.
+     * @throws IllegalArgumentException if the key query is NOT indexed.
+     */
+    public Map<Long, Long> lookup(final String keyQuery, final Collection<String> values) {
+        checkNotNull(values, "Values must NOT be null.");
+        final int key = keyQueries.indexOf(keyQuery);
+        checkArgument(key >= 0, "Key query is NOT indexed: %s.", keyQuery);
+        final Map<Long, Long> elements = new TreeMap<>();
+        for (final String value : values) {
+            lookup(key, value.trim().getBytes(UTF_8), elements);
+        }
+        return elements;
+    }
+
+    private void lookup(final int key, final byte[] value, final Map<Long, Long> elements) {
+        if (directory.length == 0) {
+            return;
+        }
+        // Last block starting strictly before the value, as its last entries may already have the value:
+        int low = 0;
+        int high = directory.length - 1;
+        int block = 0;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            if (compareEntryAt(directory[middle], key, value) < 0) {
+                block = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        final long[] position = {directory[block]};
+        while (position[0] < entriesEnd) {
+            final int comparison = compareEntryAt(position[0], key, value);
+            if (comparison > 0) {
+                return;
+            }
+            readVarLong(position);
+            final long valueLength = readVarLong(position);
+            position[0] += valueLength;
+            final long offset = readVarLong(position);
+            final long length = readVarLong(position);
+            if (comparison == 0) {
+                elements.put(offset, length);
+            }
+        }
+    }
+
+    /**
+     * @return the comparison of the entry at the provided position with the provided key query and value.
+     */
+    private int compareEntryAt(final long entryPosition, final int key, final byte[] value) {
+        final long[] position = {entryPosition};
+        final int entryKey = (int) readVarLong(position);
+        if (entryKey != key) {
+            return Integer.compare(entryKey, key);
+        }
+        final int length = (int) readVarLong(position);
+        for (int i = 0; i < Math.min(length, value.length); ++i) {
+            final int comparison = Integer.compare(file.get(position[0] + i), value[i] & 0xFF);
+            if (comparison != 0) {
+                return comparison;
+            }
+        }
+        return Integer.compare(length, value.length);
+    }
+
+    /**
+     * @param input    indexed file.
+     * @param elements offset and length of each element to read, in file order, as returned by {@link ElementIndex#lookup}.
+     * @return the concatenation of the provided elements of the file, within a synthetic root element declaring the file's root namespaces,
+     * to close once read, e.g. to parse with {@link XmlStreamFilter}, as if only these elements were in the file.
+     */
+    public static InputStream newInputStream(final Path input, final Map<Long, Long> elements) throws IOException {
+        checkNotNull(input, "Input file must NOT be null.");
+        checkNotNull(elements, "Elements must NOT be null.");
+        final MappedFile file = new MappedFile(input);
+        final Iterator<Map.Entry<Long, Long>> iterator = elements.entrySet().iterator();
+        final InputStream in = newInputStream(file.newCursor(), new Iterator<long[]>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public long[] next() {
+                final Map.Entry<Long, Long> element = iterator.next();
+                return new long[]{element.getKey(), element.getKey() + element.getValue()};
+            }
+        });
+        return new FilterInputStream(in) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    file.close();
+                }
+            }
+        };
+    }
+
+    private static InputStream newInputStream(final MappedFile.Cursor cursor, final Iterator<long[]> ranges) throws IOException {
+        final String namespaceDeclarations = new String(XmlElementScanner.rootNamespaceDeclarations(cursor), UTF_8);
+        final byte[] startTag = ("<" + SplitXmlStreamFilter.RANGE_ELEMENT + namespaceDeclarations + ">").getBytes(UTF_8);
+        final byte[] endTag = ("</" + SplitXmlStreamFilter.RANGE_ELEMENT + ">").getBytes(UTF_8);
+        return new SequenceInputStream(new Enumeration<InputStream>() {
+            private boolean started;
+            private boolean ended;
+
+            @Override
+            public boolean hasMoreElements() {
+                return !ended;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                if (!started) {
+                    started = true;
+                    return new ByteArrayInputStream(startTag);
+                }
+                if (ranges.hasNext()) {
+                    final long[] range = ranges.next();
+                    return cursor.newInputStream(range[0], range[1]);
+                }
+                if (ended) {
+                    throw new NoSuchElementException();
+                }
+                ended = true;
+                return new ByteArrayInputStream(endTag);
+            }
+        });
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private String readString(final long[] position) {
+        final byte[] bytes = new byte[(int) readVarLong(position)];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) file.get(position[0]++);
+        }
+        return new String(bytes, UTF_8);
+    }
+
+    /**
+     * Reads the variable-length integer at the provided position, which is moved past it.
+     */
+    private long readVarLong(final long[] position) {
+        final long value = SidecarFiles.readVarLong(file, position[0]);
+        position[0] += SidecarFiles.varLongSize(value);
+        return value;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        final byte[] bytes = value.getBytes(UTF_8);
+        SidecarFiles.writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String trim(final char[] text, final int start, final int length) {
+        int begin = start;
+        int end = start + length;
+        while ((begin < end) && (text[begin] <= ' ')) {
+            ++begin;
+        }
+        while ((end > begin) && (text[end - 1] <= ' ')) {
+            --end;
+        }
+        return new String(text, begin, end - begin);
+    }
+
+    /**
+     * Ranges of the elements located by a scanner, as the parser reads them, also queued for the parser to pair these with the elements it parses.
+     */
+    private static final class ScannedRanges implements Iterator<long[]> {
+        private final XmlElementScanner scanner;
+        private final Deque<long[]> ranges;
+        private Boolean hasNext;
+
+        private ScannedRanges(final XmlElementScanner scanner, final Deque<long[]> ranges) {
+            this.scanner = scanner;
+            this.ranges = ranges;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    hasNext = scanner.next();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public long[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            final long[] range = {scanner.elementStart(), scanner.elementEnd()};
+            ranges.addLast(range);
+            return range;
+        }
+    }
+
+    /**
+     * Entries, sorted in memory in runs of bounded size, each spilled to a temporary file once full, and merged once all entries were added,
+     * so that indexing a file does not require memory proportional to its number of entries. Temporary files are deleted once closed.
+     */
+    private static final class SortedRuns implements Closeable {
+        private final Path index;
+        private final long maxRunSize;
+        private final List<Entry> entries = new ArrayList<>();
+        private long runSize;
+        private final List<Path> runs = new ArrayList<>();
+        private final List<Long> runLengths = new ArrayList<>();
+        private final List<Closeable> openRuns = new ArrayList<>();
+
+        private SortedRuns(final Path index, final long maxRunSize) {
+            this.index = index;
+            this.maxRunSize = maxRunSize;
+        }
+
+        private void add(final Entry entry) throws IOException {
+            entries.add(entry);
+            runSize += entry.value.length + ENTRY_OVERHEAD;
+            if (runSize >= maxRunSize) {
+                spill();
+            }
+        }
+
+        private void spill() throws IOException {
+            Collections.sort(entries);
+            final Path run = Files.createTempFile(index.toAbsolutePath().getParent(), index.getFileName().toString(), ".run");
+            runs.add(run);
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run)))) {
+                for (final Entry entry : entries) {
+                    entry.writeTo(out);
+                }
+            }
+            runLengths.add((long) entries.size());
+            entries.clear();
+            runSize = 0;
+        }
+
+        /**
+         * @return all entries added, in order. Entries can no longer be added.
+         */
+        private Merge sorted() throws IOException {
+            if (runs.isEmpty()) {
+                // Everything fit in memory, hence nothing was spilled:
+                Collections.sort(entries);
+                final Iterator<Entry> iterator = entries.iterator();
+                return () -> iterator.hasNext() ? iterator.next() : null;
+            }
+            if (!entries.isEmpty()) {
+                spill();
+            }
+            final PriorityQueue<Run> queue = new PriorityQueue<>(runs.size());
+            for (int i = 0; i < runs.size(); ++i) {
+                final Run run = new Run(new DataInputStream(new BufferedInputStream(Files.newInputStream(runs.get(i)))), runLengths.get(i));
+                openRuns.add(run.in);
+                if (run.advance()) {
+                    queue.add(run);
+                }
+            }
+            return () -> {
+                final Run run = queue.poll();
+                if (run == null) {
+                    return null;
+                }
+                final Entry entry = run.current;
+                if (run.advance()) {
+                    queue.add(run);
+                }
+                return entry;
+            };
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (final Closeable run : openRuns) {
+                run.close();
+            }
+            for (final Path run : runs) {
+                Files.deleteIfExists(run);
+            }
+        }
+
+        /**
+         * @return the next entry, or {@code null} if there is none.
+         */
+        @FunctionalInterface
+        private interface Merge {
+            Entry next() throws IOException;
+        }
+
+        /**
+         * Sorted run spilled to a temporary file, read one entry at a time.
+         */
+        private static final class Run implements Comparable<Run> {
+            private final DataInputStream in;
+            private long remaining;
+            private Entry current;
+
+            private Run(final DataInputStream in, final long length) {
+                this.in = in;
+                this.remaining = length;
+            }
+
+            /**
+             * @return {@code true} if the run had another entry, now current.
+             */
+            private boolean advance() throws IOException {
+                if (remaining == 0) {
+                    current = null;
+                    return false;
+                }
+                --remaining;
+                current = Entry.readFrom(in);
+                return true;
+            }
+
+            @Override
+            public int compareTo(final Run other) {
+                return current.compareTo(other.current);
+            }
+        }
+    }
+
+    private static final class Entry implements Comparable<Entry> {
+        private final int key;
+        private final byte[] value;
+        private final long offset;
+        private final long length;
+
+        private Entry(final int key, final byte[] value, final long offset, final long length) {
+            this.key = key;
+            this.value = value;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        /**
+         * Writes this entry as laid out in the index, see {@link ElementIndex}, which spilled runs share.
+         */
+        private void writeTo(final DataOutputStream out) throws IOException {
+            SidecarFiles.writeVarLong(out, key);
+            SidecarFiles.writeVarLong(out, value.length);
+            out.write(value);
+            SidecarFiles.writeVarLong(out, offset);
+            SidecarFiles.writeVarLong(out, length);
+        }
+
+        private static Entry readFrom(final DataInputStream in) throws IOException {
+            final int key = (int) SidecarFiles.readVarLong(in);
+            final byte[] value = new byte[(int) SidecarFiles.readVarLong(in)];
+            in.readFully(value);
+            final long offset = SidecarFiles.readVarLong(in);
+            final long length = SidecarFiles.readVarLong(in);
+            return new Entry(key, value, offset, length);
+        }
+
+        @Override
+        public int compareTo(final Entry other) {
+            if (key != other.key) {
+                return Integer.compare(key, other.key);
+            }
+            for (int i = 0; i < Math.min(value.length, other.value.length); ++i) {
+                final int comparison = Integer.compare(value[i] & 0xFF, other.value[i] & 0xFF);
+                if (comparison != 0) {
+                    return comparison;
+                }
+            }
+            final int comparison = Integer.compare(value.length, other.value.length);
+            return (comparison != 0) ? comparison : Long.compare(offset, other.offset);
+        }
+    }
+}
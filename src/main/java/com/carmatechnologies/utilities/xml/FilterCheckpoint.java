@@ -0,0 +1,144 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.SidecarFiles;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Progress of a long-running {@link SplitXmlStreamFilter}, recorded after each range of the input file is output, so that an interrupted run
+ * can be resumed from there, rather than from the start of the file, see {@link SplitXmlStreamFilter.Builder#resumeFrom}:
+ * - the offset in the input file, inflated if gzipped, where the next range starts, i.e. right after the last fully processed element,
+ * - the number of bytes output so far, so that whatever was output after this checkpoint can be truncated, and output again,
+ * - the number of elements selected so far,
+ * - the namespace declarations in scope of the elements, i.e. the parser's context, declared again on the synthetic root element of each range.
+ * The size and modification time of the input file are recorded, so that checkpoints of another file, or of a modified one, are detected.
+ * Checkpoints are written to a temporary file, synced and atomically moved to their final path, hence a crash leaves either the previous checkpoint
+ * or the new one behind, never a partially written one.
+ * File layout, in big-endian order: magic number, input offset, output length, number of selected elements, size and modification time of
+ * the input file, and namespace declarations, as UTF-8 bytes, preceded by their length.
+ */
+public final class FilterCheckpoint {
+    private static final long MAGIC = 0x58534643484B5054L; // "XSFCHKPT"
+
+    private final long inputOffset;
+    private final long outputLength;
+    private final long selected;
+    private final long inputSize;
+    private final long inputLastModified;
+    private final byte[] namespaceDeclarations;
+
+    private FilterCheckpoint(final long inputOffset, final long outputLength, final long selected, final long inputSize, final long inputLastModified,
+                             final byte[] namespaceDeclarations) {
+        checkArgument(inputOffset >= 0, "Input offset must be positive.");
+        checkArgument(outputLength >= 0, "Output length must be positive.");
+        checkArgument(selected >= 0, "Number of selected elements must be positive.");
+        this.inputOffset = inputOffset;
+        this.outputLength = outputLength;
+        this.selected = selected;
+        this.inputSize = inputSize;
+        this.inputLastModified = inputLastModified;
+        this.namespaceDeclarations = checkNotNull(namespaceDeclarations, "Namespace declarations must NOT be null.");
+    }
+
+    /**
+     * @param input                 file being filtered, whose size and modification time are recorded.
+     * @param namespaceDeclarations namespace declarations in scope of the elements, as attributes, e.g. {@code xmlns:x="urn:x"}.
+     */
+    static FilterCheckpoint of(final Path input, final long inputOffset, final long outputLength, final long selected,
+                               final byte[] namespaceDeclarations) throws IOException {
+        checkNotNull(input, "Input file must NOT be null.");
+        return new FilterCheckpoint(inputOffset, outputLength, selected, Files.size(input), SidecarFiles.lastModified(input),
+                namespaceDeclarations);
+    }
+
+    /**
+     * @param checkpoint checkpoint file, as written by {@link FilterCheckpoint#write}.
+     * @throws IOException if the file cannot be read, or is not a checkpoint file.
+     */
+    public static FilterCheckpoint read(final Path checkpoint) throws IOException {
+        checkNotNull(checkpoint, "Checkpoint file must NOT be null.");
+        try (final DataInputStream in = new DataInputStream(Files.newInputStream(checkpoint))) {
+            if ((Files.size(checkpoint) < Long.BYTES) || (in.readLong() != MAGIC)) {
+                throw new IOException("Not a checkpoint file: " + checkpoint + ".");
+            }
+            final long inputOffset = in.readLong();
+            final long outputLength = in.readLong();
+            final long selected = in.readLong();
+            final long inputSize = in.readLong();
+            final long inputLastModified = in.readLong();
+            final byte[] namespaceDeclarations = new byte[in.readInt()];
+            in.readFully(namespaceDeclarations);
+            return new FilterCheckpoint(inputOffset, outputLength, selected, inputSize, inputLastModified, namespaceDeclarations);
+        }
+    }
+
+    /**
+     * Writes the checkpoint, synced, atomically, see {@link SidecarFiles#writeAtomically}.
+     */
+    public void write(final Path checkpoint) throws IOException {
+        checkNotNull(checkpoint, "Checkpoint file must NOT be null.");
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeLong(MAGIC);
+            out.writeLong(inputOffset);
+            out.writeLong(outputLength);
+            out.writeLong(selected);
+            out.writeLong(inputSize);
+            out.writeLong(inputLastModified);
+            out.writeInt(namespaceDeclarations.length);
+            out.write(namespaceDeclarations);
+        }
+        SidecarFiles.writeAtomically(checkpoint, temporaryCheckpoint -> {
+            try (final FileChannel channel = FileChannel.open(temporaryCheckpoint, StandardOpenOption.WRITE)) {
+                final ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(true);
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} if the provided file has the size and modification time of the file this checkpoint was recorded for.
+     */
+    public boolean isUpToDate(final Path input) throws IOException {
+        return SidecarFiles.isUpToDate(input, inputSize, inputLastModified);
+    }
+
+    /**
+     * @return the offset in the input file, inflated if gzipped, where filtering resumes.
+     */
+    public long inputOffset() {
+        return inputOffset;
+    }
+
+    /**
+     * @return the number of bytes output up to this checkpoint.
+     */
+    public long outputLength() {
+        return outputLength;
+    }
+
+    /**
+     * @return the number of elements selected up to this checkpoint.
+     */
+    public long selected() {
+        return selected;
+    }
+
+    byte[] namespaceDeclarations() {
+        return namespaceDeclarations.clone();
+    }
+}
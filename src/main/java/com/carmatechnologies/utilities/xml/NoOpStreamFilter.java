@@ -8,9 +8,10 @@ import java.io.OutputStream;
 /**
  * No-op stream filter, to use as a <a href="https://en.wikipedia.org/wiki/Null_Object_pattern">"Null Object"</a>.
  */
-public final class NoOpStreamFilter implements StreamFilter {
+public final class NoOpStreamFilter implements CountingStreamFilter {
     @Override
-    public void filter(final InputStream in, final OutputStream out) throws XMLStreamException, IOException {
+    public long filterAndCount(final InputStream in, final OutputStream out) throws XMLStreamException, IOException {
         // Does nothing.
+        return 0;
     }
 }
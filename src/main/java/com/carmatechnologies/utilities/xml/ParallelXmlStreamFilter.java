@@ -0,0 +1,343 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.common.OutputStreams;
+import com.carmatechnologies.utilities.xml.common.Pair;
+import com.carmatechnologies.utilities.xml.common.PrescanningInputStream;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToDomTreeTransformer;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerConfigurationException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+/**
+ * Multi-core version of {@link XmlStreamFilter}, organised as a pipeline:
+ * - the calling thread parses the input and detaches each detected element as its own DOM tree,
+ * - a pool of worker threads applies the predicate and the transformer to these DOM trees, in memory,
+ * - a writer thread writes the transformed elements to the output stream, in input order unless configured otherwise.
+ * Memory usage is bounded by the maximum number of elements "in flight", i.e. parsed but not written yet.
+ * As predicates and transformers are typically not thread-safe, each worker thread gets its own instances from the provided suppliers.
+ * If a limit is configured, the writer stops writing once it is reached, and the parsing thread stops parsing, whereas elements still in flight are dropped.
+ */
+public final class ParallelXmlStreamFilter implements CountingStreamFilter {
+    private static final byte[] NO_OUTPUT = new byte[0];
+    private static final Future<byte[]> END_OF_STREAM = CompletableFuture.completedFuture(NO_OUTPUT);
+    private static final long POLLING_PERIOD_IN_MS = 100;
+
+    private final XmlElementReader elementReader;
+    private final Supplier<Predicate<Node>> filterSupplier;
+    private final Supplier<Function<Pair<Node, OutputStream>, Void>> transformerSupplier;
+    private final int threads;
+    private final int maxInFlight;
+    private final boolean ordered;
+    private final long limit;
+
+    private ParallelXmlStreamFilter(final Builder builder) throws TransformerConfigurationException {
+        this.elementReader = new XmlElementReader(builder.elementLocalName, builder.xmlInputFactory,
+                (builder.domTreeTransformer == null) ? new XMLStreamReaderToDomTreeTransformer() : builder.domTreeTransformer,
+                builder.captureRawXml, builder.inflaterThreads, builder.prescan);
+        this.filterSupplier = checkNotNull(builder.filterSupplier, "Filter supplier must NOT be null.");
+        this.transformerSupplier = checkNotNull(builder.transformerSupplier, "Transformer supplier must NOT be null.");
+        checkArgument(builder.threads > 0, "Number of threads must be strictly positive.");
+        checkArgument(builder.maxInFlight > 0, "Maximum number of elements in flight must be strictly positive.");
+        this.threads = builder.threads;
+        this.maxInFlight = builder.maxInFlight;
+        this.ordered = builder.ordered;
+        checkArgument(builder.limit > 0, "Limit must be strictly positive.");
+        this.limit = builder.limit;
+    }
+
+    public static Builder builder(final String elementLocalName) {
+        return new Builder(elementLocalName);
+    }
+
+    @Override
+    public long filterAndCount(final InputStream rawInput, final OutputStream rawOutput) throws XMLStreamException, IOException {
+        checkNotNull(rawInput, "InputStream must NOT be null.");
+        checkNotNull(rawOutput, "OutputStream must NOT be null.");
+
+        final OutputStream out = OutputStreams.buffered(rawOutput);
+        final Pipeline pipeline = new Pipeline(out);
+        try {
+            elementReader.forEach(rawInput, pipeline::submit, pipeline::isLimitReached);
+            return pipeline.drain();
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } finally {
+            pipeline.shutdown();
+            OutputStreams.closeQuietly(out);
+        }
+    }
+
+    /**
+     * State of one invocation of {@link ParallelXmlStreamFilter#filterAndCount(InputStream, OutputStream) filterAndCount}.
+     */
+    private final class Pipeline {
+        private final ExecutorService workers = Executors.newFixedThreadPool(threads, threadFactory("xml-stream-filter-worker-%d"));
+        private final ExecutorService writerExecutor = Executors.newSingleThreadExecutor(threadFactory("xml-stream-filter-writer-%d"));
+        private final ThreadLocal<Predicate<Node>> filters = ThreadLocal.withInitial(filterSupplier);
+        private final ThreadLocal<Function<Pair<Node, OutputStream>, Void>> transformers = ThreadLocal.withInitial(transformerSupplier);
+        private final ThreadLocal<ByteArrayOutputStream> buffers = ThreadLocal.withInitial(ByteArrayOutputStream::new);
+        private final Semaphore inFlight = new Semaphore(maxInFlight);
+        private final BlockingQueue<Future<byte[]>> outputs = new LinkedBlockingQueue<>();
+        private final CompletionService<byte[]> completionService = new ExecutorCompletionService<>(workers, outputs);
+        private final Future<Long> writer;
+        private volatile boolean limitReached;
+
+        private Pipeline(final OutputStream out) {
+            writer = writerExecutor.submit(() -> write(out));
+        }
+
+        private void submit(final Node domTree) {
+            acquire(1);
+            if (ordered) {
+                // Futures are queued in submission order, and the writer waits for each of them in turn:
+                outputs.add(workers.submit(() -> process(domTree)));
+            } else {
+                // Futures are queued as soon as they complete:
+                completionService.submit(() -> process(domTree));
+            }
+        }
+
+        private byte[] process(final Node domTree) {
+            if (limitReached || !filters.get().test(domTree)) {
+                return NO_OUTPUT;
+            }
+            final ByteArrayOutputStream buffer = buffers.get();
+            buffer.reset();
+            transformers.get().apply(MutablePair.of(domTree, buffer));
+            return buffer.toByteArray();
+        }
+
+        /**
+         * @return the number of selected elements, i.e. written to the output stream.
+         */
+        private Long write(final OutputStream out) throws InterruptedException, ExecutionException, IOException {
+            long selected = 0;
+            for (Future<byte[]> output = outputs.take(); output != END_OF_STREAM; output = outputs.take()) {
+                final byte[] bytes = output.get();
+                // Elements which are not selected have no output, unlike selected ones, even when these are transformed into nothing:
+                if ((bytes != NO_OUTPUT) && !limitReached) {
+                    out.write(bytes);
+                    limitReached = (++selected >= limit);
+                }
+                inFlight.release();
+            }
+            return selected;
+        }
+
+        private boolean isLimitReached() {
+            return limitReached;
+        }
+
+        private long drain() {
+            // Once all permits are back, all elements have been written:
+            acquire(maxInFlight);
+            outputs.add(END_OF_STREAM);
+            try {
+                return writer.get();
+            } catch (InterruptedException e) {
+                throw interrupted(e);
+            } catch (ExecutionException e) {
+                throw unchecked(e);
+            }
+        }
+
+        private void acquire(final int permits) {
+            try {
+                while (!inFlight.tryAcquire(permits, POLLING_PERIOD_IN_MS, MILLISECONDS)) {
+                    if (writer.isDone()) {
+                        // The writer only stops early on failure, in which case the permits will never be released:
+                        writer.get();
+                    }
+                }
+            } catch (InterruptedException e) {
+                throw interrupted(e);
+            } catch (ExecutionException e) {
+                throw unchecked(e);
+            }
+        }
+
+        private void shutdown() {
+            workers.shutdownNow();
+            writerExecutor.shutdownNow();
+        }
+    }
+
+    private static ThreadFactory threadFactory(final String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+
+    private static UncheckedIOException interrupted(final InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return new UncheckedIOException(new InterruptedIOException("Interrupted while filtering XML elements in parallel."));
+    }
+
+    /**
+     * Unwraps failures from the worker and writer threads, so that they are rethrown as if they happened in the calling thread.
+     * {@code IOException}s are wrapped in {@code UncheckedIOException}s, to cross the parsing loop, and unwrapped afterwards.
+     */
+    private static RuntimeException unchecked(final ExecutionException e) {
+        Throwable cause = e.getCause();
+        while (cause instanceof ExecutionException) {
+            cause = cause.getCause();
+        }
+        if (cause instanceof IOException) {
+            return new UncheckedIOException((IOException) cause);
+        }
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new RuntimeException("Failed to filter XML elements in parallel.", cause);
+    }
+
+    public static final class Builder {
+        private final String elementLocalName;
+        private Supplier<Predicate<Node>> filterSupplier;
+        private Supplier<Function<Pair<Node, OutputStream>, Void>> transformerSupplier;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int maxInFlight = -1;
+        private boolean ordered = true;
+        private XMLInputFactory xmlInputFactory = XMLInputFactoryImpl.newInstance();
+        private Function<XMLStreamReader, Node> domTreeTransformer;
+        private boolean captureRawXml;
+        private int inflaterThreads;
+        private long limit = XmlStreamFilter.NO_LIMIT;
+        private boolean prescan;
+
+        private Builder(final String elementLocalName) {
+            this.elementLocalName = elementLocalName;
+        }
+
+        public Builder filter(final Supplier<Predicate<Node>> filterSupplier) {
+            this.filterSupplier = filterSupplier;
+            return this;
+        }
+
+        public Builder transformer(final Supplier<Function<Pair<Node, OutputStream>, Void>> transformerSupplier) {
+            this.transformerSupplier = transformerSupplier;
+            return this;
+        }
+
+        /**
+         * @param threads number of worker threads applying the predicate and the transformer. Default: number of available processors.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder threads(final int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param maxInFlight maximum number of elements parsed but not written yet. Default: 16 times the number of threads.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder maxInFlight(final int maxInFlight) {
+            this.maxInFlight = maxInFlight;
+            return this;
+        }
+
+        /**
+         * Write elements as soon as they are processed, rather than in input order, for extra throughput.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder unordered() {
+            this.ordered = false;
+            return this;
+        }
+
+        public Builder xmlInputFactory(final XMLInputFactory xmlInputFactory) {
+            this.xmlInputFactory = xmlInputFactory;
+            return this;
+        }
+
+        /**
+         * @param domTreeTransformer transformer used by the parsing thread. It must return a new, detached, DOM tree for each element.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder domTreeTransformer(final Function<XMLStreamReader, Node> domTreeTransformer) {
+            this.domTreeTransformer = domTreeTransformer;
+            return this;
+        }
+
+        /**
+         * Attach the original bytes of each element to its DOM tree, so that these can be written as-is, e.g. by {@link RawXmlToOutputStreamTransformer}.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder rawXml() {
+            this.captureRawXml = true;
+            return this;
+        }
+
+        /**
+         * @param inflaterThreads number of threads inflating gzipped inputs ahead of the parsing thread, in parallel for BGZF files.
+         *                        Default: 0, i.e. gzipped inputs are inflated by the parsing thread.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder inflaterThreads(final int inflaterThreads) {
+            this.inflaterThreads = inflaterThreads;
+            return this;
+        }
+
+        /**
+         * @param limit maximum number of elements to select: once reached, the rest of the input is neither read nor parsed. Default: no limit.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder limit(final long limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Locate elements with a byte-level scan, so that the parsing thread only parses these, see {@link PrescanningInputStream}.
+         * This requires UTF-8 input, and elements to be detected by their local name only.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder prescan() {
+            this.prescan = true;
+            return this;
+        }
+
+        public ParallelXmlStreamFilter build() throws TransformerConfigurationException {
+            if (maxInFlight == -1) {
+                maxInFlight = 16 * threads;
+            }
+            return new ParallelXmlStreamFilter(this);
+        }
+    }
+}
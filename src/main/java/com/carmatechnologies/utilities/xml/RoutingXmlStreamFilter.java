@@ -0,0 +1,212 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.common.OutputStreams;
+import com.carmatechnologies.utilities.xml.common.Pair;
+import com.carmatechnologies.utilities.xml.common.PrescanningInputStream;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToDomTreeTransformer;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerConfigurationException;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Single-pass version of several {@link XmlStreamFilter}s over the same input: each detected element is parsed and built as a DOM tree once,
+ * then dispatched to every route, i.e. named predicate, transformer and output, which selects it, so that the input is read and parsed
+ * once, whatever the number of routes.
+ * Each route writes to its own output file, or to the output stream provided to {@link RoutingXmlStreamFilter#filter(InputStream, OutputStream) filter}.
+ * Routes sharing an output file write to the same stream, in input order.
+ */
+public final class RoutingXmlStreamFilter implements CountingStreamFilter {
+    private final XmlElementReader elementReader;
+    private final List<Route> routes;
+
+    private RoutingXmlStreamFilter(final Builder builder) throws TransformerConfigurationException {
+        this.elementReader = new XmlElementReader(builder.elementLocalName, builder.xmlInputFactory,
+                (builder.domTreeTransformer == null) ? new XMLStreamReaderToDomTreeTransformer() : builder.domTreeTransformer,
+                builder.captureRawXml, 0, builder.prescan);
+        checkArgument(!builder.routes.isEmpty(), "Routes must NOT be empty.");
+        this.routes = Collections.unmodifiableList(new ArrayList<>(builder.routes));
+    }
+
+    public static Builder builder(final String elementLocalName) {
+        return new Builder(elementLocalName);
+    }
+
+    /**
+     * @return the number of elements selected by at least one route.
+     */
+    @Override
+    public long filterAndCount(final InputStream rawInput, final OutputStream rawOutput) throws XMLStreamException, IOException {
+        checkNotNull(rawInput, "InputStream must NOT be null.");
+        checkNotNull(rawOutput, "OutputStream must NOT be null.");
+
+        final Map<Path, OutputStream> outputs = new LinkedHashMap<>();
+        final OutputStream out = OutputStreams.buffered(rawOutput);
+        final long[] selected = new long[1];
+        boolean filtered = false;
+        try {
+            final List<MutablePair<Node, OutputStream>> outputHolders = new ArrayList<>(routes.size());
+            for (final Route route : routes) {
+                outputHolders.add(MutablePair.withSecond((route.output == null) ? out : open(outputs, route.output)));
+            }
+            elementReader.forEach(rawInput, domTree -> {
+                boolean isSelected = false;
+                for (int i = 0; i < routes.size(); ++i) {
+                    final Route route = routes.get(i);
+                    if (route.filter.test(domTree)) {
+                        route.transformer.apply(outputHolders.get(i).first(domTree));
+                        isSelected = true;
+                    }
+                }
+                if (isSelected) {
+                    ++selected[0];
+                }
+            });
+            filtered = true;
+        } finally {
+            try {
+                if (filtered) {
+                    close(outputs.values());
+                } else {
+                    outputs.values().forEach(OutputStreams::closeQuietly);
+                }
+            } finally {
+                OutputStreams.closeQuietly(out);
+            }
+        }
+        return selected[0];
+    }
+
+    /**
+     * Closes all the provided output files, and then throws the first failure if any, as the last bytes written to a file are only
+     * flushed on close, and would otherwise be silently lost, e.g. on a full disk.
+     */
+    private static void close(final Collection<OutputStream> outputs) throws IOException {
+        IOException failure = null;
+        for (final OutputStream out : outputs) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                failure = (failure == null) ? e : failure;
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private static OutputStream open(final Map<Path, OutputStream> outputs, final Path output) throws IOException {
+        OutputStream out = outputs.get(output);
+        if (out == null) {
+            out = new BufferedOutputStream(Files.newOutputStream(output));
+            outputs.put(output, out);
+        }
+        return out;
+    }
+
+    /**
+     * Predicate, transformer and output of the elements it selects.
+     */
+    private static final class Route {
+        private final Predicate<Node> filter;
+        private final Function<Pair<Node, OutputStream>, Void> transformer;
+        private final Path output;
+
+        private Route(final Predicate<Node> filter, final Function<Pair<Node, OutputStream>, Void> transformer, final Path output) {
+            this.filter = checkNotNull(filter, "Filter must NOT be null.");
+            this.transformer = checkNotNull(transformer, "Transformer must NOT be null.");
+            this.output = output;
+        }
+    }
+
+    public static final class Builder {
+        private final String elementLocalName;
+        private final List<Route> routes = new ArrayList<>();
+        private final Set<String> names = new HashSet<>();
+        private XMLInputFactory xmlInputFactory = XMLInputFactoryImpl.newInstance();
+        private Function<XMLStreamReader, Node> domTreeTransformer;
+        private boolean captureRawXml;
+        private boolean prescan;
+
+        private Builder(final String elementLocalName) {
+            this.elementLocalName = elementLocalName;
+        }
+
+        /**
+         * @param name        unique name of the route.
+         * @param filter      predicate selecting the elements of this route.
+         * @param transformer transformer writing the selected elements to the output of this route.
+         * @param output      file where to write the selected elements, or {@code null} to write these to the output stream
+         *                    provided to {@link RoutingXmlStreamFilter#filter(InputStream, OutputStream) filter}.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder route(final String name, final Predicate<Node> filter, final Function<Pair<Node, OutputStream>, Void> transformer, final Path output) {
+            checkArgument(names.add(checkNotNull(name, "Name must NOT be null.")), "Several routes are named \"%s\".", name);
+            routes.add(new Route(filter, transformer, output));
+            return this;
+        }
+
+        public Builder xmlInputFactory(final XMLInputFactory xmlInputFactory) {
+            this.xmlInputFactory = xmlInputFactory;
+            return this;
+        }
+
+        /**
+         * @param domTreeTransformer transformer building the DOM tree shared by all routes. Default: {@link XMLStreamReaderToDomTreeTransformer}.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder domTreeTransformer(final Function<XMLStreamReader, Node> domTreeTransformer) {
+            this.domTreeTransformer = domTreeTransformer;
+            return this;
+        }
+
+        /**
+         * Attach the original bytes of each element to its DOM tree, so that routes can write these as-is, e.g. with {@link RawXmlToOutputStreamTransformer}.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder rawXml() {
+            this.captureRawXml = true;
+            return this;
+        }
+
+        /**
+         * Locate elements with a byte-level scan, and only parse these, see {@link PrescanningInputStream}.
+         * This requires UTF-8 input, and elements to be detected by their local name only.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder prescan() {
+            this.prescan = true;
+            return this;
+        }
+
+        public RoutingXmlStreamFilter build() throws TransformerConfigurationException {
+            return new RoutingXmlStreamFilter(this);
+        }
+    }
+}
@@ -0,0 +1,667 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.ElementMatcher;
+import com.carmatechnologies.utilities.xml.common.GzipIndex;
+import com.carmatechnologies.utilities.xml.common.MappedFile;
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.common.OutputStreams;
+import com.carmatechnologies.utilities.xml.common.Pair;
+import com.carmatechnologies.utilities.xml.common.PrescanningInputStream;
+import com.carmatechnologies.utilities.xml.common.RandomAccessInput;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.common.XmlElementScanner;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToTinyTreeTransformer;
+import com.google.common.io.CountingOutputStream;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongUnaryOperator;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.zip.GZIPInputStream;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Multi-core version of {@link XmlStreamFilter} for uncompressed files, which, unlike streams, can be split:
+ * - the file is memory-mapped and split in byte ranges, each starting at a start tag of the configured element,
+ * - each range is scanned, parsed, filtered and transformed by its own thread, with its own reader, predicate and transformer,
+ * - each range's output is buffered in a temporary file, and these are copied to the output stream in file order.
+ * Ranges are aligned on a guess, i.e. the first matching start tag after their nominal start, which may actually be in a comment, a CDATA section,
+ * or nested in another element. The previous range always knows where the next one should start, and wrongly aligned ranges are processed again.
+ * Elements are parsed out of their context, with the namespaces declared on the file's root element, hence files with a document type declaration,
+ * e.g. defining entities, or with namespaces declared on other elements, are parsed sequentially: as this is only detected while scanning ranges,
+ * see {@link XmlElementScanner#requiresContext()}, the output of the ranges before is kept, and the remaining ranges are then parsed one after
+ * the other, from the start of the first one, with the namespaces declared by their ancestors, tracked by a single scan of the file up to there,
+ * and checkpoints are still recorded after each range. Only files with a document type declaration are parsed again, from their start,
+ * skipping the elements already output, as their entities and default attributes are only available to a parser reading the declaration.
+ * The file is expected to be UTF-8, and gzipped files, which cannot be split, are parsed sequentially, while being inflated by other threads,
+ * unless a {@link GzipIndex} of the file is provided, in which case ranges start at its checkpoints, and are inflated in parallel too.
+ * Likewise, elements given by path or namespace, see {@link ElementMatcher}, can only be detected by parsing the whole file, sequentially,
+ * and files are also parsed sequentially when the number of selected elements is limited, so that parsing stops as soon as the limit is reached.
+ * Long-running jobs can record a {@link FilterCheckpoint} each time a range is output, and be resumed from the last one, in which case files are
+ * always split, even on a single thread, and gzipped files without an up-to-date index are indexed first, in memory.
+ */
+public final class SplitXmlStreamFilter implements CountingStreamFilter {
+    private static final long MIN_RANGE_SIZE = 1024 * 1024;
+    private static final long MAX_RANGE_SIZE = 1024 * 1024 * 1024;
+    private static final int RANGES_PER_THREAD = 4;
+    private static final long MAX_CHECKPOINTED_RANGE_SIZE = 64 * 1024 * 1024;
+    static final String RANGE_ELEMENT = "xml-stream-filter-range";
+
+    private final String elementLocalName;
+    private final String scannedLocalName;
+    private final Supplier<Predicate<Node>> filterSupplier;
+    private final Supplier<Function<Pair<Node, OutputStream>, Void>> transformerSupplier;
+    private final Supplier<Function<XMLStreamReader, Node>> domTreeTransformerSupplier;
+    private final XMLInputFactory xmlInputFactory;
+    private final int threads;
+    private final long rangeSize;
+    private final boolean captureRawXml;
+    private final long limit;
+    private final boolean prescan;
+    private final GzipIndex gzipIndex;
+    private final Path checkpointFile;
+    private final FilterCheckpoint resumeFrom;
+
+    private SplitXmlStreamFilter(final Builder builder) {
+        this.elementLocalName = builder.elementLocalName;
+        this.scannedLocalName = ElementMatcher.compile(builder.elementLocalName).localName();
+        this.filterSupplier = checkNotNull(builder.filterSupplier, "Filter supplier must NOT be null.");
+        this.transformerSupplier = checkNotNull(builder.transformerSupplier, "Transformer supplier must NOT be null.");
+        this.domTreeTransformerSupplier = checkNotNull(builder.domTreeTransformerSupplier, "XMLStreamReader-to-DOM tree transformer supplier must NOT be null.");
+        this.xmlInputFactory = checkNotNull(builder.xmlInputFactory, "XMLInputFactory must NOT be null.");
+        checkArgument(builder.threads > 0, "Number of threads must be strictly positive.");
+        checkArgument((builder.rangeSize == -1) || (builder.rangeSize > 0), "Range size must be strictly positive.");
+        this.threads = builder.threads;
+        this.rangeSize = builder.rangeSize;
+        this.captureRawXml = builder.captureRawXml;
+        checkArgument(builder.limit > 0, "Limit must be strictly positive.");
+        this.limit = builder.limit;
+        checkArgument(!builder.prescan || (scannedLocalName != null), "Prescanning requires a single local name, NOT paths or namespaces: \"%s\".", elementLocalName);
+        this.prescan = builder.prescan;
+        this.gzipIndex = builder.gzipIndex;
+        final boolean checkpointed = (builder.checkpointFile != null) || (builder.resumeFrom != null);
+        checkArgument(!checkpointed || (scannedLocalName != null), "Checkpoints require a single local name, NOT paths or namespaces: \"%s\".", elementLocalName);
+        checkArgument(!checkpointed || (limit == XmlStreamFilter.NO_LIMIT), "Checkpoints cannot be used with a limit.");
+        this.checkpointFile = builder.checkpointFile;
+        this.resumeFrom = builder.resumeFrom;
+    }
+
+    public static Builder builder(final String elementLocalName) {
+        return new Builder(elementLocalName);
+    }
+
+    /**
+     * Streams cannot be split, hence these are processed sequentially, like {@link XmlStreamFilter} does.
+     */
+    @Override
+    public long filterAndCount(final InputStream rawInput, final OutputStream rawOutput) throws XMLStreamException, IOException {
+        checkNotNull(rawInput, "InputStream must NOT be null.");
+        checkNotNull(rawOutput, "OutputStream must NOT be null.");
+
+        final OutputStream out = OutputStreams.buffered(rawOutput);
+        try {
+            return filterSequentially(rawInput, out, limit, prescan, 0);
+        } finally {
+            OutputStreams.closeQuietly(out);
+        }
+    }
+
+    public long filter(final Path input, final OutputStream rawOutput) throws XMLStreamException, IOException {
+        checkNotNull(input, "Path must NOT be null.");
+        checkNotNull(rawOutput, "OutputStream must NOT be null.");
+
+        final boolean checkpointed = (checkpointFile != null) || (resumeFrom != null);
+        checkState((resumeFrom == null) || resumeFrom.isUpToDate(input), "Checkpoint was NOT recorded for this file, or the file was modified since: %s.", input);
+        try (final MappedFile file = new MappedFile(input)) {
+            final boolean gzipped = isGZipped(file);
+            final GzipIndex index = gzipped ? upToDateGzipIndex(input, checkpointed) : null;
+            if (!checkpointed && ((threads == 1) || (scannedLocalName == null) || (limit != XmlStreamFilter.NO_LIMIT) || (gzipped && (index == null)))) {
+                return filterAndCount(Files.newInputStream(input), rawOutput);
+            }
+            final OutputStream out = OutputStreams.buffered(rawOutput);
+            try {
+                final Split split = gzipped
+                        ? new Split(input, index.size(), () -> index.newCursor(input), index::checkpointBefore)
+                        : new Split(input, file.size(), file::newCursor, position -> position);
+                return split.filter(out);
+            } finally {
+                OutputStreams.closeQuietly(out);
+            }
+        }
+    }
+
+    /**
+     * @param skipped number of selected elements NOT to output, as these were already output.
+     * @return the number of selected elements, skipped ones included.
+     */
+    private long filterSequentially(final InputStream in, final OutputStream out, final long limit, final boolean prescan, final long skipped)
+            throws XMLStreamException, IOException {
+        // Gzipped files cannot be split, but can at least be inflated by other threads, ahead of the parser:
+        final int inflaterThreads = (threads == 1) ? 0 : threads;
+        final XmlElementReader elementReader = new XmlElementReader(elementLocalName, xmlInputFactory, domTreeTransformerSupplier.get(), captureRawXml, inflaterThreads, prescan);
+        final Predicate<Node> filter = filterSupplier.get();
+        final Function<Pair<Node, OutputStream>, Void> transformer = transformerSupplier.get();
+        final MutablePair<Node, OutputStream> outputHolder = MutablePair.withSecond(out);
+        final AtomicLong selected = new AtomicLong();
+        elementReader.forEach(in, domTree -> {
+            if (filter.test(domTree) && (selected.incrementAndGet() > skipped)) {
+                transformer.apply(outputHolder.first(domTree));
+            }
+        }, () -> selected.get() >= limit);
+        return selected.get();
+    }
+
+    /**
+     * Checkpoints are recorded between ranges, hence gzipped files are then indexed, in memory, if no up-to-date index was provided.
+     *
+     * @return the index to split the provided gzipped file with, or {@code null} if it should be parsed sequentially.
+     */
+    private GzipIndex upToDateGzipIndex(final Path input, final boolean checkpointed) throws IOException {
+        if ((gzipIndex != null) && gzipIndex.isUpToDate(input)) {
+            return gzipIndex;
+        }
+        return checkpointed ? GzipIndex.build(input, GzipIndex.DEFAULT_SPAN) : null;
+    }
+
+    private static boolean isGZipped(final MappedFile file) throws IOException {
+        final MappedFile.Cursor cursor = file.newCursor();
+        return (cursor.get(0) | (cursor.get(1) << 8)) == GZIPInputStream.GZIP_MAGIC;
+    }
+
+    /**
+     * Cursors over gzipped files hold an inflater and a file descriptor, which need to be released.
+     */
+    private static void close(final RandomAccessInput cursor) throws IOException {
+        if (cursor instanceof Closeable) {
+            ((Closeable) cursor).close();
+        }
+    }
+
+    /**
+     * State of one invocation of {@link SplitXmlStreamFilter#filter(Path, OutputStream) filter}.
+     */
+    private final class Split {
+        private final Path input;
+        private final long size;
+        private final Supplier<RandomAccessInput> cursors;
+        private final LongUnaryOperator splitPoints;
+        private final byte[] namespaceDeclarations;
+        private final byte[] rangeStartTag;
+        private final byte[] rangeEndTag = ("</" + RANGE_ELEMENT + ">").getBytes(UTF_8);
+        private final ExecutorService executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("xml-stream-filter-range-%d").setDaemon(true).build());
+
+        /**
+         * @param input       file to split, which checkpoints are recorded for.
+         * @param size        number of bytes to split, inflated if gzipped.
+         * @param cursors     supplier of a new cursor over these bytes, for each range.
+         * @param splitPoints closest position, at or before the provided one, where a cursor can cheaply start reading, e.g. a {@link GzipIndex} checkpoint.
+         */
+        private Split(final Path input, final long size, final Supplier<RandomAccessInput> cursors, final LongUnaryOperator splitPoints) throws IOException {
+            this.input = input;
+            this.size = size;
+            this.cursors = cursors;
+            this.splitPoints = splitPoints;
+            if (resumeFrom != null) {
+                // The root element may be far behind the checkpoint, e.g. at the start of a gzipped file, hence its declarations were recorded:
+                this.namespaceDeclarations = resumeFrom.namespaceDeclarations();
+            } else {
+                final RandomAccessInput cursor = cursors.get();
+                try {
+                    this.namespaceDeclarations = XmlElementScanner.rootNamespaceDeclarations(cursor);
+                } finally {
+                    close(cursor);
+                }
+            }
+            this.rangeStartTag = ("<" + RANGE_ELEMENT + new String(namespaceDeclarations, UTF_8) + ">").getBytes(UTF_8);
+        }
+
+        private long filter(final OutputStream out) throws XMLStreamException, IOException {
+            final long[] boundaries = boundaries((resumeFrom != null) ? resumeFrom.inputOffset() : 0);
+            final List<Future<Range>> futures = new ArrayList<>(boundaries.length - 1);
+            for (int i = 0; i < boundaries.length - 1; ++i) {
+                final long start = boundaries[i];
+                final long end = boundaries[i + 1];
+                futures.add(executor.submit(() -> filter(start, end)));
+            }
+
+            int merged = 0;
+            long selected = (resumeFrom != null) ? resumeFrom.selected() : 0;
+            long outputLength = (resumeFrom != null) ? resumeFrom.outputLength() : 0;
+            try {
+                long expectedStart = boundaries[0];
+                for (; merged < futures.size(); ++merged) {
+                    final Range range;
+                    if (boundaries[merged] == expectedStart) {
+                        range = get(futures.get(merged));
+                    } else {
+                        // The range was wrongly aligned, hence its output, or failure, is discarded, and it is processed again,
+                        // from where the previous range actually ended:
+                        discard(futures.get(merged));
+                        final long end = boundaries[merged + 1];
+                        range = (expectedStart < end) ? filter(expectedStart, end) : Range.empty(expectedStart);
+                    }
+                    if (range.requiresContext) {
+                        // Elements of this range, or of the next ones, may depend on their context, which only a sequential scan has:
+                        executor.shutdownNow();
+                        futures.subList(merged, futures.size()).forEach(SplitXmlStreamFilter::discard);
+                        return filterInContext(out, boundaries, merged, expectedStart, selected, outputLength);
+                    }
+                    range.copyTo(out);
+                    selected += range.selected;
+                    outputLength += range.length;
+                    expectedStart = range.nextStart;
+                    if (checkpointFile != null) {
+                        // Everything up to the checkpoint must have left this process before it is recorded:
+                        out.flush();
+                        FilterCheckpoint.of(input, expectedStart, outputLength, selected, namespaceDeclarations).write(checkpointFile);
+                    }
+                }
+                return selected;
+            } finally {
+                executor.shutdownNow();
+                futures.subList(merged, futures.size()).forEach(SplitXmlStreamFilter::discard);
+            }
+        }
+
+        /**
+         * Filters the ranges from the provided one onwards, one after the other, in this thread, each element with the namespaces declared by
+         * its ancestors, as tracked by a single scanner, which first scans, without parsing, the file from the start of the first range,
+         * i.e. the start of the file, or of the checkpoint filtering resumes from, up to the provided start.
+         *
+         * @param first    index of the first range to filter.
+         * @param start    position where the first range to filter actually starts, which may be after its boundary, if wrongly aligned.
+         * @param selected number of selected elements output so far.
+         * @return the number of selected elements, including the ones output so far.
+         */
+        private long filterInContext(final OutputStream out, final long[] boundaries, final int first, final long start, final long selected,
+                                     final long outputLength) throws XMLStreamException, IOException {
+            final RandomAccessInput cursor = cursors.get();
+            try {
+                if ((resumeFrom == null) && XmlElementScanner.hasDocumentTypeDeclaration(cursor)) {
+                    try (final InputStream in = Files.newInputStream(input)) {
+                        return filterSequentially(in, out, XmlStreamFilter.NO_LIMIT, prescan, selected);
+                    }
+                }
+                // The root element is scanned too when starting from the start of the file, hence only a checkpoint provides outer declarations:
+                final XmlElementScanner scanner = new XmlElementScanner(cursor, scannedLocalName, boundaries[0], start,
+                        (resumeFrom != null) ? namespaceDeclarations : new byte[0]);
+                while (scanner.next()) {
+                    // Elements before the provided start were already output.
+                }
+                long totalSelected = selected;
+                final CountingOutputStream counter = new CountingOutputStream(out);
+                for (int i = first; i < boundaries.length - 1; ++i) {
+                    scanner.extendTo(boundaries[i + 1]);
+                    totalSelected += filterSequentially(new PrescanningInputStream(cursor, scanner), counter, XmlStreamFilter.NO_LIMIT, false, 0);
+                    if (checkpointFile != null) {
+                        out.flush();
+                        FilterCheckpoint.of(input, Math.min(scanner.nextStart(), size), outputLength + counter.getCount(), totalSelected,
+                                scanner.namespaceContext()).write(checkpointFile);
+                    }
+                }
+                return totalSelected;
+            } finally {
+                close(cursor);
+            }
+        }
+
+        /**
+         * @param start position of the first range, i.e. the start of the file, or of the checkpoint filtering resumes from.
+         * @return start of each range, followed by the end of the file.
+         */
+        private long[] boundaries(final long start) throws IOException {
+            // Checkpoints are recorded after each range, hence ranges are then kept small enough for little work to be lost in a crash:
+            final long maxRangeSize = (checkpointFile != null) ? MAX_CHECKPOINTED_RANGE_SIZE : MAX_RANGE_SIZE;
+            final long nominalRangeSize = (rangeSize != -1)
+                    ? rangeSize
+                    : Math.max(MIN_RANGE_SIZE, Math.min(maxRangeSize, (size - start) / (RANGES_PER_THREAD * threads)));
+            final RandomAccessInput cursor = cursors.get();
+            final List<Long> boundaries = new ArrayList<>();
+            boundaries.add(Math.min(start, size));
+            try {
+                for (long nominalStart = start + nominalRangeSize; nominalStart < size; nominalStart += nominalRangeSize) {
+                    final long previousStart = boundaries.get(boundaries.size() - 1);
+                    final long splitPoint = splitPoints.applyAsLong(nominalStart);
+                    if ((splitPoint <= previousStart) && (splitPoint != nominalStart)) {
+                        // Several nominal starts share the same split point, e.g. if ranges are smaller than the span of a gzip index:
+                        continue;
+                    }
+                    final long rangeStart = XmlElementScanner.align(cursor, scannedLocalName, Math.max(splitPoint, previousStart + 1));
+                    if (rangeStart >= size) {
+                        break;
+                    }
+                    boundaries.add(rangeStart);
+                }
+            } finally {
+                close(cursor);
+            }
+            boundaries.add(size);
+            return boundaries.stream().mapToLong(Long::longValue).toArray();
+        }
+
+        private Range filter(final long start, final long end) throws XMLStreamException, IOException {
+            final RandomAccessInput cursor = cursors.get();
+            final XmlElementScanner scanner = new XmlElementScanner(cursor, scannedLocalName, start, end);
+            final Path output = Files.createTempFile("xml-stream-filter-", ".part");
+            final long selected;
+            try (final OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+                // Ranges only contain elements already located by the scanner, hence these need no prescan:
+                selected = filterSequentially(new RangeInputStream(cursor, scanner), out, XmlStreamFilter.NO_LIMIT, false, 0);
+            } catch (XMLStreamException e) {
+                Files.deleteIfExists(output);
+                if (scanner.requiresContext()) {
+                    // E.g. an undeclared prefix, or entity, which the file is parsed sequentially for anyway:
+                    return Range.requiringContext(start);
+                }
+                throw e;
+            } catch (IOException | RuntimeException | Error e) {
+                Files.deleteIfExists(output);
+                throw e;
+            } finally {
+                close(cursor);
+            }
+            if (scanner.requiresContext()) {
+                Files.deleteIfExists(output);
+                return Range.requiringContext(start);
+            }
+            checkState(scanner.nextStart() >= 0, "Range [%s, %s) was NOT entirely scanned.", start, end);
+            return new Range(scanner.nextStart(), output, Files.size(output), selected, false);
+        }
+
+        /**
+         * Concatenation of the elements found in a range, within a synthetic root element declaring the file's root namespaces.
+         * Elements are only located as the parser reads them, hence scanning and parsing happen in a single pass over the range.
+         */
+        private final class RangeInputStream extends InputStream {
+            private final RandomAccessInput cursor;
+            private final XmlElementScanner scanner;
+            private final byte[] singleByte = new byte[1];
+            private InputStream current;
+            private boolean ended;
+
+            private RangeInputStream(final RandomAccessInput cursor, final XmlElementScanner scanner) {
+                this.cursor = cursor;
+                this.scanner = scanner;
+                this.current = new ByteArrayInputStream(rangeStartTag);
+            }
+
+            @Override
+            public int read() throws IOException {
+                return (read(singleByte, 0, 1) == -1) ? -1 : (singleByte[0] & 0xFF);
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                // Elements are typically small, hence as many as possible are returned at once, to limit per-read overhead in the parser:
+                int total = 0;
+                while ((current != null) && (total < length)) {
+                    final int count = current.read(bytes, offset + total, length - total);
+                    if (count == -1) {
+                        current = nextElement();
+                    } else {
+                        total += count;
+                    }
+                }
+                return ((total == 0) && (current == null)) ? -1 : total;
+            }
+
+            private InputStream nextElement() throws IOException {
+                if (Thread.interrupted()) {
+                    // This range was cancelled, e.g. because it was wrongly aligned:
+                    throw new InterruptedIOException("Interrupted while filtering XML elements in parallel.");
+                }
+                if (ended) {
+                    return null;
+                }
+                if (scanner.next()) {
+                    return cursor.newInputStream(scanner.elementStart(), scanner.elementEnd());
+                }
+                ended = true;
+                return new ByteArrayInputStream(rangeEndTag);
+            }
+        }
+    }
+
+    /**
+     * Output of a range, in a temporary file, and its length, number of elements it selected, and position where the next range should start
+     * for this output to be valid, unless its elements require their context, in which case it has no output.
+     */
+    private static final class Range {
+        private final long nextStart;
+        private final Path output;
+        private final long length;
+        private final long selected;
+        private final boolean requiresContext;
+
+        private Range(final long nextStart, final Path output, final long length, final long selected, final boolean requiresContext) {
+            this.nextStart = nextStart;
+            this.output = output;
+            this.length = length;
+            this.selected = selected;
+            this.requiresContext = requiresContext;
+        }
+
+        private static Range empty(final long start) {
+            return new Range(start, null, 0, 0, false);
+        }
+
+        private static Range requiringContext(final long start) {
+            return new Range(start, null, 0, 0, true);
+        }
+
+        private void copyTo(final OutputStream out) throws IOException {
+            if (output != null) {
+                Files.copy(output, out);
+                delete();
+            }
+        }
+
+        private void delete() throws IOException {
+            if (output != null) {
+                Files.deleteIfExists(output);
+            }
+        }
+    }
+
+    private static void discard(final Future<Range> future) {
+        future.cancel(true);
+        try {
+            if (future.isDone() && !future.isCancelled()) {
+                future.get().delete();
+            }
+        } catch (InterruptedException | ExecutionException | IOException e) {
+            // Voluntarily swallowed: this range's output is NOT used anyway.
+        }
+    }
+
+    /**
+     * Rethrows failures from the range threads as if they happened in the calling thread.
+     */
+    private static Range get(final Future<Range> future) throws XMLStreamException, IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while filtering XML elements in parallel.");
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof XMLStreamException) {
+                throw (XMLStreamException) cause;
+            }
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) cause).getCause();
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeException("Failed to filter XML elements in parallel.", cause);
+        }
+    }
+
+    public static final class Builder {
+        private final String elementLocalName;
+        private Supplier<Predicate<Node>> filterSupplier;
+        private Supplier<Function<Pair<Node, OutputStream>, Void>> transformerSupplier;
+        private Supplier<Function<XMLStreamReader, Node>> domTreeTransformerSupplier = () -> new XMLStreamReaderToTinyTreeTransformer(true);
+        private XMLInputFactory xmlInputFactory = XMLInputFactoryImpl.newInstance();
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private long rangeSize = -1;
+        private boolean captureRawXml;
+        private long limit = XmlStreamFilter.NO_LIMIT;
+        private boolean prescan;
+        private GzipIndex gzipIndex;
+        private Path checkpointFile;
+        private FilterCheckpoint resumeFrom;
+
+        private Builder(final String elementLocalName) {
+            this.elementLocalName = elementLocalName;
+        }
+
+        public Builder filter(final Supplier<Predicate<Node>> filterSupplier) {
+            this.filterSupplier = filterSupplier;
+            return this;
+        }
+
+        public Builder transformer(final Supplier<Function<Pair<Node, OutputStream>, Void>> transformerSupplier) {
+            this.transformerSupplier = transformerSupplier;
+            return this;
+        }
+
+        /**
+         * @param domTreeTransformerSupplier supplier of the transformer used by each range. Elements of a range are processed one at a time,
+         *                                   hence DOM trees may be recycled. Default: recycled {@link XMLStreamReaderToTinyTreeTransformer}s.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder domTreeTransformer(final Supplier<Function<XMLStreamReader, Node>> domTreeTransformerSupplier) {
+            this.domTreeTransformerSupplier = domTreeTransformerSupplier;
+            return this;
+        }
+
+        public Builder xmlInputFactory(final XMLInputFactory xmlInputFactory) {
+            this.xmlInputFactory = xmlInputFactory;
+            return this;
+        }
+
+        /**
+         * @param threads number of ranges processed in parallel. Default: number of available processors.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder threads(final int threads) {
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * @param rangeSize nominal size of each range, in bytes. Default: the file is split in 4 ranges per thread, of 1 MB to 1 GB each.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder rangeSize(final long rangeSize) {
+            this.rangeSize = rangeSize;
+            return this;
+        }
+
+        /**
+         * Attach the original bytes of each element to its DOM tree, so that these can be written as-is, e.g. by {@link RawXmlToOutputStreamTransformer}.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder rawXml() {
+            this.captureRawXml = true;
+            return this;
+        }
+
+        /**
+         * @param limit maximum number of elements to select: once reached, the rest of the file is neither read nor parsed.
+         *              Default: no limit, as the file is otherwise parsed sequentially.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder limit(final long limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Locate elements with a byte-level scan when the file is parsed sequentially, e.g. when gzipped, so that only these are parsed,
+         * see {@link PrescanningInputStream}. Ranges of split files are always scanned this way.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder prescan() {
+            this.prescan = true;
+            return this;
+        }
+
+        /**
+         * @param gzipIndex index of the gzipped file to filter, so that it is split in ranges, starting at its checkpoints, inflated in parallel.
+         *                  Ignored if the file is NOT gzipped, or if the index is out of date. Default: gzipped files are parsed sequentially.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder gzipIndex(final GzipIndex gzipIndex) {
+            this.gzipIndex = gzipIndex;
+            return this;
+        }
+
+        /**
+         * @param checkpointFile file where to record a {@link FilterCheckpoint} each time a range is output, replacing the previous one, so that
+         *                       an interrupted run can be resumed from there. Ranges are then at most 64 MB by default.
+         *                       Requires a single local name, and no limit. Default: no checkpoint is recorded.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder checkpoints(final Path checkpointFile) {
+            this.checkpointFile = checkpointFile;
+            return this;
+        }
+
+        /**
+         * @param resumeFrom checkpoint of a previous run over the same file, from which filtering resumes: the file is split from its input offset,
+         *                   and it counts the elements it selected. The caller is responsible for truncating the output to its output length,
+         *                   as whatever was output after it is output again. Default: filtering starts at the start of the file.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder resumeFrom(final FilterCheckpoint resumeFrom) {
+            this.resumeFrom = resumeFrom;
+            return this;
+        }
+
+        public SplitXmlStreamFilter build() {
+            return new SplitXmlStreamFilter(this);
+        }
+    }
+}
@@ -0,0 +1,285 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.CapturingInputStream;
+import com.carmatechnologies.utilities.xml.common.ElementMatcher;
+import com.carmatechnologies.utilities.xml.common.FollowingInputStream;
+import com.carmatechnologies.utilities.xml.common.InputStreams;
+import com.carmatechnologies.utilities.xml.common.PrescanningInputStream;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.google.common.io.Closeables;
+import org.codehaus.stax2.XMLInputFactory2;
+import org.codehaus.stax2.XMLStreamReader2;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import static com.carmatechnologies.utilities.xml.common.InputStreams.autoGUnzip;
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Stream-processes an XML input and hands each element matched by the configured {@link ElementMatcher}, as a DOM tree, to the provided action.
+ * This is the parsing loop shared by the various {@link StreamFilter} implementations.
+ * The XMLStreamReader-to-DOM tree transformer may discard an element by returning {@code null}, once it has consumed it.
+ * Optionally, the original bytes of each element are attached to its DOM tree, see {@link RawXmlToOutputStreamTransformer}, with the namespace
+ * declarations of its ancestors, if any, inserted in its start tag, so that these bytes are namespace-well-formed on their own.
+ * Optionally, elements are located by a byte-level prescan, so that the parser only tokenizes these, see {@link PrescanningInputStream}.
+ * A {@link FollowingInputStream} never ends, hence it is only parsed until its root element is closed, rather than until the end of the document.
+ */
+final class XmlElementReader {
+    /**
+     * Captured bytes before the current position are discarded once they exceed this size, outside of target elements.
+     */
+    private static final int MAX_CAPTURED_BYTES_OUTSIDE_ELEMENTS = 64 * 1024;
+
+    private final ElementMatcher elementMatcher;
+    private final XMLInputFactory xmlInputFactory;
+    private final Function<XMLStreamReader, Node> domTreeTransformer;
+    private final boolean captureRawXml;
+    private final int inflaterThreads;
+    private final String prescannedLocalName;
+
+    XmlElementReader(final String elementLocalName, final XMLInputFactory xmlInputFactory, final Function<XMLStreamReader, Node> domTreeTransformer, final boolean captureRawXml) {
+        this(elementLocalName, xmlInputFactory, domTreeTransformer, captureRawXml, 0);
+    }
+
+    /**
+     * @param elementLocalName local names and absolute paths of the elements to detect, see {@link ElementMatcher}.
+     * @param inflaterThreads  number of threads inflating gzipped inputs ahead of the parser, or 0 to inflate these in the parsing thread.
+     */
+    XmlElementReader(final String elementLocalName, final XMLInputFactory xmlInputFactory, final Function<XMLStreamReader, Node> domTreeTransformer, final boolean captureRawXml, final int inflaterThreads) {
+        this(elementLocalName, xmlInputFactory, domTreeTransformer, captureRawXml, inflaterThreads, false);
+    }
+
+    /**
+     * @param prescan if {@code true}, elements are located by a byte-level scan, and only these are parsed, which requires UTF-8 input,
+     *                and elements to be detected by their local name only, as their ancestors are NOT parsed.
+     */
+    XmlElementReader(final String elementLocalName, final XMLInputFactory xmlInputFactory, final Function<XMLStreamReader, Node> domTreeTransformer, final boolean captureRawXml, final int inflaterThreads, final boolean prescan) {
+        this.elementMatcher = ElementMatcher.compile(elementLocalName);
+        this.xmlInputFactory = checkNotNull(xmlInputFactory, "XMLInputFactory must NOT be null.");
+        this.domTreeTransformer = checkNotNull(domTreeTransformer, "XMLStreamReader-to-DOM tree transformer must NOT be null.");
+        this.captureRawXml = captureRawXml;
+        checkArgument(inflaterThreads >= 0, "Number of inflater threads must NOT be negative.");
+        this.inflaterThreads = inflaterThreads;
+        checkArgument(!prescan || (elementMatcher.localName() != null), "Prescanning requires a single local name, NOT paths or namespaces: \"%s\".", elementLocalName);
+        this.prescannedLocalName = prescan ? elementMatcher.localName() : null;
+    }
+
+    public void forEach(final InputStream rawInput, final Consumer<Node> action) throws XMLStreamException, IOException {
+        forEach(rawInput, action, () -> false);
+    }
+
+    /**
+     * @param done checked after each element handed to the action: once it returns {@code true}, the rest of the input is neither read nor parsed,
+     *             and the input is closed.
+     */
+    public void forEach(final InputStream rawInput, final Consumer<Node> action, final BooleanSupplier done) throws XMLStreamException, IOException {
+        checkNotNull(rawInput, "InputStream must NOT be null.");
+        checkNotNull(action, "Action must NOT be null.");
+        checkNotNull(done, "Stopping condition must NOT be null.");
+
+        // Improve stream processing's performance, and automatically gunzip where required.
+        final boolean endless = rawInput instanceof FollowingInputStream;
+        final InputStream gunzipped = autoGUnzip(InputStreams.buffered(rawInput), inflaterThreads);
+        final InputStream in = (prescannedLocalName == null) ? gunzipped : new PrescanningInputStream(gunzipped, prescannedLocalName);
+        final CapturingInputStream capture = captureRawXml ? new CapturingInputStream(in) : null;
+        final InScopeNamespaces namespaces = captureRawXml ? new InScopeNamespaces() : null;
+        final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(captureRawXml ? capture : in, UTF_8.name());
+        checkState(!captureRawXml || (reader instanceof XMLStreamReader2), "Capturing raw XML requires a Stax2 XMLStreamReader, e.g. Woodstox's.");
+
+        try {
+            final ElementMatcher.Tracker tracker = elementMatcher.newTracker(internsNames(reader));
+            while (reader.hasNext()) {
+                reader.next();
+                if (captureRawXml) {
+                    discardCapturedBytes(reader, capture);
+                }
+                // Consecutive elements are read without going through the outer loop, e.g. when nothing separates them:
+                while (reader.getEventType() == XMLEvent.START_ELEMENT) {
+                    if (!tracker.startElement(reader)) {
+                        break;
+                    }
+                    final long start = captureRawXml ? startingCharOffset(reader) : -1;
+                    final byte[] inheritedDeclarations = captureRawXml ? namespaces.missingFrom(reader) : null;
+                    if (captureRawXml) {
+                        capture.discardBefore(start);
+                    }
+                    final Node domTree = domTreeTransformer.apply(reader);
+                    // The reader is now on the event following the element, which starts where the element ends:
+                    tracker.endElement();
+                    if (domTree != null) {
+                        if (captureRawXml) {
+                            final byte[] rawXml = capture.copy(start, startingCharOffset(reader));
+                            domTree.setUserData(RawXmlToOutputStreamTransformer.RAW_XML,
+                                    (inheritedDeclarations == null) ? rawXml : withDeclarations(rawXml, inheritedDeclarations), null);
+                        }
+                        action.accept(domTree);
+                        if (done.getAsBoolean()) {
+                            return;
+                        }
+                    }
+                }
+                if (reader.getEventType() == XMLEvent.END_ELEMENT) {
+                    tracker.endElement();
+                    if (captureRawXml) {
+                        namespaces.endElement();
+                    }
+                    if (endless && (tracker.depth() == 0)) {
+                        return;
+                    }
+                } else if (captureRawXml && (reader.getEventType() == XMLEvent.START_ELEMENT)) {
+                    namespaces.startElement(reader);
+                }
+            }
+        } finally {
+            closeQuietly(reader);
+            Closeables.closeQuietly(in);
+        }
+    }
+
+    /**
+     * Woodstox interns local names and namespace URIs by default, in which case these can be compared by identity.
+     */
+    private static boolean internsNames(final XMLStreamReader reader) {
+        try {
+            return Boolean.TRUE.equals(reader.getProperty(XMLInputFactory2.P_INTERN_NAMES))
+                    && Boolean.TRUE.equals(reader.getProperty(XMLInputFactory2.P_INTERN_NS_URIS));
+        } catch (IllegalArgumentException e) {
+            // Property not supported by this parser, hence names are compared by value.
+            return false;
+        }
+    }
+
+    private static void discardCapturedBytes(final XMLStreamReader reader, final CapturingInputStream capture) throws XMLStreamException {
+        if ((reader.getEventType() == XMLEvent.START_ELEMENT) || (capture.size() > MAX_CAPTURED_BYTES_OUTSIDE_ELEMENTS)) {
+            capture.discardBefore(startingCharOffset(reader));
+        }
+    }
+
+    private static long startingCharOffset(final XMLStreamReader reader) throws XMLStreamException {
+        return ((XMLStreamReader2) reader).getLocationInfo().getStartingCharOffset();
+    }
+
+    /**
+     * @return the original bytes of an element, with the provided declarations inserted right after its name, e.g. {@code <x:item xmlns:x="urn:x">}.
+     */
+    private static byte[] withDeclarations(final byte[] element, final byte[] declarations) {
+        int nameEnd = 1;
+        while ((nameEnd < element.length) && (element[nameEnd] != ' ') && (element[nameEnd] != '\t') && (element[nameEnd] != '\n')
+                && (element[nameEnd] != '\r') && (element[nameEnd] != '/') && (element[nameEnd] != '>')) {
+            ++nameEnd;
+        }
+        final byte[] result = new byte[element.length + declarations.length];
+        System.arraycopy(element, 0, result, 0, nameEnd);
+        System.arraycopy(declarations, 0, result, nameEnd, declarations.length);
+        System.arraycopy(element, nameEnd, result, nameEnd + declarations.length, element.length - nameEnd);
+        return result;
+    }
+
+    /**
+     * Namespace declarations of the open ancestors of the current element, tracked only when capturing raw XML, as parsed DOM trees already
+     * resolve their names, whereas original bytes do not.
+     */
+    private static final class InScopeNamespaces {
+        private static final String[] NO_DECLARATIONS = new String[0];
+
+        /**
+         * Prefix and namespace URI of each declaration of each open element, from the root element.
+         */
+        private final List<String[]> declarations = new ArrayList<>();
+        private int declaringElements;
+
+        private void startElement(final XMLStreamReader reader) {
+            final int count = reader.getNamespaceCount();
+            if (count == 0) {
+                declarations.add(NO_DECLARATIONS);
+                return;
+            }
+            final String[] elementDeclarations = new String[2 * count];
+            for (int i = 0; i < count; ++i) {
+                elementDeclarations[2 * i] = nullToEmpty(reader.getNamespacePrefix(i));
+                elementDeclarations[(2 * i) + 1] = nullToEmpty(reader.getNamespaceURI(i));
+            }
+            declarations.add(elementDeclarations);
+            ++declaringElements;
+        }
+
+        private void endElement() {
+            if (!declarations.isEmpty() && (declarations.remove(declarations.size() - 1).length > 0)) {
+                --declaringElements;
+            }
+        }
+
+        /**
+         * @param reader reader on the start tag of an element.
+         * @return the declarations in scope, with inner ones overriding outer ones, which the element does NOT declare itself,
+         * as attributes, e.g. {@code  xmlns:x="urn:x"}, or {@code null} if there is none.
+         */
+        private byte[] missingFrom(final XMLStreamReader reader) {
+            if (declaringElements == 0) {
+                return null;
+            }
+            final Map<String, String> inScope = new LinkedHashMap<>();
+            for (final String[] elementDeclarations : declarations) {
+                for (int i = 0; i < elementDeclarations.length; i += 2) {
+                    inScope.put(elementDeclarations[i], elementDeclarations[i + 1]);
+                }
+            }
+            for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+                inScope.remove(nullToEmpty(reader.getNamespacePrefix(i)));
+            }
+            final StringBuilder missing = new StringBuilder();
+            for (final Map.Entry<String, String> declaration : inScope.entrySet()) {
+                // Undeclared namespaces, e.g. xmlns="", are NOT in scope anymore:
+                if (!declaration.getValue().isEmpty()) {
+                    missing.append(declaration.getKey().isEmpty() ? " xmlns" : " xmlns:" + declaration.getKey()).append("=\"");
+                    escape(declaration.getValue(), missing);
+                    missing.append('"');
+                }
+            }
+            return (missing.length() == 0) ? null : missing.toString().getBytes(UTF_8);
+        }
+
+        private static void escape(final String value, final StringBuilder out) {
+            for (int i = 0; i < value.length(); ++i) {
+                final char c = value.charAt(i);
+                if (c == '&') {
+                    out.append("&amp;");
+                } else if (c == '<') {
+                    out.append("&lt;");
+                } else if (c == '"') {
+                    out.append("&quot;");
+                } else {
+                    out.append(c);
+                }
+            }
+        }
+
+        private static String nullToEmpty(final String value) {
+            return (value == null) ? "" : value;
+        }
+    }
+
+    private static void closeQuietly(final XMLStreamReader reader) {
+        try {
+            reader.close();
+        } catch (XMLStreamException e) {
+            // Voluntarily swallowed: nothing else to do at the end of the processing.
+        }
+    }
+}
@@ -1,27 +1,25 @@
 package com.carmatechnologies.utilities.xml;
 
-import com.carmatechnologies.utilities.xml.common.InputStreams;
 import com.carmatechnologies.utilities.xml.common.MutablePair;
 import com.carmatechnologies.utilities.xml.common.OutputStreams;
 import com.carmatechnologies.utilities.xml.common.Pair;
+import com.carmatechnologies.utilities.xml.common.PrescanningInputStream;
 import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
 import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToDomTreeTransformer;
-import com.google.common.io.Closeables;
 import org.w3c.dom.Node;
 
 import javax.xml.stream.XMLInputFactory;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.stream.XMLStreamReader;
-import javax.xml.stream.events.XMLEvent;
 import javax.xml.transform.TransformerConfigurationException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
-import static com.carmatechnologies.utilities.xml.common.InputStreams.autoGUnzip;
-import static com.google.common.base.Charsets.UTF_8;
 import static com.google.common.base.Preconditions.checkArgument;
 import static com.google.common.base.Preconditions.checkNotNull;
 
@@ -31,84 +29,159 @@ import static com.google.common.base.Preconditions.checkNotNull;
  * - filter elements with a specific name, or validating the condition specified by the provided predicate, and
  * - transform filtered elements according to the provided transformer.
  */
-public final class XmlStreamFilter implements StreamFilter {
+public final class XmlStreamFilter implements CountingStreamFilter {
     public static final String VERSION = "1.0";
+    public static final long NO_LIMIT = Long.MAX_VALUE;
 
-    private final String elementLocalName;
+    /**
+     * Exit statuses of the command line interface, like {@code grep}'s.
+     */
+    static final int EXIT_SELECTED = 0;
+    static final int EXIT_NOTHING_SELECTED = 1;
+    static final int EXIT_ERROR = 2;
+
+    private final XmlElementReader elementReader;
     private final Predicate<Node> filter;
     private final Function<Pair<Node, OutputStream>, Void> transformer;
-    private final XMLInputFactory xmlInputFactory;
-    private final Function<XMLStreamReader, Node> domTreeTransformer;
+    private final long limit;
 
     public XmlStreamFilter(final String elementLocalName, final Predicate<Node> filter, final Function<Pair<Node, OutputStream>, Void> transformer) throws TransformerConfigurationException {
         this(elementLocalName, filter, transformer, XMLInputFactoryImpl.newInstance(), new XMLStreamReaderToDomTreeTransformer());
     }
 
     public XmlStreamFilter(final String elementLocalName, final Predicate<Node> filter, final Function<Pair<Node, OutputStream>, Void> transformer, final XMLInputFactory xmlInputFactory, final Function<XMLStreamReader, Node> domTreeTransformer) throws TransformerConfigurationException {
-        checkNotNull(elementLocalName, "XML element's local name must NOT be null.");
-        checkArgument(!elementLocalName.isEmpty(), "XML element's local name must NOT be empty.");
-        this.elementLocalName = elementLocalName;
-        this.filter = checkNotNull(filter, "Filter must NOT be null.");
-        this.transformer = checkNotNull(transformer, "Transformer must NOT be null.");
-        this.xmlInputFactory = checkNotNull(xmlInputFactory, "XMLInputFactory must NOT be null.");
-        this.domTreeTransformer = checkNotNull(domTreeTransformer, "XMLStreamReader-to-DOM tree transformer must NOT be null.");
+        this(builder(elementLocalName).filter(filter).transformer(transformer).xmlInputFactory(xmlInputFactory)
+                .domTreeTransformer(checkNotNull(domTreeTransformer, "XMLStreamReader-to-DOM tree transformer must NOT be null.")));
+    }
+
+    private XmlStreamFilter(final Builder builder) throws TransformerConfigurationException {
+        this.elementReader = new XmlElementReader(builder.elementLocalName, builder.xmlInputFactory,
+                (builder.domTreeTransformer == null) ? new XMLStreamReaderToDomTreeTransformer() : builder.domTreeTransformer,
+                builder.captureRawXml, 0, builder.prescan);
+        this.filter = checkNotNull(builder.filter, "Filter must NOT be null.");
+        this.transformer = checkNotNull(builder.transformer, "Transformer must NOT be null.");
+        checkArgument(builder.limit > 0, "Limit must be strictly positive.");
+        this.limit = builder.limit;
+    }
+
+    public static Builder builder(final String elementLocalName) {
+        return new Builder(elementLocalName);
     }
 
     @Override
-    public void filter(InputStream rawInput, OutputStream rawOutput) throws XMLStreamException, IOException {
+    public long filterAndCount(InputStream rawInput, OutputStream rawOutput) throws XMLStreamException, IOException {
         checkNotNull(rawInput, "InputStream must NOT be null.");
         checkNotNull(rawOutput, "OutputStream must NOT be null.");
 
-        // Improve stream processing's performance, and automatically gunzip where required.
-        final InputStream in = autoGUnzip(InputStreams.buffered(rawInput));
+        // Improve stream processing's performance.
         final OutputStream out = OutputStreams.buffered(rawOutput);
-
-        final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(in, UTF_8.name());
         final MutablePair<Node, OutputStream> outputHolder = MutablePair.withSecond(out);
+        final AtomicLong selected = new AtomicLong();
 
-        while (reader.hasNext()) {
-            reader.next();
-            while (isStartOfTargetElement(reader)) {
-                final Node domTree = domTreeTransformer.apply(reader);
+        try {
+            elementReader.forEach(rawInput, domTree -> {
                 if (filter.test(domTree)) {
                     transformer.apply(outputHolder.first(domTree));
+                    selected.incrementAndGet();
                 }
-            }
+            }, () -> selected.get() >= limit);
+        } finally {
+            OutputStreams.closeQuietly(out);
         }
+        return selected.get();
+    }
 
-        closeQuietly(reader, out, in);
+    /**
+     * Exits with status 0 if any element was selected, 1 if none was, and 2 on error, e.g. invalid arguments, so that scripts can tell these apart.
+     */
+    public static void main(final String[] args) {
+        final XmlStreamFilterCliFactory factory = new XmlStreamFilterCliFactory();
+        final CountingStreamFilter streamFilter = factory.newStreamFilter(args);
+        if (factory.hasInvalidArguments()) {
+            System.exit(EXIT_ERROR);
+        }
+        if (streamFilter instanceof NoOpStreamFilter) {
+            // Help or version was printed.
+            return;
+        }
+        try {
+            System.exit((streamFilter.filterAndCount(System.in, System.out) > 0) ? EXIT_SELECTED : EXIT_NOTHING_SELECTED);
+        } catch (XMLStreamException | IOException | RuntimeException e) {
+            e.printStackTrace();
+            System.exit(EXIT_ERROR);
+        }
     }
 
+    public static final class Builder {
+        private final String elementLocalName;
+        private Predicate<Node> filter;
+        private Function<Pair<Node, OutputStream>, Void> transformer;
+        private XMLInputFactory xmlInputFactory = XMLInputFactoryImpl.newInstance();
+        private Function<XMLStreamReader, Node> domTreeTransformer;
+        private boolean captureRawXml;
+        private long limit = NO_LIMIT;
+        private boolean prescan;
+
+        private Builder(final String elementLocalName) {
+            this.elementLocalName = elementLocalName;
+        }
 
-    private boolean isStartOfTargetElement(final XMLStreamReader reader) throws XMLStreamException {
-        return (reader.getEventType() == XMLEvent.START_ELEMENT) && elementLocalName.equals(reader.getLocalName());
-    }
+        public Builder filter(final Predicate<Node> filter) {
+            this.filter = filter;
+            return this;
+        }
 
-    private static void closeQuietly(final XMLStreamReader reader, final OutputStream out, final InputStream in) {
-        closeQuietly(reader);
-        closeQuietly(out);
-        Closeables.closeQuietly(in);
-    }
+        public Builder transformer(final Function<Pair<Node, OutputStream>, Void> transformer) {
+            this.transformer = transformer;
+            return this;
+        }
 
-    private static void closeQuietly(final OutputStream out) {
-        try {
-            out.flush();
-            out.close();
-        } catch (IOException e) {
-            // Voluntarily swallowed: nothing else to do at the end of the processing.
+        public Builder xmlInputFactory(final XMLInputFactory xmlInputFactory) {
+            this.xmlInputFactory = xmlInputFactory;
+            return this;
         }
-    }
 
-    private static void closeQuietly(final XMLStreamReader reader) {
-        try {
-            reader.close();
-        } catch (XMLStreamException e) {
-            // Voluntarily swallowed: nothing else to do at the end of the processing.
+        /**
+         * @param domTreeTransformer transformer building the DOM tree of each element. Default: {@link XMLStreamReaderToDomTreeTransformer}.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder domTreeTransformer(final Function<XMLStreamReader, Node> domTreeTransformer) {
+            this.domTreeTransformer = domTreeTransformer;
+            return this;
         }
-    }
 
-    public static void main(final String[] args) throws IOException, XMLStreamException {
-        final StreamFilter streamFilter = new XmlStreamFilterCliFactory().newStreamFilter(args);
-        streamFilter.filter(System.in, System.out);
+        /**
+         * Attach the original bytes of each element to its DOM tree, so that these can be written as-is, e.g. by {@link RawXmlToOutputStreamTransformer}.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder rawXml() {
+            this.captureRawXml = true;
+            return this;
+        }
+
+        /**
+         * @param limit maximum number of elements to select: once reached, the rest of the input is neither read nor parsed. Default: no limit.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder limit(final long limit) {
+            this.limit = limit;
+            return this;
+        }
+
+        /**
+         * Locate elements with a byte-level scan, and only parse these, see {@link PrescanningInputStream}.
+         * This requires UTF-8 input, and elements to be detected by their local name only.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder prescan() {
+            this.prescan = true;
+            return this;
+        }
+
+        public XmlStreamFilter build() throws TransformerConfigurationException {
+            return new XmlStreamFilter(this);
+        }
     }
 }
@@ -1,30 +1,77 @@
 package com.carmatechnologies.utilities.xml;
 
+import com.carmatechnologies.utilities.xml.common.AsynchronousOutputStream;
+import com.carmatechnologies.utilities.xml.common.DocumentBuilderFactoryImpl;
+import com.carmatechnologies.utilities.xml.common.ElementMatcher;
+import com.carmatechnologies.utilities.xml.common.FollowingInputStream;
+import com.carmatechnologies.utilities.xml.common.GzipIndex;
+import com.carmatechnologies.utilities.xml.common.InputFiles;
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.common.OutputStreams;
 import com.carmatechnologies.utilities.xml.common.Pair;
 import com.carmatechnologies.utilities.xml.common.TransformerFactoryImpl;
+import com.carmatechnologies.utilities.xml.predicate.AdaptivePredicate;
+import com.carmatechnologies.utilities.xml.predicate.ComparisonPredicate;
+import com.carmatechnologies.utilities.xml.predicate.MappedWhiteList;
+import com.carmatechnologies.utilities.xml.predicate.StreamingPredicate;
+import com.carmatechnologies.utilities.xml.predicate.StreamingPredicates;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPath;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPathPredicate;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPathValue;
 import com.carmatechnologies.utilities.xml.predicate.XPathPredicate;
+import com.carmatechnologies.utilities.xml.predicate.WhiteList;
 import com.carmatechnologies.utilities.xml.predicate.XPathSetPredicate;
+import com.carmatechnologies.utilities.xml.predicate.XPathTextPredicate;
+import com.carmatechnologies.utilities.xml.transformer.DirectXMLStreamReaderToDomTreeTransformer;
+import com.carmatechnologies.utilities.xml.transformer.DomTreeToJsonOutputStreamTransformer;
 import com.carmatechnologies.utilities.xml.transformer.DomTreeToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.FilteringXMLStreamReaderToDomTreeTransformer;
+import com.carmatechnologies.utilities.xml.transformer.PartitioningOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToTinyTreeTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XPathColumnsToOutputStreamTransformer;
 import com.carmatechnologies.utilities.xml.transformer.XPathToOutputStreamTransformer;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Sets;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Files;
 import org.apache.commons.cli.CommandLine;
 import org.apache.commons.cli.DefaultParser;
 import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Option;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.ParseException;
 import org.w3c.dom.Node;
 
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 import static com.google.common.base.Charsets.UTF_8;
 import static org.apache.commons.cli.HelpFormatter.DEFAULT_DESC_PAD;
@@ -34,16 +81,89 @@ import static org.apache.commons.cli.HelpFormatter.DEFAULT_WIDTH;
 public class XmlStreamFilterCliFactory {
     private static final String ELEMENT = "element";
     private static final String SELECT = "select";
+    private static final String WHERE = "where";
+    private static final String ANY = "any";
     private static final String INDENT = "indent";
     private static final String TRANSFORM = "transform";
+    private static final String COLUMN = "column";
+    private static final String FORMAT = "format";
+    private static final String JSON = "json";
+    private static final String JSON_ARRAY = "json-array";
+    private static final String ALL = "*";
+    private static final String TSV = "tsv";
+    private static final String CSV = "csv";
     private static final String FILE = "file";
+    private static final String FILE_INDEX = "file-index";
+    private static final String ELEMENT_INDEX = "element-index";
+    private static final String GZIP_INDEX = "gzip-index";
+    private static final String MATCH = "match";
+    private static final String EXACT = "exact";
+    private static final String PREFIX = "prefix";
+    private static final String SUBSTRING = "substring";
+    private static final String THREADS = "threads";
+    private static final String UNORDERED = "unordered";
+    private static final String INPUT = "input";
+    private static final String JOBS = "jobs";
+    private static final String OUTPUT_DIR = "output-dir";
+    private static final String BUFFERS = "buffers";
+    private static final String BUFFER_KB = "buffer-kb";
+    private static final int KB = 1024;
+    private static final String OUTPUT_COMPRESS = "output-compress";
+    private static final String GZIP = "gzip";
+    private static final String PARTITION = "partition";
+    private static final String PARTITION_PREFIX = "partition-prefix";
+    private static final String DEFAULT_PARTITION_PREFIX = "partition";
+    private static final String BUCKETS = "buckets";
+    private static final String LIMIT = "limit";
+    private static final String EXISTS = "exists";
+    private static final String PRESCAN = "prescan";
+    private static final String FOLLOW = "follow";
+    private static final String CHECKPOINT = "checkpoint";
+    private static final String RESUME = "resume";
+    private static final String ROUTES = "routes";
+    private static final String STANDARD_OUTPUT = "-";
+    private static final String COMMENT = "#";
     private static final String HELP = "help";
     private static final String VERSION = "version";
     private static final String EMPTY_STRING = "";
+    private static final Predicate<Node> SELECTED = domTree -> true;
+
+    /**
+     * Arguments which cannot be used with the ones listed under them, checked in this order, mostly as these select another way
+     * of reading the input or of writing the output, see {@link #hasValidCombinationOfArguments(CommandLine)}.
+     */
+    private static final Map<String, List<String>> INCOMPATIBLE_ARGUMENTS = ImmutableMap.<String, List<String>>builder()
+            .put(OUTPUT_COMPRESS, Arrays.asList(OUTPUT_DIR))
+            // Each element is parsed once, and dispatched to all routes, hence these can only be combined with arguments applying to all of them:
+            .put(ROUTES, Arrays.asList(SELECT, WHERE, ANY, TRANSFORM, COLUMN, FORMAT, JSON, JSON_ARRAY, FILE, FILE_INDEX, MATCH, THREADS, UNORDERED, INPUT, JOBS,
+                    OUTPUT_DIR, ELEMENT_INDEX, GZIP_INDEX, LIMIT, EXISTS, PARTITION, FOLLOW, CHECKPOINT, RESUME))
+            .put(EXISTS, Arrays.asList(OUTPUT_DIR))
+            .put(GZIP_INDEX, Arrays.asList(JOBS, OUTPUT_DIR, ELEMENT_INDEX, PARTITION))
+            .put(FOLLOW, Arrays.asList(THREADS, UNORDERED, JOBS, OUTPUT_DIR, ELEMENT_INDEX, GZIP_INDEX, PARTITION, OUTPUT_COMPRESS, BUFFERS, BUFFER_KB))
+            .put(CHECKPOINT, Arrays.asList(UNORDERED, JOBS, OUTPUT_DIR, ELEMENT_INDEX, PARTITION, OUTPUT_COMPRESS, BUFFERS, BUFFER_KB, LIMIT, EXISTS, FOLLOW))
+            .put(PARTITION, Arrays.asList(THREADS, UNORDERED, INPUT, JOBS, OUTPUT_DIR, EXISTS))
+            .put(ELEMENT_INDEX, Arrays.asList(JOBS, OUTPUT_DIR, PARTITION))
+            .build();
+
+    /**
+     * Arguments which only apply with the one they are mapped to.
+     */
+    private static final Map<String, String> REQUIRED_ARGUMENTS = ImmutableMap.of(PARTITION_PREFIX, PARTITION, BUCKETS, PARTITION, RESUME, CHECKPOINT);
+
+    /**
+     * Arguments which scan the input for the elements to detect, hence require a single local name for them.
+     */
+    private static final List<String> SINGLE_LOCAL_NAME_ARGUMENTS = Arrays.asList(PRESCAN, CHECKPOINT);
+
+    /**
+     * Arguments which index, follow or resume the input, hence require a single file, rather than the standard input stream.
+     */
+    private static final List<String> SINGLE_INPUT_FILE_ARGUMENTS = Arrays.asList(GZIP_INDEX, FOLLOW, CHECKPOINT, ELEMENT_INDEX);
 
     private final PrintWriter stdOutWriter;
     private final PrintWriter stdErrWriter;
     private final Options options;
+    private boolean invalidArguments;
 
     public XmlStreamFilterCliFactory() {
         this(new PrintWriter(System.out), new PrintWriter(System.err));
@@ -58,22 +178,147 @@ public class XmlStreamFilterCliFactory {
     private Options getOptions() {
         final Options options = new Options();
 
-        options.addOption("e", ELEMENT, true, "Local name of the XML element to detect in the input XML stream and, potentially, select. Example: \"book\".");
+        options.addOption("e", ELEMENT, true, "Local name of the XML element to detect in the input XML stream and, potentially, select. Example: \"book\". " +
+                "Alternatively, absolute path of the XML element, to only detect it at this position, and not nested in another one, " +
+                "with names optionally qualified by a namespace URI in Clark notation, and several names or paths separated by \"|\". " +
+                "Example: \"/{http://www.w3.org/2005/Atom}feed/{http://www.w3.org/2005/Atom}entry|item\".");
 
         options.addOption("s", SELECT, true, "XPath query used to select XML elements among the ones detected. " +
-                "Example: \"//book/tags/tag[text() = 'magician']\" will select all \"book\" elements with \"magician\" as a \"tag\".");
+                "Example: \"//book/tags/tag[text() = 'magician']\" will select all \"book\" elements with \"magician\" as a \"tag\". " +
+                "Can be repeated: XML elements are then selected if they match all queries, or any of these with \"" + ANY + "\", " +
+                "with the white-list, if any, applying to the first query, and queries evaluated cheapest and most selective first.");
+
+        options.addOption(null, ANY, false, "[Optional] Select XML elements matching any of the queries provided with \"" + SELECT + "\". " +
+                "Default: select XML elements matching all of these.");
+
+        options.addOption(Option.builder().longOpt(WHERE).numberOfArgs(3).desc("[Optional] Typed condition on the XML elements to select: " +
+                "XPath query, comparison operator, i.e. one of =, !=, <, <=, >, >=, and value, either a number, e.g. \"30\" or \"1.5e3\", " +
+                "or an ISO-8601 date or date-time, e.g. \"2005-01-01\". XML elements are selected if the text of any node returned by the query " +
+                "compares to the value, parsed as the same type. Can be repeated, and combined with \"" + SELECT + "\": all conditions must then be met. " +
+                "Example: --where //book/price \">\" 30 --where //book/year \">=\" 2005.").build());
 
         options.addOption("i", INDENT, false, "[Optional] Indent returned XML elements, for potentially better readability. " +
-                "Default: keep the same formatting and indentation as in the input XML stream.");
+                "Default: return XML elements exactly as they are in the input XML stream.");
 
         options.addOption("t", TRANSFORM, true, "[Optional] XPath expression used to transform the selected XML elements. " +
                 "Example: \"//book/title/text()\". Default: the entire XML element will be returned.");
 
+        options.addOption(null, COLUMN, true, "[Optional] XPath query of a column to write for each selected XML element, instead of the element. " +
+                "Can be repeated: each XML element is then written as a row of the columns' values, in the format provided with \"" + FORMAT + "\", " +
+                "and all queries are evaluated at once. Example: --column //book/@category --column //book/title.");
+
+        options.addOption(null, FORMAT, true, "[Optional] Format of the rows written with \"" + COLUMN + "\": \"" + TSV + "\", " +
+                "i.e. tab-separated values, with backslashes, tabs and new lines in values escaped as \\\\, \\t and \\n, or \"" + CSV + "\", " +
+                "i.e. comma-separated values, double-quoted when required. Default: " + TSV + ".");
+
+        options.addOption(null, JSON, false, "[Optional] Write each selected XML element as a JSON object, on its own line, with attributes as \"" +
+                DomTreeToJsonOutputStreamTransformer.DEFAULT_ATTRIBUTE_PREFIX + "\"-prefixed fields, child elements as fields, arrays if repeated, " +
+                "and text as a \"" + DomTreeToJsonOutputStreamTransformer.DEFAULT_TEXT_KEY + "\" field, or as a string for child elements with neither " +
+                "attributes nor child elements. Default: write XML elements.");
+
+        options.addOption(null, JSON_ARRAY, true, "[Optional] Name of child elements to always write as arrays with \"" + JSON + "\", " +
+                "even if not repeated, or \"" + ALL + "\" for all of them. Can be repeated. Default: only repeated child elements are written as arrays.");
+
         options.addOption("f", FILE, true, "[Optional] Define white-list of patterns from file, one per line. " +
                 "XML elements will be selected if the value returned by the provided XPath query is in the white-list. " +
                 "Example: if file contains \"magician\\nxquery\\n\" and filter is: \"//book/tags/tag/text()\", " +
                 "then \"book\" elements with either a \"magician\" or \"xquery\" tag will be returned.");
 
+        options.addOption(null, FILE_INDEX, true, "[Optional] Index file of the white-list, memory-mapped instead of loading the white-list " +
+                "in memory, for white-lists of millions of patterns. Built from the file provided with \"" + FILE + "\" if it does not exist, " +
+                "or is older than this file, and otherwise used as is. Default: load the white-list in memory.");
+
+        options.addOption(null, ELEMENT_INDEX, true, "[Optional] Index file of the XML elements of the input file, by the values of the " +
+                "\"" + SELECT + "\" queries, so that only the XML elements of the patterns of the white-list are read and parsed, instead of the " +
+                "whole file. Built if it does not exist, or is out of date, and otherwise used as is. Requires a single, uncompressed, \"" + INPUT +
+                "\" file, a \"" + FILE + "\" white-list, and \"" + SELECT + "\" queries in the streamable subset of XPath. Gzipped files are NOT " +
+                "supported, not even with \"" + GZIP_INDEX + "\". Default: read the whole file.");
+
+        options.addOption(null, GZIP_INDEX, true, "[Optional] Index file of checkpoints of the gzipped input file, every MB of inflated bytes, " +
+                "from which it can be inflated without inflating what precedes them, so that it is split in ranges, inflated and filtered in parallel, " +
+                "like an uncompressed file. Built if it does not exist, or is out of date, and otherwise used as is. Requires a single \"" + INPUT +
+                "\" file. Default: gzipped files are inflated and parsed sequentially.");
+
+        options.addOption(null, MATCH, true, "[Optional] How values returned by the XPath query are matched against the white-list: " +
+                "\"" + EXACT + "\", \"" + PREFIX + "\", i.e. values starting with any pattern, or \"" + SUBSTRING + "\", i.e. values containing any pattern. " +
+                "Patterns are compiled into a single automaton, so that each value is scanned once, whatever the number of patterns. Default: " + EXACT + ".");
+
+        options.addOption(null, THREADS, true, "[Optional] Number of threads used to select and transform XML elements in parallel, " +
+                "while the input XML stream is parsed by another thread. Gzipped input XML streams are also inflated ahead of the parser, " +
+                "in parallel if these are BGZF files, e.g. as produced by bgzip. Default: 1, i.e. everything is done sequentially.");
+
+        options.addOption(null, UNORDERED, false, "[Optional] When processing XML elements in parallel, return them as soon as they are " +
+                "selected and transformed, for extra throughput. Default: return XML elements in the same order as in the input XML stream.");
+
+        options.addOption(Option.builder().longOpt(INPUT).hasArgs().argName("arg").desc("[Optional] Paths of the XML files to read, " +
+                "instead of the standard input stream. Directories are read recursively, and globs, e.g. \"logs/*.xml.gz\", are expanded. " +
+                "If only one file is read and it is uncompressed, it is memory-mapped and split in ranges, each parsed by one of the threads, " +
+                "and XML elements are returned in the same order as in the file. Files with a document type declaration, or with namespaces declared " +
+                "on other elements than the root element and the XML elements, are parsed sequentially instead, from where this is detected. " +
+                "Default: read the input XML stream from the standard input stream.").build());
+
+        options.addOption(null, JOBS, true, "[Optional] Number of input files filtered concurrently, each with its own thread(s), " +
+                "and results returned in the same order as the input files, staged in the temporary directory, i.e. java.io.tmpdir, " +
+                "for at most twice this number of files at once. Default: 1.");
+
+        options.addOption(null, OUTPUT_DIR, true, "[Optional] Existing directory where to write one output file per input file, " +
+                "named after it, without any \".gz\" extension, instead of the standard output stream. Default: write to the standard output stream.");
+
+        options.addOption(null, BUFFERS, true, "[Optional] Number of output buffers: selected XML elements are copied into one, " +
+                "while the others are written by a dedicated thread, in a single system call, so that slow consumers do not stall parsing, " +
+                "until all buffers are full. Default: " + AsynchronousOutputStream.DEFAULT_BUFFERS + " if \"" + BUFFER_KB + "\" is provided, " +
+                "otherwise XML elements are written by the parsing thread.");
+
+        options.addOption(null, BUFFER_KB, true, "[Optional] Size of each output buffer, in KB, see \"" + BUFFERS + "\". " +
+                "Default: " + (AsynchronousOutputStream.DEFAULT_BUFFER_SIZE / KB) + ".");
+
+        options.addOption(null, OUTPUT_COMPRESS, true, "[Optional] Compression of the standard output stream: \"" + GZIP + "\", " +
+                "in independent blocks, compressed in parallel by all cores, and readable by gzip, or, in parallel, with \"" + THREADS + "\". " +
+                "Default: no compression.");
+
+        options.addOption(null, PARTITION, true, "[Optional] XPath query of the key of the partition of each selected XML element, " +
+                "which is then written to the file of this partition, i.e. <prefix>-<key>.xml, or .xml.gz with \"" + OUTPUT_COMPRESS + "\", " +
+                "instead of the standard output stream, with at most " + PartitioningOutputStreamTransformer.DEFAULT_MAX_OPEN_FILES + " files open at once. " +
+                "Example: \"//book/@category\". Default: no partitions.");
+
+        options.addOption(null, PARTITION_PREFIX, true, "[Optional] Path of the files of partitions, without their keys, see \"" + PARTITION + "\". " +
+                "Default: \"" + DEFAULT_PARTITION_PREFIX + "\".");
+
+        options.addOption(null, BUCKETS, true, "[Optional] Number of partitions to hash keys into, see \"" + PARTITION + "\", e.g. to spread " +
+                "XML elements evenly across a fixed number of files, whatever the number of keys. Default: one partition per key.");
+
+        options.addOption(null, LIMIT, true, "[Optional] Maximum number of XML elements to select: once reached, the rest of the input " +
+                "XML stream is neither read nor parsed. When reading several input files, the limit applies to each of them. Default: no limit.");
+
+        options.addOption(null, EXISTS, false, "[Optional] Only print whether any XML element is selected, i.e. \"true\" or \"false\", " +
+                "and stop reading the input XML stream as soon as one is. Default: print the selected XML elements.");
+
+        options.addOption(null, PRESCAN, false, "[Optional] Locate the XML elements to detect with a byte-level scan of the input XML stream, " +
+                "and only parse these, skipping everything else, e.g. large headers or other XML elements, faster than parsing it. " +
+                "Requires a UTF-8 input XML stream, and a single local name for the XML elements to detect. " +
+                "Default: parse the entire input XML stream.");
+
+        options.addOption(null, FOLLOW, false, "[Optional] Keep reading the \"" + INPUT + "\" file as it grows, like tail -f, and write each " +
+                "selected XML element as soon as it is complete, even if the root element is not closed yet, until the root element is closed, until interrupted, or until \"" +
+                LIMIT + "\" XML elements are selected. Requires a single \"" + INPUT + "\" file, processed sequentially, and written synchronously, as buffered XML elements " +
+                "would otherwise wait for further ones while the file does not grow. Default: stop at the end of the input.");
+
+        options.addOption(null, CHECKPOINT, true, "[Optional] File where to record, atomically, each time a range of the \"" + INPUT + "\" file is output, " +
+                "the offset right after the last XML element processed, the length of the output, and the namespaces in scope, so that an interrupted " +
+                "run can be resumed from there, see \"" + RESUME + "\". Ranges are then at most 64 MB. Requires a single \"" + INPUT + "\" file, " +
+                "and a single local name for the XML elements to detect. Gzipped files are indexed first, in memory, unless \"" + GZIP_INDEX + "\" " +
+                "is provided. Default: no checkpoint.");
+
+        options.addOption(null, RESUME, false, "[Optional] Resume from the \"" + CHECKPOINT + "\" file, if it exists: the standard output stream, " +
+                "which must be appended to the output file of the interrupted run, e.g. with >>, is truncated to its length at the checkpoint, " +
+                "and filtering continues right after the last XML element processed. Default: filter the input from its start.");
+
+        options.addOption(null, ROUTES, true, "[Optional] File of routes, one per line, each made of a unique name, an output file, " +
+                "or \"" + STANDARD_OUTPUT + "\" for the standard output stream, an XPath query selecting XML elements, and, optionally, an XPath expression " +
+                "transforming these, separated by tabs. Empty lines and lines starting with \"" + COMMENT + "\" are ignored. The input XML stream is then " +
+                "read and parsed once, and each XML element detected is written by every route selecting it, instead of using \"" + SELECT + "\". " +
+                "Default: a single selection, from the other arguments.");
+
         options.addOption("h", HELP, false, "Print this, i.e. a usage message briefly summarizing the command-line options, then exit.");
 
         options.addOption("v", VERSION, false, "Print \"" + XmlStreamFilter.VERSION + "\", i.e. the version number of " +
@@ -82,7 +327,8 @@ public class XmlStreamFilterCliFactory {
         return options;
     }
 
-    public StreamFilter newStreamFilter(final String[] args) {
+    public CountingStreamFilter newStreamFilter(final String[] args) {
+        invalidArguments = false;
         try {
             return createStreamFilter(args);
         } finally {
@@ -91,7 +337,7 @@ public class XmlStreamFilterCliFactory {
         }
     }
 
-    private StreamFilter createStreamFilter(final String[] args) {
+    private CountingStreamFilter createStreamFilter(final String[] args) {
         final CommandLine line = parseArguments(args);
         if (line == null) {
             return new NoOpStreamFilter();
@@ -112,30 +358,752 @@ public class XmlStreamFilterCliFactory {
             return new NoOpStreamFilter();
         }
 
-        if (!line.hasOption(SELECT)) {
+        if (!isValidElement(line.getOptionValue(ELEMENT))) {
+            return new NoOpStreamFilter();
+        }
+
+        if (!hasValidCombinationOfArguments(line)) {
+            return new NoOpStreamFilter();
+        }
+
+        final boolean asynchronousOutput = line.hasOption(BUFFERS) || line.hasOption(BUFFER_KB);
+        final int buffers = line.hasOption(BUFFERS) ? getPositiveInteger(line, BUFFERS) : AsynchronousOutputStream.DEFAULT_BUFFERS;
+        final int bufferKb = line.hasOption(BUFFER_KB) ? getPositiveInteger(line, BUFFER_KB) : AsynchronousOutputStream.DEFAULT_BUFFER_SIZE / KB;
+        if ((buffers < 1) || (bufferKb < 1)) {
+            return new NoOpStreamFilter();
+        }
+        if (bufferKb > Integer.MAX_VALUE / KB) {
+            printHelp(messageInvalidArguments("please provide at most " + (Integer.MAX_VALUE / KB) + " for argument \"" + BUFFER_KB + "\"."));
+            return new NoOpStreamFilter();
+        }
+
+        if (line.hasOption(OUTPUT_COMPRESS) && !GZIP.equals(line.getOptionValue(OUTPUT_COMPRESS))) {
+            printHelp(messageInvalidArguments("please provide \"" + GZIP + "\" for argument \"" + OUTPUT_COMPRESS + "\"."));
+            return new NoOpStreamFilter();
+        }
+
+        CountingStreamFilter streamFilter = line.hasOption(ROUTES) ? newRoutingStreamFilter(line) : newSelectingStreamFilter(line);
+        if (streamFilter instanceof NoOpStreamFilter) {
+            return streamFilter;
+        }
+        if (line.hasOption(OUTPUT_COMPRESS) && !line.hasOption(PARTITION)) {
+            streamFilter = newGzippedOutputStreamFilter(streamFilter, Runtime.getRuntime().availableProcessors());
+        }
+        return asynchronousOutput ? newAsynchronousOutputStreamFilter(streamFilter, bufferKb * KB, buffers) : streamFilter;
+    }
+
+    private CountingStreamFilter newSelectingStreamFilter(final CommandLine line) {
+        if (!line.hasOption(SELECT) && !line.hasOption(WHERE)) {
             printHelp(messageInvalidArgumentFor(SELECT));
             return new NoOpStreamFilter();
         }
 
-        final Predicate<Node> filter = line.hasOption(FILE)
-                ? getXPathSetPredicate(line.getOptionValue(SELECT), line.getOptionValue(FILE))
-                : getXPathPredicate(line.getOptionValue(SELECT));
+        if (line.hasOption(JSON) && (line.hasOption(TRANSFORM) || line.hasOption(COLUMN) || line.hasOption(INDENT))) {
+            printHelp(messageInvalidArguments("argument \"" + JSON + "\" cannot be used with arguments \"" + TRANSFORM + "\", \"" + COLUMN + "\" or \"" + INDENT + "\"."));
+            return new NoOpStreamFilter();
+        }
+
+        if (line.hasOption(COLUMN) && (line.hasOption(TRANSFORM) || line.hasOption(INDENT))) {
+            printHelp(messageInvalidArguments("argument \"" + COLUMN + "\" cannot be used with arguments \"" + TRANSFORM + "\" or \"" + INDENT + "\"."));
+            return new NoOpStreamFilter();
+        }
+
+        final List<Pair<String, ComparisonPredicate>> whereClauses = getWhereClauses(line);
+        if (whereClauses == null) {
+            return new NoOpStreamFilter();
+        }
+
+        final boolean hasWhiteList = line.hasOption(FILE) || line.hasOption(FILE_INDEX);
+        final WhiteList whiteList = hasWhiteList ? readWhiteList(line) : null;
+        if (hasWhiteList && (whiteList == null)) {
+            return new NoOpStreamFilter();
+        }
+
+        final Predicate<Node> filter = newFilter(line, whiteList);
         if (filter == null) {
             return new NoOpStreamFilter();
         }
 
-        final Function<Pair<Node, OutputStream>, Void> transformer = line.hasOption(TRANSFORM)
-                ? getXPathToOutputStreamTransformer(line.getOptionValue(TRANSFORM))
-                : getDomTreeToOutputStreamTransformer(line.hasOption(INDENT));
+        final Function<Pair<Node, OutputStream>, Void> transformer = newTransformer(line);
         if (transformer == null) {
             return new NoOpStreamFilter();
         }
 
+        final int threads = getPositiveInteger(line, THREADS);
+        if (threads < 1) {
+            return new NoOpStreamFilter();
+        }
+
+        // Queries in the streamable subset of XPath are evaluated while parsing, hence only selected elements are built as DOM trees:
+        final Optional<Supplier<StreamingPredicate>> streamingFilter = newStreamingFilter(line, whiteList, whereClauses);
+
+        // Unless elements are transformed or re-formatted, their original bytes are written as-is, and only used to select them:
+        final boolean passthrough = isPassthrough(line);
+
+        final long limit = line.hasOption(EXISTS) ? 1 : getLimit(line);
+        if (limit < 1) {
+            return new NoOpStreamFilter();
+        }
+
+        if (line.hasOption(PARTITION)) {
+            return newPartitioningStreamFilter(line, filter, transformer, streamingFilter, passthrough, limit);
+        }
+
+        final CountingStreamFilter streamFilter;
+        if (line.hasOption(FOLLOW)) {
+            streamFilter = newFollowingStreamFilter(line, whiteList, filter, transformer, streamingFilter, passthrough, threads, limit);
+        } else if (line.hasOption(ELEMENT_INDEX)) {
+            streamFilter = newIndexedStreamFilter(line, whiteList, filter, transformer, streamingFilter, passthrough, threads, limit);
+        } else if (line.hasOption(INPUT) || line.hasOption(JOBS) || line.hasOption(OUTPUT_DIR)) {
+            streamFilter = newFileStreamFilter(line, whiteList, streamingFilter, passthrough, threads, limit);
+        } else {
+            try {
+                streamFilter = newStreamFilter(line, whiteList, filter, transformer, streamingFilter, passthrough, threads, limit);
+            } catch (TransformerConfigurationException | ParserConfigurationException e) {
+                return new NoOpStreamFilter();
+            }
+        }
+        return (line.hasOption(EXISTS) && !(streamFilter instanceof NoOpStreamFilter)) ? newExistsStreamFilter(streamFilter) : streamFilter;
+    }
+
+    /**
+     * Each element is parsed once, and dispatched to all routes, which are read from the provided file, one per line.
+     */
+    private CountingStreamFilter newRoutingStreamFilter(final CommandLine line) {
+        final String filePath = line.getOptionValue(ROUTES);
+        final List<String> lines;
         try {
-            return new XmlStreamFilter(line.getOptionValue(ELEMENT), filter, transformer);
-        } catch (TransformerConfigurationException e) {
+            lines = Files.readLines(new File(filePath), UTF_8);
+        } catch (IOException e) {
+            printHelp(messageInvalidArguments("Failed to read routes from file: " + filePath + "." + originalError(e)));
+            return new NoOpStreamFilter();
+        }
+        final List<String[]> routes = new ArrayList<>();
+        for (final String route : lines) {
+            if (route.trim().isEmpty() || route.startsWith(COMMENT)) {
+                continue;
+            }
+            final String[] fields = route.split("\t");
+            if ((fields.length < 3) || (fields.length > 4)) {
+                printHelp(messageInvalidArguments("Invalid route \"" + route + "\" in file: " + filePath + ". " +
+                        "Please provide a name, an output file, an XPath query and, optionally, an XPath expression, separated by tabs."));
+                return new NoOpStreamFilter();
+            }
+            routes.add(fields);
+        }
+
+        // If all queries are in the streamable subset of XPath, these are all evaluated while parsing, and only elements selected by any route
+        // are built as DOM trees, each route then reading the result of its own query for the element just parsed:
+        final List<StreamingXPath> streamingSelects = new ArrayList<>();
+        for (final String[] route : routes) {
+            StreamingXPath.compile(route[2]).ifPresent(streamingSelects::add);
+        }
+        final boolean streaming = !routes.isEmpty() && (streamingSelects.size() == routes.size());
+        final List<StreamingPredicate> streamingFilters = new ArrayList<>();
+
+        final RoutingXmlStreamFilter.Builder builder = RoutingXmlStreamFilter.builder(line.getOptionValue(ELEMENT));
+        boolean passthrough = false;
+        boolean buildDomTrees = false;
+        for (final String[] route : routes) {
+            final Predicate<Node> filter;
+            if (streaming) {
+                final StreamingPredicate streamingFilter = StreamingXPathPredicate.exists(streamingSelects.get(streamingFilters.size()));
+                streamingFilters.add(streamingFilter);
+                filter = domTree -> streamingFilter.matches();
+            } else {
+                filter = getXPathPredicate(route[2]);
+                if (filter == null) {
+                    return new NoOpStreamFilter();
+                }
+            }
+            final boolean transformed = (route.length == 4);
+            final Function<Pair<Node, OutputStream>, Void> transformer = transformed ? getXPathToOutputStreamTransformer(route[3])
+                    : line.hasOption(INDENT) ? getDomTreeToOutputStreamTransformer(true) : new RawXmlToOutputStreamTransformer();
+            if (transformer == null) {
+                return new NoOpStreamFilter();
+            }
+            passthrough |= !transformed && !line.hasOption(INDENT);
+            buildDomTrees |= transformed || line.hasOption(INDENT);
+            try {
+                builder.route(route[0], filter, transformer, STANDARD_OUTPUT.equals(route[1]) ? null : Paths.get(route[1]));
+            } catch (IllegalArgumentException e) {
+                printHelp(messageInvalidArguments("Invalid route \"" + String.join("\t", route) + "\" in file: " + filePath + "." + originalError(e)));
+                return new NoOpStreamFilter();
+            }
+        }
+        if (passthrough) {
+            builder.rawXml();
+        }
+        if (line.hasOption(PRESCAN)) {
+            builder.prescan();
+        }
+        try {
+            return builder.domTreeTransformer(streaming
+                    ? new FilteringXMLStreamReaderToDomTreeTransformer(StreamingPredicates.anyOf(streamingFilters),
+                            DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder(), buildDomTrees)
+                    : new XMLStreamReaderToTinyTreeTransformer(true)).build();
+        } catch (TransformerConfigurationException | ParserConfigurationException | IllegalArgumentException e) {
+            printHelp(messageInvalidArguments("Invalid routes in file: " + filePath + "." + originalError(e)));
+            return new NoOpStreamFilter();
+        }
+    }
+
+    /**
+     * Selected elements are written to the files of their partitions, rather than to the output stream, by a single thread,
+     * and all files are closed once the input XML stream has been filtered. If both the selection and the key are in the streamable subset of XPath,
+     * keys are captured while parsing, and DOM trees are only built if needed to write elements. Otherwise, keys are evaluated on DOM trees.
+     */
+    private CountingStreamFilter newPartitioningStreamFilter(final CommandLine line, final Predicate<Node> filter, final Function<Pair<Node, OutputStream>, Void> transformer,
+                                                             final Optional<Supplier<StreamingPredicate>> streamingFilter, final boolean passthrough, final long limit) {
+        final int buckets = line.hasOption(BUCKETS) ? getPositiveInteger(line, BUCKETS) : 0;
+        if (buckets < 0) {
+            return new NoOpStreamFilter();
+        }
+        final Optional<StreamingXPath> streamingKey = streamingFilter.isPresent() ? StreamingXPath.compile(line.getOptionValue(PARTITION)) : Optional.empty();
+        final String prefix = line.getOptionValue(PARTITION_PREFIX, DEFAULT_PARTITION_PREFIX);
+        final PartitioningOutputStreamTransformer.Builder builder;
+        final Optional<Supplier<StreamingPredicate>> keyedStreamingFilter;
+        if (streamingKey.isPresent()) {
+            final StreamingXPathValue key = new StreamingXPathValue(streamingKey.get());
+            builder = PartitioningOutputStreamTransformer.builder(domTree -> key.value(), transformer, prefix);
+            keyedStreamingFilter = Optional.of(() -> StreamingPredicates.observing(streamingFilter.get().get(), key));
+        } else {
+            builder = PartitioningOutputStreamTransformer.builder(line.getOptionValue(PARTITION), transformer, prefix);
+            keyedStreamingFilter = streamingFilter;
+        }
+        builder.buckets(buckets);
+        if (line.hasOption(OUTPUT_COMPRESS)) {
+            builder.gzip();
+        }
+        final PartitioningOutputStreamTransformer partitioner;
+        final CountingStreamFilter streamFilter;
+        try {
+            partitioner = builder.build();
+            streamFilter = newXmlStreamFilter(line, streamingFilter.isPresent() ? SELECTED : filter, partitioner,
+                    newDomTreeTransformer(keyedStreamingFilter, passthrough && streamingKey.isPresent(), 1), passthrough, limit);
+        } catch (XPathExpressionException e) {
+            printHelp(messageInvalidXPathExpression(line.getOptionValue(PARTITION), PARTITION, e));
+            return new NoOpStreamFilter();
+        } catch (TransformerConfigurationException | ParserConfigurationException e) {
+            return new NoOpStreamFilter();
+        }
+        return (in, out) -> {
+            try {
+                return streamFilter.filterAndCount(in, out);
+            } finally {
+                partitioner.close();
+            }
+        };
+    }
+
+    /**
+     * Only the elements indexed under the patterns of the white-list are read, and then filtered and transformed as usual,
+     * as if these were the only ones in the input file, hence the output is the same as without the index.
+     */
+    private CountingStreamFilter newIndexedStreamFilter(final CommandLine line, final WhiteList whiteList, final Predicate<Node> filter,
+                                                        final Function<Pair<Node, OutputStream>, Void> transformer, final Optional<Supplier<StreamingPredicate>> streamingFilter,
+                                                        final boolean passthrough, final int threads, final long limit) {
+        if (!line.hasOption(FILE) || !EXACT.equals(line.getOptionValue(MATCH, EXACT))) {
+            printHelp(messageInvalidArguments("argument \"" + ELEMENT_INDEX + "\" requires argument \"" + FILE + "\", with \"" + EXACT + "\" for argument \"" + MATCH + "\"."));
+            return new NoOpStreamFilter();
+        }
+        final String localName = ElementMatcher.compile(line.getOptionValue(ELEMENT)).localName();
+        final List<String> selectQueries = getSelectQueries(line);
+        if ((localName == null) || !streamingFilter.isPresent()) {
+            printHelp(messageInvalidArguments("argument \"" + ELEMENT_INDEX + "\" requires a single local name for argument \"" + ELEMENT +
+                    "\", and \"" + SELECT + "\" queries in the streamable subset of XPath."));
+            return new NoOpStreamFilter();
+        }
+        final Path input = Paths.get(line.getOptionValue(INPUT));
+        final Path indexPath = Paths.get(line.getOptionValue(ELEMENT_INDEX));
+        final Map<Long, Long> elements;
+        try {
+            final List<String> patterns = Files.readLines(new File(line.getOptionValue(FILE)), UTF_8);
+            if (!isUpToDate(indexPath, input, localName, selectQueries)) {
+                ElementIndex.build(input, localName, selectQueries, indexPath);
+            }
+            try (final ElementIndex index = ElementIndex.open(indexPath)) {
+                elements = index.lookup(selectQueries.get(0), patterns.stream().map(String::trim).filter(pattern -> !pattern.isEmpty()).collect(Collectors.toList()));
+            }
+        } catch (IOException | XMLStreamException | IllegalArgumentException e) {
+            printHelp(messageInvalidArguments("Failed to read element index file: " + indexPath + "." + originalError(e)));
+            return new NoOpStreamFilter();
+        }
+        final CountingStreamFilter streamFilter;
+        try {
+            streamFilter = newStreamFilter(line, whiteList, filter, transformer, streamingFilter, passthrough, threads, limit);
+        } catch (TransformerConfigurationException | ParserConfigurationException e) {
+            return new NoOpStreamFilter();
+        }
+        return (in, out) -> {
+            try (final InputStream indexed = ElementIndex.newInputStream(input, elements)) {
+                return streamFilter.filterAndCount(indexed, out);
+            }
+        };
+    }
+
+    private static boolean isUpToDate(final Path indexPath, final Path input, final String localName, final List<String> keyQueries) throws IOException {
+        if (!indexPath.toFile().exists()) {
+            return false;
+        }
+        try (final ElementIndex index = ElementIndex.open(indexPath)) {
+            return index.isUpToDate(input) && index.elementLocalName().equals(localName) && index.keyQueries().equals(keyQueries);
+        }
+    }
+
+    /**
+     * The input file is read as it grows, see {@link FollowingInputStream}, and selected elements are flushed whenever it has been read entirely,
+     * so that these are output as soon as these are complete, rather than once the output buffer is full.
+     */
+    private CountingStreamFilter newFollowingStreamFilter(final CommandLine line, final WhiteList whiteList, final Predicate<Node> filter,
+                                                          final Function<Pair<Node, OutputStream>, Void> transformer, final Optional<Supplier<StreamingPredicate>> streamingFilter,
+                                                          final boolean passthrough, final int threads, final long limit) {
+        final Path input = Paths.get(line.getOptionValue(INPUT));
+        final CountingStreamFilter streamFilter;
+        try {
+            streamFilter = newStreamFilter(line, whiteList, filter, transformer, streamingFilter, passthrough, threads, limit);
+        } catch (TransformerConfigurationException | ParserConfigurationException e) {
+            return new NoOpStreamFilter();
+        }
+        return (in, out) -> {
+            // The filter does not buffer already buffered streams, hence flushing this one flushes everything selected so far:
+            final OutputStream bufferedOut = new BufferedOutputStream(out);
+            try (final InputStream following = new FollowingInputStream(input, bufferedOut)) {
+                return streamFilter.filterAndCount(following, bufferedOut);
+            }
+        };
+    }
+
+    /**
+     * Selected elements are discarded, and only whether there was any is written, once the first one has been found.
+     */
+    private static CountingStreamFilter newExistsStreamFilter(final CountingStreamFilter streamFilter) {
+        return (in, out) -> {
+            final long selected = streamFilter.filterAndCount(in, ByteStreams.nullOutputStream());
+            out.write(((selected > 0) ? "true\n" : "false\n").getBytes(UTF_8));
+            out.flush();
+            return selected;
+        };
+    }
+
+    /**
+     * Selected elements are compressed on the provided number of threads, before being written to the output stream, see {@link OutputStreams#gzipped}.
+     */
+    private static CountingStreamFilter newGzippedOutputStreamFilter(final CountingStreamFilter streamFilter, final int threads) {
+        return (in, out) -> {
+            try (final OutputStream gzippedOut = OutputStreams.gzipped(out, threads)) {
+                return streamFilter.filterAndCount(in, gzippedOut);
+            }
+        };
+    }
+
+    /**
+     * Selected elements are written to the output stream by another thread, and the standard output stream through its file descriptor's channel,
+     * so that buffers are written with gathering writes, rather than copied once more by {@code System.out}.
+     */
+    private static CountingStreamFilter newAsynchronousOutputStreamFilter(final CountingStreamFilter streamFilter, final int bufferSize, final int buffers) {
+        return (in, out) -> {
+            final OutputStream target;
+            if (out == System.out) {
+                System.out.flush();
+                target = new FileOutputStream(FileDescriptor.out);
+            } else {
+                target = out;
+            }
+            try (final OutputStream asynchronousOut = new AsynchronousOutputStream(target, bufferSize, buffers)) {
+                return streamFilter.filterAndCount(in, asynchronousOut);
+            }
+        };
+    }
+
+    private CountingStreamFilter newStreamFilter(final CommandLine line, final WhiteList whiteList, final Predicate<Node> filter,
+                                                 final Function<Pair<Node, OutputStream>, Void> transformer, final Optional<Supplier<StreamingPredicate>> streamingFilter,
+                                                 final boolean passthrough, final int threads, final long limit) throws TransformerConfigurationException, ParserConfigurationException {
+        final Function<XMLStreamReader, Node> domTreeTransformer = newDomTreeTransformer(streamingFilter, passthrough, threads);
+        if (threads == 1) {
+            return newXmlStreamFilter(line, streamingFilter.isPresent() ? SELECTED : filter, transformer, domTreeTransformer, passthrough, limit);
+        }
+        // Arguments have been validated above, hence each worker thread can safely create its own predicate and transformer:
+        final ParallelXmlStreamFilter.Builder builder = ParallelXmlStreamFilter.builder(line.getOptionValue(ELEMENT))
+                .filter(streamingFilter.isPresent() ? () -> SELECTED : () -> newFilter(line, whiteList))
+                .transformer(() -> newTransformer(line))
+                .domTreeTransformer(domTreeTransformer)
+                .threads(threads)
+                .inflaterThreads(threads)
+                .limit(limit);
+        if (passthrough) {
+            builder.rawXml();
+        }
+        if (line.hasOption(PRESCAN)) {
+            builder.prescan();
+        }
+        return line.hasOption(UNORDERED) ? builder.unordered().build() : builder.build();
+    }
+
+    private static XmlStreamFilter newXmlStreamFilter(final CommandLine line, final Predicate<Node> filter, final Function<Pair<Node, OutputStream>, Void> transformer,
+                                                      final Function<XMLStreamReader, Node> domTreeTransformer, final boolean passthrough, final long limit) throws TransformerConfigurationException {
+        final XmlStreamFilter.Builder builder = XmlStreamFilter.builder(line.getOptionValue(ELEMENT))
+                .filter(filter)
+                .transformer(transformer)
+                .domTreeTransformer(domTreeTransformer)
+                .limit(limit);
+        if (passthrough) {
+            builder.rawXml();
+        }
+        if (line.hasOption(PRESCAN)) {
+            builder.prescan();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Input files are read instead of the standard input stream: a single, uncompressed, file is split in ranges, filtered in parallel,
+     * whereas several files are filtered concurrently, each by a {@code StreamFilter} created, from arguments validated above, for its worker thread.
+     */
+    private CountingStreamFilter newFileStreamFilter(final CommandLine line, final WhiteList whiteList, final Optional<Supplier<StreamingPredicate>> streamingFilter,
+                                                     final boolean passthrough, final int threads, final long limit) {
+        if (!line.hasOption(INPUT)) {
+            printHelp(messageInvalidArgumentFor(INPUT));
+            return new NoOpStreamFilter();
+        }
+        final int jobs = getPositiveInteger(line, JOBS);
+        if (jobs < 1) {
+            return new NoOpStreamFilter();
+        }
+        final List<Path> inputs;
+        try {
+            inputs = InputFiles.expand(Arrays.asList(line.getOptionValues(INPUT)));
+        } catch (IOException e) {
+            printHelp(messageInvalidArguments("Failed to list input files: " + e.getMessage() + "."));
+            return new NoOpStreamFilter();
+        }
+        final Path outputDirectory = line.hasOption(OUTPUT_DIR) ? Paths.get(line.getOptionValue(OUTPUT_DIR)) : null;
+        if ((outputDirectory != null) && !outputDirectory.toFile().isDirectory()) {
+            printHelp(messageInvalidArguments("Output directory does not exist: " + outputDirectory + "."));
+            return new NoOpStreamFilter();
+        }
+
+        if ((inputs.size() == 1) && (jobs == 1) && (outputDirectory == null)) {
+            return newSplitStreamFilter(line, whiteList, streamingFilter, passthrough, threads, limit, inputs.get(0));
+        }
+        final BatchXmlStreamFilter batchFilter = BatchXmlStreamFilter.builder(() -> {
+            try {
+                return newStreamFilter(line, whiteList, newFilter(line, whiteList), newTransformer(line), streamingFilter, passthrough, threads, limit);
+            } catch (TransformerConfigurationException | ParserConfigurationException e) {
+                throw new IllegalStateException("Failed to create StreamFilter.", e);
+            }
+        }).jobs(jobs).outputDirectory(outputDirectory).build();
+        return (in, out) -> batchFilter.filter(inputs, out);
+    }
+
+    /**
+     * The file is split in ranges, each parsed, selected and transformed by its own thread, hence arguments, which have been validated above,
+     * are used to create one predicate and transformer per range.
+     */
+    private CountingStreamFilter newSplitStreamFilter(final CommandLine line, final WhiteList whiteList, final Optional<Supplier<StreamingPredicate>> streamingFilter,
+                                                      final boolean passthrough, final int threads, final long limit, final Path input) {
+        final SplitXmlStreamFilter.Builder builder = SplitXmlStreamFilter.builder(line.getOptionValue(ELEMENT))
+                .filter(streamingFilter.isPresent() ? () -> SELECTED : () -> newFilter(line, whiteList))
+                .transformer(() -> newTransformer(line))
+                .domTreeTransformer(() -> {
+                    try {
+                        // Elements of a range are processed one at a time, like in a sequential filter:
+                        return newDomTreeTransformer(streamingFilter, passthrough, 1);
+                    } catch (ParserConfigurationException e) {
+                        throw new IllegalStateException("Failed to create XMLStreamReader-to-DOM tree transformer.", e);
+                    }
+                })
+                .threads(threads)
+                .limit(limit);
+        if (passthrough) {
+            builder.rawXml();
+        }
+        if (line.hasOption(PRESCAN)) {
+            builder.prescan();
+        }
+        if (line.hasOption(GZIP_INDEX)) {
+            final Path indexPath = Paths.get(line.getOptionValue(GZIP_INDEX));
+            try {
+                builder.gzipIndex(newGzipIndex(indexPath, input));
+            } catch (IOException e) {
+                printHelp(messageInvalidArguments("Failed to read gzip index file: " + indexPath + "." + originalError(e)));
+                return new NoOpStreamFilter();
+            }
+        }
+        if (line.hasOption(CHECKPOINT)) {
+            return newCheckpointedStreamFilter(line, builder, input);
+        }
+        final SplitXmlStreamFilter splitFilter = builder.build();
+        return (in, out) -> splitFilter.filter(input, out);
+    }
+
+    /**
+     * Progress is recorded in the checkpoint file after each range, and, with {@code resume}, filtering starts from the checkpoint recorded
+     * by the interrupted run, if any, instead of the start of the file.
+     */
+    private CountingStreamFilter newCheckpointedStreamFilter(final CommandLine line, final SplitXmlStreamFilter.Builder builder, final Path input) {
+        final Path checkpointPath = Paths.get(line.getOptionValue(CHECKPOINT));
+        builder.checkpoints(checkpointPath);
+        if (!line.hasOption(RESUME) || !checkpointPath.toFile().exists()) {
+            final SplitXmlStreamFilter splitFilter = builder.build();
+            return (in, out) -> splitFilter.filter(input, out);
+        }
+        final FilterCheckpoint resumeFrom;
+        try {
+            resumeFrom = FilterCheckpoint.read(checkpointPath);
+            if (!resumeFrom.isUpToDate(input)) {
+                printHelp(messageInvalidArguments("Checkpoint file " + checkpointPath + " was not recorded for input file " + input + ", or it was modified since."));
+                return new NoOpStreamFilter();
+            }
+        } catch (IOException e) {
+            printHelp(messageInvalidArguments("Failed to read checkpoint file: " + checkpointPath + "." + originalError(e)));
             return new NoOpStreamFilter();
         }
+        final SplitXmlStreamFilter splitFilter = builder.resumeFrom(resumeFrom).build();
+        final long outputLength = resumeFrom.outputLength();
+        return (in, out) -> {
+            truncateOutput(out, outputLength);
+            return splitFilter.filter(input, out);
+        };
+    }
+
+    /**
+     * Whatever the interrupted run output after its checkpoint is output again, hence the standard output stream, which the shell opened for appending,
+     * is truncated to its length at the checkpoint. It cannot be shorter, unless it was opened for writing, i.e. truncated by the shell, or is a pipe.
+     * Other output streams, e.g. in tests, are expected to only receive what follows the checkpoint.
+     */
+    private static void truncateOutput(final OutputStream out, final long length) throws IOException {
+        if (out != System.out) {
+            return;
+        }
+        System.out.flush();
+        // Closing this channel would close the standard output stream, hence it is left open:
+        final FileChannel channel = new FileOutputStream(FileDescriptor.out).getChannel();
+        final long size = channel.size();
+        if (size < length) {
+            throw new IOException("Standard output stream has " + size + " bytes, instead of at least " + length + " bytes at the checkpoint: " +
+                    "append it to the output file of the interrupted run, e.g. with >>.");
+        }
+        if (size > length) {
+            channel.truncate(length);
+        }
+    }
+
+    private static GzipIndex newGzipIndex(final Path indexPath, final Path input) throws IOException {
+        if (indexPath.toFile().exists()) {
+            final GzipIndex index = GzipIndex.read(indexPath);
+            if (index.isUpToDate(input)) {
+                return index;
+            }
+        }
+        final GzipIndex index = GzipIndex.build(input, GzipIndex.DEFAULT_SPAN);
+        index.write(indexPath);
+        return index;
+    }
+
+    /**
+     * Queries in the streamable subset of XPath are evaluated while parsing. Otherwise, each DOM tree is processed before the next one is parsed,
+     * unless processing happens in parallel, in which case each element needs its own DOM tree.
+     */
+    private static Function<XMLStreamReader, Node> newDomTreeTransformer(final Optional<Supplier<StreamingPredicate>> streamingFilter,
+                                                                         final boolean passthrough, final int threads) throws ParserConfigurationException {
+        if (streamingFilter.isPresent()) {
+            return new FilteringXMLStreamReaderToDomTreeTransformer(streamingFilter.get().get(),
+                    DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder(), !passthrough);
+        }
+        return (threads == 1)
+                ? new XMLStreamReaderToTinyTreeTransformer(true)
+                : new DirectXMLStreamReaderToDomTreeTransformer(DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder());
+    }
+
+    /**
+     * @return a factory of predicates evaluating the selection and all conditions while parsing, or {@code Optional.empty()} if any of their
+     * queries is outside the streamable subset of XPath, in which case these are all evaluated on DOM trees.
+     */
+    private static Optional<Supplier<StreamingPredicate>> newStreamingFilter(final CommandLine line, final WhiteList whiteList,
+                                                                             final List<Pair<String, ComparisonPredicate>> whereClauses) {
+        final List<Supplier<StreamingPredicate>> selects = new ArrayList<>();
+        for (final String selectQuery : getSelectQueries(line)) {
+            final Optional<StreamingXPath> select = StreamingXPath.compile(selectQuery);
+            if (!select.isPresent()) {
+                return Optional.empty();
+            }
+            selects.add(((whiteList != null) && selects.isEmpty())
+                    ? () -> StreamingXPathPredicate.in(select.get(), whiteList)
+                    : () -> StreamingXPathPredicate.exists(select.get()));
+        }
+        final List<Supplier<StreamingPredicate>> filters = new ArrayList<>();
+        if (!selects.isEmpty()) {
+            final boolean any = line.hasOption(ANY);
+            filters.add(() -> {
+                final List<StreamingPredicate> predicates = selects.stream().map(Supplier::get).collect(Collectors.toList());
+                return any ? StreamingPredicates.anyOf(predicates) : StreamingPredicates.allOf(predicates);
+            });
+        }
+        for (final Pair<String, ComparisonPredicate> whereClause : whereClauses) {
+            final Optional<StreamingXPath> where = StreamingXPath.compile(whereClause.first());
+            if (!where.isPresent()) {
+                return Optional.empty();
+            }
+            filters.add(() -> new StreamingXPathPredicate(where.get(), whereClause.second()));
+        }
+        return Optional.of(() -> StreamingPredicates.allOf(filters.stream().map(Supplier::get).collect(Collectors.toList())));
+    }
+
+    /**
+     * Several queries and conditions are combined by {@link AdaptivePredicate}s, which evaluate the cheapest and most selective ones first.
+     */
+    private Predicate<Node> newFilter(final CommandLine line, final WhiteList whiteList) {
+        final List<Predicate<Node>> selects = new ArrayList<>();
+        for (final String selectQuery : getSelectQueries(line)) {
+            final Predicate<Node> select = ((whiteList != null) && selects.isEmpty())
+                    ? getXPathSetPredicate(selectQuery, whiteList)
+                    : getXPathPredicate(selectQuery);
+            if (select == null) {
+                return null;
+            }
+            selects.add(select);
+        }
+        final List<Predicate<Node>> filters = new ArrayList<>();
+        if (!selects.isEmpty()) {
+            filters.add((selects.size() == 1) ? selects.get(0) : line.hasOption(ANY) ? AdaptivePredicate.anyOf(selects) : AdaptivePredicate.allOf(selects));
+        }
+        for (final Pair<String, ComparisonPredicate> whereClause : getWhereClauses(line)) {
+            final Predicate<Node> where = getXPathTextPredicate(whereClause.first(), whereClause.second());
+            if (where == null) {
+                return null;
+            }
+            filters.add(where);
+        }
+        return (filters.size() == 1) ? filters.get(0) : AdaptivePredicate.allOf(filters);
+    }
+
+    private static List<String> getSelectQueries(final CommandLine line) {
+        return line.hasOption(SELECT) ? Arrays.asList(line.getOptionValues(SELECT)) : Collections.<String>emptyList();
+    }
+
+    /**
+     * @return the query and comparison of each "where" argument, or {@code null} if any is invalid.
+     */
+    private List<Pair<String, ComparisonPredicate>> getWhereClauses(final CommandLine line) {
+        final List<Pair<String, ComparisonPredicate>> whereClauses = new ArrayList<>();
+        final String[] values = line.hasOption(WHERE) ? line.getOptionValues(WHERE) : new String[0];
+        for (int i = 0; i + 2 < values.length; i += 3) {
+            try {
+                whereClauses.add(MutablePair.of(values[i], ComparisonPredicate.of(values[i + 1], values[i + 2])));
+            } catch (IllegalArgumentException e) {
+                printHelp(messageInvalidArguments("Invalid condition \"" + values[i] + " " + values[i + 1] + " " + values[i + 2] +
+                        "\" for argument \"" + WHERE + "\"." + originalError(e)));
+                return null;
+            }
+        }
+        if ((values.length % 3) != 0) {
+            printHelp(messageInvalidArguments("please provide an XPath query, a comparison operator and a value for argument \"" + WHERE + "\"."));
+            return null;
+        }
+        return whereClauses;
+    }
+
+    private Function<Pair<Node, OutputStream>, Void> newTransformer(final CommandLine line) {
+        if (isPassthrough(line)) {
+            return new RawXmlToOutputStreamTransformer();
+        }
+        if (line.hasOption(COLUMN)) {
+            return getXPathColumnsToOutputStreamTransformer(line);
+        }
+        if (line.hasOption(JSON)) {
+            return newDomTreeToJsonOutputStreamTransformer(line);
+        }
+        return line.hasOption(TRANSFORM)
+                ? getXPathToOutputStreamTransformer(line.getOptionValue(TRANSFORM))
+                : getDomTreeToOutputStreamTransformer(line.hasOption(INDENT));
+    }
+
+    private static boolean isPassthrough(final CommandLine line) {
+        return !line.hasOption(TRANSFORM) && !line.hasOption(COLUMN) && !line.hasOption(JSON) && !line.hasOption(INDENT);
+    }
+
+    private long getLimit(final CommandLine line) {
+        return line.hasOption(LIMIT) ? getPositiveLong(line, LIMIT) : XmlStreamFilter.NO_LIMIT;
+    }
+
+    private long getPositiveLong(final CommandLine line, final String option) {
+        try {
+            final long value = Long.parseLong(line.getOptionValue(option));
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below, like any other invalid value.
+        }
+        printHelp(messageInvalidArguments("please provide a strictly positive integer for argument \"" + option + "\"."));
+        return -1;
+    }
+
+    private int getPositiveInteger(final CommandLine line, final String option) {
+        if (!line.hasOption(option)) {
+            return 1;
+        }
+        try {
+            final int value = Integer.parseInt(line.getOptionValue(option));
+            if (value > 0) {
+                return value;
+            }
+        } catch (NumberFormatException e) {
+            // Handled below, like any other invalid value.
+        }
+        printHelp(messageInvalidArguments("please provide a strictly positive integer for argument \"" + option + "\"."));
+        return -1;
+    }
+
+    private boolean isValidElement(final String element) {
+        try {
+            ElementMatcher.compile(element);
+            return true;
+        } catch (IllegalArgumentException e) {
+            printHelp(messageInvalidArguments(e.getMessage()));
+            return false;
+        }
+    }
+
+    /**
+     * @return {@code true} unless an argument is used with an incompatible one, see {@link #INCOMPATIBLE_ARGUMENTS}, or without the one it requires,
+     * in which case an error message is printed.
+     */
+    private boolean hasValidCombinationOfArguments(final CommandLine line) {
+        for (final Map.Entry<String, List<String>> incompatible : INCOMPATIBLE_ARGUMENTS.entrySet()) {
+            if (!line.hasOption(incompatible.getKey())) {
+                continue;
+            }
+            for (final String option : incompatible.getValue()) {
+                if (line.hasOption(option)) {
+                    printHelp(messageInvalidArguments("arguments \"" + incompatible.getKey() + "\" and \"" + option + "\" cannot be used together."));
+                    return false;
+                }
+            }
+        }
+        for (final Map.Entry<String, String> required : REQUIRED_ARGUMENTS.entrySet()) {
+            if (line.hasOption(required.getKey()) && !line.hasOption(required.getValue())) {
+                printHelp(messageInvalidArguments("argument \"" + required.getKey() + "\" requires argument \"" + required.getValue() + "\"."));
+                return false;
+            }
+        }
+        final boolean singleLocalName = ElementMatcher.compile(line.getOptionValue(ELEMENT)).localName() != null;
+        for (final String option : SINGLE_LOCAL_NAME_ARGUMENTS) {
+            if (line.hasOption(option) && !singleLocalName) {
+                printHelp(messageInvalidArguments("argument \"" + option + "\" requires a single local name for argument \"" + ELEMENT + "\"."));
+                return false;
+            }
+        }
+        final String[] inputs = line.getOptionValues(INPUT);
+        final boolean singleInputFile = (inputs != null) && (inputs.length == 1) && new File(inputs[0]).isFile();
+        for (final String option : SINGLE_INPUT_FILE_ARGUMENTS) {
+            if (line.hasOption(option) && !singleInputFile) {
+                printHelp(messageInvalidArguments("argument \"" + option + "\" requires a single file for argument \"" + INPUT + "\"."));
+                return false;
+            }
+        }
+        return true;
     }
 
     private CommandLine parseArguments(final String[] args) {
@@ -147,14 +1115,64 @@ public class XmlStreamFilterCliFactory {
         }
     }
 
-    private XPathSetPredicate getXPathSetPredicate(final String xpathQuery, final String filePath) {
+    private WhiteList readWhiteList(final CommandLine line) {
+        final String match = line.getOptionValue(MATCH, EXACT);
+        if (!EXACT.equals(match) && !PREFIX.equals(match) && !SUBSTRING.equals(match)) {
+            printHelp(messageInvalidArguments("please provide either \"" + EXACT + "\", \"" + PREFIX + "\" or \"" + SUBSTRING + "\" for argument \"" + MATCH + "\"."));
+            return null;
+        }
+        if (line.hasOption(FILE_INDEX)) {
+            if (!EXACT.equals(match)) {
+                printHelp(messageInvalidArguments("argument \"" + FILE_INDEX + "\" only supports \"" + EXACT + "\" for argument \"" + MATCH + "\"."));
+                return null;
+            }
+            return readWhiteListIndex(line.getOptionValue(FILE), line.getOptionValue(FILE_INDEX));
+        }
+        final String filePath = line.getOptionValue(FILE);
+        try {
+            final Set<String> patterns = Sets.newHashSet(Files.readLines(new File(filePath), UTF_8));
+            switch (match) {
+                case PREFIX:
+                    return WhiteList.startingWith(patterns);
+                case SUBSTRING:
+                    return WhiteList.containing(patterns);
+                default:
+                    return WhiteList.of(patterns);
+            }
+        } catch (IOException e) {
+            printHelp(messageInvalidArguments("Failed to read white-list of patterns from file: " + filePath + "." + originalError(e)));
+            return null;
+        }
+    }
+
+    private WhiteList readWhiteListIndex(final String filePath, final String indexPath) {
+        final File file = (filePath != null) ? new File(filePath) : null;
+        final File index = new File(indexPath);
+        try {
+            if ((file != null) && (!index.exists() || (index.lastModified() < file.lastModified()))) {
+                MappedWhiteList.build(file.toPath(), index.toPath());
+            }
+            return MappedWhiteList.open(index.toPath());
+        } catch (IOException e) {
+            printHelp(messageInvalidArguments("Failed to read white-list of patterns from index file: " + indexPath + "." + originalError(e)));
+            return null;
+        }
+    }
+
+    private XPathSetPredicate getXPathSetPredicate(final String xpathQuery, final WhiteList whiteList) {
         try {
-            return new XPathSetPredicate(xpathQuery, Sets.newHashSet(Files.readLines(new File(filePath), UTF_8)));
+            return new XPathSetPredicate(xpathQuery, whiteList);
         } catch (XPathExpressionException e) {
             printHelp(messageInvalidXPathExpression(xpathQuery, SELECT, e));
             return null;
-        } catch (IOException e) {
-            printHelp(messageInvalidArguments("Failed to read white-list of patterns from file: " + filePath + "." + originalError(e)));
+        }
+    }
+
+    private XPathTextPredicate getXPathTextPredicate(final String xpathQuery, final ComparisonPredicate condition) {
+        try {
+            return new XPathTextPredicate(xpathQuery, condition);
+        } catch (XPathExpressionException e) {
+            printHelp(messageInvalidXPathExpression(xpathQuery, WHERE, e));
             return null;
         }
     }
@@ -177,6 +1195,28 @@ public class XmlStreamFilterCliFactory {
         }
     }
 
+    private static DomTreeToJsonOutputStreamTransformer newDomTreeToJsonOutputStreamTransformer(final CommandLine line) {
+        final DomTreeToJsonOutputStreamTransformer.Builder builder = DomTreeToJsonOutputStreamTransformer.builder();
+        final Set<String> arrays = line.hasOption(JSON_ARRAY) ? Sets.newHashSet(line.getOptionValues(JSON_ARRAY)) : Collections.<String>emptySet();
+        return arrays.contains(ALL) ? builder.alwaysArrays().build() : builder.arrays(arrays).build();
+    }
+
+    private XPathColumnsToOutputStreamTransformer getXPathColumnsToOutputStreamTransformer(final CommandLine line) {
+        final String format = line.getOptionValue(FORMAT, TSV);
+        if (!TSV.equals(format) && !CSV.equals(format)) {
+            printHelp(messageInvalidArguments("please provide either \"" + TSV + "\" or \"" + CSV + "\" for argument \"" + FORMAT + "\"."));
+            return null;
+        }
+        final List<String> xpathQueries = Arrays.asList(line.getOptionValues(COLUMN));
+        try {
+            return new XPathColumnsToOutputStreamTransformer(xpathQueries,
+                    TSV.equals(format) ? XPathColumnsToOutputStreamTransformer.Format.TSV : XPathColumnsToOutputStreamTransformer.Format.CSV);
+        } catch (XPathExpressionException e) {
+            printHelp(messageInvalidArguments("Invalid XPath expression in \"" + String.join("\", \"", xpathQueries) + "\" for argument \"" + COLUMN + "\"." + originalError(e)));
+            return null;
+        }
+    }
+
     private DomTreeToOutputStreamTransformer getDomTreeToOutputStreamTransformer(final boolean indent) {
         try {
             return indent
@@ -194,7 +1234,15 @@ public class XmlStreamFilterCliFactory {
         return transformer;
     }
 
+    /**
+     * @return {@code true} if invalid arguments were provided to the last call to {@link #newStreamFilter(String[]) newStreamFilter}.
+     */
+    public boolean hasInvalidArguments() {
+        return invalidArguments;
+    }
+
     private void printHelp(final String message) {
+        invalidArguments = true;
         stdErrWriter.println(message);
         printHelp(stdErrWriter);
     }
@@ -0,0 +1,240 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Replacement for {@code BufferedOutputStream}, which writes on another thread, so that slow consumers, e.g. a pipe, and system calls
+ * do not stall the writer, e.g. the parsing loop:
+ * - bytes are copied into large buffers, handed over, once full, to a writer thread, through a bounded ring,
+ * - the writer thread writes all the buffers handed over at once, in a single gathering write if the stream is a file's, and then gives them back,
+ * - flushes only hand the current buffer over if the writer thread is idle, so that these do not lead to a system call each.
+ * Buffers are reused, and their number is bounded, hence if the writer thread falls behind, writing blocks until a buffer is given back.
+ * Failures of the writer thread are rethrown by the next write, flush or close, after which any remaining bytes are discarded.
+ * Like output streams, this stream is NOT thread-safe: it must be written, flushed and closed by a single thread.
+ */
+public final class AsynchronousOutputStream extends OutputStream {
+    public static final int DEFAULT_BUFFER_SIZE = 1024 * 1024;
+    public static final int DEFAULT_BUFFERS = 4;
+    private static final ByteBuffer END_OF_STREAM = ByteBuffer.allocate(0);
+
+    private final OutputStream out;
+    private final GatheringByteChannel channel;
+    private final int buffers;
+    private final BlockingQueue<ByteBuffer> full;
+    private final BlockingQueue<ByteBuffer> empty;
+    private final ExecutorService writerExecutor;
+    private final Future<Void> writer;
+    private final AtomicInteger handedOver = new AtomicInteger();
+    private volatile IOException failure;
+    private ByteBuffer buffer;
+    private boolean closed;
+
+    public AsynchronousOutputStream(final OutputStream out) {
+        this(out, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFERS);
+    }
+
+    /**
+     * @param out        stream to write to, on another thread. If it is a {@code FileOutputStream}, e.g. of the standard output stream,
+     *                   its channel is written to instead, with gathering writes.
+     * @param bufferSize size of each buffer, in bytes.
+     * @param buffers    number of buffers, i.e. depth of the ring: one is written to, while the others are written, or wait to be.
+     *                   With a single buffer, writing waits for each buffer to be written, like a {@code BufferedOutputStream} does.
+     */
+    public AsynchronousOutputStream(final OutputStream out, final int bufferSize, final int buffers) {
+        this.out = checkNotNull(out, "OutputStream must NOT be null.");
+        checkArgument(bufferSize > 0, "Buffer size must be strictly positive.");
+        checkArgument(buffers > 0, "Number of buffers must be strictly positive.");
+        this.channel = (out instanceof FileOutputStream) ? ((FileOutputStream) out).getChannel() : null;
+        this.buffers = buffers;
+        this.full = new ArrayBlockingQueue<>(buffers + 1);
+        this.empty = new ArrayBlockingQueue<>(buffers);
+        for (int i = 1; i < buffers; ++i) {
+            empty.add(ByteBuffer.allocate(bufferSize));
+        }
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.writerExecutor = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder().setNameFormat("output-writer-%d").setDaemon(true).build());
+        this.writer = writerExecutor.submit(this::writeBuffers);
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        checkOpen();
+        if (!buffer.hasRemaining()) {
+            handOver();
+        }
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        checkNotNull(bytes, "Bytes must NOT be null.");
+        checkOpen();
+        int position = offset;
+        final int end = offset + length;
+        while (position < end) {
+            if (!buffer.hasRemaining()) {
+                handOver();
+            }
+            final int count = Math.min(end - position, buffer.remaining());
+            buffer.put(bytes, position, count);
+            position += count;
+        }
+    }
+
+    /**
+     * Hands the bytes written so far over to the writer thread, without waiting for these to be written, if it is idle.
+     * Otherwise, these are written with the following ones, once the writer thread is done with the previous ones, as serializers
+     * typically flush after each element, which would otherwise lead to a system call per element. Only {@link AsynchronousOutputStream#close()}
+     * waits for all bytes to be written.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        if ((buffer.position() > 0) && (handedOver.get() == 0)) {
+            handOver();
+        }
+        throwIfFailed();
+    }
+
+    /**
+     * Waits for all bytes written so far to be written to the underlying stream, and flushes it.
+     */
+    private void drain() throws IOException {
+        if (buffer.position() > 0) {
+            handOver();
+        }
+        // Buffers are only given back once written, hence once all of them are back, everything has been written:
+        final List<ByteBuffer> all = new ArrayList<>(buffers);
+        all.add(buffer);
+        while (all.size() < buffers) {
+            all.add(take());
+        }
+        buffer = all.remove(0);
+        empty.addAll(all);
+        throwIfFailed();
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            throwIfFailed();
+            return;
+        }
+        try {
+            drain();
+        } finally {
+            closed = true;
+            full.add(END_OF_STREAM);
+            try {
+                writer.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                // Only thrown on unexpected failures, as I/O failures are recorded, and rethrown below.
+                if (failure == null) {
+                    failure = new IOException("Failed to write output.", e.getCause());
+                }
+            } finally {
+                writerExecutor.shutdownNow();
+                out.close();
+            }
+        }
+        throwIfFailed();
+    }
+
+    private void handOver() throws IOException {
+        checkOpen();
+        throwIfFailed();
+        buffer.flip();
+        handedOver.incrementAndGet();
+        full.add(buffer);
+        buffer = take();
+        throwIfFailed();
+    }
+
+    private ByteBuffer take() throws IOException {
+        try {
+            return empty.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for output to be written.");
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+
+    private void throwIfFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException("Failed to write output.", failure);
+        }
+    }
+
+    /**
+     * Runs on the writer thread, until the end of the stream. Once a write failed, buffers are given back without being written,
+     * so that the writing thread never waits forever, and finds out about the failure.
+     */
+    private Void writeBuffers() throws InterruptedException {
+        final List<ByteBuffer> batch = new ArrayList<>(buffers + 1);
+        while (true) {
+            batch.add(full.take());
+            full.drainTo(batch);
+            final boolean ended = (batch.get(batch.size() - 1) == END_OF_STREAM);
+            if (ended) {
+                batch.remove(batch.size() - 1);
+            }
+            if ((failure == null) && !batch.isEmpty()) {
+                try {
+                    write(batch);
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+            for (final ByteBuffer written : batch) {
+                written.clear();
+                empty.add(written);
+            }
+            handedOver.addAndGet(-batch.size());
+            batch.clear();
+            if (ended) {
+                return null;
+            }
+        }
+    }
+
+    private void write(final List<ByteBuffer> batch) throws IOException {
+        if (channel != null) {
+            final ByteBuffer[] sources = batch.toArray(new ByteBuffer[batch.size()]);
+            while (batch.get(batch.size() - 1).hasRemaining()) {
+                channel.write(sources);
+            }
+        } else {
+            for (final ByteBuffer bytes : batch) {
+                out.write(bytes.array(), bytes.arrayOffset() + bytes.position(), bytes.remaining());
+            }
+        }
+    }
+}
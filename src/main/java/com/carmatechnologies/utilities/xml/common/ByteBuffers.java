@@ -0,0 +1,43 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+public final class ByteBuffers {
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    private ByteBuffers() {
+        // Utility class, do NOT instantiate.
+    }
+
+    /**
+     * Finds the provided byte eight bytes at a time, SWAR-style: each word read is XOR-ed with the byte repeated eight times,
+     * which zeroes matching bytes, and {@code ~(((x & 0x7F..7F) + 0x7F..7F) | x | 0x7F..7F)} then sets the high bit of zero bytes, and only of these,
+     * as no carry crosses bytes, which keeps the result exact whatever the byte order.
+     *
+     * @param buffer buffer to search, in any byte order, without changing its position.
+     * @param from   index to start searching from, included.
+     * @param to     index to stop searching at, excluded.
+     * @param b      byte to look for.
+     * @return index of the first occurrence of the provided byte in the range, or -1 if there is none.
+     */
+    public static int indexOf(final ByteBuffer buffer, final int from, final int to, final byte b) {
+        final long pattern = ONES * (b & 0xFF);
+        final boolean littleEndian = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        int i = from;
+        for (; i <= to - Long.BYTES; i += Long.BYTES) {
+            final long word = buffer.getLong(i) ^ pattern;
+            final long found = ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+            if (found != 0) {
+                return i + ((littleEndian ? Long.numberOfTrailingZeros(found) : Long.numberOfLeadingZeros(found)) >>> 3);
+            }
+        }
+        for (; i < to; ++i) {
+            if (buffer.get(i) == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
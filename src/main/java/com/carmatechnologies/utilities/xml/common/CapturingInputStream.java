@@ -0,0 +1,127 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * "Tee" over a UTF-8 {@code InputStream}: bytes read by the consumer, e.g. a StAX parser, are also kept in a buffer,
+ * so that ranges of the original bytes can later be copied, without any re-encoding.
+ * Ranges are expressed as character offsets, as reported by StAX parsers, i.e. in UTF-16 code units from the start of the stream.
+ * Characters are mapped back to bytes by walking UTF-8 lead bytes, which makes the copy byte-exact for valid UTF-8 input.
+ * Callers are expected to regularly {@link CapturingInputStream#discardBefore(long) discard} bytes they no longer need.
+ */
+public final class CapturingInputStream extends FilterInputStream {
+    private static final int INITIAL_CAPACITY = 64 * 1024;
+
+    private byte[] buffer = new byte[INITIAL_CAPACITY];
+    private int length;
+    private long firstCharOffset; // Character offset of buffer[0].
+
+    public CapturingInputStream(final InputStream in) {
+        super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+        final int b = in.read();
+        if (b >= 0) {
+            ensureCapacity(length + 1);
+            buffer[length++] = (byte) b;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int len) throws IOException {
+        final int numBytesRead = in.read(bytes, offset, len);
+        if (numBytesRead > 0) {
+            ensureCapacity(length + numBytesRead);
+            System.arraycopy(bytes, offset, buffer, length, numBytesRead);
+            length += numBytesRead;
+        }
+        return numBytesRead;
+    }
+
+    @Override
+    public long skip(final long n) throws IOException {
+        // Skipped bytes must be captured too:
+        final byte[] skipped = new byte[(int) Math.min(n, INITIAL_CAPACITY)];
+        final int numBytesRead = read(skipped, 0, skipped.length);
+        return Math.max(numBytesRead, 0);
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * @return number of bytes currently captured.
+     */
+    public int size() {
+        return length;
+    }
+
+    /**
+     * Discards the captured bytes corresponding to characters before the provided character offset.
+     *
+     * @param charOffset character offset of the first character to keep.
+     */
+    public void discardBefore(final long charOffset) {
+        final int index = indexOf(charOffset);
+        System.arraycopy(buffer, index, buffer, 0, length - index);
+        length -= index;
+        firstCharOffset = charOffset;
+    }
+
+    /**
+     * @param startCharOffset character offset of the first character to copy, included.
+     * @param endCharOffset   character offset of the last character to copy, excluded.
+     * @return a copy of the original bytes corresponding to the provided range of characters.
+     */
+    public byte[] copy(final long startCharOffset, final long endCharOffset) {
+        checkArgument(startCharOffset <= endCharOffset, "Start offset must NOT be after end offset.");
+        final int start = indexOf(startCharOffset);
+        final int end = start + indexOf(startCharOffset, start, endCharOffset);
+        return Arrays.copyOfRange(buffer, start, end);
+    }
+
+    private int indexOf(final long charOffset) {
+        checkArgument(charOffset >= firstCharOffset, "Characters before offset %s have already been discarded.", firstCharOffset);
+        return indexOf(firstCharOffset, 0, charOffset);
+    }
+
+    private int indexOf(final long fromCharOffset, final int fromIndex, final long toCharOffset) {
+        long charOffset = fromCharOffset;
+        int index = fromIndex;
+        while (charOffset < toCharOffset) {
+            checkState(index < length, "Characters after offset %s have not been read yet.", charOffset);
+            final int leadByte = buffer[index] & 0xFF;
+            if (leadByte < 0xC0) {
+                index += 1; // ASCII, or invalid lead byte.
+                charOffset += 1;
+            } else if (leadByte < 0xE0) {
+                index += 2;
+                charOffset += 1;
+            } else if (leadByte < 0xF0) {
+                index += 3;
+                charOffset += 1;
+            } else {
+                index += 4; // Supplementary character, i.e. surrogate pair in UTF-16.
+                charOffset += 2;
+            }
+        }
+        return index - fromIndex;
+    }
+
+    private void ensureCapacity(final int minCapacity) {
+        if (minCapacity > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(minCapacity, 2 * buffer.length));
+        }
+    }
+}
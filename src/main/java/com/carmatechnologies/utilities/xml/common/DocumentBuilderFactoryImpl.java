@@ -0,0 +1,15 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+public final class DocumentBuilderFactoryImpl {
+    private DocumentBuilderFactoryImpl() {
+        // Utility class, do NOT instantiate.
+    }
+
+    public static DocumentBuilderFactory newInstance() {
+        final DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        return factory;
+    }
+}
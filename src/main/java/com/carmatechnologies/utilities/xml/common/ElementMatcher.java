@@ -0,0 +1,251 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import javax.xml.stream.XMLStreamReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compiled form of the elements to detect in an XML stream, given as a union, separated by {@code |}, of:
+ * - local names, e.g. {@code entry}, which match elements at any depth,
+ * - absolute paths, e.g. {@code /feed/entry}, which only match elements at this exact position, and not {@code /feed/entry/related/entry}.
+ * Each name may be qualified by a namespace URI, in Clark notation, e.g. {@code {http://www.w3.org/2005/Atom}entry}, and otherwise matches
+ * elements with this local name in any namespace. Example: {@code /feed/entry|/feed/{urn:x}item|link}.
+ * Absolute paths are compiled in a trie, walked by a {@link Tracker} as elements are started and ended. Names are interned, so that they can be
+ * compared by identity with names from parsers which intern these, like Woodstox does.
+ */
+public final class ElementMatcher {
+    private static final String UNION = "|";
+    private static final char SEPARATOR = '/';
+    private static final Step[] NO_STEPS = new Step[0];
+
+    private final String expression;
+    private final Step root = new Step(null);
+    private final Name[] anywhere;
+
+    private ElementMatcher(final String expression) {
+        this.expression = expression;
+        final List<Name> anywhere = new ArrayList<>();
+        for (final String path : expression.split("\\" + UNION, -1)) {
+            checkArgument(!path.trim().isEmpty(), "Invalid XML element path: \"%s\".", expression);
+            if (path.charAt(0) == SEPARATOR) {
+                root.add(steps(path, expression), 0);
+            } else {
+                checkArgument(!containsSeparator(path), "Relative XML element paths are not supported: \"%s\".", path);
+                anywhere.add(Name.parse(path, expression));
+            }
+        }
+        this.anywhere = anywhere.toArray(new Name[anywhere.size()]);
+    }
+
+    /**
+     * @param expression union of local names and absolute paths of the elements to detect, see {@link ElementMatcher}.
+     * @return the compiled matcher.
+     * @throws IllegalArgumentException if the expression is empty, or invalid.
+     */
+    public static ElementMatcher compile(final String expression) {
+        checkNotNull(expression, "XML element's local name must NOT be null.");
+        checkArgument(!expression.isEmpty(), "XML element's local name must NOT be empty.");
+        return new ElementMatcher(expression);
+    }
+
+    /**
+     * @return the local name to detect, if this matcher only detects elements with this local name, in any namespace and at any depth, or
+     * {@code null} otherwise, e.g. for paths, which cannot be matched without parsing the whole document.
+     */
+    public String localName() {
+        return (root.children.length == 0) && (anywhere.length == 1) && (anywhere[0].namespaceUri == null) ? anywhere[0].localName : null;
+    }
+
+    /**
+     * @param internedNames whether the parser interns local names and namespace URIs, in which case these are compared by identity.
+     * @return a new tracker, to use for a single document.
+     */
+    public Tracker newTracker(final boolean internedNames) {
+        return new Tracker(internedNames);
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    /**
+     * Separators within namespace URIs, e.g. {@code /{http://www.w3.org/2005/Atom}feed}, do not separate steps.
+     */
+    private static Name[] steps(final String path, final String expression) {
+        final List<Name> steps = new ArrayList<>();
+        int start = 1;
+        boolean inNamespaceUri = false;
+        for (int i = start; i <= path.length(); ++i) {
+            final char c = (i < path.length()) ? path.charAt(i) : SEPARATOR;
+            if (c == '{') {
+                inNamespaceUri = true;
+            } else if (c == '}') {
+                inNamespaceUri = false;
+            } else if ((c == SEPARATOR) && !inNamespaceUri) {
+                steps.add(Name.parse(path.substring(start, i), expression));
+                start = i + 1;
+            }
+        }
+        return steps.toArray(new Name[steps.size()]);
+    }
+
+    private static boolean containsSeparator(final String name) {
+        final int end = name.startsWith("{") ? name.indexOf('}') : -1;
+        return name.indexOf(SEPARATOR, end + 1) != -1;
+    }
+
+    /**
+     * Keeps track of where the parser is in the document, element after element. Trackers are NOT thread-safe.
+     */
+    public final class Tracker {
+        private final boolean internedNames;
+        private Step[][] states = new Step[16][];
+        private int[] counts = new int[16];
+        private int depth;
+
+        private Tracker(final boolean internedNames) {
+            this.internedNames = internedNames;
+            this.states[0] = new Step[]{root};
+            this.counts[0] = 1;
+        }
+
+        /**
+         * To call on every START_ELEMENT event, except for the content of detected elements.
+         *
+         * @param reader reader positioned on a START_ELEMENT event.
+         * @return {@code true} if the started element is one of the elements to detect.
+         */
+        public boolean startElement(final XMLStreamReader reader) {
+            final String localName = reader.getLocalName();
+            final String namespaceUri = reader.getNamespaceURI();
+            if (++depth == states.length) {
+                states = Arrays.copyOf(states, 2 * depth);
+                counts = Arrays.copyOf(counts, 2 * depth);
+            }
+            // Steps matched at each depth are kept in buffers reused from one element to the next:
+            final Step[] parents = states[depth - 1];
+            final int parentsCount = counts[depth - 1];
+            Step[] children = (states[depth] == null) ? NO_STEPS : states[depth];
+            int count = 0;
+            boolean target = false;
+            for (int i = 0; i < parentsCount; ++i) {
+                for (final Step child : parents[i].children) {
+                    if (child.name.matches(localName, namespaceUri, internedNames)) {
+                        if (count == children.length) {
+                            children = Arrays.copyOf(children, count + 1);
+                        }
+                        children[count++] = child;
+                        target |= child.target;
+                    }
+                }
+            }
+            states[depth] = children;
+            counts[depth] = count;
+            for (final Name name : anywhere) {
+                target |= name.matches(localName, namespaceUri, internedNames);
+            }
+            return target;
+        }
+
+        /**
+         * To call on every END_ELEMENT event, and once detected elements have been consumed.
+         */
+        public void endElement() {
+            --depth;
+        }
+
+        /**
+         * @return number of open elements, i.e. 0 before the root element starts, and once it ends.
+         */
+        public int depth() {
+            return depth;
+        }
+    }
+
+    private static final class Step {
+        private final Name name;
+        private Step[] children = NO_STEPS;
+        private boolean target;
+
+        private Step(final Name name) {
+            this.name = name;
+        }
+
+        private void add(final Name[] path, final int index) {
+            if (index == path.length) {
+                target = true;
+                return;
+            }
+            for (final Step child : children) {
+                if (child.name.equals(path[index])) {
+                    child.add(path, index + 1);
+                    return;
+                }
+            }
+            final Step child = new Step(path[index]);
+            children = Arrays.copyOf(children, children.length + 1);
+            children[children.length - 1] = child;
+            child.add(path, index + 1);
+        }
+    }
+
+    private static final class Name {
+        private final String namespaceUri;
+        private final String localName;
+
+        private Name(final String namespaceUri, final String localName) {
+            this.namespaceUri = (namespaceUri == null) ? null : namespaceUri.intern();
+            this.localName = localName.intern();
+        }
+
+        /**
+         * @param name either a local name, or a local name qualified by a namespace URI, in Clark notation: {@code {namespaceUri}localName}.
+         */
+        private static Name parse(final String name, final String expression) {
+            if (!name.startsWith("{")) {
+                checkArgument(isValid(name), "Invalid XML element path: \"%s\".", expression);
+                return new Name(null, name);
+            }
+            final int end = name.indexOf('}');
+            checkArgument((end != -1) && isValid(name.substring(end + 1)), "Invalid XML element path: \"%s\".", expression);
+            return new Name(name.substring(1, end), name.substring(end + 1));
+        }
+
+        private static boolean isValid(final String localName) {
+            return !localName.isEmpty() && localName.chars().noneMatch(c -> Character.isWhitespace(c) || (c == '{') || (c == '}') || (c == ':'));
+        }
+
+        /**
+         * Elements without namespace have either a null or an empty namespace URI, depending on the parser.
+         */
+        private boolean matches(final String localName, final String namespaceUri, final boolean internedNames) {
+            if (internedNames ? (this.localName != localName) : !this.localName.equals(localName)) {
+                return false;
+            }
+            if (this.namespaceUri == null) {
+                return true;
+            }
+            final String uri = (namespaceUri == null) ? "" : namespaceUri;
+            return internedNames ? (this.namespaceUri == uri) : this.namespaceUri.equals(uri);
+        }
+
+        @Override
+        public boolean equals(final Object that) {
+            if (!(that instanceof Name)) {
+                return false;
+            }
+            final Name name = (Name) that;
+            return localName.equals(name.localName) && ((namespaceUri == null) ? (name.namespaceUri == null) : namespaceUri.equals(name.namespaceUri));
+        }
+
+        @Override
+        public int hashCode() {
+            return (31 * localName.hashCode()) + ((namespaceUri == null) ? 0 : namespaceUri.hashCode());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads a file as it grows, like {@code tail -f}: once its end is reached, reads block until more bytes are appended, instead of returning -1,
+ * so that a parser waits for the rest of an element, or for the root element to be closed, rather than failing on a truncated document.
+ * The file is polled, every 10 ms at first, and then less and less often while it does not grow, up to the provided maximum delay,
+ * which bounds the latency between an append and its read, and works on any file system, unlike native file change notifications.
+ * Before each wait, the provided {@code Flushable}, typically the output stream selected elements are written to, is flushed,
+ * so that everything read so far is processed and output without waiting for more input. Bytes are read once, hence no work is repeated.
+ * Reads only end with an {@code IOException}, when the reading thread is interrupted, or if the file is truncated, or replaced, e.g. rotated,
+ * which is detected from the size and the file key, e.g. the inode, of whatever file the path designates, as the file read stays the original one.
+ * Parsers are expected to stop reading once the document is complete, see {@code XmlElementReader}, as this stream never ends.
+ */
+public final class FollowingInputStream extends InputStream {
+    public static final long DEFAULT_MAX_DELAY_MILLIS = 250;
+    private static final long MIN_DELAY_MILLIS = 10;
+
+    private final Path path;
+    private final FileChannel channel;
+    private final Object fileKey;
+    private final Flushable idle;
+    private final long maxDelayMillis;
+    private final byte[] singleByte = new byte[1];
+
+    public FollowingInputStream(final Path path, final Flushable idle) throws IOException {
+        this(path, idle, DEFAULT_MAX_DELAY_MILLIS);
+    }
+
+    /**
+     * @param idle           flushed before waiting for the file to grow.
+     * @param maxDelayMillis maximum delay between two polls of the file, in milliseconds.
+     */
+    public FollowingInputStream(final Path path, final Flushable idle, final long maxDelayMillis) throws IOException {
+        this.path = checkNotNull(path, "Path must NOT be null.");
+        this.idle = checkNotNull(idle, "Flushable must NOT be null.");
+        checkArgument(maxDelayMillis >= MIN_DELAY_MILLIS, "Maximum delay must be at least %s ms.", MIN_DELAY_MILLIS);
+        this.maxDelayMillis = maxDelayMillis;
+        this.channel = FileChannel.open(path);
+        this.fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(singleByte, 0, 1) == -1) ? -1 : (singleByte[0] & 0xFF);
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes, offset, length);
+        long delayMillis = MIN_DELAY_MILLIS;
+        boolean flushed = false;
+        while (true) {
+            final int count = channel.read(buffer);
+            if (count > 0) {
+                return count;
+            }
+            if ((channel.size() < channel.position()) || isReplaced()) {
+                throw new IOException("File was truncated or replaced while being followed: " + path + ".");
+            }
+            if (!flushed) {
+                idle.flush();
+                flushed = true;
+            }
+            try {
+                Thread.sleep(delayMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for file to grow: " + path + ".");
+            }
+            delayMillis = Math.min(maxDelayMillis, 2 * delayMillis);
+        }
+    }
+
+    /**
+     * @return {@code true} if the path now designates another file, or a shorter one. A missing file may be about to be replaced, hence is waited for.
+     */
+    private boolean isReplaced() throws IOException {
+        final BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        return (attributes.size() < channel.position()) || ((fileKey != null) && !fileKey.equals(attributes.fileKey()));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,454 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteSource;
+import com.google.common.io.ByteStreams;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Sidecar index of a gzipped file, recording a checkpoint every span of inflated bytes, like zlib's {@code zran} example does,
+ * so that the file can be inflated from any checkpoint, without inflating what precedes it, e.g. to split it in ranges inflated in parallel,
+ * or to skip to the middle of it. Each checkpoint records:
+ * - its offset in the inflated bytes, and the offset, in bytes and bits, of the deflate block starting there,
+ * - the last 32 KB inflated before it, i.e. deflate's window, which back-references of the block may point to,
+ * - the offset of the next gzip member, if any, as inflating raw deflate data stops at the end of the current member.
+ * The checkpoints at the start of gzip members need no window, and are inflated from their header, like a whole file.
+ * {@code Inflater} does not tell where deflate blocks start, hence the file is inflated once by a {@link GzipIndexer} to build the index,
+ * nor can it start at a bit offset, unlike zlib's {@code inflatePrime}, hence compressed bytes are shifted by the checkpoint's bits instead.
+ * The size and modification time of the file are recorded, so that stale indexes are detected.
+ * File layout, in big-endian order:
+ * - header: magic number, span, inflated size, size and modification time of the indexed file, number of checkpoints,
+ * - checkpoints, each made of its inflated offset, compressed offset, bits, next member's offset, and window, deflated, preceded by its length.
+ */
+public final class GzipIndex {
+    public static final long DEFAULT_SPAN = 1024 * 1024;
+    private static final long MAGIC = 0x585346475A494458L; // "XSFGZIDX"
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final long span;
+    private final long size;
+    private final long inputSize;
+    private final long inputLastModified;
+    private final List<Checkpoint> checkpoints;
+    private final long[] offsets;
+
+    private GzipIndex(final long span, final long size, final long inputSize, final long inputLastModified, final List<Checkpoint> checkpoints) {
+        this.span = span;
+        this.size = size;
+        this.inputSize = inputSize;
+        this.inputLastModified = inputLastModified;
+        this.checkpoints = Collections.unmodifiableList(checkpoints);
+        this.offsets = checkpoints.stream().mapToLong(checkpoint -> checkpoint.uncompressedOffset).toArray();
+    }
+
+    /**
+     * Builds the index of the provided file, inflating it once, on the calling thread.
+     *
+     * @param input gzipped file to index. Concatenated gzip members are supported, like {@code GZIPInputStream} does.
+     * @param span  minimum number of inflated bytes between two checkpoints. Smaller spans make inflating from an arbitrary offset faster,
+     *              and the index larger, as each checkpoint records up to 32 KB of window, deflated.
+     * @return the index, to write with {@link GzipIndex#write}.
+     * @throws ZipException if the file is NOT gzipped, or corrupt.
+     */
+    public static GzipIndex build(final Path input, final long span) throws IOException {
+        checkNotNull(input, "Input file must NOT be null.");
+        checkArgument(span > 0, "Span must be strictly positive.");
+        final long inputSize = Files.size(input);
+        final long inputLastModified = SidecarFiles.lastModified(input);
+        try (final InputStream in = Files.newInputStream(input)) {
+            final GzipIndexer indexer = new GzipIndexer(in, span);
+            final List<Checkpoint> checkpoints = indexer.index();
+            return new GzipIndex(span, indexer.size(), inputSize, inputLastModified, checkpoints);
+        }
+    }
+
+    /**
+     * @param index index file, as written by {@link GzipIndex#write}.
+     * @throws IOException if the file cannot be read, or is not an index file.
+     */
+    public static GzipIndex read(final Path index) throws IOException {
+        checkNotNull(index, "Index file must NOT be null.");
+        try (final DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(index), BUFFER_SIZE))) {
+            if ((Files.size(index) < Long.BYTES) || (in.readLong() != MAGIC)) {
+                throw new IOException("Not a gzip index file: " + index + ".");
+            }
+            final long span = in.readLong();
+            final long size = in.readLong();
+            final long inputSize = in.readLong();
+            final long inputLastModified = in.readLong();
+            final int count = in.readInt();
+            final List<Checkpoint> checkpoints = new ArrayList<>(count);
+            for (int i = 0; i < count; ++i) {
+                final long uncompressedOffset = in.readLong();
+                final long compressedOffset = in.readLong();
+                final int bits = in.readByte();
+                final long nextMemberOffset = in.readLong();
+                final byte[] window = new byte[in.readInt()];
+                final byte[] deflatedWindow = new byte[in.readInt()];
+                in.readFully(deflatedWindow);
+                inflate(deflatedWindow, window);
+                final Checkpoint checkpoint = new Checkpoint(uncompressedOffset, compressedOffset, bits, window);
+                checkpoint.nextMemberOffset = nextMemberOffset;
+                checkpoints.add(checkpoint);
+            }
+            return new GzipIndex(span, size, inputSize, inputLastModified, checkpoints);
+        }
+    }
+
+    /**
+     * Writes the index atomically, see {@link SidecarFiles#writeAtomically}.
+     */
+    public void write(final Path index) throws IOException {
+        checkNotNull(index, "Index file must NOT be null.");
+        SidecarFiles.writeAtomically(index, temporaryIndex -> {
+            try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporaryIndex), BUFFER_SIZE))) {
+                out.writeLong(MAGIC);
+                out.writeLong(span);
+                out.writeLong(size);
+                out.writeLong(inputSize);
+                out.writeLong(inputLastModified);
+                out.writeInt(checkpoints.size());
+                for (final Checkpoint checkpoint : checkpoints) {
+                    out.writeLong(checkpoint.uncompressedOffset);
+                    out.writeLong(checkpoint.compressedOffset);
+                    out.writeByte(checkpoint.bits);
+                    out.writeLong(checkpoint.nextMemberOffset);
+                    out.writeInt(checkpoint.window.length);
+                    final byte[] deflatedWindow = deflate(checkpoint.window);
+                    out.writeInt(deflatedWindow.length);
+                    out.write(deflatedWindow);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return {@code true} if the provided file has the size and modification time of the file this index was built from.
+     */
+    public boolean isUpToDate(final Path input) throws IOException {
+        return SidecarFiles.isUpToDate(input, inputSize, inputLastModified);
+    }
+
+    /**
+     * @return the number of inflated bytes of the indexed file.
+     */
+    public long size() {
+        return size;
+    }
+
+    public long span() {
+        return span;
+    }
+
+    /**
+     * @return the number of checkpoints, the first one being at the start of the file.
+     */
+    public int checkpoints() {
+        return checkpoints.size();
+    }
+
+    /**
+     * @return the inflated offset of the last checkpoint at or before the provided offset, i.e. the closest one inflating can start from.
+     */
+    public long checkpointBefore(final long offset) {
+        return offsets[checkpointIndex(offset)];
+    }
+
+    /**
+     * @param input  gzipped file this index was built from.
+     * @param offset offset in the inflated bytes to start reading at.
+     * @return the inflated bytes of the file from the provided offset, inflated from the closest checkpoint before it.
+     */
+    public InputStream newInputStream(final Path input, final long offset) throws IOException {
+        checkNotNull(input, "Input file must NOT be null.");
+        checkArgument((offset >= 0) && (offset <= size), "Offset must be between 0 and %s: %s.", size, offset);
+        final Checkpoint checkpoint = checkpoints.get(checkpointIndex(offset));
+        final InputStream in = inflateFrom(input, checkpoint);
+        try {
+            ByteStreams.skipFully(in, offset - checkpoint.uncompressedOffset);
+        } catch (IOException | RuntimeException e) {
+            in.close();
+            throw e;
+        }
+        return in;
+    }
+
+    /**
+     * @param input gzipped file this index was built from.
+     * @return random access to the inflated bytes of the file, to close once done with it.
+     */
+    public Cursor newCursor(final Path input) {
+        checkNotNull(input, "Input file must NOT be null.");
+        return new Cursor(input);
+    }
+
+    private int checkpointIndex(final long offset) {
+        final int index = Arrays.binarySearch(offsets, offset);
+        return (index >= 0) ? index : Math.max(0, -index - 2);
+    }
+
+    private static InputStream inflateFrom(final Path input, final Checkpoint checkpoint) throws IOException {
+        if (checkpoint.bits == Checkpoint.MEMBER_START) {
+            return new GZIPInputStream(openAt(input, checkpoint.compressedOffset), BUFFER_SIZE);
+        }
+        final Inflater inflater = new Inflater(true);
+        if (checkpoint.window.length > 0) {
+            inflater.setDictionary(checkpoint.window);
+        }
+        final InputStream compressed = openAt(input, checkpoint.compressedOffset);
+        final InputStream inflated = new InflaterInputStream((checkpoint.bits == 0) ? compressed : new BitShiftingInputStream(compressed, checkpoint.bits),
+                inflater, BUFFER_SIZE) {
+            @Override
+            public void close() throws IOException {
+                try {
+                    super.close();
+                } finally {
+                    inflater.end();
+                }
+            }
+        };
+        if (checkpoint.nextMemberOffset == -1) {
+            return inflated;
+        }
+        // Raw deflate data ends with the member, hence the next members are inflated as a gzip stream, opened once needed:
+        final ByteSource nextMembers = new ByteSource() {
+            @Override
+            public InputStream openStream() throws IOException {
+                return new GZIPInputStream(openAt(input, checkpoint.nextMemberOffset), BUFFER_SIZE);
+            }
+        };
+        return ByteSource.concat(new ByteSource() {
+            @Override
+            public InputStream openStream() {
+                return inflated;
+            }
+        }, nextMembers).openStream();
+    }
+
+    private static InputStream openAt(final Path input, final long offset) throws IOException {
+        final FileChannel channel = FileChannel.open(input);
+        try {
+            channel.position(offset);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return new BufferedInputStream(Channels.newInputStream(channel), BUFFER_SIZE);
+    }
+
+    private static byte[] deflate(final byte[] bytes) throws IOException {
+        final Deflater deflater = new Deflater(Deflater.BEST_COMPRESSION, true);
+        try {
+            final ByteArrayOutputStream deflated = new ByteArrayOutputStream(bytes.length / 4);
+            try (final DeflaterOutputStream out = new DeflaterOutputStream(deflated, deflater)) {
+                out.write(bytes);
+            }
+            return deflated.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static void inflate(final byte[] deflated, final byte[] bytes) throws IOException {
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(deflated);
+            int inflated = 0;
+            while (inflated < bytes.length) {
+                final int count = inflater.inflate(bytes, inflated, bytes.length - inflated);
+                if ((count == 0) && (inflater.finished() || inflater.needsInput())) {
+                    throw new ZipException("Corrupt gzip index window.");
+                }
+                inflated += count;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Corrupt gzip index window: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Position in the gzipped file from which it can be inflated, see {@link GzipIndexer}.
+     */
+    static final class Checkpoint {
+        static final int MEMBER_START = -1;
+
+        final long uncompressedOffset;
+        final long compressedOffset;
+        final int bits;
+        final byte[] window;
+        long nextMemberOffset = -1;
+
+        /**
+         * @param bits number of bits of the byte at the compressed offset which precede the deflate block, or {@link Checkpoint#MEMBER_START}
+         *             if the compressed offset is the start of a gzip member, i.e. of its header.
+         */
+        Checkpoint(final long uncompressedOffset, final long compressedOffset, final int bits, final byte[] window) {
+            this.uncompressedOffset = uncompressedOffset;
+            this.compressedOffset = compressedOffset;
+            this.bits = bits;
+            this.window = window;
+        }
+    }
+
+    /**
+     * Drops the provided number of bits from the start of a stream, read least significant bit first, like deflate data,
+     * so that a deflate block starting in the middle of a byte can be inflated from the start of the stream.
+     */
+    static final class BitShiftingInputStream extends FilterInputStream {
+        private final int bits;
+        private int previous;
+
+        BitShiftingInputStream(final InputStream in, final int bits) throws IOException {
+            super(in);
+            this.bits = bits;
+            this.previous = in.read();
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (previous < 0) {
+                return -1;
+            }
+            final int next = in.read();
+            final int b = ((previous >>> bits) | (Math.max(0, next) << (8 - bits))) & 0xFF;
+            previous = next;
+            return b;
+        }
+
+        @Override
+        public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+            if (length == 0) {
+                return 0;
+            }
+            if (previous < 0) {
+                return -1;
+            }
+            // The last byte read is kept back, as its bits complete the previous byte:
+            final int count = in.read(bytes, offset, length);
+            if (count < 0) {
+                bytes[offset] = (byte) (previous >>> bits);
+                previous = -1;
+                return 1;
+            }
+            for (int i = offset; i < offset + count; ++i) {
+                final int next = bytes[i] & 0xFF;
+                bytes[i] = (byte) ((previous >>> bits) | (next << (8 - bits)));
+                previous = next;
+            }
+            return count;
+        }
+
+        /**
+         * Skipped bytes are shifted too, hence these are read, like {@code InputStream#skip} does, rather than skipped by the underlying stream.
+         */
+        @Override
+        public long skip(final long n) throws IOException {
+            final byte[] skipped = new byte[(int) Math.min(BUFFER_SIZE, Math.max(0, n))];
+            long remaining = n;
+            while (remaining > 0) {
+                final int count = read(skipped, 0, (int) Math.min(skipped.length, remaining));
+                if (count < 0) {
+                    break;
+                }
+                remaining -= count;
+            }
+            return n - Math.max(0, remaining);
+        }
+
+        @Override
+        public int available() {
+            return 0;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+    }
+
+    /**
+     * Random access to the inflated bytes of the file, through a window over the stream inflated from the closest checkpoint,
+     * re-opened at another checkpoint when a position before the window, or after the next checkpoint, is requested.
+     * Cursors are NOT thread-safe, hence each thread needs its own.
+     */
+    public final class Cursor implements RandomAccessInput, Closeable {
+        private final Path input;
+        private InputStreamWindow window;
+
+        private Cursor(final Path input) {
+            this.input = input;
+        }
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int get(final long position) throws IOException {
+            return (position < size) ? windowAt(position).get(position) : -1;
+        }
+
+        @Override
+        public int get(final long position, final byte[] bytes, final int offset, final int length) throws IOException {
+            return (position < size) ? windowAt(position).get(position, bytes, offset, length) : -1;
+        }
+
+        @Override
+        public long indexOf(final byte b, final long from) throws IOException {
+            return (from < size) ? windowAt(from).indexOf(b, from) : -1;
+        }
+
+        @Override
+        public void discardBefore(final long position) {
+            if (window != null) {
+                window.discardBefore(position);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (window != null) {
+                window.close();
+                window = null;
+            }
+        }
+
+        private InputStreamWindow windowAt(final long position) throws IOException {
+            if ((window == null) || (position < window.start()) || (checkpointBefore(position) > window.end())) {
+                close();
+                final int index = checkpointIndex(position);
+                window = new InputStreamWindow(inflateFrom(input, checkpoints.get(index)), offsets[index]);
+            }
+            return window;
+        }
+    }
+}
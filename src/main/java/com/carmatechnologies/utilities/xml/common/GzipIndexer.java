@@ -0,0 +1,511 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Inflates a gzip file, in pure Java, only to find where each deflate block starts, at the bit, which {@code Inflater} does not tell,
+ * and records a {@link GzipIndex.Checkpoint} at the first block starting after every span of inflated bytes, like zlib's {@code zran} example does.
+ * Inflated bytes are only kept in a ring of 64 KB, i.e. twice the size of deflate's window, as these are only needed to resolve
+ * back-references, to check each member's CRC and size, and as the window of each checkpoint.
+ * Huffman codes of up to 9 bits, i.e. most of them, are decoded with a single table lookup, and longer ones bit by bit, canonically.
+ */
+final class GzipIndexer {
+    private static final int WINDOW_SIZE = 32 * 1024;
+    private static final int RING_SIZE = 2 * WINDOW_SIZE;
+    private static final int RING_MASK = RING_SIZE - 1;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final int MAX_BITS = 15;
+    private static final int FAST_BITS = 9;
+    private static final int FTEXT_FHCRC = 2;
+    private static final int FEXTRA = 4;
+    private static final int FNAME = 8;
+    private static final int FCOMMENT = 16;
+    private static final int[] CODE_LENGTH_ORDER = {16, 17, 18, 0, 8, 7, 9, 6, 10, 5, 11, 4, 12, 3, 13, 2, 14, 1, 15};
+    private static final int[] LENGTH_BASE = {3, 4, 5, 6, 7, 8, 9, 10, 11, 13, 15, 17, 19, 23, 27, 31, 35, 43, 51, 59, 67, 83, 99, 115, 131, 163, 195, 227, 258};
+    private static final int[] LENGTH_EXTRA = {0, 0, 0, 0, 0, 0, 0, 0, 1, 1, 1, 1, 2, 2, 2, 2, 3, 3, 3, 3, 4, 4, 4, 4, 5, 5, 5, 5, 0};
+    private static final int[] DISTANCE_BASE = {1, 2, 3, 4, 5, 7, 9, 13, 17, 25, 33, 49, 65, 97, 129, 193, 257, 385, 513, 769, 1025, 1537, 2049, 3073,
+            4097, 6145, 8193, 12289, 16385, 24577};
+    private static final int[] DISTANCE_EXTRA = {0, 0, 0, 0, 1, 1, 2, 2, 3, 3, 4, 4, 5, 5, 6, 6, 7, 7, 8, 8, 9, 9, 10, 10, 11, 11, 12, 12, 13, 13};
+
+    private static final Huffman FIXED_LITERAL_CODES = fixedLiteralCodes();
+    private static final Huffman FIXED_DISTANCE_CODES = fixedDistanceCodes();
+
+    private final InputStream in;
+    private final long span;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferPosition;
+    private int bufferLength;
+    private long bufferStart;
+    private long bits;
+    private int bitCount;
+
+    private final byte[] ring = new byte[RING_SIZE];
+    private final CRC32 crc = new CRC32();
+    private long memberSize;
+    private long crcSize;
+    private long size;
+
+    private final Huffman literalCodes = new Huffman(288);
+    private final Huffman distanceCodes = new Huffman(32);
+    private final Huffman codeLengthCodes = new Huffman(19);
+    private final int[] lengths = new int[288 + 32];
+
+    private final List<GzipIndex.Checkpoint> checkpoints = new ArrayList<>();
+    private final List<GzipIndex.Checkpoint> memberCheckpoints = new ArrayList<>();
+
+    /**
+     * @param in   gzip stream, read from its start.
+     * @param span minimum number of inflated bytes between two checkpoints.
+     */
+    GzipIndexer(final InputStream in, final long span) {
+        this.in = checkNotNull(in, "InputStream must NOT be null.");
+        checkArgument(span > 0, "Span must be strictly positive.");
+        this.span = span;
+    }
+
+    private static Huffman fixedLiteralCodes() {
+        final int[] lengths = new int[288];
+        Arrays.fill(lengths, 0, 144, 8);
+        Arrays.fill(lengths, 144, 256, 9);
+        Arrays.fill(lengths, 256, 280, 7);
+        Arrays.fill(lengths, 280, 288, 8);
+        return fixed(lengths);
+    }
+
+    private static Huffman fixedDistanceCodes() {
+        final int[] lengths = new int[30];
+        Arrays.fill(lengths, 5);
+        return fixed(lengths);
+    }
+
+    private static Huffman fixed(final int[] lengths) {
+        final Huffman huffman = new Huffman(lengths.length);
+        try {
+            huffman.build(lengths, 0, lengths.length);
+        } catch (ZipException e) {
+            throw new IllegalStateException("Invalid fixed Huffman code.", e);
+        }
+        return huffman;
+    }
+
+    /**
+     * Inflates all members of the stream, like {@code GZIPInputStream} does, i.e. ignoring trailing bytes which do not start another member.
+     *
+     * @return the checkpoints, the first one being at the start of the stream.
+     * @throws ZipException if the stream is NOT gzipped, or corrupt.
+     */
+    List<GzipIndex.Checkpoint> index() throws IOException {
+        if (!readHeader()) {
+            throw new ZipException("Not in GZIP format.");
+        }
+        while (true) {
+            final long memberEnd = inflateMember();
+            final List<GzipIndex.Checkpoint> previousMemberCheckpoints = new ArrayList<>(memberCheckpoints);
+            memberCheckpoints.clear();
+            final boolean hasNextMember = readHeader();
+            // Checkpoints inside a member resume inflating raw deflate data, hence need to know where the next member, if any, starts:
+            for (final GzipIndex.Checkpoint checkpoint : previousMemberCheckpoints) {
+                checkpoint.nextMemberOffset = hasNextMember ? memberEnd : -1;
+            }
+            if (!hasNextMember) {
+                return checkpoints;
+            }
+        }
+    }
+
+    /**
+     * @return the number of inflated bytes, once indexed.
+     */
+    long size() {
+        return size;
+    }
+
+    /**
+     * Checkpoints at the start of members point to their headers, so that these are inflated from there by {@code GZIPInputStream}.
+     *
+     * @return {@code false} if there is no other member.
+     */
+    private boolean readHeader() throws IOException {
+        final long memberStart = bytePosition();
+        final int id1 = nextByte();
+        if (id1 < 0) {
+            return false;
+        }
+        final int id2 = nextByte();
+        if ((id1 | (id2 << 8)) != GZIPInputStream.GZIP_MAGIC) {
+            return false;
+        }
+        if (byteOrEof() != 8) {
+            throw new ZipException("Unsupported compression method.");
+        }
+        final int flags = byteOrEof();
+        skip(6); // Modification time, extra flags, OS.
+        if ((flags & FEXTRA) != 0) {
+            skip(byteOrEof() | (byteOrEof() << 8));
+        }
+        if ((flags & FNAME) != 0) {
+            while (byteOrEof() != 0) {
+                // Skip zero-terminated file name.
+            }
+        }
+        if ((flags & FCOMMENT) != 0) {
+            while (byteOrEof() != 0) {
+                // Skip zero-terminated comment.
+            }
+        }
+        if ((flags & FTEXT_FHCRC) != 0) {
+            skip(2);
+        }
+        memberSize = 0;
+        crcSize = 0;
+        crc.reset();
+        if (checkpoints.isEmpty() || (size - checkpoints.get(checkpoints.size() - 1).uncompressedOffset >= span)) {
+            addCheckpoint(new GzipIndex.Checkpoint(size, memberStart, GzipIndex.Checkpoint.MEMBER_START, new byte[0]));
+        }
+        return true;
+    }
+
+    /**
+     * @return the position following the member's trailer.
+     */
+    private long inflateMember() throws IOException {
+        boolean last;
+        do {
+            final long bitPosition = ((bufferStart + bufferPosition) * 8) - bitCount;
+            last = (bits(1) == 1);
+            final int type = bits(2);
+            // Stored blocks are padded to the next byte boundary, which shifting compressed bytes by the checkpoint's bits would move,
+            // hence checkpoints only start at stored blocks which are byte-aligned:
+            if ((size - checkpoints.get(checkpoints.size() - 1).uncompressedOffset >= span) && ((type != 0) || (bitPosition % 8 == 0))) {
+                addCheckpoint(new GzipIndex.Checkpoint(size, bitPosition / 8, (int) (bitPosition % 8), window()));
+            }
+            switch (type) {
+                case 0:
+                    stored();
+                    break;
+                case 1:
+                    codes(FIXED_LITERAL_CODES, FIXED_DISTANCE_CODES);
+                    break;
+                case 2:
+                    dynamic();
+                    codes(literalCodes, distanceCodes);
+                    break;
+                default:
+                    throw new ZipException("Invalid block type.");
+            }
+        } while (!last);
+        updateCrc();
+        alignToByte(); // The trailer is byte-aligned.
+        final long trailerStart = bytePosition();
+        final long expectedCrc = readInt();
+        final long expectedSize = readInt();
+        if ((expectedCrc != crc.getValue()) || (expectedSize != (memberSize & 0xFFFFFFFFL))) {
+            throw new ZipException("Corrupt GZIP trailer.");
+        }
+        return trailerStart + 8;
+    }
+
+    private void addCheckpoint(final GzipIndex.Checkpoint checkpoint) {
+        checkpoints.add(checkpoint);
+        memberCheckpoints.add(checkpoint);
+    }
+
+    /**
+     * @return the last inflated bytes of the current member, up to the size of deflate's window.
+     */
+    private byte[] window() {
+        final int length = (int) Math.min(WINDOW_SIZE, memberSize);
+        final byte[] window = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            window[i] = ring[(int) (memberSize - length + i) & RING_MASK];
+        }
+        return window;
+    }
+
+    private void alignToByte() {
+        bits >>>= bitCount & 7;
+        bitCount -= bitCount & 7;
+    }
+
+    private void stored() throws IOException {
+        alignToByte();
+        final int length = bits(16);
+        if ((~bits(16) & 0xFFFF) != length) {
+            throw new ZipException("Invalid stored block lengths.");
+        }
+        for (int i = 0; i < length; ++i) {
+            output(bits(8));
+        }
+    }
+
+    private void dynamic() throws IOException {
+        final int literalCount = bits(5) + 257;
+        final int distanceCount = bits(5) + 1;
+        final int codeLengthCount = bits(4) + 4;
+        if ((literalCount > 286) || (distanceCount > 30)) {
+            throw new ZipException("Too many length or distance symbols.");
+        }
+        Arrays.fill(lengths, 0, 19, 0);
+        for (int i = 0; i < codeLengthCount; ++i) {
+            lengths[CODE_LENGTH_ORDER[i]] = bits(3);
+        }
+        codeLengthCodes.build(lengths, 0, 19);
+        int index = 0;
+        while (index < literalCount + distanceCount) {
+            int symbol = decode(codeLengthCodes);
+            if (symbol < 16) {
+                lengths[index++] = symbol;
+                continue;
+            }
+            int length = 0;
+            if (symbol == 16) {
+                if (index == 0) {
+                    throw new ZipException("Repeated length with no first length.");
+                }
+                length = lengths[index - 1];
+                symbol = 3 + bits(2);
+            } else if (symbol == 17) {
+                symbol = 3 + bits(3);
+            } else {
+                symbol = 11 + bits(7);
+            }
+            if (index + symbol > literalCount + distanceCount) {
+                throw new ZipException("Too many lengths.");
+            }
+            while (symbol-- > 0) {
+                lengths[index++] = length;
+            }
+        }
+        if (lengths[256] == 0) {
+            throw new ZipException("Missing end-of-block code.");
+        }
+        literalCodes.build(lengths, 0, literalCount);
+        distanceCodes.build(lengths, literalCount, distanceCount);
+    }
+
+    private void codes(final Huffman literals, final Huffman distances) throws IOException {
+        while (true) {
+            int symbol = decode(literals);
+            if (symbol < 256) {
+                output(symbol);
+                continue;
+            }
+            if (symbol == 256) {
+                return;
+            }
+            symbol -= 257;
+            if (symbol >= 29) {
+                throw new ZipException("Invalid literal/length code.");
+            }
+            final int length = LENGTH_BASE[symbol] + bits(LENGTH_EXTRA[symbol]);
+            final int distanceSymbol = decode(distances);
+            if (distanceSymbol >= 30) {
+                throw new ZipException("Invalid distance code.");
+            }
+            final int distance = DISTANCE_BASE[distanceSymbol] + bits(DISTANCE_EXTRA[distanceSymbol]);
+            if (distance > memberSize) {
+                throw new ZipException("Invalid distance too far back.");
+            }
+            for (int i = 0; i < length; ++i) {
+                ring[(int) memberSize & RING_MASK] = ring[(int) (memberSize - distance) & RING_MASK];
+                ++memberSize;
+            }
+            size += length;
+            if (memberSize - crcSize >= WINDOW_SIZE) {
+                updateCrc();
+            }
+        }
+    }
+
+    private void output(final int b) {
+        ring[(int) memberSize & RING_MASK] = (byte) b;
+        ++memberSize;
+        ++size;
+        if (memberSize - crcSize >= WINDOW_SIZE) {
+            updateCrc();
+        }
+    }
+
+    /**
+     * Bytes are checksummed before being overwritten in the ring, i.e. at least every 32 KB, as a back-reference copies at most 258 bytes.
+     */
+    private void updateCrc() {
+        while (crcSize < memberSize) {
+            final int start = (int) crcSize & RING_MASK;
+            final int length = (int) Math.min(memberSize - crcSize, RING_SIZE - start);
+            crc.update(ring, start, length);
+            crcSize += length;
+        }
+    }
+
+    private int decode(final Huffman huffman) throws IOException {
+        fill();
+        final int entry = huffman.fast[(int) bits & ((1 << FAST_BITS) - 1)];
+        if ((entry != 0) && ((entry & 0xF) <= bitCount)) {
+            bits >>>= entry & 0xF;
+            bitCount -= entry & 0xF;
+            return entry >>> 4;
+        }
+        // Canonical decoding, one bit at a time, see zlib's puff.c:
+        int code = 0;
+        int first = 0;
+        int index = 0;
+        for (int length = 1; length <= MAX_BITS; ++length) {
+            code |= bits(1);
+            final int count = huffman.count[length];
+            if (code - count < first) {
+                return huffman.symbols[index + (code - first)];
+            }
+            index += count;
+            first += count;
+            first <<= 1;
+            code <<= 1;
+        }
+        throw new ZipException("Invalid Huffman code.");
+    }
+
+    /**
+     * Reads as many bytes as fit in the bit buffer, without failing at the end of the stream, so that codes can be looked up.
+     */
+    private void fill() throws IOException {
+        while (bitCount <= 56) {
+            final int b = rawByte();
+            if (b < 0) {
+                return;
+            }
+            bits |= ((long) b) << bitCount;
+            bitCount += 8;
+        }
+    }
+
+    private int bits(final int count) throws IOException {
+        while (bitCount < count) {
+            final int b = rawByte();
+            if (b < 0) {
+                throw new EOFException("Unexpected end of GZIP file.");
+            }
+            bits |= ((long) b) << bitCount;
+            bitCount += 8;
+        }
+        final int value = (int) (bits & ((1L << count) - 1));
+        bits >>>= count;
+        bitCount -= count;
+        return value;
+    }
+
+    private long readInt() throws IOException {
+        return byteOrEof() | (byteOrEof() << 8) | (byteOrEof() << 16) | (((long) byteOrEof()) << 24);
+    }
+
+    private void skip(final int count) throws IOException {
+        for (int i = 0; i < count; ++i) {
+            byteOrEof();
+        }
+    }
+
+    /**
+     * @return position of the next whole byte to read, i.e. excluding the whole bytes already read in the bit buffer.
+     */
+    private long bytePosition() {
+        return bufferStart + bufferPosition - (bitCount / 8);
+    }
+
+    private int byteOrEof() throws IOException {
+        final int b = nextByte();
+        if (b < 0) {
+            throw new EOFException("Unexpected end of GZIP file.");
+        }
+        return b;
+    }
+
+    /**
+     * Byte-aligned reads, e.g. of trailers and headers, first consume the whole bytes left in the bit buffer.
+     */
+    private int nextByte() throws IOException {
+        if (bitCount >= 8) {
+            final int b = (int) (bits & 0xFF);
+            bits >>>= 8;
+            bitCount -= 8;
+            return b;
+        }
+        return rawByte();
+    }
+
+    private int rawByte() throws IOException {
+        if (bufferPosition == bufferLength) {
+            bufferStart += bufferLength;
+            bufferPosition = 0;
+            bufferLength = Math.max(0, in.read(buffer));
+            if (bufferLength == 0) {
+                return -1;
+            }
+        }
+        return buffer[bufferPosition++] & 0xFF;
+    }
+
+    /**
+     * Canonical Huffman code, built from the length of the code of each symbol, as in deflate streams.
+     */
+    private static final class Huffman {
+        private final int[] count = new int[MAX_BITS + 1];
+        private final int[] symbols;
+        private final int[] offsets = new int[MAX_BITS + 1];
+        private final int[] nextCode = new int[MAX_BITS + 1];
+        private final int[] fast = new int[1 << FAST_BITS]; // Symbol, shifted left by 4 bits, and length of its code, or 0 if longer than FAST_BITS.
+
+        private Huffman(final int maxSymbols) {
+            this.symbols = new int[maxSymbols];
+        }
+
+        private void build(final int[] lengths, final int offset, final int symbolCount) throws ZipException {
+            Arrays.fill(count, 0);
+            for (int symbol = 0; symbol < symbolCount; ++symbol) {
+                ++count[lengths[offset + symbol]];
+            }
+            int left = 1;
+            for (int length = 1; length <= MAX_BITS; ++length) {
+                left = (left << 1) - count[length];
+                if (left < 0) {
+                    throw new ZipException("Over-subscribed Huffman code.");
+                }
+            }
+            count[0] = 0;
+            offsets[1] = 0;
+            for (int length = 1; length < MAX_BITS; ++length) {
+                offsets[length + 1] = offsets[length] + count[length];
+            }
+            int code = 0;
+            for (int length = 1; length <= MAX_BITS; ++length) {
+                code = (code + count[length - 1]) << 1;
+                nextCode[length] = code;
+            }
+            Arrays.fill(fast, 0);
+            for (int symbol = 0; symbol < symbolCount; ++symbol) {
+                final int length = lengths[offset + symbol];
+                if (length == 0) {
+                    continue;
+                }
+                symbols[offsets[length]++] = symbol;
+                final int symbolCode = nextCode[length]++;
+                if (length <= FAST_BITS) {
+                    // Codes are stored most significant bit first, whereas bits are read least significant bit first:
+                    final int reversed = Integer.reverse(symbolCode) >>> (32 - length);
+                    for (int i = reversed; i < fast.length; i += 1 << length) {
+                        fast[i] = (symbol << 4) | length;
+                    }
+                }
+            }
+        }
+    }
+}
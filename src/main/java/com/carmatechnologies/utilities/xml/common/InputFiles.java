@@ -0,0 +1,94 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+public final class InputFiles {
+    private static final String GLOB_CHARACTERS = "*?[{";
+
+    private InputFiles() {
+        // Utility class, do NOT instantiate.
+    }
+
+    /**
+     * Expands the provided paths, directories and globs to the regular files they designate:
+     * - paths to regular files are kept as-is,
+     * - directories are replaced by the regular files they contain, recursively, in lexicographic order,
+     * - globs, e.g. {@code logs/2015-*.xml.gz} or {@code logs/**.xml}, are replaced by the matching regular files, in lexicographic order.
+     * Files are returned in the same order as the provided patterns, and only once.
+     *
+     * @param patterns paths, directories and globs to expand.
+     * @return the corresponding regular files.
+     * @throws NoSuchFileException if a path does not exist, or a glob does not match any file.
+     * @throws IOException         if a directory cannot be read.
+     */
+    public static List<Path> expand(final Collection<String> patterns) throws IOException {
+        checkNotNull(patterns, "Patterns must NOT be null.");
+        final Set<Path> files = new LinkedHashSet<>();
+        for (final String pattern : patterns) {
+            final List<Path> matches = isGlob(pattern) ? glob(pattern) : list(Paths.get(pattern));
+            if (matches.isEmpty()) {
+                throw new NoSuchFileException(pattern);
+            }
+            files.addAll(matches);
+        }
+        return new ArrayList<>(files);
+    }
+
+    private static boolean isGlob(final String pattern) {
+        return pattern.chars().anyMatch(c -> GLOB_CHARACTERS.indexOf(c) != -1);
+    }
+
+    private static List<Path> list(final Path path) throws IOException {
+        if (Files.isDirectory(path)) {
+            return regularFiles(path, Integer.MAX_VALUE, file -> true);
+        }
+        if (Files.isRegularFile(path)) {
+            final List<Path> file = new ArrayList<>();
+            file.add(path);
+            return file;
+        }
+        throw new NoSuchFileException(path.toString());
+    }
+
+    /**
+     * Glob patterns only match within a directory, unless they contain {@code **}, hence the directory tree is only walked as deep as required.
+     */
+    private static List<Path> glob(final String pattern) throws IOException {
+        final Path path = Paths.get(pattern);
+        Path base = path.isAbsolute() ? path.getRoot() : Paths.get("");
+        int depth = path.getNameCount();
+        for (final Path name : path) {
+            if (isGlob(name.toString())) {
+                break;
+            }
+            base = base.resolve(name);
+            --depth;
+        }
+        if (!Files.isDirectory(base)) {
+            return new ArrayList<>();
+        }
+        final PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        return regularFiles(base, pattern.contains("**") ? Integer.MAX_VALUE : depth, matcher);
+    }
+
+    private static List<Path> regularFiles(final Path directory, final int depth, final PathMatcher matcher) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory, depth)) {
+            return paths.filter(Files::isRegularFile).filter(matcher::matches).sorted().collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Random access to the bytes of an {@code InputStream}, read ahead as far as requested, and kept in memory until discarded,
+ * so that a {@link XmlElementScanner} can scan a stream like a {@link MappedFile}.
+ * Memory usage is therefore bounded by the bytes between the oldest position not discarded yet and the furthest position requested.
+ * Windows are NOT thread-safe.
+ */
+public final class InputStreamWindow implements RandomAccessInput, Closeable {
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private byte[] buffer;
+    private ByteBuffer words;
+    private long bufferStart;
+    private int count;
+    private long discarded;
+    private boolean ended;
+
+    public InputStreamWindow(final InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE, 0);
+    }
+
+    /**
+     * @param start position of the first byte of the stream, e.g. if the stream starts in the middle of a file, as positions are absolute.
+     */
+    public InputStreamWindow(final InputStream in, final long start) {
+        this(in, DEFAULT_BUFFER_SIZE, start);
+    }
+
+    InputStreamWindow(final InputStream in, final int bufferSize) {
+        this(in, bufferSize, 0);
+    }
+
+    private InputStreamWindow(final InputStream in, final int bufferSize, final long start) {
+        this.in = checkNotNull(in, "InputStream must NOT be null.");
+        checkArgument(bufferSize > 0, "Buffer size must be strictly positive.");
+        checkArgument(start >= 0, "Start must be positive.");
+        this.buffer = new byte[bufferSize];
+        this.words = ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder());
+        this.bufferStart = start;
+        this.discarded = start;
+    }
+
+    /**
+     * @return the number of bytes of the stream if its end has been reached, or {@code Long.MAX_VALUE} otherwise.
+     */
+    @Override
+    public long size() {
+        return ended ? (bufferStart + count) : Long.MAX_VALUE;
+    }
+
+    @Override
+    public int get(final long position) throws IOException {
+        final long index = position - bufferStart;
+        if ((index >= 0) && (index < count)) {
+            return buffer[(int) index] & 0xFF;
+        }
+        checkNotDiscarded(position);
+        while (position >= bufferStart + count) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        return buffer[(int) (position - bufferStart)] & 0xFF;
+    }
+
+    @Override
+    public int get(final long position, final byte[] bytes, final int offset, final int length) throws IOException {
+        checkNotDiscarded(position);
+        while (position >= bufferStart + count) {
+            if (!fill()) {
+                return -1;
+            }
+        }
+        final int index = (int) (position - bufferStart);
+        final int copied = Math.min(length, count - index);
+        System.arraycopy(buffer, index, bytes, offset, copied);
+        return copied;
+    }
+
+    @Override
+    public long indexOf(final byte b, final long from) throws IOException {
+        checkNotDiscarded(from);
+        long position = from;
+        while (true) {
+            if (position < bufferStart + count) {
+                final int index = ByteBuffers.indexOf(words, (int) (position - bufferStart), count, b);
+                if (index >= 0) {
+                    return bufferStart + index;
+                }
+                position = bufferStart + count;
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the first position which can still be requested.
+     */
+    long start() {
+        return bufferStart;
+    }
+
+    /**
+     * @return the position following the last byte read ahead, i.e. which can be requested without reading the stream any further.
+     */
+    long end() {
+        return bufferStart + count;
+    }
+
+    @Override
+    public void discardBefore(final long position) {
+        discarded = Math.max(discarded, position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void checkNotDiscarded(final long position) {
+        checkArgument(position >= bufferStart, "Position %s was already discarded.", position);
+    }
+
+    /**
+     * Reads more bytes at the end of the buffer, after moving the bytes still required to its start, or growing it if these fill it.
+     *
+     * @return {@code false} if the end of the stream has been reached.
+     */
+    private boolean fill() throws IOException {
+        if (ended) {
+            return false;
+        }
+        if (count == buffer.length) {
+            final int shift = (int) Math.min(count, Math.max(0, discarded - bufferStart));
+            if (shift > 0) {
+                System.arraycopy(buffer, shift, buffer, 0, count - shift);
+                bufferStart += shift;
+                count -= shift;
+            }
+            if (count > buffer.length / 2) {
+                buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+                words = ByteBuffer.wrap(buffer).order(ByteOrder.nativeOrder());
+            }
+        }
+        final int read = in.read(buffer, count, buffer.length - count);
+        if (read < 0) {
+            ended = true;
+            return false;
+        }
+        count += read;
+        return true;
+    }
+}
@@ -49,6 +49,25 @@ public final class InputStreams {
         return (gzipMagicHeaderFor(in) == GZIPInputStream.GZIP_MAGIC) ? new GZIPInputStream(in) : in;
     }
 
+    /**
+     * Same as {@link InputStreams#autoGUnzip(InputStream)}, but GZipped streams are inflated ahead of the reader, on other threads,
+     * see {@link ParallelGZIPInputStream}.
+     *
+     * @param in      {@code InputStream} to automatically GUnzip.
+     * @param threads number of threads inflating BGZF members in parallel, or 0 to inflate in the reading thread, like {@code GZIPInputStream}.
+     * @return the GUnzipped stream corresponding to the provided stream.
+     * @throws IOException if an I/O error has occurred, on reading stream, or on resetting stream.
+     */
+    public static InputStream autoGUnzip(InputStream in, final int threads) throws IOException {
+        if (threads == 0) {
+            return autoGUnzip(in);
+        }
+        if (!in.markSupported()) {
+            in = new BufferedInputStream(in);
+        }
+        return (gzipMagicHeaderFor(in) == GZIPInputStream.GZIP_MAGIC) ? new ParallelGZIPInputStream(in, threads) : in;
+    }
+
     private static int gzipMagicHeaderFor(final InputStream in) throws IOException {
         in.mark(SIZE_OF_GZIP_MAGIC_HEADER_IN_BYTES);
         final int firstByte = in.read();
@@ -0,0 +1,245 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import static com.google.common.base.Charsets.US_ASCII;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes JSON values, escaped and encoded to UTF-8 on the fly, into a reusable byte buffer, which is written to the output stream when full,
+ * and at the end of each line, so that neither strings nor byte arrays are allocated for the values written.
+ * Values are written from {@code CharSequence}s, e.g. DOM nodes' values, or from character arrays, e.g. {@code XMLStreamReader#getTextCharacters},
+ * and strings can be written in several parts, e.g. consecutive text nodes, see {@link JsonWriter#beginString()}.
+ * Commas and colons are written as required. Like output streams, writers are NOT thread-safe.
+ */
+public final class JsonWriter {
+    private static final int DEFAULT_BUFFER_SIZE = 8 * 1024;
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes(US_ASCII);
+    private static final byte[] NULL = "null".getBytes(US_ASCII);
+
+    private final byte[] buffer;
+    private int position;
+    private OutputStream out;
+    private boolean[] hasValues = new boolean[16];
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public JsonWriter(final int bufferSize) {
+        checkArgument(bufferSize >= 16, "Buffer size must be at least 16 bytes.");
+        this.buffer = new byte[bufferSize];
+    }
+
+    /**
+     * @param out stream where to write the following lines, which may differ from one line to the next.
+     * @return this writer, to allow chaining calls.
+     */
+    public JsonWriter to(final OutputStream out) {
+        this.out = checkNotNull(out, "OutputStream must NOT be null.");
+        return this;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beforeValue();
+        write('{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        pop();
+        write('}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beforeValue();
+        write('[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        pop();
+        write(']');
+        return this;
+    }
+
+    public JsonWriter name(final CharSequence name) throws IOException {
+        return name("", name);
+    }
+
+    /**
+     * @return this writer, to allow chaining calls, after writing the concatenation of the provided prefix and name, without concatenating these.
+     */
+    public JsonWriter name(final CharSequence prefix, final CharSequence name) throws IOException {
+        checkState((depth > 0) && !afterName, "Names must be written in objects, before each value.");
+        beforeValue();
+        write('"');
+        escape(prefix, 0, prefix.length());
+        escape(name, 0, name.length());
+        write('"');
+        write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(final CharSequence value) throws IOException {
+        return beginString().appendString(value).endString();
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        for (final byte b : NULL) {
+            write(b);
+        }
+        return this;
+    }
+
+    /**
+     * Starts a string value, whose characters are then provided by any number of calls to {@code appendString}, until {@link JsonWriter#endString()}.
+     *
+     * @return this writer, to allow chaining calls.
+     */
+    public JsonWriter beginString() throws IOException {
+        beforeValue();
+        write('"');
+        return this;
+    }
+
+    public JsonWriter appendString(final CharSequence chars) throws IOException {
+        escape(chars, 0, chars.length());
+        return this;
+    }
+
+    public JsonWriter appendString(final char[] chars, final int start, final int length) throws IOException {
+        for (int i = start; i < start + length; ++i) {
+            escape(chars[i], (i + 1 < start + length) ? chars[i + 1] : 0);
+            if (Character.isHighSurrogate(chars[i]) && (i + 1 < start + length) && Character.isLowSurrogate(chars[i + 1])) {
+                ++i;
+            }
+        }
+        return this;
+    }
+
+    public JsonWriter endString() throws IOException {
+        write('"');
+        return this;
+    }
+
+    /**
+     * Ends the current line, i.e. top-level value, and writes it to the output stream.
+     *
+     * @return this writer, to allow chaining calls.
+     */
+    public JsonWriter endLine() throws IOException {
+        checkState(depth == 0, "Lines must end after top-level values.");
+        write('\n');
+        flush();
+        return this;
+    }
+
+    public void flush() throws IOException {
+        checkState(out != null, "OutputStream must be set before writing.");
+        out.write(buffer, 0, position);
+        position = 0;
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+        } else if ((depth > 0) && hasValues[depth]) {
+            write(',');
+        }
+        hasValues[depth] = true;
+    }
+
+    private void push() {
+        if (++depth == hasValues.length) {
+            hasValues = Arrays.copyOf(hasValues, 2 * hasValues.length);
+        }
+        hasValues[depth] = false;
+    }
+
+    private void pop() {
+        checkState(depth > 0, "No object or array to end.");
+        --depth;
+    }
+
+    private void escape(final CharSequence chars, final int start, final int end) throws IOException {
+        for (int i = start; i < end; ++i) {
+            final char c = chars.charAt(i);
+            escape(c, (i + 1 < end) ? chars.charAt(i + 1) : 0);
+            if (Character.isHighSurrogate(c) && (i + 1 < end) && Character.isLowSurrogate(chars.charAt(i + 1))) {
+                ++i;
+            }
+        }
+    }
+
+    /**
+     * Writes the provided character, escaped and encoded to UTF-8, together with the next one if they form a surrogate pair.
+     */
+    private void escape(final char c, final char next) throws IOException {
+        ensureCapacity(6);
+        if (c >= 0x80) {
+            if (Character.isHighSurrogate(c) && Character.isLowSurrogate(next)) {
+                final int codePoint = Character.toCodePoint(c, next);
+                buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+                buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                buffer[position++] = '?'; // Unpaired surrogate, which UTF-8 cannot encode.
+            } else if (c < 0x800) {
+                buffer[position++] = (byte) (0xC0 | (c >> 6));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            } else {
+                buffer[position++] = (byte) (0xE0 | (c >> 12));
+                buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                buffer[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        } else if ((c == '"') || (c == '\\')) {
+            buffer[position++] = '\\';
+            buffer[position++] = (byte) c;
+        } else if (c >= 0x20) {
+            buffer[position++] = (byte) c;
+        } else {
+            buffer[position++] = '\\';
+            switch (c) {
+                case '\n':
+                    buffer[position++] = 'n';
+                    break;
+                case '\r':
+                    buffer[position++] = 'r';
+                    break;
+                case '\t':
+                    buffer[position++] = 't';
+                    break;
+                default:
+                    buffer[position++] = 'u';
+                    buffer[position++] = '0';
+                    buffer[position++] = '0';
+                    buffer[position++] = HEX_DIGITS[c >> 4];
+                    buffer[position++] = HEX_DIGITS[c & 0xF];
+            }
+        }
+    }
+
+    private void write(final int b) throws IOException {
+        ensureCapacity(1);
+        buffer[position++] = (byte) b;
+    }
+
+    private void ensureCapacity(final int bytes) throws IOException {
+        if (position + bytes > buffer.length) {
+            flush();
+        }
+    }
+}
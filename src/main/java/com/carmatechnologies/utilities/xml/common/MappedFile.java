@@ -0,0 +1,142 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Read-only, memory-mapped, file of any size.
+ * A {@code MappedByteBuffer} cannot exceed 2 GB, hence files are mapped through fixed-size windows, all mapped upfront, as mapping only reserves address space.
+ * The channel is therefore never used afterwards, which matters as it gets closed if a thread using it is interrupted.
+ * Cursors are NOT thread-safe, but as many as required can be created, e.g. one per thread, each reading a different part of the file.
+ */
+public final class MappedFile implements Closeable {
+    private static final int DEFAULT_WINDOW_SIZE = 256 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long size;
+    private final int windowSize;
+    private final MappedByteBuffer[] windows;
+
+    public MappedFile(final Path path) throws IOException {
+        this(path, DEFAULT_WINDOW_SIZE);
+    }
+
+    MappedFile(final Path path, final int windowSize) throws IOException {
+        checkNotNull(path, "Path must NOT be null.");
+        checkArgument(windowSize > 0, "Window size must be strictly positive.");
+        this.channel = FileChannel.open(path, StandardOpenOption.READ);
+        this.size = channel.size();
+        this.windowSize = windowSize;
+        this.windows = new MappedByteBuffer[(int) ((size + windowSize - 1) / windowSize)];
+        for (int i = 0; i < windows.length; ++i) {
+            final long windowStart = (long) i * windowSize;
+            windows[i] = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(windowSize, size - windowStart));
+        }
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /**
+     * Unlike cursors' methods, this is thread-safe, as it only uses absolute reads of the shared windows, at the cost of locating the window each time.
+     *
+     * @param position absolute position in the file.
+     * @return the byte at the provided position, as an unsigned value, or -1 beyond the end of the file.
+     */
+    public int get(final long position) {
+        if (position >= size) {
+            return -1;
+        }
+        return windows[(int) (position / windowSize)].get((int) (position % windowSize)) & 0xFF;
+    }
+
+    /**
+     * Thread-safe, like {@link MappedFile#get(long)}.
+     *
+     * @param position absolute position in the file, which must be a multiple of 8 if the window size is, so that the value is in a single window.
+     * @return the big-endian long at the provided position.
+     */
+    public long getLong(final long position) {
+        return windows[(int) (position / windowSize)].getLong((int) (position % windowSize));
+    }
+
+    public Cursor newCursor() {
+        return new Cursor();
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Random access to the file's bytes, optimised for mostly sequential access.
+     */
+    public final class Cursor implements RandomAccessInput {
+        private ByteBuffer window;
+        private long windowStart = -1;
+        private long windowEnd = -1;
+
+        @Override
+        public long size() {
+            return size;
+        }
+
+        @Override
+        public int get(final long position) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            if ((position < windowStart) || (position >= windowEnd)) {
+                moveTo(position);
+            }
+            return window.get((int) (position - windowStart)) & 0xFF;
+        }
+
+        @Override
+        public int get(final long position, final byte[] bytes, final int offset, final int length) throws IOException {
+            if (position >= size) {
+                return -1;
+            }
+            if ((position < windowStart) || (position >= windowEnd)) {
+                moveTo(position);
+            }
+            final int count = (int) Math.min(length, windowEnd - position);
+            window.position((int) (position - windowStart));
+            window.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public long indexOf(final byte b, final long from) throws IOException {
+            for (long position = from; position < size; position = windowEnd) {
+                if ((position < windowStart) || (position >= windowEnd)) {
+                    moveTo(position);
+                }
+                final int index = ByteBuffers.indexOf(window, (int) (position - windowStart), (int) (windowEnd - windowStart), b);
+                if (index >= 0) {
+                    return windowStart + index;
+                }
+            }
+            return -1;
+        }
+
+        private void moveTo(final long position) {
+            final int index = (int) (position / windowSize);
+            windowStart = (long) index * windowSize;
+            windowEnd = Math.min(size, windowStart + windowSize);
+            // Each cursor has its own position in the shared window, and reads words in native order, to search bytes eight at a time:
+            window = windows[index].duplicate().order(ByteOrder.nativeOrder());
+        }
+    }
+}
@@ -1,6 +1,8 @@
 package com.carmatechnologies.utilities.xml.common;
 
 import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 
 public final class OutputStreams {
@@ -9,14 +11,41 @@ public final class OutputStreams {
     }
 
     /**
-     * Wraps the provided {@code OutputStream} in a {@code BufferedOutputStream} if not already done.
+     * Wraps the provided {@code OutputStream} in a {@code BufferedOutputStream} if not already buffered,
+     * either by a {@code BufferedOutputStream}, by an {@link AsynchronousOutputStream}, or by a {@link ParallelGZIPOutputStream}.
      *
      * @param in {@code OutputStream} to buffer.
      * @return {@code BufferedOutputStream} corresponding to the provided {@code OutputStream}.
      */
     public static OutputStream buffered(final OutputStream in) {
-        return (in instanceof BufferedOutputStream)
+        return ((in instanceof BufferedOutputStream) || (in instanceof AsynchronousOutputStream) || (in instanceof ParallelGZIPOutputStream))
                 ? in
                 : new BufferedOutputStream(in);
     }
+
+    /**
+     * Compresses the provided {@code OutputStream} with gzip, on several threads, into independent members, see {@link ParallelGZIPOutputStream}.
+     * The result is readable by standard tools, and by {@link InputStreams#autoGUnzip(InputStream)}, in parallel if provided with threads.
+     *
+     * @param out     {@code OutputStream} to gzip.
+     * @param threads number of threads compressing the output in parallel.
+     * @return gzipped {@code OutputStream} corresponding to the provided {@code OutputStream}, which must be closed to write the last bytes.
+     */
+    public static OutputStream gzipped(final OutputStream out, final int threads) {
+        return new ParallelGZIPOutputStream(out, threads);
+    }
+
+    /**
+     * Flushes and closes the provided {@code OutputStream}, swallowing any {@code IOException}.
+     *
+     * @param out {@code OutputStream} to flush and close.
+     */
+    public static void closeQuietly(final OutputStream out) {
+        try {
+            out.flush();
+            out.close();
+        } catch (IOException e) {
+            // Voluntarily swallowed: nothing else to do at the end of the processing.
+        }
+    }
 }
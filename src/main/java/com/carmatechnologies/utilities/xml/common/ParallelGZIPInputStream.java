@@ -0,0 +1,292 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.PushbackInputStream;
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Drop-in replacement for {@code GZIPInputStream}, which decompresses ahead of the reader, on other threads:
+ * - BGZF files, e.g. as produced by {@code bgzip}, are made of small gzip members, each recording its compressed size in its header.
+ * Members can therefore be read without being inflated, and are inflated in parallel, by a pool of threads.
+ * - other gzip files, including multi-member ones, are inflated sequentially, but on a read-ahead thread, so that
+ * decompression overlaps with whatever the reader does with decompressed bytes, e.g. parsing.
+ * In both cases, decompressed blocks are handed to the reader in order, and the number of blocks decompressed ahead is bounded.
+ * A file may start with BGZF members, and continue with other members, in which case the rest of the file is inflated sequentially.
+ */
+public final class ParallelGZIPInputStream extends InputStream {
+    private static final int HEADER_SIZE = 10;
+    private static final int TRAILER_SIZE = 8;
+    private static final int FLG_OFFSET = 3;
+    private static final int FEXTRA = 4;
+    private static final int MAX_EXTRA_SIZE = 0xFFFF;
+    private static final int MAX_BGZF_INFLATED_SIZE = 64 * 1024;
+    private static final int READ_AHEAD_BLOCK_SIZE = 64 * 1024;
+    private static final int BLOCKS_PER_THREAD = 4;
+    private static final byte[] END_OF_STREAM_BYTES = new byte[0];
+    private static final Future<byte[]> END_OF_STREAM = CompletableFuture.completedFuture(END_OF_STREAM_BYTES);
+
+    private final PushbackInputStream in;
+    private final ExecutorService inflaters;
+    private final ExecutorService reader;
+    private final BlockingQueue<Future<byte[]>> blocks;
+    private byte[] block = new byte[0];
+    private int position;
+    private boolean ended;
+
+    /**
+     * @param in      gzipped stream.
+     * @param threads number of threads inflating BGZF members in parallel. One more thread reads the provided stream.
+     */
+    public ParallelGZIPInputStream(final InputStream in, final int threads) {
+        checkNotNull(in, "InputStream must NOT be null.");
+        checkArgument(threads > 0, "Number of threads must be strictly positive.");
+        this.in = new PushbackInputStream(in, HEADER_SIZE + 2 + MAX_EXTRA_SIZE);
+        this.inflaters = Executors.newFixedThreadPool(threads, threadFactory("gzip-inflater-%d"));
+        this.reader = Executors.newSingleThreadExecutor(threadFactory("gzip-reader-%d"));
+        // Blocks are queued in order, as futures, hence the queue also bounds the number of blocks inflated ahead:
+        this.blocks = new ArrayBlockingQueue<>(BLOCKS_PER_THREAD * threads);
+        reader.submit(this::readMembers);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!hasRemaining()) {
+            return -1;
+        }
+        return block[position++] & 0xFF;
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!hasRemaining()) {
+            return -1;
+        }
+        final int count = Math.min(length, block.length - position);
+        System.arraycopy(block, position, bytes, offset, count);
+        position += count;
+        return count;
+    }
+
+    @Override
+    public int available() {
+        return block.length - position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        ended = true;
+        reader.shutdownNow();
+        inflaters.shutdownNow();
+        in.close();
+    }
+
+    private boolean hasRemaining() throws IOException {
+        while (position == block.length) {
+            if (ended) {
+                return false;
+            }
+            final byte[] next = take();
+            if (next == END_OF_STREAM_BYTES) {
+                ended = true;
+                return false;
+            }
+            block = next;
+            position = 0;
+        }
+        return true;
+    }
+
+    private byte[] take() throws IOException {
+        try {
+            return blocks.take().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for gzipped input to be inflated.");
+        } catch (ExecutionException e) {
+            ended = true;
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Failed to inflate gzipped input.", e.getCause());
+        }
+    }
+
+    /**
+     * Runs on the reader thread, until the end of the stream, or until this stream is closed.
+     */
+    private Void readMembers() throws InterruptedException {
+        try {
+            byte[] member;
+            while ((member = readBgzfMember()) != null) {
+                final byte[] bgzfMember = member;
+                blocks.put(inflaters.submit(() -> inflate(bgzfMember)));
+            }
+            if (!isAtEndOfStream()) {
+                readAhead(new GZIPInputStream(in, READ_AHEAD_BLOCK_SIZE));
+            }
+        } catch (IOException | RuntimeException e) {
+            final CompletableFuture<byte[]> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            blocks.put(failure);
+        }
+        blocks.put(END_OF_STREAM);
+        return null;
+    }
+
+    private void readAhead(final InputStream gunzipped) throws IOException, InterruptedException {
+        while (true) {
+            final byte[] buffer = new byte[READ_AHEAD_BLOCK_SIZE];
+            int count = 0;
+            int read;
+            while ((count < buffer.length) && ((read = gunzipped.read(buffer, count, buffer.length - count)) != -1)) {
+                count += read;
+            }
+            if (count == 0) {
+                return;
+            }
+            blocks.put(CompletableFuture.completedFuture((count == buffer.length) ? buffer : Arrays.copyOf(buffer, count)));
+        }
+    }
+
+    private boolean isAtEndOfStream() throws IOException {
+        final int b = in.read();
+        if (b == -1) {
+            return true;
+        }
+        in.unread(b);
+        return false;
+    }
+
+    /**
+     * Reads the next member if it is a BGZF one, i.e. if its header contains a "BC" extra subfield, with the member's size.
+     * Otherwise, pushes back what was read of its header, so that it can be read again, and returns {@code null}.
+     */
+    private byte[] readBgzfMember() throws IOException {
+        final byte[] header = new byte[HEADER_SIZE + 2];
+        final int headerSize = readFully(header);
+        if ((headerSize < header.length)
+                || ((header[0] & 0xFF) != 0x1F) || ((header[1] & 0xFF) != 0x8B)
+                || ((header[FLG_OFFSET] & FEXTRA) == 0)) {
+            in.unread(header, 0, headerSize);
+            return null;
+        }
+        final byte[] extra = new byte[unsignedShort(header, HEADER_SIZE)];
+        final int extraSize = readFully(extra);
+        final int memberSize = (extraSize == extra.length) ? bgzfMemberSize(extra) : -1;
+        if (memberSize == -1) {
+            in.unread(extra, 0, extraSize);
+            in.unread(header, 0, headerSize);
+            return null;
+        }
+        final int headerAndExtraSize = header.length + extra.length;
+        if (memberSize < headerAndExtraSize + TRAILER_SIZE) {
+            throw new ZipException("Invalid BGZF block size: " + memberSize + ".");
+        }
+        final byte[] member = new byte[memberSize];
+        System.arraycopy(header, 0, member, 0, header.length);
+        System.arraycopy(extra, 0, member, header.length, extra.length);
+        if (readFully(member, headerAndExtraSize) < memberSize) {
+            throw new EOFException("Unexpected end of BGZF block.");
+        }
+        return member;
+    }
+
+    private int readFully(final byte[] bytes) throws IOException {
+        return readFully(bytes, 0);
+    }
+
+    private int readFully(final byte[] bytes, final int offset) throws IOException {
+        int count = offset;
+        int read;
+        while ((count < bytes.length) && ((read = in.read(bytes, count, bytes.length - count)) != -1)) {
+            count += read;
+        }
+        return count;
+    }
+
+    /**
+     * @return the total size of the member, from its "BC" extra subfield, or -1 if there is none.
+     */
+    private static int bgzfMemberSize(final byte[] extra) {
+        int i = 0;
+        while (i + 4 <= extra.length) {
+            final int subfieldSize = unsignedShort(extra, i + 2);
+            if ((extra[i] == 'B') && (extra[i + 1] == 'C') && (subfieldSize == 2) && (i + 6 <= extra.length)) {
+                return unsignedShort(extra, i + 4) + 1;
+            }
+            i += 4 + subfieldSize;
+        }
+        return -1;
+    }
+
+    /**
+     * Runs on an inflater thread.
+     */
+    private static byte[] inflate(final byte[] member) throws IOException {
+        final int dataOffset = HEADER_SIZE + 2 + unsignedShort(member, HEADER_SIZE);
+        final int trailerOffset = member.length - TRAILER_SIZE;
+        final int inflatedSize = unsignedInt(member, trailerOffset + 4);
+        if ((inflatedSize < 0) || (inflatedSize > MAX_BGZF_INFLATED_SIZE)) {
+            throw new ZipException("Invalid BGZF block: inflated size exceeds 64 KB.");
+        }
+        final byte[] inflated = new byte[inflatedSize];
+        final Inflater inflater = new Inflater(true);
+        try {
+            inflater.setInput(member, dataOffset, trailerOffset - dataOffset);
+            int count = 0;
+            while ((count < inflated.length) && !inflater.finished()) {
+                final int inflatedCount = inflater.inflate(inflated, count, inflated.length - count);
+                if ((inflatedCount == 0) && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new ZipException("Truncated BGZF block.");
+                }
+                count += inflatedCount;
+            }
+        } catch (DataFormatException e) {
+            throw new ZipException("Invalid BGZF block: " + e.getMessage());
+        } finally {
+            inflater.end();
+        }
+        final CRC32 crc = new CRC32();
+        crc.update(inflated);
+        if (crc.getValue() != (unsignedInt(member, trailerOffset) & 0xFFFFFFFFL)) {
+            throw new ZipException("Corrupt BGZF block: CRC mismatch.");
+        }
+        return inflated;
+    }
+
+    private static int unsignedShort(final byte[] bytes, final int offset) {
+        return (bytes[offset] & 0xFF) | ((bytes[offset + 1] & 0xFF) << 8);
+    }
+
+    private static int unsignedInt(final byte[] bytes, final int offset) {
+        return unsignedShort(bytes, offset) | (unsignedShort(bytes, offset + 2) << 16);
+    }
+
+    private static ThreadFactory threadFactory(final String nameFormat) {
+        return new ThreadFactoryBuilder().setNameFormat(nameFormat).setDaemon(true).build();
+    }
+}
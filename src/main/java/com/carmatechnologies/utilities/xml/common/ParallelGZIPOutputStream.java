@@ -0,0 +1,211 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Drop-in replacement for {@code GZIPOutputStream}, which compresses on several threads, by writing a BGZF file, like {@code bgzip} does:
+ * bytes are cut in blocks of at most 65280 bytes, each compressed, in parallel, into its own gzip member, recording its compressed size in its header.
+ * Members are written in order, followed by an empty member marking the end of the file, and the number of blocks compressed ahead is bounded.
+ * The result is a valid multi-member gzip file, which standard tools, e.g. {@code gzip -d}, decompress as usual,
+ * and which {@link ParallelGZIPInputStream} inflates in parallel.
+ * Like {@code GZIPOutputStream}, flushing does not compress the pending bytes, which would otherwise degrade compression, e.g. when serializers
+ * flush after each element: only complete blocks are written, and only closing this stream writes the last, partial, one.
+ */
+public final class ParallelGZIPOutputStream extends OutputStream {
+    public static final int BLOCK_SIZE = 0xFF00;
+    private static final int MAX_MEMBER_SIZE = 64 * 1024;
+    private static final int HEADER_SIZE = 18;
+    private static final int TRAILER_SIZE = 8;
+    private static final int BSIZE_OFFSET = 16;
+    private static final byte[] HEADER = {
+            0x1F, (byte) 0x8B, 8, 4, // Magic number, deflate, FEXTRA.
+            0, 0, 0, 0, 0, (byte) 0xFF, // No modification time, no extra flags, unknown OS.
+            6, 0, 'B', 'C', 2, 0 // Extra field: "BC" subfield, of 2 bytes, i.e. BSIZE, the size of the member minus 1.
+    };
+    private static final byte[] END_OF_FILE = {
+            0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF, 6, 0, 'B', 'C', 2, 0, 0x1B, 0, 3, 0, 0, 0, 0, 0, 0, 0, 0, 0
+    };
+    private static final int BLOCKS_PER_THREAD = 4;
+
+    private final OutputStream out;
+    private final int level;
+    private final int maxPending;
+    private final ExecutorService deflaters;
+    private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+    private byte[] block = new byte[BLOCK_SIZE];
+    private int position;
+    private boolean closed;
+    private IOException failure;
+
+    public ParallelGZIPOutputStream(final OutputStream out, final int threads) {
+        this(out, threads, Deflater.DEFAULT_COMPRESSION);
+    }
+
+    /**
+     * @param out     stream where to write the gzipped bytes. It is only written to by the thread writing to this stream.
+     * @param threads number of threads compressing blocks in parallel.
+     * @param level   compression level, from 0 to 9, see {@code Deflater}.
+     */
+    public ParallelGZIPOutputStream(final OutputStream out, final int threads, final int level) {
+        this.out = checkNotNull(out, "OutputStream must NOT be null.");
+        checkArgument(threads > 0, "Number of threads must be strictly positive.");
+        checkArgument((level == Deflater.DEFAULT_COMPRESSION) || ((level >= Deflater.NO_COMPRESSION) && (level <= Deflater.BEST_COMPRESSION)),
+                "Compression level must be between 0 and 9.");
+        this.level = level;
+        this.maxPending = BLOCKS_PER_THREAD * threads;
+        this.deflaters = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder().setNameFormat("gzip-deflater-%d").setDaemon(true).build());
+    }
+
+    @Override
+    public void write(final int b) throws IOException {
+        checkOpen();
+        block[position++] = (byte) b;
+        if (position == block.length) {
+            submit();
+        }
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+        checkNotNull(bytes, "Bytes must NOT be null.");
+        checkOpen();
+        int start = offset;
+        final int end = offset + length;
+        while (start < end) {
+            final int count = Math.min(end - start, block.length - position);
+            System.arraycopy(bytes, start, block, position, count);
+            position += count;
+            start += count;
+            if (position == block.length) {
+                submit();
+            }
+        }
+    }
+
+    /**
+     * Writes the blocks already compressed, and flushes the underlying stream.
+     */
+    @Override
+    public void flush() throws IOException {
+        checkOpen();
+        while (!pending.isEmpty() && pending.peekFirst().isDone()) {
+            writeFirstPending();
+        }
+        out.flush();
+    }
+
+    /**
+     * Writes the last block, and the end of the file. Failures to do so are rethrown by further calls, so that they are not lost
+     * if the first call swallowed them.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            if (failure != null) {
+                throw failure;
+            }
+            return;
+        }
+        closed = true;
+        try {
+            if (position > 0) {
+                submit();
+            }
+            while (!pending.isEmpty()) {
+                writeFirstPending();
+            }
+            out.write(END_OF_FILE);
+            out.flush();
+        } catch (IOException e) {
+            failure = e;
+            throw e;
+        } finally {
+            deflaters.shutdownNow();
+            out.close();
+        }
+    }
+
+    private void submit() throws IOException {
+        final byte[] bytes = block;
+        final int length = position;
+        pending.addLast(deflaters.submit(() -> deflate(bytes, length, level)));
+        block = new byte[BLOCK_SIZE];
+        position = 0;
+        if (pending.size() > maxPending) {
+            writeFirstPending();
+        }
+    }
+
+    private void writeFirstPending() throws IOException {
+        try {
+            out.write(pending.removeFirst().get());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for output to be gzipped.");
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to gzip output.", e.getCause());
+        }
+    }
+
+    private void checkOpen() throws IOException {
+        if (closed) {
+            throw new IOException("Stream closed.");
+        }
+    }
+
+    /**
+     * Runs on a deflater thread.
+     *
+     * @return the BGZF member of the provided bytes.
+     */
+    private static byte[] deflate(final byte[] bytes, final int length, final int level) {
+        final byte[] member = new byte[MAX_MEMBER_SIZE];
+        int size = HEADER_SIZE;
+        final Deflater deflater = new Deflater(level, true);
+        try {
+            deflater.setInput(bytes, 0, length);
+            deflater.finish();
+            while (!deflater.finished()) {
+                // Blocks are small enough for even incompressible ones to fit in a member, stored as is, with some overhead:
+                checkState(size < MAX_MEMBER_SIZE - TRAILER_SIZE, "Deflated block exceeds maximum BGZF block size.");
+                size += deflater.deflate(member, size, MAX_MEMBER_SIZE - TRAILER_SIZE - size);
+            }
+        } finally {
+            deflater.end();
+        }
+        System.arraycopy(HEADER, 0, member, 0, HEADER.length);
+        final CRC32 crc = new CRC32();
+        crc.update(bytes, 0, length);
+        writeUnsignedShort(member, BSIZE_OFFSET, size + TRAILER_SIZE - 1);
+        writeUnsignedInt(member, size, (int) crc.getValue());
+        writeUnsignedInt(member, size + 4, length);
+        return Arrays.copyOf(member, size + TRAILER_SIZE);
+    }
+
+    private static void writeUnsignedShort(final byte[] bytes, final int offset, final int value) {
+        bytes[offset] = (byte) value;
+        bytes[offset + 1] = (byte) (value >> 8);
+    }
+
+    private static void writeUnsignedInt(final byte[] bytes, final int offset, final int value) {
+        writeUnsignedShort(bytes, offset, value);
+        writeUnsignedShort(bytes, offset + 2, value >> 16);
+    }
+}
@@ -0,0 +1,127 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Concatenation of the elements with the provided local name found in an XML stream, within a synthetic root element, so that a parser only
+ * tokenizes these elements, and everything else, e.g. headers, comments, or other elements, is skipped by a byte-level {@link XmlElementScanner}.
+ * Elements whose ancestors declare namespaces are wrapped in a synthetic element re-declaring these, so that their names still resolve, e.g.:
+ * {@code <xml-stream-filter-prescan><xml-stream-filter-context xmlns:x="urn:x"><x:item/></xml-stream-filter-context></xml-stream-filter-prescan>},
+ * and consecutive elements in the same namespace context, e.g. all children of the root element, share this wrapper.
+ * Elements are only located as the parser reads them, hence scanning and parsing happen in a single pass over the stream,
+ * and only the current element, and the bytes scanned ahead of it, are kept in memory.
+ * Like the scanner, this requires UTF-8 input, and entities declared in a DTD are NOT available to the parser anymore.
+ */
+public final class PrescanningInputStream extends InputStream {
+    private static final String ROOT_ELEMENT = "xml-stream-filter-prescan";
+    private static final String CONTEXT_ELEMENT = "xml-stream-filter-context";
+    private static final byte[] ROOT_START_TAG = ("<" + ROOT_ELEMENT + ">").getBytes(UTF_8);
+    private static final byte[] ROOT_END_TAG = ("</" + ROOT_ELEMENT + ">").getBytes(UTF_8);
+    private static final byte[] CONTEXT_START_TAG = ("<" + CONTEXT_ELEMENT).getBytes(UTF_8);
+    private static final byte[] CONTEXT_END_TAG = ("</" + CONTEXT_ELEMENT + ">").getBytes(UTF_8);
+
+    private final RandomAccessInput input;
+    private final Closeable closeable;
+    private final XmlElementScanner scanner;
+    private final Deque<InputStream> pending = new ArrayDeque<>();
+    private final byte[] singleByte = new byte[1];
+    private InputStream current = new ByteArrayInputStream(ROOT_START_TAG);
+    private byte[] namespaceContext = new byte[0];
+    private boolean ended;
+
+    /**
+     * @param in        gunzipped XML stream.
+     * @param localName local name of the elements to hand to the parser, whatever their prefix.
+     */
+    public PrescanningInputStream(final InputStream in, final String localName) {
+        final InputStreamWindow window = new InputStreamWindow(in);
+        this.input = window;
+        this.closeable = window;
+        this.scanner = new XmlElementScanner(window, localName);
+    }
+
+    /**
+     * @param input   input scanned by the provided scanner, which is NOT closed with this stream, e.g. to keep scanning it afterwards.
+     * @param scanner scanner keeping track of namespace declarations, e.g. from the middle of the input, see
+     *                {@link XmlElementScanner#XmlElementScanner(RandomAccessInput, String, long, long, byte[])}, whose elements, up to the end
+     *                of its range, are handed to the parser.
+     */
+    public PrescanningInputStream(final RandomAccessInput input, final XmlElementScanner scanner) {
+        this.input = checkNotNull(input, "Input must NOT be null.");
+        this.closeable = null;
+        this.scanner = checkNotNull(scanner, "Scanner must NOT be null.");
+    }
+
+    @Override
+    public int read() throws IOException {
+        return (read(singleByte, 0, 1) == -1) ? -1 : (singleByte[0] & 0xFF);
+    }
+
+    @Override
+    public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        // Elements are typically small, hence as many as possible are returned at once, to limit per-read overhead in the parser:
+        int total = 0;
+        while ((current != null) && (total < length)) {
+            final int count = current.read(bytes, offset + total, length - total);
+            if (count == -1) {
+                current = next();
+            } else {
+                total += count;
+            }
+        }
+        return ((total == 0) && (current == null)) ? -1 : total;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closeable != null) {
+            closeable.close();
+        }
+    }
+
+    private InputStream next() throws IOException {
+        if (!pending.isEmpty()) {
+            return pending.poll();
+        }
+        if (ended) {
+            return null;
+        }
+        if (!scanner.next()) {
+            ended = true;
+            closeNamespaceContext();
+            pending.add(new ByteArrayInputStream(ROOT_END_TAG));
+            return pending.poll();
+        }
+        final byte[] elementNamespaceContext = scanner.namespaceContext();
+        if ((elementNamespaceContext != namespaceContext) && !Arrays.equals(elementNamespaceContext, namespaceContext)) {
+            closeNamespaceContext();
+            namespaceContext = elementNamespaceContext;
+            if (namespaceContext.length > 0) {
+                final byte[] contextStartTag = Arrays.copyOf(CONTEXT_START_TAG, CONTEXT_START_TAG.length + namespaceContext.length + 1);
+                System.arraycopy(namespaceContext, 0, contextStartTag, CONTEXT_START_TAG.length, namespaceContext.length);
+                contextStartTag[contextStartTag.length - 1] = '>';
+                pending.add(new ByteArrayInputStream(contextStartTag));
+            }
+        }
+        pending.add(input.newInputStream(scanner.elementStart(), scanner.elementEnd()));
+        return pending.poll();
+    }
+
+    private void closeNamespaceContext() {
+        if (namespaceContext.length > 0) {
+            pending.add(new ByteArrayInputStream(CONTEXT_END_TAG));
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Random access to the bytes of an input, e.g. a {@link MappedFile}, or a window over an {@code InputStream}, as scanned by {@link XmlElementScanner}.
+ */
+public interface RandomAccessInput {
+    /**
+     * @return the number of bytes of the input, which may only be known once a byte beyond its end has been requested.
+     */
+    long size();
+
+    /**
+     * @param position absolute position in the input.
+     * @return the byte at the provided position, as an unsigned value, or -1 beyond the end of the input.
+     */
+    int get(long position) throws IOException;
+
+    /**
+     * Copies up to {@code length} bytes from the provided position in the input.
+     *
+     * @return number of bytes copied, or -1 beyond the end of the input.
+     */
+    int get(long position, byte[] bytes, int offset, int length) throws IOException;
+
+    /**
+     * @return position of the next occurrence of the provided byte at or after the provided position, or -1 if there is none.
+     */
+    long indexOf(byte b, long from) throws IOException;
+
+    /**
+     * Hints that bytes before the provided position will not be requested anymore, so that these can be released.
+     */
+    default void discardBefore(final long position) {
+        // Nothing to release by default.
+    }
+
+    /**
+     * @return an {@code InputStream} over the bytes between the provided positions, start included, end excluded.
+     */
+    default InputStream newInputStream(final long start, final long end) {
+        return new InputStream() {
+            private long position = start;
+
+            @Override
+            public int read() throws IOException {
+                return (position < end) ? get(position++) : -1;
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+                if (length == 0) {
+                    return 0;
+                }
+                if (position >= end) {
+                    return -1;
+                }
+                final int count = get(position, bytes, offset, (int) Math.min(length, end - position));
+                position += count;
+                return count;
+            }
+        };
+    }
+}
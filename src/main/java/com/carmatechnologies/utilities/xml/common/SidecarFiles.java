@@ -0,0 +1,129 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Helpers shared by the files recorded next to the files they describe, e.g. indexes or checkpoints: these are written atomically,
+ * record the size and modification time of the described file, to detect stale ones, and store integers as variable-length integers,
+ * i.e. 7 bits per byte, least significant first, with the highest bit set on all bytes but the last.
+ */
+public final class SidecarFiles {
+    /**
+     * Maximum length of a variable-length long, in bytes.
+     */
+    public static final int MAX_VAR_LONG_SIZE = 10;
+
+    private SidecarFiles() {
+        // Utility class, do NOT instantiate.
+    }
+
+    /**
+     * Writer of the content of a sidecar file, given the path of the temporary file to write it to.
+     */
+    @FunctionalInterface
+    public interface Writer {
+        void write(final Path temporaryFile) throws IOException;
+    }
+
+    /**
+     * Writes the provided file through a temporary file, in the same directory, atomically moved to the provided path once complete,
+     * replacing the previous file, if any, so that a failed write does not leave a corrupt file behind. The temporary file is deleted otherwise.
+     */
+    public static void writeAtomically(final Path file, final Writer writer) throws IOException {
+        checkNotNull(file, "File must NOT be null.");
+        checkNotNull(writer, "Writer must NOT be null.");
+        final Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        try {
+            writer.write(temporaryFile);
+            Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile);
+        }
+    }
+
+    /**
+     * @return the modification time of the provided file, in milliseconds since the epoch, as recorded in sidecar files.
+     */
+    public static long lastModified(final Path file) throws IOException {
+        return Files.getLastModifiedTime(file).toMillis();
+    }
+
+    /**
+     * @return {@code true} if the provided file has the provided size and modification time, i.e. has not been modified since these were recorded.
+     */
+    public static boolean isUpToDate(final Path file, final long size, final long lastModified) throws IOException {
+        checkNotNull(file, "Input file must NOT be null.");
+        return (Files.size(file) == size) && (lastModified(file) == lastModified);
+    }
+
+    /**
+     * @return the number of bytes of the provided positive value, as a variable-length integer.
+     */
+    public static int varLongSize(final long value) {
+        int size = 1;
+        for (long remaining = value; remaining >= 0x80; remaining >>>= 7) {
+            ++size;
+        }
+        return size;
+    }
+
+    public static void writeVarLong(final DataOutput out, final long value) throws IOException {
+        long remaining = value;
+        while (remaining >= 0x80) {
+            out.write((int) ((remaining & 0x7F) | 0x80));
+            remaining >>>= 7;
+        }
+        out.write((int) remaining);
+    }
+
+    /**
+     * Writes the provided positive value, as a variable-length integer, to the provided buffer, of at least {@link #MAX_VAR_LONG_SIZE} bytes.
+     *
+     * @return the number of bytes written.
+     */
+    public static int putVarLong(final byte[] bytes, final long value) {
+        int length = 0;
+        long remaining = value;
+        while (remaining >= 0x80) {
+            bytes[length++] = (byte) ((remaining & 0x7F) | 0x80);
+            remaining >>>= 7;
+        }
+        bytes[length++] = (byte) remaining;
+        return length;
+    }
+
+    public static long readVarLong(final DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= ((long) (b & 0x7F)) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    /**
+     * Reads the variable-length integer at the provided position, which is followed by the next value, {@link #varLongSize} bytes later.
+     */
+    public static long readVarLong(final MappedFile file, final long position) {
+        long value = 0;
+        int shift = 0;
+        long next = position;
+        int b;
+        do {
+            b = file.get(next++);
+            value |= ((long) (b & 0x7F)) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+}
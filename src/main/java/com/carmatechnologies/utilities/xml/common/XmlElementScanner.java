@@ -0,0 +1,517 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Byte-level scanner locating XML elements with the provided local name, whatever their prefix, in a {@link RandomAccessInput},
+ * e.g. a range of a {@link MappedFile}, or a whole stream.
+ * This is NOT a parser: it only recognises markup, i.e. start and end tags, comments, CDATA sections, processing instructions and declarations,
+ * which is enough to delimit elements several times faster than parsing them, and therefore to split a file between several parsers,
+ * or to only hand these elements to a parser. Text is skipped eight bytes at a time, looking for the next {@code '<'}, and tags other than
+ * the elements' are only tokenized when scanning a whole input, to keep track of the namespaces declared by the elements' ancestors.
+ * Like {@code XmlStreamFilter}, elements nested in an element with the same name are part of it, NOT elements on their own.
+ * Ranges only tokenize tags other than the elements' if these have attributes, to detect elements which cannot be parsed out of their context,
+ * see {@link XmlElementScanner#requiresContext()}.
+ * The input is expected to be UTF-8, or any other encoding where markup characters are single ASCII bytes.
+ */
+public final class XmlElementScanner {
+    private static final int MAX_NAME_LENGTH = 1024;
+    private static final byte[] NO_DECLARATIONS = new byte[0];
+    private static final byte[][] NO_ELEMENT_DECLARATIONS = new byte[0][];
+
+    private final RandomAccessInput input;
+    private final byte[] localName;
+    private long end;
+    private final byte[] name = new byte[MAX_NAME_LENGTH];
+    private int nameLength;
+    private long position;
+    private long elementStart = -1;
+    private long elementEnd = -1;
+    private long nextStart = -1;
+    private boolean rootPending;
+    private boolean requiresContext;
+    private boolean rootEnded;
+
+    /**
+     * Namespace declarations of each open element, from the root element, or {@code null} if namespaces are not tracked.
+     */
+    private final List<byte[][]> namespaces;
+    private final boolean fromStart;
+    private int outerDeclaringElements;
+    private int declaringElements;
+    private byte[] namespaceContext = NO_DECLARATIONS;
+    private boolean namespaceContextChanged;
+
+    /**
+     * @param input     input to scan.
+     * @param localName local name of the elements to look for.
+     * @param start     position to start scanning from, which must be outside of any element with the provided local name, and outside of any markup.
+     * @param end       elements starting at or after this position are left to the next range. Elements starting before may end after it.
+     */
+    public XmlElementScanner(final RandomAccessInput input, final String localName, final long start, final long end) {
+        this(input, localName, start, end, false);
+    }
+
+    /**
+     * Scans the whole input, from its start, keeping track of namespace declarations, see {@link XmlElementScanner#namespaceContext()},
+     * until the root element is closed, so that an input which never ends, e.g. a {@link FollowingInputStream}, is not waited for any longer.
+     *
+     * @param input     input to scan.
+     * @param localName local name of the elements to look for.
+     */
+    public XmlElementScanner(final RandomAccessInput input, final String localName) {
+        this(input, localName, 0, Long.MAX_VALUE, true);
+    }
+
+    /**
+     * Scans the input from the provided position, keeping track of namespace declarations like when scanning the whole input,
+     * with the provided ones in scope for the rest of the input, e.g. the namespace context recorded when the scan stopped at this position before.
+     * The range can then be extended, see {@link XmlElementScanner#extendTo(long)}, to scan the input range by range, in a single pass.
+     *
+     * @param namespaceContext namespace declarations in scope at the provided position, e.g. {@code xmlns:x="urn:x"}, or an empty array.
+     */
+    public XmlElementScanner(final RandomAccessInput input, final String localName, final long start, final long end, final byte[] namespaceContext) throws IOException {
+        this(input, localName, start, end, true);
+        checkNotNull(namespaceContext, "Namespace context must NOT be null.");
+        if (namespaceContext.length > 0) {
+            final byte[] tag = ("<" + localName + new String(namespaceContext, UTF_8) + ">").getBytes(UTF_8);
+            final List<byte[]> declarations = new XmlElementScanner(new InputStreamWindow(new ByteArrayInputStream(tag)), localName, 0, 0).namespaceDeclarations(1, tag.length);
+            namespaces.add(declarations.toArray(new byte[declarations.size()][]));
+            outerDeclaringElements = 1;
+            ++declaringElements;
+            namespaceContextChanged = true;
+        }
+    }
+
+    private XmlElementScanner(final RandomAccessInput input, final String localName, final long start, final long end, final boolean trackNamespaces) {
+        this.input = checkNotNull(input, "Input must NOT be null.");
+        checkNotNull(localName, "XML element's local name must NOT be null.");
+        checkArgument(!localName.isEmpty(), "XML element's local name must NOT be empty.");
+        checkArgument(start <= end, "Start must NOT be after end.");
+        this.localName = localName.getBytes(UTF_8);
+        this.position = start;
+        this.end = end;
+        this.namespaces = trackNamespaces ? new ArrayList<>() : null;
+        this.rootPending = (start == 0);
+        this.fromStart = (start == 0);
+    }
+
+    /**
+     * Moves to the next element starting in this scanner's range.
+     *
+     * @return {@code true} if an element was found, in which case its bounds are available from {@link XmlElementScanner#elementStart()}
+     * and {@link XmlElementScanner#elementEnd()}, or {@code false} if there is no more element in the range, in which case
+     * {@link XmlElementScanner#nextStart()} is available.
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            final long tagStart = rootEnded ? -1 : indexOf('<', position);
+            if (tagStart < 0) {
+                nextStart = eof();
+                return false;
+            }
+            input.discardBefore(tagStart);
+            final int next = input.get(tagStart + 1);
+            if ((next == '!') || (next == '?')) {
+                if ((namespaces == null) && startsWith(tagStart, "<!DOCTYPE")) {
+                    requiresContext = true;
+                }
+                position = skipMarkup(tagStart);
+            } else if (next == '/') {
+                // Tags cannot contain '<', not even in attribute values, hence scanning resumes right after their start:
+                position = tagStart + 2;
+                endElement();
+            } else if (isTargetStartTag(tagStart)) {
+                if (tagStart >= end) {
+                    nextStart = tagStart;
+                    return false;
+                }
+                rootPending = false;
+                rootEnded = fromStart && (namespaces != null) && namespaces.isEmpty();
+                elementStart = tagStart;
+                elementEnd = skipElement(tagStart);
+                position = elementEnd;
+                return true;
+            } else {
+                position = startElement(tagStart);
+            }
+        }
+    }
+
+    /**
+     * Moves the end of this scanner's range, e.g. to the end of the next range, once {@link XmlElementScanner#next()} returned {@code false}.
+     */
+    public void extendTo(final long end) {
+        checkArgument(end >= this.end, "End must NOT move backwards.");
+        this.end = end;
+    }
+
+    public long elementStart() {
+        return elementStart;
+    }
+
+    public long elementEnd() {
+        return elementEnd;
+    }
+
+    /**
+     * @return position of the first element starting at or after this scanner's end, or the size of the file if there is none.
+     * If the range was started at the right position, this is where the next range must start.
+     */
+    public long nextStart() {
+        return nextStart;
+    }
+
+    /**
+     * @return {@code true} if this range, as scanned so far, has a document type declaration, e.g. defining entities or default attributes,
+     * or a start tag, other than the root element's and the elements', declaring namespaces, in which case the elements found after it
+     * may only be parsed correctly in their context. Ancestors cannot be told apart from preceding siblings at the byte level,
+     * hence declarations on the latter count too. Always {@code false} when scanning the whole input, as its context is then tracked.
+     */
+    public boolean requiresContext() {
+        return requiresContext;
+    }
+
+    /**
+     * @return the namespace declarations in scope for the current element, i.e. declared by its ancestors, e.g. {@code xmlns:x="urn:x"},
+     * with inner declarations overriding outer ones, so that the element can be parsed out of its context, or an empty array if there is none.
+     * @throws IllegalStateException if this scanner does not scan the whole input.
+     */
+    public byte[] namespaceContext() {
+        checkState(namespaces != null, "Namespaces are only tracked when scanning the whole input.");
+        if (namespaceContextChanged) {
+            namespaceContextChanged = false;
+            namespaceContext = NO_DECLARATIONS;
+            if (declaringElements > 0) {
+                final Map<String, byte[]> declarations = new LinkedHashMap<>();
+                for (final byte[][] elementDeclarations : namespaces) {
+                    for (final byte[] declaration : elementDeclarations) {
+                        declarations.put(prefix(declaration), declaration);
+                    }
+                }
+                namespaceContext = concat(declarations.values());
+            }
+        }
+        return namespaceContext;
+    }
+
+    /**
+     * Finds the first start tag with the provided local name at or after the provided position, without any knowledge of the context,
+     * i.e. even if this start tag is in a comment, a CDATA section, or nested in an element with the same name.
+     * This is a guess, which has to be confirmed with {@link XmlElementScanner#nextStart()} from the previous range.
+     *
+     * @return position of the start tag, or the size of the file if there is none.
+     */
+    public static long align(final RandomAccessInput input, final String localName, final long position) throws IOException {
+        final XmlElementScanner scanner = new XmlElementScanner(input, localName, position, position);
+        for (long tagStart = scanner.indexOf('<', position); tagStart >= 0; tagStart = scanner.indexOf('<', tagStart + 1)) {
+            if (scanner.isTargetStartTag(tagStart)) {
+                return tagStart;
+            }
+        }
+        return scanner.eof();
+    }
+
+    /**
+     * @return the namespace declarations of the file's root element, e.g. {@code xmlns:x="urn:x"}, as found in the file,
+     * so that elements can be parsed out of their context, or an empty array if there is none.
+     */
+    public static byte[] rootNamespaceDeclarations(final RandomAccessInput input) throws IOException {
+        final XmlElementScanner scanner = new XmlElementScanner(input, "*", 0, 0);
+        long tagStart = scanner.indexOf('<', 0);
+        while (tagStart >= 0) {
+            final int next = input.get(tagStart + 1);
+            if ((next == '!') || (next == '?')) {
+                tagStart = scanner.indexOf('<', scanner.skipMarkup(tagStart));
+            } else {
+                return concat(scanner.namespaceDeclarations(tagStart + 1, scanner.skipTag(tagStart + 1)));
+            }
+        }
+        return NO_DECLARATIONS;
+    }
+
+    /**
+     * @return {@code true} if the file has a document type declaration, e.g. defining entities or default attributes, before its root element,
+     * in which case its elements may only be parsed correctly by a parser reading the file from its start.
+     */
+    public static boolean hasDocumentTypeDeclaration(final RandomAccessInput input) throws IOException {
+        final XmlElementScanner scanner = new XmlElementScanner(input, "*", 0, 0);
+        long tagStart = scanner.indexOf('<', 0);
+        while (tagStart >= 0) {
+            final int next = input.get(tagStart + 1);
+            if ((next != '!') && (next != '?')) {
+                return false;
+            }
+            if (scanner.startsWith(tagStart, "<!DOCTYPE")) {
+                return true;
+            }
+            tagStart = scanner.indexOf('<', scanner.skipMarkup(tagStart));
+        }
+        return false;
+    }
+
+    private long eof() {
+        return input.size();
+    }
+
+    /**
+     * @return position to resume scanning from, after the start tag of an element other than the ones to look for.
+     */
+    private long startElement(final long tagStart) throws IOException {
+        if (namespaces == null) {
+            // The root element's declarations are known to the caller, see rootNamespaceDeclarations:
+            if (rootPending || requiresContext) {
+                rootPending = false;
+                return tagStart + 1;
+            }
+            if (input.get(tagStart + 1 + nameLength) == '>') {
+                return tagStart + 1;
+            }
+            final long tagEnd = skipTag(tagStart + 1);
+            requiresContext = !namespaceDeclarations(tagStart + 1, tagEnd).isEmpty();
+            return tagEnd;
+        }
+        // Most tags have no attribute, in which case the name, already read, is directly followed by the end of the tag:
+        final long nameEnd = tagStart + 1 + nameLength;
+        if (input.get(nameEnd) == '>') {
+            namespaces.add(NO_ELEMENT_DECLARATIONS);
+            return nameEnd + 1;
+        }
+        final long tagEnd = skipTag(tagStart + 1);
+        if (input.get(tagEnd - 2) != '/') {
+            final List<byte[]> declarations = namespaceDeclarations(tagStart + 1, tagEnd);
+            namespaces.add(declarations.isEmpty() ? NO_ELEMENT_DECLARATIONS : declarations.toArray(new byte[declarations.size()][]));
+            if (!declarations.isEmpty()) {
+                ++declaringElements;
+                namespaceContextChanged = true;
+            }
+        }
+        return tagEnd;
+    }
+
+    private void endElement() {
+        if ((namespaces == null) || (namespaces.size() == outerDeclaringElements)) {
+            // E.g. the end of an element opened before this scanner's start, whose declarations stay in scope, as their elements are unknown:
+            return;
+        }
+        if (namespaces.remove(namespaces.size() - 1).length > 0) {
+            --declaringElements;
+            namespaceContextChanged = true;
+        }
+        rootEnded = fromStart && namespaces.isEmpty();
+    }
+
+    private boolean isTargetStartTag(final long tagStart) throws IOException {
+        int length = 0;
+        int localNameStart = 0;
+        for (long i = tagStart + 1; length < MAX_NAME_LENGTH; ++i, ++length) {
+            final int b = input.get(i);
+            if ((b < 0) || isWhitespace(b) || (b == '>') || (b == '/')) {
+                break;
+            }
+            if (b == ':') {
+                localNameStart = length + 1;
+            }
+            name[length] = (byte) b;
+        }
+        nameLength = length;
+        if ((length - localNameStart) != localName.length) {
+            return false;
+        }
+        for (int i = 0; i < localName.length; ++i) {
+            if (name[localNameStart + i] != localName[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return position after the end of the element starting at the provided position, or the end of the file if it is truncated.
+     */
+    private long skipElement(final long elementStart) throws IOException {
+        long i = skipTag(elementStart + 1);
+        if (input.get(i - 2) == '/') {
+            return i; // Empty-element tag.
+        }
+        int depth = 1;
+        while (depth > 0) {
+            final long tagStart = indexOf('<', i);
+            if (tagStart < 0) {
+                return eof();
+            }
+            final int next = input.get(tagStart + 1);
+            if ((next == '!') || (next == '?')) {
+                i = skipMarkup(tagStart);
+            } else if (next == '/') {
+                i = skipTag(tagStart + 2);
+                --depth;
+            } else {
+                i = skipTag(tagStart + 1);
+                if (input.get(i - 2) != '/') {
+                    ++depth;
+                }
+            }
+        }
+        return i;
+    }
+
+    /**
+     * @return position after the {@code '>'} ending the tag, skipping quoted attribute values, which may contain {@code '>'}.
+     */
+    private long skipTag(final long from) throws IOException {
+        int quote = 0;
+        for (long i = from; ; ++i) {
+            final int b = input.get(i);
+            if (b < 0) {
+                return eof();
+            }
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if ((b == '"') || (b == '\'')) {
+                quote = b;
+            } else if (b == '>') {
+                return i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return position after the comment, CDATA section, processing instruction or declaration starting at the provided position.
+     */
+    private long skipMarkup(final long tagStart) throws IOException {
+        if (startsWith(tagStart, "<!--")) {
+            return after(tagStart + 4, "-->");
+        }
+        if (startsWith(tagStart, "<![CDATA[")) {
+            return after(tagStart + 9, "]]>");
+        }
+        if (input.get(tagStart + 1) == '?') {
+            return after(tagStart + 2, "?>");
+        }
+        // Declaration, e.g. <!DOCTYPE ...>, potentially with an internal subset between brackets:
+        int brackets = 0;
+        int quote = 0;
+        for (long i = tagStart + 2; ; ++i) {
+            final int b = input.get(i);
+            if (b < 0) {
+                return eof();
+            }
+            if (quote != 0) {
+                if (b == quote) {
+                    quote = 0;
+                }
+            } else if ((b == '"') || (b == '\'')) {
+                quote = b;
+            } else if (b == '[') {
+                ++brackets;
+            } else if (b == ']') {
+                --brackets;
+            } else if ((b == '>') && (brackets <= 0)) {
+                return i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return the namespace declarations of the start tag, each preceded by a space, e.g. {@code  xmlns:x="urn:x"}.
+     */
+    private List<byte[]> namespaceDeclarations(final long nameStart, final long tagEnd) throws IOException {
+        final List<byte[]> declarations = new ArrayList<>();
+        long i = nameStart;
+        while ((i < tagEnd) && !isWhitespace(input.get(i)) && (input.get(i) != '>') && (input.get(i) != '/')) {
+            ++i; // Element name.
+        }
+        while (i < tagEnd) {
+            while ((i < tagEnd) && (isWhitespace(input.get(i)) || (input.get(i) == '/') || (input.get(i) == '>'))) {
+                ++i;
+            }
+            final long attributeStart = i;
+            while ((i < tagEnd) && (input.get(i) != '=')) {
+                ++i;
+            }
+            while ((i < tagEnd) && (input.get(i) != '"') && (input.get(i) != '\'')) {
+                ++i;
+            }
+            if (i >= tagEnd) {
+                break;
+            }
+            final int quote = input.get(i);
+            ++i;
+            while ((i < tagEnd) && (input.get(i) != quote)) {
+                ++i;
+            }
+            ++i;
+            if (startsWith(attributeStart, "xmlns")) {
+                final byte[] declaration = new byte[(int) (i - attributeStart) + 1];
+                declaration[0] = ' ';
+                for (long j = attributeStart; j < i; ++j) {
+                    declaration[(int) (j - attributeStart) + 1] = (byte) input.get(j);
+                }
+                declarations.add(declaration);
+            }
+        }
+        return declarations;
+    }
+
+    /**
+     * @return the declared prefix, e.g. {@code xmlns:x} for {@code  xmlns:x="urn:x"}, or {@code xmlns} for the default namespace.
+     */
+    private static String prefix(final byte[] declaration) {
+        int end = 1;
+        while ((end < declaration.length) && (declaration[end] != '=') && !isWhitespace(declaration[end])) {
+            ++end;
+        }
+        return new String(declaration, 1, end - 1, UTF_8);
+    }
+
+    private static byte[] concat(final Iterable<byte[]> declarations) {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (final byte[] declaration : declarations) {
+            bytes.write(declaration, 0, declaration.length);
+        }
+        return bytes.toByteArray();
+    }
+
+    private long after(final long from, final String terminator) throws IOException {
+        for (long i = indexOf(terminator.charAt(0), from); i >= 0; i = indexOf(terminator.charAt(0), i + 1)) {
+            if (startsWith(i, terminator)) {
+                return i + terminator.length();
+            }
+        }
+        return eof();
+    }
+
+    private boolean startsWith(final long position, final String prefix) throws IOException {
+        for (int i = 0; i < prefix.length(); ++i) {
+            if (input.get(position + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return position of the next occurrence of the provided ASCII character, or -1 if there is none.
+     */
+    private long indexOf(final int c, final long from) throws IOException {
+        return input.indexOf((byte) c, from);
+    }
+
+    private static boolean isWhitespace(final int b) {
+        return (b == ' ') || (b == '\t') || (b == '\n') || (b == '\r');
+    }
+}
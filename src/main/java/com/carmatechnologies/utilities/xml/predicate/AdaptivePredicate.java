@@ -0,0 +1,136 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Conjunction, see {@link AdaptivePredicate#allOf}, or disjunction, see {@link AdaptivePredicate#anyOf}, of predicates, e.g. {@link XPathPredicate}s,
+ * evaluated in an order which adapts to the values tested: branches are short-circuited, and periodically reordered so that branches which are
+ * the cheapest and the most likely to decide the result, i.e. to be {@code false} for a conjunction, or {@code true} for a disjunction, run first.
+ * Both the probability of each branch to decide, and its cost, in nanoseconds, are measured on a sample of the values, on which every branch is
+ * evaluated, rather than only the ones reaching it, as the latter are biased by the branches before it, and branches are sorted by ascending
+ * cost per decision. Statistics are halved at each reordering, so that the order follows changes in the input.
+ * Branches must therefore be free of side effects. Like the predicates it combines, this predicate is NOT thread-safe.
+ */
+public final class AdaptivePredicate<T> implements Predicate<T> {
+    private static final int REORDER_INTERVAL = 1024;
+    private static final int SAMPLING_INTERVAL = 16; // Power of 2.
+
+    private static final class Branch<T> {
+        private final Predicate<T> predicate;
+        private long samples;
+        private long decisions;
+        private long nanos;
+
+        private Branch(final Predicate<T> predicate) {
+            this.predicate = checkNotNull(predicate, "Predicate must NOT be null.");
+        }
+
+        /**
+         * @return the expected cost of evaluating this branch per decision, with counts smoothed so that new branches are neither favoured nor ruled out.
+         */
+        private double rank() {
+            final double cost = (nanos + 1.0) / (samples + 1.0);
+            final double decisionProbability = (decisions + 1.0) / (samples + 2.0);
+            return cost / decisionProbability;
+        }
+
+        private void decay() {
+            samples >>= 1;
+            decisions >>= 1;
+            nanos >>= 1;
+        }
+    }
+
+    private final Branch<T>[] branches;
+    private final boolean decisiveResult;
+    private long evaluations;
+
+    @SuppressWarnings("unchecked")
+    private AdaptivePredicate(final List<? extends Predicate<T>> predicates, final boolean decisiveResult) {
+        checkNotNull(predicates, "Predicates must NOT be null.");
+        checkArgument(!predicates.isEmpty(), "Predicates must NOT be empty.");
+        this.branches = predicates.stream().map(Branch::new).toArray(Branch[]::new);
+        this.decisiveResult = decisiveResult;
+    }
+
+    /**
+     * @return a predicate matching values matched by all the provided predicates.
+     */
+    public static <T> AdaptivePredicate<T> allOf(final List<? extends Predicate<T>> predicates) {
+        return new AdaptivePredicate<>(predicates, false);
+    }
+
+    /**
+     * @return a predicate matching values matched by any of the provided predicates.
+     */
+    public static <T> AdaptivePredicate<T> anyOf(final List<? extends Predicate<T>> predicates) {
+        return new AdaptivePredicate<>(predicates, true);
+    }
+
+    /**
+     * @return a predicate matching values NOT matched by the provided predicate, for completeness of the algebra.
+     */
+    public static <T> Predicate<T> not(final Predicate<T> predicate) {
+        return checkNotNull(predicate, "Predicate must NOT be null.").negate();
+    }
+
+    @Override
+    public boolean test(final T value) {
+        if ((++evaluations % REORDER_INTERVAL) == 0) {
+            reorder();
+        }
+        if ((evaluations & (SAMPLING_INTERVAL - 1)) == 0) {
+            return sample(value);
+        }
+        for (final Branch<T> branch : branches) {
+            if (branch.predicate.test(value) == decisiveResult) {
+                return decisiveResult;
+            }
+        }
+        return !decisiveResult;
+    }
+
+    /**
+     * Evaluates and times every branch, without short-circuiting, so that each one is measured on the same values.
+     */
+    private boolean sample(final T value) {
+        boolean decided = false;
+        for (final Branch<T> branch : branches) {
+            final long start = System.nanoTime();
+            final boolean result = branch.predicate.test(value);
+            branch.nanos += System.nanoTime() - start;
+            ++branch.samples;
+            if (result == decisiveResult) {
+                ++branch.decisions;
+                decided = true;
+            }
+        }
+        return decided ? decisiveResult : !decisiveResult;
+    }
+
+    private void reorder() {
+        Arrays.sort(branches, Comparator.comparingDouble(Branch::rank));
+        for (final Branch<T> branch : branches) {
+            branch.decay();
+        }
+    }
+
+    /**
+     * @return the branches, in their current evaluation order.
+     */
+    List<Predicate<T>> branches() {
+        return Arrays.stream(branches).map(branch -> branch.predicate).collect(Collectors.toList());
+    }
+
+    @Override
+    public String toString() {
+        return (decisiveResult ? "anyOf" : "allOf") + branches();
+    }
+}
@@ -0,0 +1,163 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link WhiteList} of patterns which values either start with, or contain, see {@link WhiteList#startingWith(Set)} and {@link WhiteList#containing(Set)}.
+ * Patterns are compiled into a trie, and, to find these anywhere in values, into an Aho-Corasick automaton, i.e. a trie where each state also links
+ * to the state of the longest proper suffix of its prefix, followed when a character has no transition, so that each value is scanned in a single
+ * pass, whatever the number of patterns.
+ * The trie is built breadth-first from the sorted patterns, so that the children of each state are consecutive, and stored as flat arrays:
+ * transitions are found by binary search among children's characters, and a lookup allocates nothing.
+ */
+final class AhoCorasickWhiteList implements WhiteList {
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+
+    private final boolean prefixesOnly;
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] childCount;
+    private final int[] fail;
+    private final boolean[] accepting;
+
+    /**
+     * @param patterns     patterns of the white-list, trimmed, and ignored if {@code null} or empty.
+     * @param prefixesOnly {@code true} to only match patterns at the start of values, {@code false} to match these anywhere in values.
+     */
+    AhoCorasickWhiteList(final Set<String> patterns, final boolean prefixesOnly) {
+        checkNotNull(patterns, "White-list set must NOT be null.");
+        final List<String> sortedPatterns = new ArrayList<>(SetWhiteList.sanitize(patterns));
+        checkArgument(!sortedPatterns.isEmpty(), "White-list set must NOT be empty.");
+        Collections.sort(sortedPatterns);
+        this.prefixesOnly = prefixesOnly;
+
+        int maxStates = 1;
+        for (final String pattern : sortedPatterns) {
+            maxStates += pattern.length();
+        }
+        final char[] labels = new char[maxStates];
+        final int[] firstChild = new int[maxStates];
+        final int[] childCount = new int[maxStates];
+        final boolean[] accepting = new boolean[maxStates];
+        // Each state is reached by the patterns in [from, to), which share its first "depth" characters:
+        final int[] from = new int[maxStates];
+        final int[] to = new int[maxStates];
+        final int[] depth = new int[maxStates];
+        final int[] parent = new int[maxStates];
+        to[ROOT] = sortedPatterns.size();
+
+        int states = 1;
+        for (int state = ROOT; state < states; ++state) {
+            int start = from[state];
+            if (sortedPatterns.get(start).length() == depth[state]) {
+                accepting[state] = true; // Patterns are unique, and shorter ones are sorted first.
+                ++start;
+            }
+            firstChild[state] = states;
+            while (start < to[state]) {
+                final char c = sortedPatterns.get(start).charAt(depth[state]);
+                int end = start + 1;
+                while ((end < to[state]) && (sortedPatterns.get(end).charAt(depth[state]) == c)) {
+                    ++end;
+                }
+                labels[states] = c;
+                from[states] = start;
+                to[states] = end;
+                depth[states] = depth[state] + 1;
+                parent[states] = state;
+                ++states;
+                start = end;
+            }
+            childCount[state] = states - firstChild[state];
+        }
+
+        this.labels = Arrays.copyOf(labels, states);
+        this.firstChild = Arrays.copyOf(firstChild, states);
+        this.childCount = Arrays.copyOf(childCount, states);
+        this.accepting = Arrays.copyOf(accepting, states);
+        this.fail = new int[states];
+        if (!prefixesOnly) {
+            // States are numbered breadth-first, hence shallower states' links, which deeper states' depend on, are always computed first:
+            for (int state = ROOT + 1; state < states; ++state) {
+                if (parent[state] != ROOT) {
+                    fail[state] = next(fail[parent[state]], labels[state]);
+                }
+                this.accepting[state] |= this.accepting[fail[state]];
+            }
+        }
+    }
+
+    @Override
+    public boolean contains(final CharSequence value) {
+        int state = ROOT;
+        for (int i = 0; i < value.length(); ++i) {
+            state = step(state, value.charAt(i));
+            if (state == NONE) {
+                return false;
+            }
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean contains(final char[] chars, final int start, final int length) {
+        int state = ROOT;
+        for (int i = start; i < start + length; ++i) {
+            state = step(state, chars[i]);
+            if (state == NONE) {
+                return false;
+            }
+            if (accepting[state]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the state reached from the provided state with the provided character, or {@code NONE} if no prefix can match anymore.
+     */
+    private int step(final int state, final char c) {
+        return prefixesOnly ? child(state, c) : next(state, c);
+    }
+
+    private int next(final int state, final char c) {
+        for (int current = state; ; current = fail[current]) {
+            final int child = child(current, c);
+            if (child != NONE) {
+                return child;
+            }
+            if (current == ROOT) {
+                return ROOT;
+            }
+        }
+    }
+
+    private int child(final int state, final char c) {
+        int low = firstChild[state];
+        int high = low + childCount[state] - 1;
+        while (low <= high) {
+            final int middle = (low + high) >>> 1;
+            final char label = labels[middle];
+            if (label < c) {
+                low = middle + 1;
+            } else if (label > c) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return NONE;
+    }
+}
@@ -0,0 +1,444 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import java.math.BigDecimal;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Typed comparison of text to a constant, e.g. {@code price > 30} or {@code published >= 2005-01-01}, with the text parsed straight from
+ * the parser's buffer into primitives, rather than converted by XPath from a {@code String}:
+ * - decimal numbers, e.g. {@code 30}, {@code -4.99}, are compared exactly, as an unscaled {@code long} and a scale,
+ * - floating-point numbers, e.g. {@code 1.5e3}, are compared as {@code double}s, exactly rounded,
+ * - ISO-8601 dates and date-times, e.g. {@code 2005-01-01}, {@code 2005-01-01T10:15:30.250+01:00}, are compared as UTC milliseconds,
+ * with date-times without offset considered UTC, and dates considered at midnight.
+ * Surrounding whitespace is ignored. Text which cannot be parsed as the constant's type never matches, whatever the operator,
+ * like XPath's {@code NaN}. Only numbers with more than 18 significant digits, or exponents, fall back to {@code BigDecimal} or {@code Double.parseDouble}.
+ * Instances are immutable, hence thread-safe.
+ */
+public final class ComparisonPredicate implements TextPredicate {
+    private static final int INVALID = Integer.MIN_VALUE;
+    private static final long INVALID_DATE = Long.MIN_VALUE;
+    private static final int MAX_LONG_DIGITS = 18;
+    private static final long[] LONG_POWERS_OF_TEN = new long[MAX_LONG_DIGITS + 1];
+    private static final double[] DOUBLE_POWERS_OF_TEN = new double[23]; // Exactly representable as doubles.
+    private static final long MAX_EXACT_DOUBLE = 1L << 53;
+    private static final long MILLIS_PER_MINUTE = 60 * 1000L;
+    private static final long MILLIS_PER_DAY = 24 * 60 * MILLIS_PER_MINUTE;
+
+    static {
+        LONG_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < LONG_POWERS_OF_TEN.length; ++i) {
+            LONG_POWERS_OF_TEN[i] = 10 * LONG_POWERS_OF_TEN[i - 1];
+        }
+        DOUBLE_POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < DOUBLE_POWERS_OF_TEN.length; ++i) {
+            DOUBLE_POWERS_OF_TEN[i] = 10 * DOUBLE_POWERS_OF_TEN[i - 1];
+        }
+    }
+
+    public enum Operator {
+        EQUAL("="), NOT_EQUAL("!="), LESS("<"), LESS_OR_EQUAL("<="), GREATER(">"), GREATER_OR_EQUAL(">=");
+
+        private final String symbol;
+
+        Operator(final String symbol) {
+            this.symbol = symbol;
+        }
+
+        /**
+         * @param symbol XPath comparison operator, e.g. {@code ">="}.
+         * @throws IllegalArgumentException if the symbol is not a comparison operator.
+         */
+        public static Operator of(final String symbol) {
+            for (final Operator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            throw new IllegalArgumentException("Invalid comparison operator \"" + symbol + "\": expected one of =, !=, <, <=, >, >=.");
+        }
+
+        private boolean test(final int comparison) {
+            switch (this) {
+                case EQUAL:
+                    return comparison == 0;
+                case NOT_EQUAL:
+                    return comparison != 0;
+                case LESS:
+                    return comparison < 0;
+                case LESS_OR_EQUAL:
+                    return comparison <= 0;
+                case GREATER:
+                    return comparison > 0;
+                default:
+                    return comparison >= 0;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return symbol;
+        }
+    }
+
+    private enum Type {
+        DECIMAL, DOUBLE, DATE
+    }
+
+    private final Operator operator;
+    private final Type type;
+    private final long value; // Unscaled value of decimals, or UTC milliseconds of dates.
+    private final int scale;
+    private final BigDecimal decimalValue;
+    private final double doubleValue;
+
+    private ComparisonPredicate(final Operator operator, final Type type, final long value, final int scale, final BigDecimal decimalValue, final double doubleValue) {
+        this.operator = checkNotNull(operator, "Operator must NOT be null.");
+        this.type = type;
+        this.value = value;
+        this.scale = scale;
+        this.decimalValue = decimalValue;
+        this.doubleValue = doubleValue;
+    }
+
+    public static ComparisonPredicate ofLong(final Operator operator, final long value) {
+        return new ComparisonPredicate(operator, Type.DECIMAL, value, 0, BigDecimal.valueOf(value), value);
+    }
+
+    public static ComparisonPredicate ofDecimal(final Operator operator, final BigDecimal value) {
+        checkNotNull(value, "Decimal value must NOT be null.");
+        final BigDecimal decimal = (value.scale() < 0) ? value.setScale(0) : value;
+        final boolean fitsLong = (decimal.scale() <= MAX_LONG_DIGITS) && (decimal.unscaledValue().bitLength() < Long.SIZE);
+        return new ComparisonPredicate(operator, Type.DECIMAL, fitsLong ? decimal.unscaledValue().longValue() : 0,
+                fitsLong ? decimal.scale() : INVALID, decimal, decimal.doubleValue());
+    }
+
+    public static ComparisonPredicate ofDouble(final Operator operator, final double value) {
+        checkArgument(!Double.isNaN(value), "Double value must NOT be NaN.");
+        return new ComparisonPredicate(operator, Type.DOUBLE, 0, 0, null, value);
+    }
+
+    /**
+     * @param value ISO-8601 date or date-time, e.g. {@code 2005-01-01} or {@code 2005-01-01T10:15:30Z}.
+     * @throws IllegalArgumentException if the value is not an ISO-8601 date or date-time.
+     */
+    public static ComparisonPredicate ofDate(final Operator operator, final String value) {
+        checkNotNull(value, "Date value must NOT be null.");
+        final long millis = parseDate(value.toCharArray(), 0, value.length());
+        checkArgument(millis != INVALID_DATE, "Invalid ISO-8601 date or date-time: \"%s\".", value);
+        return new ComparisonPredicate(operator, Type.DATE, millis, 0, null, millis);
+    }
+
+    /**
+     * @param operator XPath comparison operator, e.g. {@code ">="}.
+     * @param value    constant, whose type is inferred: a date or date-time if ISO-8601, a floating-point number if it has an exponent,
+     *                 or a decimal number otherwise.
+     * @throws IllegalArgumentException if the operator or the value is invalid.
+     */
+    public static ComparisonPredicate of(final String operator, final String value) {
+        final Operator op = Operator.of(operator);
+        checkNotNull(value, "Value must NOT be null.");
+        final String trimmed = value.trim();
+        if (parseDate(trimmed.toCharArray(), 0, trimmed.length()) != INVALID_DATE) {
+            return ofDate(op, trimmed);
+        }
+        try {
+            return ((trimmed.indexOf('e') >= 0) || (trimmed.indexOf('E') >= 0))
+                    ? ofDouble(op, Double.parseDouble(trimmed))
+                    : ofDecimal(op, new BigDecimal(trimmed));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid value \"" + value + "\": expected a number, or an ISO-8601 date or date-time.", e);
+        }
+    }
+
+    @Override
+    public boolean test(final char[] text, final int start, final int length) {
+        int from = start;
+        int to = start + length;
+        while ((from < to) && (text[from] <= ' ')) {
+            ++from;
+        }
+        while ((to > from) && (text[to - 1] <= ' ')) {
+            --to;
+        }
+        final int comparison;
+        switch (type) {
+            case DECIMAL:
+                comparison = compareDecimal(text, from, to);
+                break;
+            case DOUBLE:
+                comparison = compareDouble(text, from, to);
+                break;
+            default:
+                final long millis = parseDate(text, from, to - from);
+                comparison = (millis == INVALID_DATE) ? INVALID : Long.compare(millis, value);
+                break;
+        }
+        return (comparison != INVALID) && operator.test(comparison);
+    }
+
+    /**
+     * @return the comparison of the decimal number in the provided range to this predicate's value, or {@code INVALID} if it is not a number.
+     */
+    private int compareDecimal(final char[] text, final int from, final int to) {
+        int i = from;
+        final boolean negative = (i < to) && (text[i] == '-');
+        if ((i < to) && ((text[i] == '-') || (text[i] == '+'))) {
+            ++i;
+        }
+        long unscaled = 0;
+        int digits = 0;
+        int significantDigits = 0;
+        int textScale = 0;
+        boolean fraction = false;
+        for (; i < to; ++i) {
+            final char c = text[i];
+            if ((c >= '0') && (c <= '9')) {
+                ++digits;
+                if ((significantDigits > 0) || (c != '0')) {
+                    if (++significantDigits > MAX_LONG_DIGITS) {
+                        return compareBigDecimal(text, from, to);
+                    }
+                }
+                unscaled = 10 * unscaled + (c - '0');
+                if (fraction) {
+                    ++textScale;
+                }
+            } else if ((c == '.') && !fraction) {
+                fraction = true;
+            } else if ((c == 'e') || (c == 'E')) {
+                return compareBigDecimal(text, from, to);
+            } else {
+                return INVALID;
+            }
+        }
+        if (digits == 0) {
+            return INVALID;
+        }
+        if (scale == INVALID) {
+            return compareBigDecimal(text, from, to);
+        }
+        if (negative) {
+            unscaled = -unscaled;
+        }
+        if (textScale == scale) {
+            return Long.compare(unscaled, value);
+        }
+        final int scaleDifference = Math.abs(textScale - scale);
+        if (scaleDifference <= MAX_LONG_DIGITS) {
+            try {
+                return (textScale < scale)
+                        ? Long.compare(Math.multiplyExact(unscaled, LONG_POWERS_OF_TEN[scaleDifference]), value)
+                        : Long.compare(unscaled, Math.multiplyExact(value, LONG_POWERS_OF_TEN[scaleDifference]));
+            } catch (ArithmeticException e) {
+                // Handled below, like any other number beyond longs.
+            }
+        }
+        return compareBigDecimal(text, from, to);
+    }
+
+    private int compareBigDecimal(final char[] text, final int from, final int to) {
+        try {
+            return new BigDecimal(text, from, to - from).compareTo(decimalValue);
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+    }
+
+    /**
+     * Numbers of at most 15 significant digits, and exponents of at most 22, are parsed exactly, as both the mantissa and the power of ten
+     * are exactly representable as doubles, hence their product, or quotient, is correctly rounded. Other numbers fall back to {@code Double.parseDouble}.
+     */
+    private int compareDouble(final char[] text, final int from, final int to) {
+        int i = from;
+        final boolean negative = (i < to) && (text[i] == '-');
+        if ((i < to) && ((text[i] == '-') || (text[i] == '+'))) {
+            ++i;
+        }
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean fraction = false;
+        for (; i < to; ++i) {
+            final char c = text[i];
+            if ((c >= '0') && (c <= '9')) {
+                ++digits;
+                mantissa = 10 * mantissa + (c - '0');
+                if (mantissa >= MAX_EXACT_DOUBLE) {
+                    return compareParsedDouble(text, from, to);
+                }
+                if (fraction) {
+                    --exponent;
+                }
+            } else if ((c == '.') && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (digits == 0) {
+            return INVALID;
+        }
+        if ((i < to) && ((text[i] == 'e') || (text[i] == 'E'))) {
+            final int exponentStart = ++i;
+            final boolean negativeExponent = (i < to) && (text[i] == '-');
+            if ((i < to) && ((text[i] == '-') || (text[i] == '+'))) {
+                ++i;
+            }
+            int explicitExponent = 0;
+            for (; (i < to) && (text[i] >= '0') && (text[i] <= '9'); ++i) {
+                explicitExponent = Math.min(10 * explicitExponent + (text[i] - '0'), 100000); // Far beyond doubles' range anyway.
+            }
+            if ((i == exponentStart) || (text[i - 1] < '0') || (text[i - 1] > '9')) {
+                return INVALID;
+            }
+            exponent += negativeExponent ? -explicitExponent : explicitExponent;
+        }
+        if (i < to) {
+            return INVALID;
+        }
+        if (Math.abs(exponent) >= DOUBLE_POWERS_OF_TEN.length) {
+            return compareParsedDouble(text, from, to);
+        }
+        final double parsed = (exponent < 0) ? (mantissa / DOUBLE_POWERS_OF_TEN[-exponent]) : (mantissa * DOUBLE_POWERS_OF_TEN[exponent]);
+        return compare(negative ? -parsed : parsed);
+    }
+
+    private int compareParsedDouble(final char[] text, final int from, final int to) {
+        try {
+            return compare(Double.parseDouble(new String(text, from, to - from)));
+        } catch (NumberFormatException e) {
+            return INVALID;
+        }
+    }
+
+    private int compare(final double parsed) {
+        if (parsed < doubleValue) {
+            return -1;
+        }
+        if (parsed > doubleValue) {
+            return 1;
+        }
+        return (parsed == doubleValue) ? 0 : INVALID; // NaN.
+    }
+
+    /**
+     * Parses {@code YYYY-MM-DD}, optionally followed by {@code THH:MM}, optionally followed by {@code :SS} and a fraction of seconds,
+     * and, in both cases, optionally followed by {@code Z} or an offset, e.g. {@code +01:00}.
+     *
+     * @return UTC milliseconds since the epoch, or {@code INVALID_DATE} if the range is not an ISO-8601 date or date-time.
+     */
+    private static long parseDate(final char[] text, final int start, final int length) {
+        final int end = start + length;
+        if ((length < 10) || (text[start + 4] != '-') || (text[start + 7] != '-')) {
+            return INVALID_DATE;
+        }
+        final int year = digits(text, start, 4);
+        final int month = digits(text, start + 5, 2);
+        final int day = digits(text, start + 8, 2);
+        if ((year < 0) || (month < 1) || (month > 12) || (day < 1) || (day > daysInMonth(year, month))) {
+            return INVALID_DATE;
+        }
+        long millis = epochDay(year, month, day) * MILLIS_PER_DAY;
+        int i = start + 10;
+        if ((i < end) && ((text[i] == 'T') || (text[i] == ' '))) {
+            if ((i + 6 > end) || (text[i + 3] != ':')) {
+                return INVALID_DATE;
+            }
+            final int hours = digits(text, i + 1, 2);
+            final int minutes = digits(text, i + 4, 2);
+            if ((hours < 0) || (hours > 23) || (minutes < 0) || (minutes > 59)) {
+                return INVALID_DATE;
+            }
+            millis += (hours * 60 + minutes) * MILLIS_PER_MINUTE;
+            i += 6;
+            if ((i < end) && (text[i] == ':')) {
+                final int seconds = (i + 3 <= end) ? digits(text, i + 1, 2) : -1;
+                if ((seconds < 0) || (seconds > 59)) {
+                    return INVALID_DATE;
+                }
+                millis += seconds * 1000L;
+                i += 3;
+                if ((i < end) && (text[i] == '.')) {
+                    int milliseconds = 0;
+                    int fractionDigits = 0;
+                    for (++i; (i < end) && (text[i] >= '0') && (text[i] <= '9'); ++i, ++fractionDigits) {
+                        if (fractionDigits < 3) {
+                            milliseconds = 10 * milliseconds + (text[i] - '0');
+                        }
+                    }
+                    if (fractionDigits == 0) {
+                        return INVALID_DATE;
+                    }
+                    for (int j = fractionDigits; j < 3; ++j) {
+                        milliseconds *= 10;
+                    }
+                    millis += milliseconds;
+                }
+            }
+        }
+        if (i == end) {
+            return millis;
+        }
+        if ((text[i] == 'Z') && (i + 1 == end)) {
+            return millis;
+        }
+        if (((text[i] == '+') || (text[i] == '-')) && (i + 6 == end) && (text[i + 3] == ':')) {
+            final int hours = digits(text, i + 1, 2);
+            final int minutes = digits(text, i + 4, 2);
+            if ((hours < 0) || (hours > 14) || (minutes < 0) || (minutes > 59)) {
+                return INVALID_DATE;
+            }
+            final long offset = (hours * 60 + minutes) * MILLIS_PER_MINUTE;
+            return (text[i] == '+') ? (millis - offset) : (millis + offset);
+        }
+        return INVALID_DATE;
+    }
+
+    /**
+     * @return the value of the provided number of decimal digits, or -1 if any character is not a digit.
+     */
+    private static int digits(final char[] text, final int start, final int count) {
+        int value = 0;
+        for (int i = start; i < start + count; ++i) {
+            final char c = text[i];
+            if ((c < '0') || (c > '9')) {
+                return -1;
+            }
+            value = 10 * value + (c - '0');
+        }
+        return value;
+    }
+
+    private static int daysInMonth(final int year, final int month) {
+        switch (month) {
+            case 2:
+                return (((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0))) ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Days since 1970-01-01 in the proleptic Gregorian calendar, as in Howard Hinnant's {@code days_from_civil}, without allocating a {@code LocalDate}.
+     */
+    private static long epochDay(final int year, final int month, final int day) {
+        final int y = (month <= 2) ? (year - 1) : year;
+        final int era = Math.floorDiv(y, 400);
+        final int yearOfEra = y - era * 400;
+        final int dayOfYear = (153 * (month + ((month > 2) ? -3 : 9)) + 2) / 5 + day - 1;
+        final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    @Override
+    public String toString() {
+        return operator + " " + ((type == Type.DECIMAL) ? decimalValue.toPlainString() : (type == Type.DOUBLE) ? Double.toString(doubleValue) : Long.toString(value));
+    }
+}
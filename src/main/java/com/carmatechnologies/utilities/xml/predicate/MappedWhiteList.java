@@ -0,0 +1,312 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import com.carmatechnologies.utilities.xml.common.MappedFile;
+import com.carmatechnologies.utilities.xml.common.SidecarFiles;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link WhiteList} stored in an index file, memory-mapped, so that white-lists of tens of millions of values neither fill the heap,
+ * nor have to be loaded at each run. The index is built once from a text file, one value per line, see {@link MappedWhiteList#build}:
+ * - values are hashed, from their UTF-8 bytes, into as many buckets as values, stored one after the other, hence each lookup reads a single
+ * bucket, of one or two values on average,
+ * - a Bloom filter of about 10 bits per value, probed first, rejects about 99% of the values which are NOT in the white-list,
+ * without reading any bucket.
+ * Lookups encode values to UTF-8 in a per-thread buffer, and compare bytes, hence no {@code String} is created per lookup.
+ * File layout, in big-endian order:
+ * - header: magic number, number of values, number of buckets, size of the Bloom filter in bits, number of Bloom filter hash functions,
+ * - Bloom filter, as longs,
+ * - end of each bucket, as longs, relative to the start of the values,
+ * - values, each preceded by its length in bytes, as a variable-length integer, 7 bits per byte.
+ */
+public final class MappedWhiteList implements WhiteList, Closeable {
+    private static final long MAGIC = 0x5853465748495445L; // "XSFWHITE"
+    private static final int HEADER_SIZE = 64;
+    private static final int BLOOM_FILTER_BITS_PER_VALUE = 10;
+    private static final int BLOOM_FILTER_HASHES = 7;
+    private static final int WINDOW_SIZE = 256 * 1024 * 1024;
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final MappedFile file;
+    private final long bucketCount;
+    private final long bloomFilterBits;
+    private final int bloomFilterHashes;
+    private final long bucketsOffset;
+    private final long valuesOffset;
+    private final ThreadLocal<byte[]> buffers = ThreadLocal.withInitial(() -> new byte[256]);
+
+    private MappedWhiteList(final MappedFile file, final Path path) throws IOException {
+        this.file = file;
+        if ((file.size() < HEADER_SIZE) || (file.getLong(0) != MAGIC)) {
+            throw new IOException("Not a white-list index file: " + path + ".");
+        }
+        this.bucketCount = file.getLong(16);
+        this.bloomFilterBits = file.getLong(24);
+        this.bloomFilterHashes = (int) (file.getLong(32) >>> 32);
+        this.bucketsOffset = HEADER_SIZE + (bloomFilterBits / Byte.SIZE);
+        this.valuesOffset = bucketsOffset + (bucketCount * Long.BYTES);
+    }
+
+    /**
+     * @param index index file, as built by {@link MappedWhiteList#build}.
+     * @return the white-list, to close once done with it.
+     * @throws IOException if the file cannot be mapped, or is not an index file.
+     */
+    public static MappedWhiteList open(final Path index) throws IOException {
+        checkNotNull(index, "Index file must NOT be null.");
+        final MappedFile file = new MappedFile(index);
+        try {
+            return new MappedWhiteList(file, index);
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Builds the index file of the provided white-list, in three passes over it, so that neither values nor buckets are held in the heap:
+     * values are first counted, then hashed to size buckets and fill the Bloom filter, and finally written in their bucket.
+     * The index is written atomically, see {@link SidecarFiles#writeAtomically}.
+     *
+     * @param whiteList text file, in UTF-8, with one value per line, trimmed, and ignored if empty, like {@link WhiteList#of}.
+     * @param index     index file to create or replace.
+     * @throws IllegalArgumentException if there is no value in the white-list.
+     */
+    public static void build(final Path whiteList, final Path index) throws IOException {
+        checkNotNull(whiteList, "White-list file must NOT be null.");
+        checkNotNull(index, "Index file must NOT be null.");
+
+        long values = 0;
+        long valueBytes = 0;
+        try (BufferedReader reader = Files.newBufferedReader(whiteList, UTF_8)) {
+            for (byte[] value = next(reader); value != null; value = next(reader)) {
+                ++values;
+                valueBytes += SidecarFiles.varLongSize(value.length) + value.length;
+            }
+        }
+        final long valueCount = values;
+        final long valuesSize = valueBytes;
+        checkArgument(valueCount > 0, "White-list set must NOT be empty.");
+
+        final long bucketCount = valueCount;
+        final long bloomFilterBits = roundUp(valueCount * BLOOM_FILTER_BITS_PER_VALUE, Long.SIZE);
+        final long bucketsOffset = HEADER_SIZE + (bloomFilterBits / Byte.SIZE);
+        final long valuesOffset = bucketsOffset + (bucketCount * Long.BYTES);
+        final long indexSize = valuesOffset + valuesSize;
+        SidecarFiles.writeAtomically(index, temporaryIndex -> {
+            try (FileChannel channel = FileChannel.open(temporaryIndex, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                final WritableMapping out = new WritableMapping(channel, indexSize);
+                out.putLong(0, MAGIC);
+                out.putLong(8, valueCount);
+                out.putLong(16, bucketCount);
+                out.putLong(24, bloomFilterBits);
+                out.putLong(32, ((long) BLOOM_FILTER_HASHES) << 32);
+
+                // Second pass: size of each bucket, and Bloom filter.
+                try (BufferedReader reader = Files.newBufferedReader(whiteList, UTF_8)) {
+                    for (byte[] value = next(reader); value != null; value = next(reader)) {
+                        final long hash = hash(value, value.length);
+                        final long bucket = bucketsOffset + (Long.remainderUnsigned(hash, bucketCount) * Long.BYTES);
+                        out.putLong(bucket, out.getLong(bucket) + SidecarFiles.varLongSize(value.length) + value.length);
+                        for (int i = 0; i < BLOOM_FILTER_HASHES; ++i) {
+                            final long bit = bloomFilterBit(hash, i, bloomFilterBits);
+                            final long word = HEADER_SIZE + ((bit >>> 6) * Long.BYTES);
+                            out.putLong(word, out.getLong(word) | (1L << (bit & 63)));
+                        }
+                    }
+                }
+                // Start of each bucket:
+                long start = 0;
+                for (long bucket = bucketsOffset; bucket < valuesOffset; bucket += Long.BYTES) {
+                    final long size = out.getLong(bucket);
+                    out.putLong(bucket, start);
+                    start += size;
+                }
+                // Third pass: values, each written at the current end of its bucket, which ends up at the start of the next bucket.
+                final byte[] varLong = new byte[SidecarFiles.MAX_VAR_LONG_SIZE];
+                try (BufferedReader reader = Files.newBufferedReader(whiteList, UTF_8)) {
+                    for (byte[] value = next(reader); value != null; value = next(reader)) {
+                        final long bucket = bucketsOffset + (Long.remainderUnsigned(hash(value, value.length), bucketCount) * Long.BYTES);
+                        long position = valuesOffset + out.getLong(bucket);
+                        final int varLongSize = SidecarFiles.putVarLong(varLong, value.length);
+                        for (int i = 0; i < varLongSize; ++i) {
+                            out.put(position++, varLong[i]);
+                        }
+                        for (final byte b : value) {
+                            out.put(position++, b);
+                        }
+                        out.putLong(bucket, position - valuesOffset);
+                    }
+                }
+                out.force();
+            }
+        });
+    }
+
+    @Override
+    public boolean contains(final CharSequence value) {
+        byte[] bytes = buffers.get();
+        int length = encode(value, bytes);
+        if (length > bytes.length) {
+            bytes = new byte[length];
+            buffers.set(bytes);
+            length = encode(value, bytes);
+        }
+        final long hash = hash(bytes, length);
+        for (int i = 0; i < bloomFilterHashes; ++i) {
+            final long bit = bloomFilterBit(hash, i, bloomFilterBits);
+            if ((file.getLong(HEADER_SIZE + ((bit >>> 6) * Long.BYTES)) & (1L << (bit & 63))) == 0) {
+                return false;
+            }
+        }
+        final long bucket = Long.remainderUnsigned(hash, bucketCount);
+        long position = valuesOffset + ((bucket == 0) ? 0 : file.getLong(bucketsOffset + ((bucket - 1) * Long.BYTES)));
+        final long end = valuesOffset + file.getLong(bucketsOffset + (bucket * Long.BYTES));
+        while (position < end) {
+            final int valueLength = (int) SidecarFiles.readVarLong(file, position);
+            position += SidecarFiles.varLongSize(valueLength);
+            if ((valueLength == length) && equals(position, bytes, length)) {
+                return true;
+            }
+            position += valueLength;
+        }
+        return false;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private boolean equals(final long position, final byte[] bytes, final int length) {
+        for (int i = 0; i < length; ++i) {
+            if ((byte) file.get(position + i) != bytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the next value of the white-list, trimmed, as UTF-8 bytes, or {@code null} at the end of the file.
+     */
+    private static byte[] next(final BufferedReader reader) throws IOException {
+        for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+            final String value = line.trim();
+            if (!value.isEmpty()) {
+                return value.getBytes(UTF_8);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Encodes the provided value to UTF-8, exactly like {@code String.getBytes(UTF_8)}, i.e. with {@code '?'} for unpaired surrogates.
+     *
+     * @return the number of bytes of the encoded value, which may exceed the size of the buffer, in which case it was only partially written.
+     */
+    private static int encode(final CharSequence value, final byte[] bytes) {
+        int length = 0;
+        for (int i = 0; i < value.length(); ++i) {
+            final char c = value.charAt(i);
+            if (c < 0x80) {
+                put(bytes, length++, c);
+            } else if (c < 0x800) {
+                put(bytes, length++, 0xC0 | (c >> 6));
+                put(bytes, length++, 0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && (i + 1 < value.length()) && Character.isLowSurrogate(value.charAt(i + 1))) {
+                final int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                put(bytes, length++, 0xF0 | (codePoint >> 18));
+                put(bytes, length++, 0x80 | ((codePoint >> 12) & 0x3F));
+                put(bytes, length++, 0x80 | ((codePoint >> 6) & 0x3F));
+                put(bytes, length++, 0x80 | (codePoint & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                put(bytes, length++, '?');
+            } else {
+                put(bytes, length++, 0xE0 | (c >> 12));
+                put(bytes, length++, 0x80 | ((c >> 6) & 0x3F));
+                put(bytes, length++, 0x80 | (c & 0x3F));
+            }
+        }
+        return length;
+    }
+
+    private static void put(final byte[] bytes, final int index, final int b) {
+        if (index < bytes.length) {
+            bytes[index] = (byte) b;
+        }
+    }
+
+    /**
+     * 64-bit FNV-1a, followed by MurmurHash3's finalizer, so that all bits of the hash depend on all bytes of the value.
+     */
+    private static long hash(final byte[] bytes, final int length) {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < length; ++i) {
+            hash = (hash ^ (bytes[i] & 0xFF)) * FNV_PRIME;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+
+    /**
+     * Bloom filter hash functions are derived from two halves of the value's hash, as {@code h1 + i * h2}.
+     */
+    private static long bloomFilterBit(final long hash, final int i, final long bloomFilterBits) {
+        final long h1 = hash >>> 32;
+        final long h2 = (hash & 0xFFFFFFFFL) | 1;
+        return Long.remainderUnsigned(h1 + (i * h2), bloomFilterBits);
+    }
+
+    private static long roundUp(final long value, final long multiple) {
+        return ((value + multiple - 1) / multiple) * multiple;
+    }
+
+    /**
+     * Read-write mapping of the index file being built, through windows of the same size as {@link MappedFile}'s, so that longs never straddle two windows.
+     */
+    private static final class WritableMapping {
+        private final MappedByteBuffer[] windows;
+
+        private WritableMapping(final FileChannel channel, final long size) throws IOException {
+            this.windows = new MappedByteBuffer[(int) ((size + WINDOW_SIZE - 1) / WINDOW_SIZE)];
+            for (int i = 0; i < windows.length; ++i) {
+                final long windowStart = (long) i * WINDOW_SIZE;
+                windows[i] = channel.map(FileChannel.MapMode.READ_WRITE, windowStart, Math.min(WINDOW_SIZE, size - windowStart));
+            }
+        }
+
+        private void put(final long position, final byte b) {
+            windows[(int) (position / WINDOW_SIZE)].put((int) (position % WINDOW_SIZE), b);
+        }
+
+        private long getLong(final long position) {
+            return windows[(int) (position / WINDOW_SIZE)].getLong((int) (position % WINDOW_SIZE));
+        }
+
+        private void putLong(final long position, final long value) {
+            windows[(int) (position / WINDOW_SIZE)].putLong((int) (position % WINDOW_SIZE), value);
+        }
+
+        private void force() {
+            Arrays.stream(windows).forEach(MappedByteBuffer::force);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import com.google.common.collect.Sets;
+
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * {@link WhiteList} backed by a {@code HashSet<String>}, hence a {@code String} is created per lookup of a range of characters.
+ */
+final class SetWhiteList implements WhiteList {
+    private final Set<String> values;
+
+    SetWhiteList(final Set<String> values) {
+        checkNotNull(values, "White-list set must NOT be null.");
+        this.values = sanitize(values);
+        checkArgument(!this.values.isEmpty(), "White-list set must NOT be empty.");
+    }
+
+    static Set<String> sanitize(final Set<String> whiteList) {
+        final Set<String> sanitizedWhiteList = Sets.newHashSetWithExpectedSize(whiteList.size());
+        for (final String element : whiteList) {
+            if (element == null)
+                continue;
+            final String sanitizedElement = element.trim();
+            if (sanitizedElement.isEmpty())
+                continue;
+            sanitizedWhiteList.add(sanitizedElement);
+        }
+        return sanitizedWhiteList;
+    }
+
+    @Override
+    public boolean contains(final CharSequence value) {
+        return values.contains(value.toString());
+    }
+
+    @Override
+    public boolean contains(final char[] chars, final int start, final int length) {
+        return values.contains(new String(chars, start, length));
+    }
+}
@@ -0,0 +1,19 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Predicate evaluated on the StAX events of an XML element, as these are parsed, rather than on the element's DOM tree.
+ * For each element to evaluate, callers must:
+ * - call {@link StreamingPredicate#reset() reset},
+ * - call {@link StreamingPredicate#accept(XMLStreamReader) accept} for each event, from the element's {@code START_ELEMENT} to its {@code END_ELEMENT}, both included,
+ * - call {@link StreamingPredicate#matches() matches} to get the result.
+ * Implementations are stateful, and therefore NOT thread-safe.
+ */
+public interface StreamingPredicate {
+    void reset();
+
+    void accept(final XMLStreamReader reader);
+
+    boolean matches();
+}
@@ -0,0 +1,88 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import javax.xml.stream.XMLStreamReader;
+import java.util.List;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+public final class StreamingPredicates {
+    private StreamingPredicates() {
+        // Utility class, do NOT instantiate.
+    }
+
+    /**
+     * @return a {@link StreamingPredicate} matching elements matched by all the provided ones, which all see the same events, in a single pass.
+     */
+    public static StreamingPredicate allOf(final List<? extends StreamingPredicate> predicates) {
+        return combine(predicates, true);
+    }
+
+    /**
+     * @return a {@link StreamingPredicate} matching elements matched by any of the provided ones, which all see the same events, in a single pass.
+     */
+    public static StreamingPredicate anyOf(final List<? extends StreamingPredicate> predicates) {
+        return combine(predicates, false);
+    }
+
+    /**
+     * @return a {@link StreamingPredicate} matching elements matched by the provided predicate, which the observer sees the same events as,
+     * e.g. to capture values while parsing, without affecting which elements match.
+     */
+    public static StreamingPredicate observing(final StreamingPredicate predicate, final StreamingPredicate observer) {
+        checkNotNull(predicate, "StreamingPredicate must NOT be null.");
+        checkNotNull(observer, "Observer must NOT be null.");
+        return new StreamingPredicate() {
+            @Override
+            public void reset() {
+                predicate.reset();
+                observer.reset();
+            }
+
+            @Override
+            public void accept(final XMLStreamReader reader) {
+                predicate.accept(reader);
+                observer.accept(reader);
+            }
+
+            @Override
+            public boolean matches() {
+                return predicate.matches();
+            }
+        };
+    }
+
+    private static StreamingPredicate combine(final List<? extends StreamingPredicate> predicates, final boolean all) {
+        checkNotNull(predicates, "StreamingPredicates must NOT be null.");
+        checkArgument(!predicates.isEmpty(), "StreamingPredicates must NOT be empty.");
+        if (predicates.size() == 1) {
+            return predicates.get(0);
+        }
+        final StreamingPredicate[] combined = predicates.toArray(new StreamingPredicate[predicates.size()]);
+        return new StreamingPredicate() {
+            @Override
+            public void reset() {
+                for (final StreamingPredicate predicate : combined) {
+                    predicate.reset();
+                }
+            }
+
+            @Override
+            public void accept(final XMLStreamReader reader) {
+                for (final StreamingPredicate predicate : combined) {
+                    predicate.accept(reader);
+                }
+            }
+
+            @Override
+            public boolean matches() {
+                for (final StreamingPredicate predicate : combined) {
+                    if (predicate.matches() != all) {
+                        return !all;
+                    }
+                }
+                return all;
+            }
+        };
+    }
+}
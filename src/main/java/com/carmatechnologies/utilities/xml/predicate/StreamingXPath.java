@@ -0,0 +1,279 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compiled form of the "streamable" subset of XPath, i.e. expressions which can be evaluated on StAX events, without any DOM tree:
+ * - absolute or relative location paths made of child ({@code /}) and descendant ({@code //}) steps,
+ * - name tests on elements without namespace, or {@code *},
+ * - predicates: {@code [@name]}, {@code [@name = 'value']}, {@code [n]}, and, on the last step only, {@code [text() = 'value']} or {@code [. = 'value']},
+ * - optionally, a final {@code @name} or {@code text()} step.
+ * Example: {@code //book[@category = 'WEB']/tags/tag[text() = 'xquery']}.
+ * Instances are immutable, see {@link StreamingXPathPredicate} for the evaluation.
+ */
+public final class StreamingXPath {
+    private static final int MAX_STEPS = Long.SIZE - 1;
+
+    enum Terminal {
+        ELEMENT, ATTRIBUTE, TEXT
+    }
+
+    static final class Step {
+        final boolean descendant;
+        final String localName; // null for "*".
+        final String[] attributeNames;
+        final String[] attributeValues; // null value for existence tests.
+        final int position; // 0 if none.
+        final int attributesBeforePosition;
+        final String textValue; // [text() = '...']
+        final String stringValue; // [. = '...']
+
+        private Step(final boolean descendant, final String localName, final List<String> attributeNames, final List<String> attributeValues,
+                     final int position, final int attributesBeforePosition, final String textValue, final String stringValue) {
+            this.descendant = descendant;
+            this.localName = localName;
+            this.attributeNames = attributeNames.toArray(new String[attributeNames.size()]);
+            this.attributeValues = attributeValues.toArray(new String[attributeValues.size()]);
+            this.position = position;
+            this.attributesBeforePosition = attributesBeforePosition;
+            this.textValue = textValue;
+            this.stringValue = stringValue;
+        }
+
+        boolean hasTextPredicate() {
+            return (textValue != null) || (stringValue != null);
+        }
+    }
+
+    final Step[] steps;
+    final Terminal terminal;
+    final String terminalAttribute;
+    private final String xpathQuery;
+
+    private StreamingXPath(final String xpathQuery, final List<Step> steps, final Terminal terminal, final String terminalAttribute) {
+        this.xpathQuery = xpathQuery;
+        this.steps = steps.toArray(new Step[steps.size()]);
+        this.terminal = terminal;
+        this.terminalAttribute = terminalAttribute;
+    }
+
+    /**
+     * @param xpathQuery XPath query to compile.
+     * @return the compiled query, or {@code Optional.empty()} if the query is not part of the streamable subset of XPath,
+     * in which case it should be evaluated on a DOM tree instead.
+     */
+    public static Optional<StreamingXPath> compile(final String xpathQuery) {
+        checkNotNull(xpathQuery, "XPath query must NOT be null.");
+        try {
+            return Optional.of(new Parser(xpathQuery).parse());
+        } catch (NotStreamableException e) {
+            return Optional.empty();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return xpathQuery;
+    }
+
+    private static final class NotStreamableException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private NotStreamableException() {
+            super(null, null, false, false); // Control flow only: no need for a stack trace.
+        }
+    }
+
+    /**
+     * Recursive descent parser for the streamable subset of XPath. Anything else throws {@code NotStreamableException}.
+     */
+    private static final class Parser {
+        private final String xpathQuery;
+        private int position = 0;
+
+        private Parser(final String xpathQuery) {
+            this.xpathQuery = xpathQuery;
+        }
+
+        private StreamingXPath parse() throws NotStreamableException {
+            final List<Step> steps = new ArrayList<>();
+            skipWhitespaces();
+            boolean descendant = false;
+            if (consume("//")) {
+                descendant = true;
+            } else {
+                consume("/");
+            }
+            while (true) {
+                skipWhitespaces();
+                if (consume("@")) {
+                    return terminal(steps, descendant, Terminal.ATTRIBUTE, name());
+                }
+                if (consume("text()")) {
+                    return terminal(steps, descendant, Terminal.TEXT, null);
+                }
+                steps.add(step(descendant));
+                skipWhitespaces();
+                if (isAtEnd()) {
+                    return terminal(steps, false, Terminal.ELEMENT, null);
+                } else if (consume("//")) {
+                    descendant = true;
+                } else if (consume("/")) {
+                    descendant = false;
+                } else {
+                    throw new NotStreamableException();
+                }
+            }
+        }
+
+        private StreamingXPath terminal(final List<Step> steps, final boolean descendant, final Terminal terminal, final String attribute) throws NotStreamableException {
+            skipWhitespaces();
+            if (!isAtEnd() || descendant || steps.isEmpty() || (steps.size() > MAX_STEPS)) {
+                throw new NotStreamableException();
+            }
+            for (int i = 0; i < steps.size(); ++i) {
+                final boolean isLast = (i == steps.size() - 1);
+                // Text predicates are only known at the end of the element, hence they cannot condition subsequent steps:
+                if (steps.get(i).hasTextPredicate() && (!isLast || (terminal != Terminal.ELEMENT))) {
+                    throw new NotStreamableException();
+                }
+            }
+            return new StreamingXPath(xpathQuery, steps, terminal, attribute);
+        }
+
+        private Step step(final boolean descendant) throws NotStreamableException {
+            final String localName = consume("*") ? null : name();
+            skipWhitespaces();
+            if (peek() == ':' || peek() == '(') {
+                // Namespace prefixes, axes and node tests are not supported.
+                throw new NotStreamableException();
+            }
+            final List<String> attributeNames = new ArrayList<>();
+            final List<String> attributeValues = new ArrayList<>();
+            int position = 0;
+            int attributesBeforePosition = 0;
+            String textValue = null;
+            String stringValue = null;
+            while (consume("[")) {
+                skipWhitespaces();
+                if (Character.isDigit(peek())) {
+                    if (position != 0) {
+                        throw new NotStreamableException();
+                    }
+                    position = number();
+                    attributesBeforePosition = attributeNames.size();
+                } else if (consume("@")) {
+                    attributeNames.add(name());
+                    skipWhitespaces();
+                    attributeValues.add(consume("=") ? literal() : null);
+                } else if (consume("text()")) {
+                    textValue = equalsLiteral(textValue);
+                } else if (consume(".")) {
+                    stringValue = equalsLiteral(stringValue);
+                } else {
+                    throw new NotStreamableException();
+                }
+                skipWhitespaces();
+                expect("]");
+                skipWhitespaces();
+            }
+            if ((position != 0) && ((textValue != null) || (stringValue != null))) {
+                // Position would then depend on text predicates, which are only known at the end of the element.
+                throw new NotStreamableException();
+            }
+            return new Step(descendant, localName, attributeNames, attributeValues, position, attributesBeforePosition, textValue, stringValue);
+        }
+
+        private String equalsLiteral(final String previousValue) throws NotStreamableException {
+            if (previousValue != null) {
+                throw new NotStreamableException();
+            }
+            skipWhitespaces();
+            expect("=");
+            return literal();
+        }
+
+        private String literal() throws NotStreamableException {
+            skipWhitespaces();
+            final char quote = peek();
+            if ((quote != '\'') && (quote != '"')) {
+                throw new NotStreamableException();
+            }
+            final int end = xpathQuery.indexOf(quote, position + 1);
+            if (end < 0) {
+                throw new NotStreamableException();
+            }
+            final String literal = xpathQuery.substring(position + 1, end);
+            position = end + 1;
+            return literal;
+        }
+
+        private int number() throws NotStreamableException {
+            final int start = position;
+            while (Character.isDigit(peek())) {
+                ++position;
+            }
+            try {
+                final int number = Integer.parseInt(xpathQuery.substring(start, position));
+                if (number < 1) {
+                    throw new NotStreamableException();
+                }
+                return number;
+            } catch (NumberFormatException e) {
+                throw new NotStreamableException();
+            }
+        }
+
+        private String name() throws NotStreamableException {
+            final int start = position;
+            if (!isNameStartChar(peek())) {
+                throw new NotStreamableException();
+            }
+            ++position;
+            while (isNameChar(peek())) {
+                ++position;
+            }
+            return xpathQuery.substring(start, position).intern(); // Interned, to allow identity comparisons with StAX names.
+        }
+
+        private static boolean isNameStartChar(final char c) {
+            return Character.isLetter(c) || (c == '_');
+        }
+
+        private static boolean isNameChar(final char c) {
+            return Character.isLetterOrDigit(c) || (c == '_') || (c == '-') || (c == '.');
+        }
+
+        private void expect(final String token) throws NotStreamableException {
+            if (!consume(token)) {
+                throw new NotStreamableException();
+            }
+        }
+
+        private boolean consume(final String token) {
+            if (xpathQuery.startsWith(token, position)) {
+                position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void skipWhitespaces() {
+            while (Character.isWhitespace(peek())) {
+                ++position;
+            }
+        }
+
+        private char peek() {
+            return isAtEnd() ? '\0' : xpathQuery.charAt(position);
+        }
+
+        private boolean isAtEnd() {
+            return position >= xpathQuery.length();
+        }
+    }
+}
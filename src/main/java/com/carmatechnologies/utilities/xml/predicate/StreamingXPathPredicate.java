@@ -0,0 +1,305 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPath.Step;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPath.Terminal;
+
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.util.Arrays;
+import java.util.Set;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Evaluates a {@link StreamingXPath} on the StAX events of an XML element, as a state machine:
+ * - for each open element, a bit set records which steps of the path have been matched by the element and its ancestors,
+ * - character data is appended to a single buffer, so that the text of any node is a range of this buffer.
+ * The element matches if the path selects at least one node whose text satisfies the provided condition, if any,
+ * in the same way as {@link XPathPredicate} and {@link XPathSetPredicate} would on the element's DOM tree.
+ * No object is allocated per event once the internal buffers have grown to the size of the largest element.
+ */
+public final class StreamingXPathPredicate implements StreamingPredicate {
+    private static final int INITIAL_DEPTH = 16;
+    private static final int INITIAL_TEXT_LENGTH = 1024;
+
+    private final StreamingXPath path;
+    private final Step[] steps;
+    private final TextPredicate condition;
+    private final boolean needsText;
+
+    private boolean matched;
+    private int depth;
+    private long[] contexts = new long[INITIAL_DEPTH]; // Steps matched by each open element, and carried by descendant steps.
+    private int[][] positions = new int[INITIAL_DEPTH][]; // Number of children matched by each step, for each open element.
+    private boolean[] pendingEnd = new boolean[INITIAL_DEPTH]; // Last step matched, but text predicates still to evaluate.
+    private boolean[] textTerminal = new boolean[INITIAL_DEPTH]; // Last step matched, and its text() nodes are selected.
+    private boolean[] textMatched = new boolean[INITIAL_DEPTH]; // [text() = '...'] already satisfied by a text node.
+    private int[] textStart = new int[INITIAL_DEPTH]; // Start of each open element's string value in the text buffer.
+    private char[] text = new char[INITIAL_TEXT_LENGTH];
+    private int textLength;
+    private boolean inTextNode;
+    private int textNodeStart;
+
+    /**
+     * @param path      compiled XPath query.
+     * @param condition condition on the text of selected nodes, or {@code null} to only require at least one node to be selected.
+     */
+    public StreamingXPathPredicate(final StreamingXPath path, final TextPredicate condition) {
+        this.path = checkNotNull(path, "StreamingXPath must NOT be null.");
+        this.steps = path.steps;
+        this.condition = condition;
+        this.needsText = (condition != null) || (path.terminal == Terminal.TEXT) || path.steps[path.steps.length - 1].hasTextPredicate();
+        for (int i = 0; i < positions.length; ++i) {
+            positions[i] = new int[steps.length];
+        }
+        reset();
+    }
+
+    /**
+     * Streaming equivalent of {@link XPathPredicate}: matches if the path selects at least one node.
+     */
+    public static StreamingXPathPredicate exists(final StreamingXPath path) {
+        return new StreamingXPathPredicate(path, null);
+    }
+
+    /**
+     * Streaming equivalent of {@link XPathSetPredicate}: matches if the trimmed text of a selected node is in the white-list.
+     */
+    public static StreamingXPathPredicate in(final StreamingXPath path, final Set<String> whiteList) {
+        return in(path, WhiteList.of(whiteList));
+    }
+
+    /**
+     * Same as {@link StreamingXPathPredicate#in(StreamingXPath, Set)}, with any {@link WhiteList}, which is looked up without copying the text.
+     */
+    public static StreamingXPathPredicate in(final StreamingXPath path, final WhiteList whiteList) {
+        checkNotNull(whiteList, "White-list must NOT be null.");
+        return new StreamingXPathPredicate(path, (text, start, length) -> {
+            int end = start + length;
+            int begin = start;
+            while ((begin < end) && (text[begin] <= ' ')) {
+                ++begin;
+            }
+            while ((end > begin) && (text[end - 1] <= ' ')) {
+                --end;
+            }
+            return whiteList.contains(text, begin, end - begin);
+        });
+    }
+
+    @Override
+    public void reset() {
+        matched = false;
+        depth = 0;
+        contexts[0] = 1L; // Document node: no step matched yet.
+        Arrays.fill(positions[0], 0);
+        textLength = 0;
+        inTextNode = false;
+    }
+
+    @Override
+    public void accept(final XMLStreamReader reader) {
+        if (matched) {
+            return; // Already decided.
+        }
+        switch (reader.getEventType()) {
+            case XMLEvent.START_ELEMENT:
+                endTextNode();
+                startElement(reader);
+                break;
+            case XMLEvent.END_ELEMENT:
+                endTextNode();
+                endElement();
+                break;
+            case XMLEvent.CHARACTERS:
+            case XMLEvent.CDATA:
+            case XMLEvent.SPACE:
+                characters(reader);
+                break;
+            case XMLEvent.COMMENT:
+            case XMLEvent.PROCESSING_INSTRUCTION:
+                endTextNode();
+                break;
+            default:
+                break;
+        }
+    }
+
+    @Override
+    public boolean matches() {
+        return matched;
+    }
+
+    private void startElement(final XMLStreamReader reader) {
+        final long parentContext = contexts[depth];
+        final int[] parentPositions = positions[depth];
+        ensureDepth(++depth);
+        Arrays.fill(positions[depth], 0);
+        pendingEnd[depth] = false;
+        textTerminal[depth] = false;
+        textMatched[depth] = false;
+        textStart[depth] = textLength;
+
+        long context = 0L;
+        for (long remaining = parentContext; remaining != 0L; remaining &= remaining - 1) {
+            final int matchedSteps = Long.numberOfTrailingZeros(remaining);
+            final Step step = steps[matchedSteps];
+            if (step.descendant) {
+                context |= 1L << matchedSteps; // The step may still match deeper descendants.
+            }
+            if (matches(step, matchedSteps, reader, parentPositions)) {
+                if (matchedSteps + 1 < steps.length) {
+                    context |= 1L << (matchedSteps + 1);
+                } else {
+                    lastStepMatched(step, reader);
+                    if (matched) {
+                        return;
+                    }
+                }
+            }
+        }
+        contexts[depth] = context;
+    }
+
+    private boolean matches(final Step step, final int index, final XMLStreamReader reader, final int[] parentPositions) {
+        if ((step.localName != null) && !(step.localName.equals(reader.getLocalName()) && isEmpty(reader.getNamespaceURI()))) {
+            return false;
+        }
+        for (int i = 0; i < step.attributeNames.length; ++i) {
+            if ((step.position != 0) && (i == step.attributesBeforePosition) && (++parentPositions[index] != step.position)) {
+                return false;
+            }
+            if (!hasAttribute(reader, step.attributeNames[i], step.attributeValues[i])) {
+                return false;
+            }
+        }
+        return (step.position == 0) || (step.attributesBeforePosition < step.attributeNames.length) || (++parentPositions[index] == step.position);
+    }
+
+    private void lastStepMatched(final Step step, final XMLStreamReader reader) {
+        switch (path.terminal) {
+            case ATTRIBUTE:
+                final String value = attributeValue(reader, path.terminalAttribute);
+                matched = (value != null) && ((condition == null) || test(value));
+                break;
+            case TEXT:
+                textTerminal[depth] = true;
+                break;
+            default:
+                if (step.hasTextPredicate() || (condition != null)) {
+                    pendingEnd[depth] = true;
+                } else {
+                    matched = true;
+                }
+                break;
+        }
+    }
+
+    private void characters(final XMLStreamReader reader) {
+        if (!needsText) {
+            return;
+        }
+        if (!inTextNode) {
+            inTextNode = true;
+            textNodeStart = textLength;
+        }
+        final int length = reader.getTextLength();
+        ensureTextCapacity(textLength + length);
+        System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), text, textLength, length);
+        textLength += length;
+    }
+
+    /**
+     * In XPath's data model, contiguous character data, CDATA sections included, forms a single text node.
+     */
+    private void endTextNode() {
+        if (!inTextNode) {
+            return;
+        }
+        inTextNode = false;
+        final int length = textLength - textNodeStart;
+        if (textTerminal[depth]) {
+            matched |= (condition == null) || condition.test(text, textNodeStart, length);
+        }
+        if (pendingEnd[depth] && !textMatched[depth]) {
+            final String textValue = steps[steps.length - 1].textValue;
+            textMatched[depth] = (textValue != null) && equals(textValue, textNodeStart, length);
+        }
+    }
+
+    private void endElement() {
+        if (pendingEnd[depth]) {
+            final Step step = steps[steps.length - 1];
+            final int start = textStart[depth];
+            final int length = textLength - start;
+            matched = ((step.textValue == null) || textMatched[depth])
+                    && ((step.stringValue == null) || equals(step.stringValue, start, length))
+                    && ((condition == null) || condition.test(text, start, length));
+        }
+        --depth;
+    }
+
+    private boolean test(final String value) {
+        ensureTextCapacity(textLength + value.length());
+        value.getChars(0, value.length(), text, textLength);
+        return condition.test(text, textLength, value.length());
+    }
+
+    private boolean equals(final String value, final int start, final int length) {
+        if (value.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (value.charAt(i) != text[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasAttribute(final XMLStreamReader reader, final String name, final String expectedValue) {
+        final String value = attributeValue(reader, name);
+        return (value != null) && ((expectedValue == null) || expectedValue.equals(value));
+    }
+
+    private static String attributeValue(final XMLStreamReader reader, final String name) {
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            if (name.equals(reader.getAttributeLocalName(i)) && isEmpty(reader.getAttributeNamespace(i))) {
+                return reader.getAttributeValue(i);
+            }
+        }
+        return null;
+    }
+
+    private static boolean isEmpty(final String namespaceUri) {
+        return (namespaceUri == null) || namespaceUri.isEmpty();
+    }
+
+    private void ensureDepth(final int minDepth) {
+        if (minDepth < contexts.length) {
+            return;
+        }
+        final int newLength = 2 * contexts.length;
+        contexts = Arrays.copyOf(contexts, newLength);
+        pendingEnd = Arrays.copyOf(pendingEnd, newLength);
+        textTerminal = Arrays.copyOf(textTerminal, newLength);
+        textMatched = Arrays.copyOf(textMatched, newLength);
+        textStart = Arrays.copyOf(textStart, newLength);
+        final int oldLength = positions.length;
+        positions = Arrays.copyOf(positions, newLength);
+        for (int i = oldLength; i < newLength; ++i) {
+            positions[i] = new int[steps.length];
+        }
+    }
+
+    private void ensureTextCapacity(final int minCapacity) {
+        if (minCapacity > text.length) {
+            text = Arrays.copyOf(text, Math.max(minCapacity, 2 * text.length));
+        }
+    }
+
+    @Override
+    public String toString() {
+        return path.toString();
+    }
+}
@@ -0,0 +1,52 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import javax.xml.stream.XMLStreamReader;
+
+/**
+ * Captures, while parsing, the text of the first node a {@link StreamingXPath} selects in an XML element, e.g. a key to route the element by,
+ * so that it does not need to be evaluated on the element's DOM tree, or that no DOM tree needs to be built at all.
+ * Like the string value of an XPath query, the value is the empty string if no node is selected, and text is NOT trimmed.
+ * Nodes are considered once their text is complete, hence, if selected elements are nested, the innermost one is captured first.
+ * It matches if at least one node is selected, and is typically combined with other predicates by {@link StreamingPredicates#observing}.
+ */
+public final class StreamingXPathValue implements StreamingPredicate {
+    private final StreamingXPathPredicate predicate;
+    private String value;
+
+    public StreamingXPathValue(final StreamingXPath path) {
+        this.predicate = new StreamingXPathPredicate(path, (text, start, length) -> {
+            if (value == null) {
+                value = new String(text, start, length);
+            }
+            return true;
+        });
+    }
+
+    @Override
+    public void reset() {
+        value = null;
+        predicate.reset();
+    }
+
+    @Override
+    public void accept(final XMLStreamReader reader) {
+        predicate.accept(reader);
+    }
+
+    @Override
+    public boolean matches() {
+        return value != null;
+    }
+
+    /**
+     * @return the text of the first node selected in the last element evaluated, or the empty string if none was.
+     */
+    public String value() {
+        return (value == null) ? "" : value;
+    }
+
+    @Override
+    public String toString() {
+        return predicate.toString();
+    }
+}
@@ -0,0 +1,9 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+/**
+ * Condition on a range of characters, which allows evaluating text without first copying it into a {@code String}.
+ */
+@FunctionalInterface
+public interface TextPredicate {
+    boolean test(final char[] text, final int start, final int length);
+}
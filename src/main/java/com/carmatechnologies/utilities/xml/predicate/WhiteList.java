@@ -0,0 +1,53 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import java.nio.CharBuffer;
+import java.util.Set;
+
+/**
+ * Membership test of the values selected by {@link XPathSetPredicate} and {@link StreamingXPathPredicate#in}, either:
+ * - in an in-memory {@code Set<String>}, see {@link WhiteList#of(Set)}, or
+ * - in a memory-mapped index file, see {@link MappedWhiteList}, for white-lists too large to fit in the heap, or
+ * - starting with, or containing, any of many patterns, see {@link WhiteList#startingWith(Set)} and {@link WhiteList#containing(Set)}.
+ * Implementations must be thread-safe, as a single white-list may be shared by the predicates of several threads.
+ */
+public interface WhiteList {
+    /**
+     * @param value value to look for, already trimmed.
+     * @return {@code true} if the provided value is in the white-list, or matches any of its patterns.
+     */
+    boolean contains(CharSequence value);
+
+    /**
+     * Same as {@link WhiteList#contains(CharSequence)}, for a range of a buffer of characters, e.g. a parser's.
+     */
+    default boolean contains(final char[] chars, final int start, final int length) {
+        return contains(CharBuffer.wrap(chars, start, length));
+    }
+
+    /**
+     * @param values values of the white-list, trimmed, and ignored if {@code null} or empty.
+     * @return the white-list of the provided values, in memory.
+     * @throws IllegalArgumentException if there is no value left once sanitized.
+     */
+    static WhiteList of(final Set<String> values) {
+        return new SetWhiteList(values);
+    }
+
+    /**
+     * @param prefixes prefixes of the white-list, trimmed, and ignored if {@code null} or empty.
+     * @return the white-list of the values starting with any of the provided prefixes, in memory.
+     * @throws IllegalArgumentException if there is no prefix left once sanitized.
+     */
+    static WhiteList startingWith(final Set<String> prefixes) {
+        return new AhoCorasickWhiteList(prefixes, true);
+    }
+
+    /**
+     * @param keywords keywords of the white-list, trimmed, and ignored if {@code null} or empty.
+     * @return the white-list of the values containing any of the provided keywords, in memory.
+     * @throws IllegalArgumentException if there is no keyword left once sanitized.
+     */
+    static WhiteList containing(final Set<String> keywords) {
+        return new AhoCorasickWhiteList(keywords, false);
+    }
+}
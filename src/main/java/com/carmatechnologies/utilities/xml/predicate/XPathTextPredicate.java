@@ -0,0 +1,78 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import java.util.Arrays;
+import java.util.function.Predicate;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * DOM tree equivalent of {@link StreamingXPathPredicate}, for queries outside the streamable subset of XPath:
+ * matches if the text of any node selected by the XPath query satisfies the provided {@link TextPredicate}, e.g. a {@link ComparisonPredicate}.
+ * The text of each node is copied, from its text descendants, into a buffer reused from one node to the next, rather than concatenated into
+ * a {@code String} first, hence, like the XPath expression, this predicate must NOT be shared between threads.
+ */
+public final class XPathTextPredicate extends AbstractXPathPredicate implements Predicate<Node> {
+    private static final int INITIAL_BUFFER_SIZE = 256;
+
+    private final TextPredicate condition;
+    private char[] buffer = new char[INITIAL_BUFFER_SIZE];
+    private int length;
+
+    public XPathTextPredicate(final XPathExpression xpathExpression, final TextPredicate condition) {
+        super(xpathExpression);
+        this.condition = checkNotNull(condition, "TextPredicate must NOT be null.");
+    }
+
+    public XPathTextPredicate(final String xpathQuery, final TextPredicate condition) throws XPathExpressionException {
+        super(xpathQuery);
+        this.condition = checkNotNull(condition, "TextPredicate must NOT be null.");
+    }
+
+    @Override
+    protected boolean condition(final NodeList matchedNodes) {
+        for (int i = 0; i < matchedNodes.getLength(); ++i) {
+            length = 0;
+            appendText(matchedNodes.item(i));
+            if (condition.test(buffer, 0, length))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends the text of the provided node, like {@link Node#getTextContent()} returns it, or, for documents, like their root element's.
+     */
+    private void appendText(final Node node) {
+        switch (node.getNodeType()) {
+            case Node.ELEMENT_NODE:
+            case Node.DOCUMENT_NODE:
+            case Node.DOCUMENT_FRAGMENT_NODE:
+            case Node.ENTITY_REFERENCE_NODE:
+                for (Node child = node.getFirstChild(); child != null; child = child.getNextSibling()) {
+                    final short type = child.getNodeType();
+                    if ((type != Node.COMMENT_NODE) && (type != Node.PROCESSING_INSTRUCTION_NODE)) {
+                        appendText(child);
+                    }
+                }
+                break;
+            default:
+                append(node.getNodeValue());
+        }
+    }
+
+    private void append(final String text) {
+        if (text == null) {
+            return;
+        }
+        if (length + text.length() > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(length + text.length(), 2 * buffer.length));
+        }
+        text.getChars(0, text.length(), buffer, length);
+        length += text.length();
+    }
+}
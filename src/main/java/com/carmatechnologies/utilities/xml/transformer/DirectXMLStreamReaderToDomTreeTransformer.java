@@ -0,0 +1,163 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.DocumentBuilderFactoryImpl;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Builds the current element of the {@code XMLStreamReader} as a DOM tree, by creating DOM nodes directly from StAX events.
+ * This returns the same DOM tree as {@link XMLStreamReaderToDomTreeTransformer}, i.e. a {@code Document} node with the element as its only child,
+ * and also leaves the reader on the event following the element's {@code END_ELEMENT}, but without going through
+ * the identity {@code Transformer}, i.e. without a SAX bridge, a {@code DOMResult}, etc. for each element.
+ * Optionally, the same {@code Document} is recycled from one element to the next, in which case a DOM tree is only valid until
+ * the next call to {@link DirectXMLStreamReaderToDomTreeTransformer#apply(XMLStreamReader) apply}: this must therefore NOT
+ * be used with {@code ParallelXmlStreamFilter}, nor with anything else keeping references to DOM trees.
+ */
+public final class DirectXMLStreamReaderToDomTreeTransformer implements Function<XMLStreamReader, Node> {
+    private final DocumentBuilder documentBuilder;
+    private final boolean recycleDocuments;
+    private Document recycledDocument;
+
+    public DirectXMLStreamReaderToDomTreeTransformer(final DocumentBuilder documentBuilder, final boolean recycleDocuments) {
+        this.documentBuilder = checkNotNull(documentBuilder, "DocumentBuilder must NOT be null.");
+        this.recycleDocuments = recycleDocuments;
+    }
+
+    public DirectXMLStreamReaderToDomTreeTransformer(final DocumentBuilder documentBuilder) {
+        this(documentBuilder, false);
+    }
+
+    public DirectXMLStreamReaderToDomTreeTransformer() throws ParserConfigurationException {
+        this(DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder());
+    }
+
+    @Override
+    public Node apply(final XMLStreamReader reader) {
+        checkNotNull(reader, "XMLStreamReader must NOT be null");
+        try {
+            return toDomTree(reader);
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed to transform StAX stream into DOM tree.", e);
+        }
+    }
+
+    private Node toDomTree(final XMLStreamReader reader) throws XMLStreamException {
+        final Document document = newDocument();
+        Node current = document;
+        int depth = 0;
+        do {
+            switch (reader.getEventType()) {
+                case XMLEvent.START_ELEMENT:
+                    final Element element = createElement(document, reader);
+                    current.appendChild(element);
+                    declareNamespacesOutsideElement(element, reader);
+                    current = element;
+                    ++depth;
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    current = current.getParentNode();
+                    --depth;
+                    break;
+                case XMLEvent.CHARACTERS:
+                case XMLEvent.SPACE:
+                    appendText(document, current, reader);
+                    break;
+                case XMLEvent.CDATA:
+                    current.appendChild(document.createCDATASection(reader.getText()));
+                    break;
+                case XMLEvent.COMMENT:
+                    current.appendChild(document.createComment(reader.getText()));
+                    break;
+                case XMLEvent.PROCESSING_INSTRUCTION:
+                    current.appendChild(document.createProcessingInstruction(reader.getPITarget(), reader.getPIData()));
+                    break;
+                default:
+                    break;
+            }
+            reader.next();
+        } while (depth > 0);
+        return document;
+    }
+
+    private Document newDocument() {
+        if (!recycleDocuments) {
+            return documentBuilder.newDocument();
+        }
+        if (recycledDocument == null) {
+            recycledDocument = documentBuilder.newDocument();
+        }
+        while (recycledDocument.hasChildNodes()) {
+            recycledDocument.removeChild(recycledDocument.getFirstChild());
+        }
+        return recycledDocument;
+    }
+
+    private static Element createElement(final Document document, final XMLStreamReader reader) {
+        final Element element = document.createElementNS(emptyToNull(reader.getNamespaceURI()), qualifiedName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+            element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, qualifiedName(XMLConstants.XMLNS_ATTRIBUTE, reader.getNamespacePrefix(i)), reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            element.setAttributeNS(emptyToNull(reader.getAttributeNamespace(i)), qualifiedName(reader.getAttributePrefix(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        return element;
+    }
+
+    /**
+     * Namespaces declared by the element's ancestors, outside of the DOM tree, are declared again where used, so that the DOM tree is self-contained.
+     */
+    private static void declareNamespacesOutsideElement(final Element element, final XMLStreamReader reader) {
+        declareNamespaceIfMissing(element, reader.getPrefix(), reader.getNamespaceURI());
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            final String prefix = reader.getAttributePrefix(i);
+            if ((prefix != null) && !prefix.isEmpty() && !XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                declareNamespaceIfMissing(element, prefix, reader.getAttributeNamespace(i));
+            }
+        }
+    }
+
+    private static void declareNamespaceIfMissing(final Element element, final String prefix, final String namespaceUri) {
+        final String uri = emptyToNull(namespaceUri);
+        final String lookupPrefix = ((prefix == null) || prefix.isEmpty()) ? null : prefix;
+        if ((uri == null) ? (element.lookupNamespaceURI(lookupPrefix) == null) : uri.equals(element.lookupNamespaceURI(lookupPrefix))) {
+            return;
+        }
+        element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, qualifiedName(XMLConstants.XMLNS_ATTRIBUTE, (lookupPrefix == null) ? "" : lookupPrefix), (uri == null) ? "" : uri);
+    }
+
+    /**
+     * StAX readers may split text in several events: merge these into a single DOM text node.
+     */
+    private static void appendText(final Document document, final Node current, final XMLStreamReader reader) {
+        final Node last = current.getLastChild();
+        if ((last != null) && (last.getNodeType() == Node.TEXT_NODE)) {
+            ((Text) last).appendData(reader.getText());
+        } else {
+            current.appendChild(document.createTextNode(reader.getText()));
+        }
+    }
+
+    static String qualifiedName(final String prefix, final String localName) {
+        if ((prefix == null) || prefix.isEmpty()) {
+            return localName;
+        }
+        // Empty local name: default namespace declaration, i.e. "xmlns".
+        return ((localName == null) || localName.isEmpty()) ? prefix : prefix + ':' + localName;
+    }
+
+    static String emptyToNull(final String namespaceUri) {
+        return ((namespaceUri == null) || namespaceUri.isEmpty()) ? null : namespaceUri;
+    }
+}
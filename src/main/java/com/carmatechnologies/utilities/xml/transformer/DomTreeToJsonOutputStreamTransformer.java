@@ -0,0 +1,227 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.JsonWriter;
+import com.carmatechnologies.utilities.xml.common.Pair;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes XML elements as JSON Lines, i.e. one JSON object per element, followed by a new line, mapped as follows:
+ * - attributes, except namespace declarations, become fields named after them, with a configurable prefix, "@" by default,
+ * - child elements become fields named after them, and arrays if repeated, or configured to always be,
+ * - text becomes a field with a configurable name, "#text" by default, unless it is only whitespace between child elements,
+ * - child elements with neither attributes nor child elements become strings, of their text,
+ * - comments and processing instructions are ignored.
+ * Unlike {@link DomTreeToOutputStreamTransformer}, no serializer is involved: values are escaped and encoded straight into the output stream,
+ * by a {@link JsonWriter}, which can also be fed from StAX events.
+ * Like {@link XPathToOutputStreamTransformer}, this transformer is NOT thread-safe.
+ */
+public final class DomTreeToJsonOutputStreamTransformer implements Function<Pair<Node, OutputStream>, Void> {
+    public static final String DEFAULT_ATTRIBUTE_PREFIX = "@";
+    public static final String DEFAULT_TEXT_KEY = "#text";
+    private static final String XMLNS = "xmlns";
+
+    private final String attributePrefix;
+    private final String textKey;
+    private final Set<String> arrays;
+    private final boolean alwaysArrays;
+    private final JsonWriter writer = new JsonWriter();
+    private final List<Set<String>> writtenNames = new ArrayList<>();
+
+    private DomTreeToJsonOutputStreamTransformer(final Builder builder) {
+        this.attributePrefix = checkNotNull(builder.attributePrefix, "Attribute prefix must NOT be null.");
+        this.textKey = checkNotNull(builder.textKey, "Text key must NOT be null.");
+        this.arrays = checkNotNull(builder.arrays, "Names of arrays must NOT be null.");
+        this.alwaysArrays = builder.alwaysArrays;
+    }
+
+    public DomTreeToJsonOutputStreamTransformer() {
+        this(builder());
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    @Override
+    public Void apply(final Pair<Node, OutputStream> pair) {
+        checkNotNull(pair, "Pair<Node, OutputStream> must NOT be null.");
+        final Node domTree = pair.first();
+        checkNotNull(domTree, "Node must NOT be null.");
+        final OutputStream out = pair.second();
+        checkNotNull(out, "OutputStream must NOT be null.");
+
+        try {
+            final Node element = (domTree.getNodeType() == Node.DOCUMENT_NODE) ? ((Document) domTree).getDocumentElement() : domTree;
+            writeElement(element, true, 0);
+            writer.to(out).endLine();
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write DOM tree as JSON to output stream.", e);
+        }
+    }
+
+    private void writeElement(final Node element, final boolean asObject, final int depth) throws IOException {
+        final NamedNodeMap attributes = element.getAttributes();
+        boolean hasAttributes = false;
+        for (int i = 0; i < attributes.getLength(); ++i) {
+            hasAttributes |= !isNamespaceDeclaration(attributes.item(i));
+        }
+        boolean hasChildElements = false;
+        boolean hasTextNodes = false;
+        boolean hasText = false;
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            hasChildElements |= (child.getNodeType() == Node.ELEMENT_NODE);
+            hasTextNodes |= isText(child);
+            hasText |= isText(child) && !isWhitespace(child.getNodeValue());
+        }
+
+        if (!asObject && !hasAttributes && !hasChildElements) {
+            writeText(element);
+            return;
+        }
+        writer.beginObject();
+        for (int i = 0; i < attributes.getLength(); ++i) {
+            final Node attribute = attributes.item(i);
+            if (!isNamespaceDeclaration(attribute)) {
+                writer.name(attributePrefix, attribute.getNodeName()).value(attribute.getNodeValue());
+            }
+        }
+        if (hasChildElements) {
+            writeChildElements(element, depth);
+        }
+        if (hasText || (!hasChildElements && hasTextNodes)) {
+            writer.name(textKey);
+            writeText(element);
+        }
+        writer.endObject();
+    }
+
+    /**
+     * Child elements are grouped by name, in the order of their first occurrence, each group being written as a single field.
+     */
+    private void writeChildElements(final Node element, final int depth) throws IOException {
+        if (writtenNames.size() == depth) {
+            writtenNames.add(new HashSet<>());
+        }
+        final Set<String> names = writtenNames.get(depth);
+        names.clear();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if ((child.getNodeType() != Node.ELEMENT_NODE) || !names.add(child.getNodeName())) {
+                continue;
+            }
+            final String name = child.getNodeName();
+            writer.name(name);
+            if (!alwaysArrays && !arrays.contains(name) && (nextSiblingNamed(child, name) == null)) {
+                writeElement(child, false, depth + 1);
+                continue;
+            }
+            writer.beginArray();
+            for (Node sibling = child; sibling != null; sibling = nextSiblingNamed(sibling, name)) {
+                writeElement(sibling, false, depth + 1);
+            }
+            writer.endArray();
+        }
+    }
+
+    private void writeText(final Node element) throws IOException {
+        writer.beginString();
+        for (Node child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+            if (isText(child)) {
+                writer.appendString(child.getNodeValue());
+            }
+        }
+        writer.endString();
+    }
+
+    private static Node nextSiblingNamed(final Node node, final String name) {
+        for (Node sibling = node.getNextSibling(); sibling != null; sibling = sibling.getNextSibling()) {
+            if ((sibling.getNodeType() == Node.ELEMENT_NODE) && name.equals(sibling.getNodeName())) {
+                return sibling;
+            }
+        }
+        return null;
+    }
+
+    private static boolean isNamespaceDeclaration(final Node attribute) {
+        final String name = attribute.getNodeName();
+        return name.startsWith(XMLNS) && ((name.length() == XMLNS.length()) || (name.charAt(XMLNS.length()) == ':'));
+    }
+
+    private static boolean isText(final Node node) {
+        return (node.getNodeType() == Node.TEXT_NODE) || (node.getNodeType() == Node.CDATA_SECTION_NODE);
+    }
+
+    private static boolean isWhitespace(final String text) {
+        for (int i = 0; i < text.length(); ++i) {
+            if (!Character.isWhitespace(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static final class Builder {
+        private String attributePrefix = DEFAULT_ATTRIBUTE_PREFIX;
+        private String textKey = DEFAULT_TEXT_KEY;
+        private Set<String> arrays = Collections.emptySet();
+        private boolean alwaysArrays;
+
+        private Builder() {
+        }
+
+        /**
+         * @param attributePrefix prefix of the fields of attributes, e.g. "" to name these exactly like attributes. Default: "@".
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder attributePrefix(final String attributePrefix) {
+            this.attributePrefix = attributePrefix;
+            return this;
+        }
+
+        /**
+         * @param textKey name of the field of the text of elements which also have attributes or child elements. Default: "#text".
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder textKey(final String textKey) {
+            this.textKey = textKey;
+            return this;
+        }
+
+        /**
+         * @param arrays names of the child elements to always write as arrays, even if not repeated, so that consumers get the same type
+         *               for every element. Default: none, i.e. only repeated child elements are written as arrays.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder arrays(final Set<String> arrays) {
+            this.arrays = arrays;
+            return this;
+        }
+
+        /**
+         * Write all child elements as arrays.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder alwaysArrays() {
+            this.alwaysArrays = true;
+            return this;
+        }
+
+        public DomTreeToJsonOutputStreamTransformer build() {
+            return new DomTreeToJsonOutputStreamTransformer(this);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.DocumentBuilderFactoryImpl;
+import com.carmatechnologies.utilities.xml.predicate.StreamingPredicate;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Evaluates the provided {@link StreamingPredicate} while reading the current element from the {@code XMLStreamReader}, and:
+ * - returns the element as a DOM tree if it matches,
+ * - returns {@code null} otherwise, in which case no DOM tree is ever built.
+ * Events are recorded in reusable buffers while the element is read, so that the DOM tree can be built afterwards.
+ * Like {@link XMLStreamReaderToDomTreeTransformer}, the reader is left on the event following the element's {@code END_ELEMENT}.
+ */
+public final class FilteringXMLStreamReaderToDomTreeTransformer implements Function<XMLStreamReader, Node> {
+    private final StreamingPredicate predicate;
+    private final DocumentBuilder documentBuilder;
+    private final boolean buildDomTrees;
+    private final XMLStreamRecording recording = new XMLStreamRecording();
+
+    /**
+     * @param buildDomTrees if {@code false}, matching elements are returned as empty {@code Document}s, e.g. when only their original bytes are written,
+     *                      see {@link RawXmlToOutputStreamTransformer}, which saves recording events and building DOM trees altogether.
+     */
+    public FilteringXMLStreamReaderToDomTreeTransformer(final StreamingPredicate predicate, final DocumentBuilder documentBuilder, final boolean buildDomTrees) {
+        this.predicate = checkNotNull(predicate, "StreamingPredicate must NOT be null.");
+        this.documentBuilder = checkNotNull(documentBuilder, "DocumentBuilder must NOT be null.");
+        this.buildDomTrees = buildDomTrees;
+    }
+
+    public FilteringXMLStreamReaderToDomTreeTransformer(final StreamingPredicate predicate, final DocumentBuilder documentBuilder) {
+        this(predicate, documentBuilder, true);
+    }
+
+    public FilteringXMLStreamReaderToDomTreeTransformer(final StreamingPredicate predicate) throws ParserConfigurationException {
+        this(predicate, DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder());
+    }
+
+    @Override
+    public Node apply(final XMLStreamReader reader) {
+        checkNotNull(reader, "XMLStreamReader must NOT be null");
+        try {
+            if (!readAndTest(reader)) {
+                return null;
+            }
+            return buildDomTrees ? recording.toDomTree(documentBuilder) : documentBuilder.newDocument();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed to read element from StAX stream.", e);
+        }
+    }
+
+    private boolean readAndTest(final XMLStreamReader reader) throws XMLStreamException {
+        predicate.reset();
+        recording.clear();
+        int depth = 0;
+        do {
+            final int eventType = reader.getEventType();
+            if (eventType == XMLEvent.START_ELEMENT) {
+                ++depth;
+            } else if (eventType == XMLEvent.END_ELEMENT) {
+                --depth;
+            }
+            predicate.accept(reader);
+            if (buildDomTrees) {
+                recording.record(reader);
+            }
+            reader.next();
+        } while (depth > 0);
+        return predicate.matches();
+    }
+}
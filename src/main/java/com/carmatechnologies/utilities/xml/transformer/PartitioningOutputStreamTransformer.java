@@ -0,0 +1,225 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.common.Pair;
+import org.w3c.dom.Node;
+
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes each XML element, with the provided transformer, to the file of its partition, i.e. {@code <prefix>-<key>.xml}, or {@code .xml.gz},
+ * where the key is the string value of the provided XPath query, or of any function of the element, e.g. a value captured while parsing,
+ * or, optionally, its bucket, among a fixed number of these, by hash.
+ * Bytes of keys, in UTF-8, other than ASCII letters, digits, dots, dashes and underscores, are percent-encoded in file names, '%' included,
+ * so that distinct keys always get distinct files, e.g. {@code "C++"} is written to {@code <prefix>-C%2B%2B.xml}, and {@code "C__"} to {@code <prefix>-C__.xml}.
+ * The output stream provided with each element is therefore ignored. Only a bounded number of files are kept open, the least recently used
+ * one being closed when another one needs to be opened, so that thousands of keys do not exhaust file descriptors. Files are truncated when
+ * first written to, and appended to when re-opened, as further gzip members if gzipped. Closing this transformer closes all files, after which
+ * it can be used again, e.g. for another input XML stream, which then overwrites these files.
+ * Like {@link XPathToOutputStreamTransformer}, this transformer is NOT thread-safe.
+ */
+public final class PartitioningOutputStreamTransformer implements Function<Pair<Node, OutputStream>, Void>, Closeable {
+    public static final int DEFAULT_MAX_OPEN_FILES = 256;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String EXTENSION = ".xml";
+    private static final String GZIP_EXTENSION = ".gz";
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final Function<Node, String> key;
+    private final Function<Pair<Node, OutputStream>, Void> transformer;
+    private final String prefix;
+    private final int buckets;
+    private final int maxOpenFiles;
+    private final boolean gzip;
+    private final Map<Path, OutputStream> openFiles = new LinkedHashMap<>(16, 0.75f, true);
+    private final Set<Path> writtenFiles = new HashSet<>();
+    private final MutablePair<Node, OutputStream> outputHolder = MutablePair.of(null, null);
+
+    private PartitioningOutputStreamTransformer(final Builder builder) throws XPathExpressionException {
+        this.key = (builder.key != null) ? builder.key : xpathKey(checkNotNull(builder.xpathQuery, "XPath query must NOT be null."));
+        this.transformer = checkNotNull(builder.transformer, "Transformer must NOT be null.");
+        this.prefix = checkNotNull(builder.prefix, "Prefix must NOT be null.");
+        checkArgument(builder.buckets >= 0, "Number of buckets must be positive.");
+        checkArgument(builder.maxOpenFiles > 0, "Maximum number of open files must be strictly positive.");
+        this.buckets = builder.buckets;
+        this.maxOpenFiles = builder.maxOpenFiles;
+        this.gzip = builder.gzip;
+    }
+
+    /**
+     * @param xpathQuery  XPath query of the key of the partition of each XML element, e.g. {@code "//book/@category"}.
+     * @param transformer transformer writing each XML element to the file of its partition.
+     * @param prefix      path of the files of partitions, without the key, e.g. {@code "out/books"} for {@code "out/books-COOKING.xml"}.
+     * @return a new builder.
+     */
+    public static Builder builder(final String xpathQuery, final Function<Pair<Node, OutputStream>, Void> transformer, final String prefix) {
+        return new Builder(xpathQuery, null, transformer, prefix);
+    }
+
+    /**
+     * @param key         function returning the key of the partition of each XML element.
+     * @param transformer transformer writing each XML element to the file of its partition.
+     * @param prefix      path of the files of partitions, without the key.
+     * @return a new builder.
+     */
+    public static Builder builder(final Function<Node, String> key, final Function<Pair<Node, OutputStream>, Void> transformer, final String prefix) {
+        return new Builder(null, checkNotNull(key, "Key must NOT be null."), transformer, prefix);
+    }
+
+    private static Function<Node, String> xpathKey(final String xpathQuery) throws XPathExpressionException {
+        final XPathExpression expression = XPathFactory.newInstance().newXPath().compile(xpathQuery);
+        return domTree -> {
+            try {
+                return expression.evaluate(domTree);
+            } catch (XPathExpressionException e) {
+                throw new RuntimeException("Failed to evaluate XPath expression on DOM tree.", e);
+            }
+        };
+    }
+
+    @Override
+    public Void apply(final Pair<Node, OutputStream> pair) {
+        checkNotNull(pair, "Pair<Node, OutputStream> must NOT be null.");
+        final Node domTree = pair.first();
+        checkNotNull(domTree, "Node must NOT be null.");
+
+        final Path path = pathFor(key.apply(domTree));
+        try {
+            transformer.apply(outputHolder.first(domTree).second(outputFor(path)));
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to open partition file: " + path + ".", e);
+        }
+    }
+
+    /**
+     * Closes all files, rethrowing the first failure, if any, once all of them have been closed.
+     */
+    @Override
+    public void close() throws IOException {
+        IOException failure = null;
+        for (final OutputStream out : openFiles.values()) {
+            try {
+                out.close();
+            } catch (IOException e) {
+                failure = (failure == null) ? e : failure;
+            }
+        }
+        openFiles.clear();
+        writtenFiles.clear();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    private Path pathFor(final String key) {
+        final String partition = (buckets > 0) ? Integer.toString(Math.floorMod(key.hashCode(), buckets)) : key;
+        final StringBuilder path = new StringBuilder(prefix.length() + partition.length() + 8).append(prefix).append('-');
+        for (final byte b : partition.getBytes(UTF_8)) {
+            final char c = (char) (b & 0xFF);
+            if (((c >= 'a') && (c <= 'z')) || ((c >= 'A') && (c <= 'Z')) || ((c >= '0') && (c <= '9')) || (c == '.') || (c == '-') || (c == '_')) {
+                path.append(c);
+            } else {
+                path.append('%').append(HEX_DIGITS[c >> 4]).append(HEX_DIGITS[c & 0xF]);
+            }
+        }
+        path.append(EXTENSION);
+        if (gzip) {
+            path.append(GZIP_EXTENSION);
+        }
+        return Paths.get(path.toString());
+    }
+
+    private OutputStream outputFor(final Path path) throws IOException {
+        final OutputStream open = openFiles.get(path);
+        if (open != null) {
+            return open;
+        }
+        if (openFiles.size() == maxOpenFiles) {
+            final Iterator<OutputStream> leastRecentlyUsed = openFiles.values().iterator();
+            final OutputStream evicted = leastRecentlyUsed.next();
+            leastRecentlyUsed.remove();
+            evicted.close();
+        }
+        final OutputStream file = writtenFiles.add(path)
+                ? Files.newOutputStream(path)
+                : Files.newOutputStream(path, StandardOpenOption.APPEND);
+        final OutputStream out = gzip
+                ? new BufferedOutputStream(new GZIPOutputStream(file, BUFFER_SIZE), BUFFER_SIZE)
+                : new BufferedOutputStream(file, BUFFER_SIZE);
+        openFiles.put(path, out);
+        return out;
+    }
+
+    public static final class Builder {
+        private final String xpathQuery;
+        private final Function<Node, String> key;
+        private final Function<Pair<Node, OutputStream>, Void> transformer;
+        private final String prefix;
+        private int buckets;
+        private int maxOpenFiles = DEFAULT_MAX_OPEN_FILES;
+        private boolean gzip;
+
+        private Builder(final String xpathQuery, final Function<Node, String> key, final Function<Pair<Node, OutputStream>, Void> transformer,
+                        final String prefix) {
+            this.xpathQuery = xpathQuery;
+            this.key = key;
+            this.transformer = transformer;
+            this.prefix = prefix;
+        }
+
+        /**
+         * @param buckets number of partitions to hash keys into, e.g. to spread XML elements evenly across a fixed number of shards,
+         *                whatever the number of keys. Default: 0, i.e. one partition per key.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder buckets(final int buckets) {
+            this.buckets = buckets;
+            return this;
+        }
+
+        /**
+         * @param maxOpenFiles maximum number of files kept open at once. Default: 256.
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder maxOpenFiles(final int maxOpenFiles) {
+            this.maxOpenFiles = maxOpenFiles;
+            return this;
+        }
+
+        /**
+         * Gzip files, named with an additional ".gz" extension.
+         *
+         * @return this builder, to allow chaining calls.
+         */
+        public Builder gzip() {
+            this.gzip = true;
+            return this;
+        }
+
+        public PartitioningOutputStreamTransformer build() throws XPathExpressionException {
+            return new PartitioningOutputStreamTransformer(this);
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.Pair;
+import org.w3c.dom.Node;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static com.google.common.base.Preconditions.checkState;
+
+/**
+ * Writes the original bytes of XML elements, as found in the input stream, followed by a new line.
+ * Unlike {@link DomTreeToOutputStreamTransformer}, the DOM tree is NOT serialized again, which:
+ * - saves CPU, and
+ * - keeps attribute quoting, namespace declarations, whitespaces, etc. exactly as they were.
+ * The original bytes must have been attached to DOM trees by the stream filter, under {@link RawXmlToOutputStreamTransformer#RAW_XML}.
+ */
+public final class RawXmlToOutputStreamTransformer implements Function<Pair<Node, OutputStream>, Void> {
+    /**
+     * Key of the DOM user data holding the original bytes of an XML element, as a {@code byte[]}.
+     */
+    public static final String RAW_XML = RawXmlToOutputStreamTransformer.class.getName() + ".RAW_XML";
+
+    private static final int NEW_LINE = '\n';
+
+    @Override
+    public Void apply(final Pair<Node, OutputStream> pair) {
+        checkNotNull(pair, "Pair<Node, OutputStream> must NOT be null.");
+        final Node domTree = pair.first();
+        checkNotNull(domTree, "Node must NOT be null.");
+        final OutputStream out = pair.second();
+        checkNotNull(out, "OutputStream must NOT be null.");
+
+        final byte[] rawXml = (byte[]) domTree.getUserData(RAW_XML);
+        checkState(rawXml != null, "Original bytes of XML element were not captured: please enable raw XML capture on the stream filter.");
+        try {
+            out.write(rawXml);
+            out.write(NEW_LINE);
+            return null;
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write original XML element to output stream.", e);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.tree.TinyTree;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.util.function.Function;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Reads the current element of the {@code XMLStreamReader} into a {@link TinyTree}, and returns its read-only DOM view,
+ * in the same shape as what {@link XMLStreamReaderToDomTreeTransformer} returns, i.e. a {@code Document} node with the element as its only child.
+ * Optionally, the same {@code TinyTree} is recycled from one element to the next, in which case reading an element allocates close to nothing,
+ * but a DOM tree is only valid until the next call to {@link XMLStreamReaderToTinyTreeTransformer#apply(XMLStreamReader) apply}: this must therefore NOT
+ * be used with {@code ParallelXmlStreamFilter}, nor with anything else keeping references to DOM trees.
+ */
+public final class XMLStreamReaderToTinyTreeTransformer implements Function<XMLStreamReader, Node> {
+    private final boolean recycleTrees;
+    private final TinyTree recycledTree = new TinyTree();
+
+    public XMLStreamReaderToTinyTreeTransformer(final boolean recycleTrees) {
+        this.recycleTrees = recycleTrees;
+    }
+
+    public XMLStreamReaderToTinyTreeTransformer() {
+        this(false);
+    }
+
+    @Override
+    public Node apply(final XMLStreamReader reader) {
+        checkNotNull(reader, "XMLStreamReader must NOT be null");
+        final TinyTree tree = recycleTrees ? recycledTree : new TinyTree();
+        try {
+            tree.read(reader);
+            return tree.getDocument();
+        } catch (XMLStreamException e) {
+            throw new RuntimeException("Failed to transform StAX stream into TinyTree.", e);
+        }
+    }
+}
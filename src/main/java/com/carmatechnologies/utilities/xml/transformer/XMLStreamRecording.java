@@ -0,0 +1,189 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.util.Arrays;
+
+import static com.carmatechnologies.utilities.xml.transformer.DirectXMLStreamReaderToDomTreeTransformer.emptyToNull;
+import static com.carmatechnologies.utilities.xml.transformer.DirectXMLStreamReaderToDomTreeTransformer.qualifiedName;
+
+/**
+ * Compact recording of the StAX events of an XML element, which can be replayed as a DOM tree, if and when required:
+ * - event types and their integer arguments are stored in an {@code int[]},
+ * - names and attribute values are stored in a {@code String[]}, without copy as StAX readers typically intern names,
+ * - character data is appended to a single {@code char[]}.
+ * Buffers are reused from one element to the next, therefore instances are NOT thread-safe.
+ */
+final class XMLStreamRecording {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int[] events = new int[INITIAL_CAPACITY];
+    private int eventsLength;
+    private String[] strings = new String[INITIAL_CAPACITY];
+    private int stringsLength;
+    private char[] text = new char[4 * INITIAL_CAPACITY];
+    private int textLength;
+    private int lastEventStart = -1;
+
+    void clear() {
+        eventsLength = 0;
+        Arrays.fill(strings, 0, stringsLength, null); // Do not retain the previous element's strings.
+        stringsLength = 0;
+        textLength = 0;
+        lastEventStart = -1;
+    }
+
+    void record(final XMLStreamReader reader) {
+        final int eventType = reader.getEventType();
+        switch (eventType) {
+            case XMLEvent.START_ELEMENT:
+                recordStartElement(reader);
+                break;
+            case XMLEvent.END_ELEMENT:
+                addEvent(eventType);
+                break;
+            case XMLEvent.CHARACTERS:
+            case XMLEvent.SPACE:
+                if (lastEventIs(XMLEvent.CHARACTERS)) {
+                    // StAX readers may split text in several events: merge these into a single DOM text node.
+                    events[lastEventStart + 2] += appendText(reader);
+                    break;
+                }
+                recordText(XMLEvent.CHARACTERS, reader);
+                break;
+            case XMLEvent.CDATA:
+            case XMLEvent.COMMENT:
+                recordText(eventType, reader);
+                break;
+            case XMLEvent.PROCESSING_INSTRUCTION:
+                addEvent(eventType);
+                addString(reader.getPITarget());
+                addString(reader.getPIData());
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void recordStartElement(final XMLStreamReader reader) {
+        final int namespaceCount = reader.getNamespaceCount();
+        final int attributeCount = reader.getAttributeCount();
+        addEvent(XMLEvent.START_ELEMENT);
+        addInt(namespaceCount);
+        addInt(attributeCount);
+        addString(reader.getPrefix());
+        addString(reader.getNamespaceURI());
+        addString(reader.getLocalName());
+        for (int i = 0; i < namespaceCount; ++i) {
+            addString(reader.getNamespacePrefix(i));
+            addString(reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < attributeCount; ++i) {
+            addString(reader.getAttributePrefix(i));
+            addString(reader.getAttributeNamespace(i));
+            addString(reader.getAttributeLocalName(i));
+            addString(reader.getAttributeValue(i));
+        }
+    }
+
+    private void recordText(final int eventType, final XMLStreamReader reader) {
+        addEvent(eventType);
+        addInt(textLength);
+        addInt(0);
+        events[eventsLength - 1] = appendText(reader);
+    }
+
+    private int appendText(final XMLStreamReader reader) {
+        final int length = reader.getTextLength();
+        if (textLength + length > text.length) {
+            text = Arrays.copyOf(text, Math.max(textLength + length, 2 * text.length));
+        }
+        System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), text, textLength, length);
+        textLength += length;
+        return length;
+    }
+
+    /**
+     * Replays the recorded events as a DOM tree, in the same shape as what {@link XMLStreamReaderToDomTreeTransformer} returns,
+     * i.e. a {@code Document} node with the recorded element as its only child.
+     */
+    Document toDomTree(final DocumentBuilder documentBuilder) {
+        final Document document = documentBuilder.newDocument();
+        Node current = document;
+        int stringIndex = 0;
+        int i = 0;
+        while (i < eventsLength) {
+            final int eventType = events[i];
+            switch (eventType) {
+                case XMLEvent.START_ELEMENT:
+                    final int namespaceCount = events[i + 1];
+                    final int attributeCount = events[i + 2];
+                    final Element element = document.createElementNS(emptyToNull(strings[stringIndex + 1]), qualifiedName(strings[stringIndex], strings[stringIndex + 2]));
+                    stringIndex += 3;
+                    for (int j = 0; j < namespaceCount; ++j, stringIndex += 2) {
+                        element.setAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, qualifiedName(XMLConstants.XMLNS_ATTRIBUTE, strings[stringIndex]), strings[stringIndex + 1]);
+                    }
+                    for (int j = 0; j < attributeCount; ++j, stringIndex += 4) {
+                        element.setAttributeNS(emptyToNull(strings[stringIndex + 1]), qualifiedName(strings[stringIndex], strings[stringIndex + 2]), strings[stringIndex + 3]);
+                    }
+                    current.appendChild(element);
+                    current = element;
+                    i += 3;
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    current = current.getParentNode();
+                    i += 1;
+                    break;
+                case XMLEvent.CHARACTERS:
+                    current.appendChild(document.createTextNode(new String(text, events[i + 1], events[i + 2])));
+                    i += 3;
+                    break;
+                case XMLEvent.CDATA:
+                    current.appendChild(document.createCDATASection(new String(text, events[i + 1], events[i + 2])));
+                    i += 3;
+                    break;
+                case XMLEvent.COMMENT:
+                    current.appendChild(document.createComment(new String(text, events[i + 1], events[i + 2])));
+                    i += 3;
+                    break;
+                case XMLEvent.PROCESSING_INSTRUCTION:
+                    current.appendChild(document.createProcessingInstruction(strings[stringIndex], strings[stringIndex + 1]));
+                    stringIndex += 2;
+                    i += 1;
+                    break;
+                default:
+                    throw new IllegalStateException("Unexpected recorded event type: " + eventType);
+            }
+        }
+        return document;
+    }
+
+    private boolean lastEventIs(final int eventType) {
+        return (lastEventStart >= 0) && (events[lastEventStart] == eventType);
+    }
+
+    private void addEvent(final int eventType) {
+        lastEventStart = eventsLength;
+        addInt(eventType);
+    }
+
+    private void addInt(final int value) {
+        if (eventsLength == events.length) {
+            events = Arrays.copyOf(events, 2 * events.length);
+        }
+        events[eventsLength++] = value;
+    }
+
+    private void addString(final String value) {
+        if (stringsLength == strings.length) {
+            strings = Arrays.copyOf(strings, 2 * strings.length);
+        }
+        strings[stringsLength++] = value;
+    }
+}
@@ -0,0 +1,164 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.Pair;
+import org.w3c.dom.Node;
+
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.List;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Writes one row per XML element, made of the string values of the provided XPath queries, i.e. columns, either as:
+ * - TSV, where backslashes, tabs, carriage returns and new lines within values are escaped as {@code \\}, {@code \t}, {@code \r} and {@code \n}, or
+ * - CSV, see RFC 4180, where values containing commas, double quotes, carriage returns or new lines are double-quoted, with double quotes doubled.
+ * Most of the cost of an XPath evaluation is in setting it up for the DOM tree, rather than in its steps, hence all columns are compiled into
+ * a single expression, which concatenates their values with a separator which cannot occur in XML, and is evaluated once per element.
+ * Rows are built and encoded to UTF-8 in reusable buffers, rather than allocating strings and byte arrays for each of them.
+ * Like {@link XPathToOutputStreamTransformer}, this transformer is NOT thread-safe.
+ */
+public final class XPathColumnsToOutputStreamTransformer implements Function<Pair<Node, OutputStream>, Void> {
+    public enum Format {
+        TSV, CSV
+    }
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Not a valid XML character, see https://www.w3.org/TR/xml/#charsets, hence never part of any value.
+     */
+    private static final char SEPARATOR = '\uFFFF';
+
+    private final Format format;
+    private final XPathExpression columns;
+    private final StringBuilder row = new StringBuilder();
+    private final CharsetEncoder encoder = UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final ByteBuffer bytes = ByteBuffer.allocate(BUFFER_SIZE);
+
+    public XPathColumnsToOutputStreamTransformer(final List<String> xpathQueries, final Format format) throws XPathExpressionException {
+        checkNotNull(xpathQueries, "XPath queries must NOT be null.");
+        checkArgument(!xpathQueries.isEmpty(), "XPath queries must NOT be empty.");
+        this.format = checkNotNull(format, "Format must NOT be null.");
+        final XPath xpath = XPathFactory.newInstance().newXPath();
+        for (final String xpathQuery : xpathQueries) {
+            // Each query is compiled on its own first, so that errors are reported for the query rather than the combined expression:
+            xpath.compile(checkNotNull(xpathQuery, "XPath query must NOT be null."));
+        }
+        this.columns = xpath.compile((xpathQueries.size() == 1)
+                ? "string(" + xpathQueries.get(0) + ")"
+                : xpathQueries.stream().map(xpathQuery -> "string(" + xpathQuery + ")").collect(Collectors.joining(", '" + SEPARATOR + "', ", "concat(", ")")));
+    }
+
+    @Override
+    public Void apply(final Pair<Node, OutputStream> pair) {
+        checkNotNull(pair, "Pair<Node, OutputStream> must NOT be null.");
+        final Node domTree = pair.first();
+        checkNotNull(domTree, "Node must NOT be null.");
+        final OutputStream out = pair.second();
+        checkNotNull(out, "OutputStream must NOT be null.");
+
+        try {
+            toOutputStream(domTree, out);
+            return null;
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException("Failed to evaluate XPath expression on DOM tree.", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to write XPath results to output stream.", e);
+        }
+    }
+
+    private void toOutputStream(final Node domTree, final OutputStream out) throws XPathExpressionException, IOException {
+        final String values = columns.evaluate(domTree);
+        row.setLength(0);
+        int start = 0;
+        for (int end = values.indexOf(SEPARATOR); end != -1; end = values.indexOf(SEPARATOR, start)) {
+            append(values, start, end);
+            row.append((format == Format.TSV) ? '\t' : ',');
+            start = end + 1;
+        }
+        append(values, start, values.length());
+        row.append('\n');
+        write(out);
+    }
+
+    private void append(final String values, final int start, final int end) {
+        if (format == Format.TSV) {
+            for (int i = start; i < end; ++i) {
+                final char c = values.charAt(i);
+                switch (c) {
+                    case '\\':
+                        row.append("\\\\");
+                        break;
+                    case '\t':
+                        row.append("\\t");
+                        break;
+                    case '\r':
+                        row.append("\\r");
+                        break;
+                    case '\n':
+                        row.append("\\n");
+                        break;
+                    default:
+                        row.append(c);
+                }
+            }
+        } else if (needsQuotes(values, start, end)) {
+            row.append('"');
+            for (int i = start; i < end; ++i) {
+                final char c = values.charAt(i);
+                if (c == '"') {
+                    row.append('"');
+                }
+                row.append(c);
+            }
+            row.append('"');
+        } else {
+            row.append(values, start, end);
+        }
+    }
+
+    private static boolean needsQuotes(final String values, final int start, final int end) {
+        for (int i = start; i < end; ++i) {
+            final char c = values.charAt(i);
+            if ((c == ',') || (c == '"') || (c == '\r') || (c == '\n')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void write(final OutputStream out) throws IOException {
+        final CharBuffer chars = CharBuffer.wrap(row);
+        encoder.reset();
+        CoderResult result;
+        do {
+            result = encoder.encode(chars, bytes, true);
+            drain(out);
+        } while (result.isOverflow());
+        while (encoder.flush(bytes).isOverflow()) {
+            drain(out);
+        }
+        drain(out);
+    }
+
+    private void drain(final OutputStream out) throws IOException {
+        out.write(bytes.array(), 0, bytes.position());
+        bytes.clear();
+    }
+}
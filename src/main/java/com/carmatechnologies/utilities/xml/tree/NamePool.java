@@ -0,0 +1,104 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import java.util.Arrays;
+
+/**
+ * Maps (prefix, namespace URI, local name) triples to integer "name codes", and back.
+ * Names found in XML streams typically belong to a small vocabulary, hence codes are kept from one element to the next,
+ * and looking an existing name up does NOT allocate anything.
+ */
+final class NamePool {
+    private static final String EMPTY = "";
+    private static final int INITIAL_CAPACITY = 64;
+
+    private String[] prefixes = new String[INITIAL_CAPACITY];
+    private String[] namespaceUris = new String[INITIAL_CAPACITY];
+    private String[] localNames = new String[INITIAL_CAPACITY];
+    private String[] qualifiedNames = new String[INITIAL_CAPACITY];
+    private int size;
+    private int[] table = new int[2 * INITIAL_CAPACITY]; // Open addressing: name code + 1, or 0 for empty slots.
+
+    int code(final String prefix, final String namespaceUri, final String localName) {
+        final String p = nullToEmpty(prefix);
+        final String uri = nullToEmpty(namespaceUri);
+        final int mask = table.length - 1;
+        for (int slot = hash(p, uri, localName) & mask; ; slot = (slot + 1) & mask) {
+            final int code = table[slot] - 1;
+            if (code < 0) {
+                return add(slot, p, uri, localName);
+            }
+            if (localName.equals(localNames[code]) && uri.equals(namespaceUris[code]) && p.equals(prefixes[code])) {
+                return code;
+            }
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        Arrays.fill(prefixes, 0, size, null);
+        Arrays.fill(namespaceUris, 0, size, null);
+        Arrays.fill(localNames, 0, size, null);
+        Arrays.fill(qualifiedNames, 0, size, null);
+        Arrays.fill(table, 0);
+        size = 0;
+    }
+
+    String prefix(final int code) {
+        return prefixes[code];
+    }
+
+    String namespaceUri(final int code) {
+        return namespaceUris[code];
+    }
+
+    String localName(final int code) {
+        return localNames[code];
+    }
+
+    String qualifiedName(final int code) {
+        return qualifiedNames[code];
+    }
+
+    private int add(final int slot, final String prefix, final String namespaceUri, final String localName) {
+        if (size == prefixes.length) {
+            grow();
+            return code(prefix, namespaceUri, localName);
+        }
+        final int code = size++;
+        prefixes[code] = prefix;
+        namespaceUris[code] = namespaceUri;
+        localNames[code] = localName;
+        qualifiedNames[code] = prefix.isEmpty() ? localName : prefix + ':' + localName;
+        table[slot] = code + 1;
+        return code;
+    }
+
+    private void grow() {
+        final int capacity = 2 * prefixes.length;
+        prefixes = Arrays.copyOf(prefixes, capacity);
+        namespaceUris = Arrays.copyOf(namespaceUris, capacity);
+        localNames = Arrays.copyOf(localNames, capacity);
+        qualifiedNames = Arrays.copyOf(qualifiedNames, capacity);
+        table = new int[2 * capacity];
+        final int mask = table.length - 1;
+        for (int code = 0; code < size; ++code) {
+            int slot = hash(prefixes[code], namespaceUris[code], localNames[code]) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = code + 1;
+        }
+    }
+
+    private static int hash(final String prefix, final String namespaceUri, final String localName) {
+        final int hash = (31 * ((31 * prefix.hashCode()) + namespaceUri.hashCode())) + localName.hashCode();
+        return hash ^ (hash >>> 16);
+    }
+
+    private static String nullToEmpty(final String value) {
+        return (value == null) ? EMPTY : value;
+    }
+}
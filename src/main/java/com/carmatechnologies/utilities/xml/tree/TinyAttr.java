@@ -0,0 +1,121 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.TypeInfo;
+
+/**
+ * Attribute, or namespace declaration, of a {@link TinyTree}. Its index is in the tree's attribute arrays, NOT in its node arrays.
+ */
+final class TinyAttr extends TinyNode implements Attr {
+
+    TinyAttr(final TinyTree tree, final int index) {
+        super(tree, index);
+    }
+
+    @Override
+    public String getNodeName() {
+        return tree.names.qualifiedName(tree.attributeNameCode(index));
+    }
+
+    @Override
+    public String getNodeValue() {
+        return getValue();
+    }
+
+    @Override
+    public short getNodeType() {
+        return ATTRIBUTE_NODE;
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return emptyToNull(tree.names.namespaceUri(tree.attributeNameCode(index)));
+    }
+
+    @Override
+    public String getPrefix() {
+        return emptyToNull(tree.names.prefix(tree.attributeNameCode(index)));
+    }
+
+    @Override
+    public String getLocalName() {
+        return tree.names.localName(tree.attributeNameCode(index));
+    }
+
+    @Override
+    public Node getParentNode() {
+        return null;
+    }
+
+    @Override
+    public Node getFirstChild() {
+        return null;
+    }
+
+    @Override
+    public Node getLastChild() {
+        return null;
+    }
+
+    @Override
+    public Node getPreviousSibling() {
+        return null;
+    }
+
+    @Override
+    public Node getNextSibling() {
+        return null;
+    }
+
+    @Override
+    public boolean hasChildNodes() {
+        return false;
+    }
+
+    @Override
+    public String getTextContent() {
+        return getValue();
+    }
+
+    @Override
+    public String lookupNamespaceURI(final String prefix) {
+        return getOwnerElement().lookupNamespaceURI(prefix);
+    }
+
+    @Override
+    public String getName() {
+        return getNodeName();
+    }
+
+    @Override
+    public boolean getSpecified() {
+        return true;
+    }
+
+    @Override
+    public String getValue() {
+        return tree.attributeValue(index);
+    }
+
+    @Override
+    public void setValue(final String value) {
+        throw readOnly();
+    }
+
+    @Override
+    public Element getOwnerElement() {
+        return (Element) tree.node(tree.attributeOwner(index));
+    }
+
+    @Override
+    public TypeInfo getSchemaTypeInfo() {
+        return null;
+    }
+
+    @Override
+    public boolean isId() {
+        return false;
+    }
+}
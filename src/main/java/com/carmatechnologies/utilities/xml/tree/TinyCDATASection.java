@@ -0,0 +1,20 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.CDATASection;
+
+final class TinyCDATASection extends TinyText implements CDATASection {
+
+    TinyCDATASection(final TinyTree tree, final int index) {
+        super(tree, index);
+    }
+
+    @Override
+    public String getNodeName() {
+        return "#cdata-section";
+    }
+
+    @Override
+    public short getNodeType() {
+        return CDATA_SECTION_NODE;
+    }
+}
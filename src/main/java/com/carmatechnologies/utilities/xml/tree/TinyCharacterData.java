@@ -0,0 +1,69 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.CharacterData;
+
+/**
+ * Text node, CDATA section or comment of a {@link TinyTree}, whose data is a range of the tree's character buffer.
+ */
+abstract class TinyCharacterData extends TinyNode implements CharacterData {
+
+    TinyCharacterData(final TinyTree tree, final int index) {
+        super(tree, index);
+    }
+
+    @Override
+    public String getNodeValue() {
+        return getData();
+    }
+
+    @Override
+    public String getTextContent() {
+        return getData();
+    }
+
+    @Override
+    public boolean hasChildNodes() {
+        return false;
+    }
+
+    @Override
+    public String getData() {
+        return tree.text(index);
+    }
+
+    @Override
+    public void setData(final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public int getLength() {
+        return tree.textLength(index);
+    }
+
+    @Override
+    public String substringData(final int offset, final int count) {
+        final String data = getData();
+        return data.substring(offset, Math.min(data.length(), offset + count));
+    }
+
+    @Override
+    public void appendData(final String arg) {
+        throw readOnly();
+    }
+
+    @Override
+    public void insertData(final int offset, final String arg) {
+        throw readOnly();
+    }
+
+    @Override
+    public void deleteData(final int offset, final int count) {
+        throw readOnly();
+    }
+
+    @Override
+    public void replaceData(final int offset, final int count, final String arg) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,20 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.Comment;
+
+final class TinyComment extends TinyCharacterData implements Comment {
+
+    TinyComment(final TinyTree tree, final int index) {
+        super(tree, index);
+    }
+
+    @Override
+    public String getNodeName() {
+        return "#comment";
+    }
+
+    @Override
+    public short getNodeType() {
+        return COMMENT_NODE;
+    }
+}
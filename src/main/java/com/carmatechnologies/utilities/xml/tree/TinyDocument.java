@@ -0,0 +1,226 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.CDATASection;
+import org.w3c.dom.Comment;
+import org.w3c.dom.DOMConfiguration;
+import org.w3c.dom.DOMImplementation;
+import org.w3c.dom.Document;
+import org.w3c.dom.DocumentFragment;
+import org.w3c.dom.DocumentType;
+import org.w3c.dom.Element;
+import org.w3c.dom.EntityReference;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.ProcessingInstruction;
+import org.w3c.dom.Text;
+import org.w3c.dom.UserDataHandler;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Document node of a {@link TinyTree}. Unlike other nodes, it supports user data, e.g. to attach an element's original bytes.
+ */
+final class TinyDocument extends TinyNode implements Document {
+    private Map<String, Object> userData;
+
+    TinyDocument(final TinyTree tree) {
+        super(tree, 0);
+    }
+
+    void clearUserData() {
+        if (userData != null) {
+            userData.clear();
+        }
+    }
+
+    @Override
+    public String getNodeName() {
+        return "#document";
+    }
+
+    @Override
+    public short getNodeType() {
+        return DOCUMENT_NODE;
+    }
+
+    @Override
+    public Document getOwnerDocument() {
+        return null;
+    }
+
+    @Override
+    public String getTextContent() {
+        return null;
+    }
+
+    @Override
+    public Object setUserData(final String key, final Object data, final UserDataHandler handler) {
+        if (userData == null) {
+            userData = new HashMap<>();
+        }
+        return (data == null) ? userData.remove(key) : userData.put(key, data);
+    }
+
+    @Override
+    public Object getUserData(final String key) {
+        return (userData == null) ? null : userData.get(key);
+    }
+
+    @Override
+    public DocumentType getDoctype() {
+        return null;
+    }
+
+    @Override
+    public DOMImplementation getImplementation() {
+        throw notSupported();
+    }
+
+    @Override
+    public Element getDocumentElement() {
+        final Node child = getFirstChild();
+        return (Element) child;
+    }
+
+    @Override
+    public Element createElement(final String tagName) {
+        throw readOnly();
+    }
+
+    @Override
+    public DocumentFragment createDocumentFragment() {
+        throw readOnly();
+    }
+
+    @Override
+    public Text createTextNode(final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public Comment createComment(final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public CDATASection createCDATASection(final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public ProcessingInstruction createProcessingInstruction(final String target, final String data) {
+        throw readOnly();
+    }
+
+    @Override
+    public Attr createAttribute(final String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public EntityReference createEntityReference(final String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public NodeList getElementsByTagName(final String tagname) {
+        throw notSupported();
+    }
+
+    @Override
+    public Node importNode(final Node importedNode, final boolean deep) {
+        throw readOnly();
+    }
+
+    @Override
+    public Element createElementNS(final String namespaceURI, final String qualifiedName) {
+        throw readOnly();
+    }
+
+    @Override
+    public Attr createAttributeNS(final String namespaceURI, final String qualifiedName) {
+        throw readOnly();
+    }
+
+    @Override
+    public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+        throw notSupported();
+    }
+
+    @Override
+    public Element getElementById(final String elementId) {
+        return null;
+    }
+
+    @Override
+    public String getInputEncoding() {
+        return null;
+    }
+
+    @Override
+    public String getXmlEncoding() {
+        return null;
+    }
+
+    @Override
+    public boolean getXmlStandalone() {
+        return false;
+    }
+
+    @Override
+    public void setXmlStandalone(final boolean xmlStandalone) {
+        throw readOnly();
+    }
+
+    @Override
+    public String getXmlVersion() {
+        return "1.0";
+    }
+
+    @Override
+    public void setXmlVersion(final String xmlVersion) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean getStrictErrorChecking() {
+        return true;
+    }
+
+    @Override
+    public void setStrictErrorChecking(final boolean strictErrorChecking) {
+        throw readOnly();
+    }
+
+    @Override
+    public String getDocumentURI() {
+        return null;
+    }
+
+    @Override
+    public void setDocumentURI(final String documentURI) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node adoptNode(final Node source) {
+        throw readOnly();
+    }
+
+    @Override
+    public DOMConfiguration getDomConfig() {
+        throw notSupported();
+    }
+
+    @Override
+    public void normalizeDocument() {
+        // Text nodes are always merged already.
+    }
+
+    @Override
+    public Node renameNode(final Node n, final String namespaceURI, final String qualifiedName) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,205 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.TypeInfo;
+
+import static com.carmatechnologies.utilities.xml.tree.TinyTree.NONE;
+
+final class TinyElement extends TinyNode implements Element {
+    private NamedNodeMap attributes;
+
+    TinyElement(final TinyTree tree, final int index) {
+        super(tree, index);
+    }
+
+    @Override
+    public String getNodeName() {
+        return tree.names.qualifiedName(tree.nameCode(index));
+    }
+
+    @Override
+    public short getNodeType() {
+        return ELEMENT_NODE;
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return emptyToNull(tree.names.namespaceUri(tree.nameCode(index)));
+    }
+
+    @Override
+    public String getPrefix() {
+        return emptyToNull(tree.names.prefix(tree.nameCode(index)));
+    }
+
+    @Override
+    public String getLocalName() {
+        return tree.names.localName(tree.nameCode(index));
+    }
+
+    @Override
+    public NamedNodeMap getAttributes() {
+        if (attributes == null) {
+            attributes = new Attributes();
+        }
+        return attributes;
+    }
+
+    @Override
+    public boolean hasAttributes() {
+        return tree.attributeCount(index) > 0;
+    }
+
+    @Override
+    public String getTagName() {
+        return getNodeName();
+    }
+
+    @Override
+    public String getAttribute(final String name) {
+        final int attribute = tree.attribute(index, name);
+        return (attribute == NONE) ? "" : tree.attributeValue(attribute);
+    }
+
+    @Override
+    public void setAttribute(final String name, final String value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAttribute(final String name) {
+        throw readOnly();
+    }
+
+    @Override
+    public Attr getAttributeNode(final String name) {
+        final int attribute = tree.attribute(index, name);
+        return (attribute == NONE) ? null : tree.attributeNode(attribute);
+    }
+
+    @Override
+    public Attr setAttributeNode(final Attr newAttr) {
+        throw readOnly();
+    }
+
+    @Override
+    public Attr removeAttributeNode(final Attr oldAttr) {
+        throw readOnly();
+    }
+
+    @Override
+    public NodeList getElementsByTagName(final String name) {
+        throw notSupported();
+    }
+
+    @Override
+    public String getAttributeNS(final String namespaceURI, final String localName) {
+        final int attribute = tree.attribute(index, namespaceURI, localName);
+        return (attribute == NONE) ? "" : tree.attributeValue(attribute);
+    }
+
+    @Override
+    public void setAttributeNS(final String namespaceURI, final String qualifiedName, final String value) {
+        throw readOnly();
+    }
+
+    @Override
+    public void removeAttributeNS(final String namespaceURI, final String localName) {
+        throw readOnly();
+    }
+
+    @Override
+    public Attr getAttributeNodeNS(final String namespaceURI, final String localName) {
+        final int attribute = tree.attribute(index, namespaceURI, localName);
+        return (attribute == NONE) ? null : tree.attributeNode(attribute);
+    }
+
+    @Override
+    public Attr setAttributeNodeNS(final Attr newAttr) {
+        throw readOnly();
+    }
+
+    @Override
+    public NodeList getElementsByTagNameNS(final String namespaceURI, final String localName) {
+        throw notSupported();
+    }
+
+    @Override
+    public boolean hasAttribute(final String name) {
+        return tree.attribute(index, name) != NONE;
+    }
+
+    @Override
+    public boolean hasAttributeNS(final String namespaceURI, final String localName) {
+        return tree.attribute(index, namespaceURI, localName) != NONE;
+    }
+
+    @Override
+    public TypeInfo getSchemaTypeInfo() {
+        return null;
+    }
+
+    @Override
+    public void setIdAttribute(final String name, final boolean isId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setIdAttributeNS(final String namespaceURI, final String localName, final boolean isId) {
+        throw readOnly();
+    }
+
+    @Override
+    public void setIdAttributeNode(final Attr idAttr, final boolean isId) {
+        throw readOnly();
+    }
+
+    /**
+     * Live map of attributes, created once per view, hence once per node position across elements.
+     */
+    private final class Attributes implements NamedNodeMap {
+        @Override
+        public Node getNamedItem(final String name) {
+            return getAttributeNode(name);
+        }
+
+        @Override
+        public Node setNamedItem(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItem(final String name) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node item(final int i) {
+            return ((i < 0) || (i >= getLength())) ? null : tree.attributeNode(tree.attributeStart(index) + i);
+        }
+
+        @Override
+        public int getLength() {
+            return tree.attributeCount(index);
+        }
+
+        @Override
+        public Node getNamedItemNS(final String namespaceURI, final String localName) {
+            return getAttributeNodeNS(namespaceURI, localName);
+        }
+
+        @Override
+        public Node setNamedItemNS(final Node arg) {
+            throw readOnly();
+        }
+
+        @Override
+        public Node removeNamedItemNS(final String namespaceURI, final String localName) {
+            throw readOnly();
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.w3c.dom.UserDataHandler;
+
+import static com.carmatechnologies.utilities.xml.tree.TinyTree.NONE;
+
+/**
+ * Read-only {@code org.w3c.dom} view of a node of a {@link TinyTree}.
+ * Only what XPath evaluation and serialization require is supported: any attempt to modify the tree throws a {@code DOMException}.
+ */
+abstract class TinyNode implements Node {
+    final TinyTree tree;
+    final int index;
+    private NodeList childNodes;
+
+    TinyNode(final TinyTree tree, final int index) {
+        this.tree = tree;
+        this.index = index;
+    }
+
+    static DOMException readOnly() {
+        return new DOMException(DOMException.NO_MODIFICATION_ALLOWED_ERR, "TinyTree nodes are read-only.");
+    }
+
+    static DOMException notSupported() {
+        return new DOMException(DOMException.NOT_SUPPORTED_ERR, "Operation not supported by TinyTree nodes.");
+    }
+
+    static String emptyToNull(final String value) {
+        return ((value == null) || value.isEmpty()) ? null : value;
+    }
+
+    @Override
+    public String getNodeValue() {
+        return null;
+    }
+
+    @Override
+    public void setNodeValue(final String nodeValue) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node getParentNode() {
+        final int parent = tree.parent(index);
+        return (parent == NONE) ? null : tree.node(parent);
+    }
+
+    @Override
+    public NodeList getChildNodes() {
+        if (childNodes == null) {
+            childNodes = new ChildNodes();
+        }
+        return childNodes;
+    }
+
+    @Override
+    public Node getFirstChild() {
+        final int child = tree.firstChild(index);
+        return (child == NONE) ? null : tree.node(child);
+    }
+
+    @Override
+    public Node getLastChild() {
+        int last = NONE;
+        for (int child = tree.firstChild(index); child != NONE; child = tree.nextSibling(child)) {
+            last = child;
+        }
+        return (last == NONE) ? null : tree.node(last);
+    }
+
+    @Override
+    public Node getPreviousSibling() {
+        final int parent = tree.parent(index);
+        if (parent == NONE) {
+            return null;
+        }
+        int previous = NONE;
+        for (int sibling = tree.firstChild(parent); sibling != index; sibling = tree.nextSibling(sibling)) {
+            previous = sibling;
+        }
+        return (previous == NONE) ? null : tree.node(previous);
+    }
+
+    @Override
+    public Node getNextSibling() {
+        final int sibling = tree.nextSibling(index);
+        return (sibling == NONE) ? null : tree.node(sibling);
+    }
+
+    @Override
+    public NamedNodeMap getAttributes() {
+        return null;
+    }
+
+    @Override
+    public Document getOwnerDocument() {
+        return tree.getDocument();
+    }
+
+    @Override
+    public Node insertBefore(final Node newChild, final Node refChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node replaceChild(final Node newChild, final Node oldChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node removeChild(final Node oldChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public Node appendChild(final Node newChild) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean hasChildNodes() {
+        return tree.firstChild(index) != NONE;
+    }
+
+    @Override
+    public Node cloneNode(final boolean deep) {
+        throw notSupported();
+    }
+
+    @Override
+    public void normalize() {
+        // Text nodes are always merged already.
+    }
+
+    @Override
+    public boolean isSupported(final String feature, final String version) {
+        return false;
+    }
+
+    @Override
+    public String getNamespaceURI() {
+        return null;
+    }
+
+    @Override
+    public String getPrefix() {
+        return null;
+    }
+
+    @Override
+    public void setPrefix(final String prefix) {
+        throw readOnly();
+    }
+
+    @Override
+    public String getLocalName() {
+        return null;
+    }
+
+    @Override
+    public boolean hasAttributes() {
+        return false;
+    }
+
+    @Override
+    public String getBaseURI() {
+        return null;
+    }
+
+    @Override
+    public short compareDocumentPosition(final Node other) {
+        throw notSupported();
+    }
+
+    /**
+     * Concatenation of the text of all descendant text nodes and CDATA sections, in document order.
+     */
+    @Override
+    public String getTextContent() {
+        final StringBuilder builder = new StringBuilder();
+        final int end = tree.subtreeEnd(index);
+        for (int node = index + 1; node < end; ++node) {
+            final short kind = tree.kind(node);
+            if ((kind == TEXT_NODE) || (kind == CDATA_SECTION_NODE)) {
+                tree.appendText(node, builder);
+            }
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public void setTextContent(final String textContent) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean isSameNode(final Node other) {
+        return this == other;
+    }
+
+    @Override
+    public String lookupPrefix(final String namespaceURI) {
+        throw notSupported();
+    }
+
+    @Override
+    public boolean isDefaultNamespace(final String namespaceURI) {
+        final String defaultNamespaceUri = lookupNamespaceURI(null);
+        return (defaultNamespaceUri == null) ? (namespaceURI == null) : defaultNamespaceUri.equals(namespaceURI);
+    }
+
+    @Override
+    public String lookupNamespaceURI(final String prefix) {
+        final int element = (getNodeType() == ELEMENT_NODE) ? index : tree.parent(index);
+        return (element <= 0) ? null : tree.lookupNamespaceUri(element, prefix);
+    }
+
+    @Override
+    public boolean isEqualNode(final Node other) {
+        if ((other == null) || (other.getNodeType() != getNodeType())
+                || !equal(getNodeName(), other.getNodeName()) || !equal(getLocalName(), other.getLocalName())
+                || !equal(getNamespaceURI(), other.getNamespaceURI()) || !equal(getPrefix(), other.getPrefix())
+                || !equal(getNodeValue(), other.getNodeValue())) {
+            return false;
+        }
+        final NamedNodeMap attributes = getAttributes();
+        final NamedNodeMap otherAttributes = other.getAttributes();
+        if ((attributes == null) != (otherAttributes == null)) {
+            return false;
+        }
+        if (attributes != null) {
+            if (attributes.getLength() != otherAttributes.getLength()) {
+                return false;
+            }
+            for (int i = 0; i < attributes.getLength(); ++i) {
+                final Node attribute = attributes.item(i);
+                final Node otherAttribute = (attribute.getLocalName() == null)
+                        ? otherAttributes.getNamedItem(attribute.getNodeName())
+                        : otherAttributes.getNamedItemNS(attribute.getNamespaceURI(), attribute.getLocalName());
+                if (!attribute.isEqualNode(otherAttribute)) {
+                    return false;
+                }
+            }
+        }
+        if (getNodeType() == ATTRIBUTE_NODE) {
+            return true; // Some DOM implementations expose attribute values as child text nodes: values have been compared above.
+        }
+        Node otherChild = other.getFirstChild();
+        for (Node child = getFirstChild(); child != null; child = child.getNextSibling(), otherChild = otherChild.getNextSibling()) {
+            if (!child.isEqualNode(otherChild)) {
+                return false;
+            }
+        }
+        return otherChild == null;
+    }
+
+    private static boolean equal(final String a, final String b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
+
+    @Override
+    public Object getFeature(final String feature, final String version) {
+        return null;
+    }
+
+    @Override
+    public Object setUserData(final String key, final Object data, final UserDataHandler handler) {
+        throw notSupported();
+    }
+
+    @Override
+    public Object getUserData(final String key) {
+        return null;
+    }
+
+    @Override
+    public String toString() {
+        return "[" + getNodeName() + ": " + getNodeValue() + "]";
+    }
+
+    /**
+     * Live list of children, created once per view, hence once per node position across elements.
+     */
+    private final class ChildNodes implements NodeList {
+        @Override
+        public Node item(final int i) {
+            Node child = (i < 0) ? null : getFirstChild();
+            for (int j = 0; (j < i) && (child != null); ++j) {
+                child = child.getNextSibling();
+            }
+            return child;
+        }
+
+        @Override
+        public int getLength() {
+            int length = 0;
+            for (Node child = getFirstChild(); child != null; child = child.getNextSibling()) {
+                ++length;
+            }
+            return length;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.ProcessingInstruction;
+
+final class TinyProcessingInstruction extends TinyNode implements ProcessingInstruction {
+
+    TinyProcessingInstruction(final TinyTree tree, final int index) {
+        super(tree, index);
+    }
+
+    @Override
+    public String getNodeName() {
+        return getTarget();
+    }
+
+    @Override
+    public String getNodeValue() {
+        return getData();
+    }
+
+    @Override
+    public short getNodeType() {
+        return PROCESSING_INSTRUCTION_NODE;
+    }
+
+    @Override
+    public String getTextContent() {
+        return getData();
+    }
+
+    @Override
+    public boolean hasChildNodes() {
+        return false;
+    }
+
+    @Override
+    public String getTarget() {
+        return tree.names.localName(tree.nameCode(index));
+    }
+
+    @Override
+    public String getData() {
+        return tree.text(index);
+    }
+
+    @Override
+    public void setData(final String data) {
+        throw readOnly();
+    }
+}
@@ -0,0 +1,40 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.Text;
+
+class TinyText extends TinyCharacterData implements Text {
+
+    TinyText(final TinyTree tree, final int index) {
+        super(tree, index);
+    }
+
+    @Override
+    public String getNodeName() {
+        return "#text";
+    }
+
+    @Override
+    public short getNodeType() {
+        return TEXT_NODE;
+    }
+
+    @Override
+    public Text splitText(final int offset) {
+        throw readOnly();
+    }
+
+    @Override
+    public boolean isElementContentWhitespace() {
+        return false;
+    }
+
+    @Override
+    public String getWholeText() {
+        return getData();
+    }
+
+    @Override
+    public Text replaceWholeText(final String content) {
+        throw readOnly();
+    }
+}
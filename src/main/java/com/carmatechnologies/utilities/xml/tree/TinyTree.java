@@ -0,0 +1,426 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.util.Arrays;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+
+/**
+ * Compact, array-based, representation of an XML element, in the spirit of Saxon's "TinyTree":
+ * - nodes are numbered in document order, and their kind, name code, depth, parent and next sibling are stored in parallel {@code int[]}s,
+ * - attributes and namespace declarations are stored in another set of parallel arrays,
+ * - character data of text nodes, comments and processing instructions is appended to a single {@code char[]}.
+ * Node 0 is the document node, and node 1 the element read from the {@code XMLStreamReader}.
+ * Trees are meant to be reused from one element to the next: once the arrays have grown to the size of the largest element, and
+ * names have been added to the name pool, reading an element does NOT allocate anything but the attribute values returned by the reader.
+ * Read-only {@code org.w3c.dom} views of the nodes are available from {@link TinyTree#getDocument()}, so that
+ * {@code XPathPredicate}, {@code XPathSetPredicate}, etc. can be used unchanged. Views are created lazily, and kept across elements.
+ * Instances are NOT thread-safe, and a tree, as well as its views, is only valid until the next element is read.
+ */
+public final class TinyTree {
+    static final int NONE = -1;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int INITIAL_TEXT_LENGTH = 1024;
+    private static final int MAX_NAMES = 64 * 1024; // Name pool is reset beyond this, to bound memory usage on pathological inputs.
+    private static final String XMLNS = XMLConstants.XMLNS_ATTRIBUTE;
+    private static final String XMLNS_URI = XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+
+    final NamePool names = new NamePool();
+
+    // Nodes:
+    private int size;
+    private short[] kinds = new short[INITIAL_CAPACITY];
+    private int[] nameCodes = new int[INITIAL_CAPACITY];
+    private int[] depths = new int[INITIAL_CAPACITY];
+    private int[] parents = new int[INITIAL_CAPACITY];
+    private int[] nextSiblings = new int[INITIAL_CAPACITY];
+    private int[] textStarts = new int[INITIAL_CAPACITY];
+    private int[] textLengths = new int[INITIAL_CAPACITY];
+    private int[] attributeStarts = new int[INITIAL_CAPACITY];
+    private int[] attributeCounts = new int[INITIAL_CAPACITY];
+
+    // Attributes, namespace declarations included:
+    private int attributeSize;
+    private int[] attributeNameCodes = new int[INITIAL_CAPACITY];
+    private int[] attributeOwners = new int[INITIAL_CAPACITY];
+    private String[] attributeValues = new String[INITIAL_CAPACITY];
+
+    // Character data:
+    private char[] text = new char[INITIAL_TEXT_LENGTH];
+    private int textSize;
+
+    // Last child of each open element, to link siblings while reading:
+    private int[] lastChildren = new int[INITIAL_CAPACITY];
+
+    // Read-only DOM views:
+    private TinyNode[] views = new TinyNode[INITIAL_CAPACITY];
+    private TinyAttr[] attributeViews = new TinyAttr[INITIAL_CAPACITY];
+
+    public TinyTree() {
+        clear();
+    }
+
+    /**
+     * Reads the current element of the {@code XMLStreamReader} into this tree, replacing its previous content.
+     * Like {@code XMLStreamReaderToDomTreeTransformer}, the reader is left on the event following the element's {@code END_ELEMENT}.
+     */
+    public void read(final XMLStreamReader reader) throws XMLStreamException {
+        checkNotNull(reader, "XMLStreamReader must NOT be null");
+        clear();
+        int current = 0;
+        int depth = 0;
+        do {
+            switch (reader.getEventType()) {
+                case XMLEvent.START_ELEMENT:
+                    current = addElement(current, depth, reader);
+                    ++depth;
+                    break;
+                case XMLEvent.END_ELEMENT:
+                    current = parents[current];
+                    --depth;
+                    break;
+                case XMLEvent.CHARACTERS:
+                case XMLEvent.SPACE:
+                    final int last = lastChildren[depth];
+                    if ((last == size - 1) && (kinds[last] == Node.TEXT_NODE)) {
+                        // StAX readers may split text in several events: merge these into a single text node.
+                        textLengths[last] += appendText(reader);
+                    } else {
+                        addCharacterData(Node.TEXT_NODE, current, depth, reader);
+                    }
+                    break;
+                case XMLEvent.CDATA:
+                    addCharacterData(Node.CDATA_SECTION_NODE, current, depth, reader);
+                    break;
+                case XMLEvent.COMMENT:
+                    addCharacterData(Node.COMMENT_NODE, current, depth, reader);
+                    break;
+                case XMLEvent.PROCESSING_INSTRUCTION:
+                    final int node = addNode(Node.PROCESSING_INSTRUCTION_NODE, current, depth);
+                    nameCodes[node] = names.code(null, null, reader.getPITarget());
+                    textStarts[node] = textSize;
+                    textLengths[node] = appendText(reader.getPIData());
+                    break;
+                default:
+                    break;
+            }
+            reader.next();
+        } while (depth > 0);
+    }
+
+    /**
+     * @return read-only DOM view of this tree, i.e. a {@code Document} node with the element as its only child.
+     */
+    public Document getDocument() {
+        return (Document) node(0);
+    }
+
+    /**
+     * @return number of nodes in this tree, document node included, but attributes excluded.
+     */
+    public int size() {
+        return size;
+    }
+
+    private void clear() {
+        if (names.size() > MAX_NAMES) {
+            names.clear();
+        }
+        Arrays.fill(attributeValues, 0, attributeSize, null); // Do not retain the previous element's values.
+        size = 0;
+        attributeSize = 0;
+        textSize = 0;
+        addNode(Node.DOCUMENT_NODE, NONE, -1);
+        lastChildren[0] = NONE;
+        if (views[0] != null) {
+            ((TinyDocument) views[0]).clearUserData();
+        }
+    }
+
+    private int addElement(final int parent, final int depth, final XMLStreamReader reader) {
+        final int node = addNode(Node.ELEMENT_NODE, parent, depth);
+        nameCodes[node] = names.code(reader.getPrefix(), reader.getNamespaceURI(), reader.getLocalName());
+        for (int i = 0; i < reader.getNamespaceCount(); ++i) {
+            final String prefix = reader.getNamespacePrefix(i);
+            addNamespaceDeclaration(node, prefix, reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            addAttribute(node, names.code(reader.getAttributePrefix(i), reader.getAttributeNamespace(i), reader.getAttributeLocalName(i)), reader.getAttributeValue(i));
+        }
+        // Namespaces declared by ancestors, outside of this tree, are declared again where used, so that the tree is self-contained:
+        declareNamespaceIfMissing(node, reader.getPrefix(), reader.getNamespaceURI());
+        for (int i = 0; i < reader.getAttributeCount(); ++i) {
+            final String prefix = reader.getAttributePrefix(i);
+            if ((prefix != null) && !prefix.isEmpty() && !XMLConstants.XML_NS_PREFIX.equals(prefix)) {
+                declareNamespaceIfMissing(node, prefix, reader.getAttributeNamespace(i));
+            }
+        }
+        ensureDepth(depth + 2);
+        lastChildren[depth + 1] = NONE;
+        return node;
+    }
+
+    private void declareNamespaceIfMissing(final int node, final String prefix, final String namespaceUri) {
+        final String uri = (namespaceUri == null) ? "" : namespaceUri;
+        final String inScope = lookupNamespaceUri(node, prefix);
+        if (uri.equals((inScope == null) ? "" : inScope)) {
+            return;
+        }
+        addNamespaceDeclaration(node, prefix, uri);
+    }
+
+    private void addNamespaceDeclaration(final int node, final String prefix, final String namespaceUri) {
+        final int nameCode = ((prefix == null) || prefix.isEmpty())
+                ? names.code(null, XMLNS_URI, XMLNS)
+                : names.code(XMLNS, XMLNS_URI, prefix);
+        addAttribute(node, nameCode, (namespaceUri == null) ? "" : namespaceUri);
+    }
+
+    private void addAttribute(final int owner, final int nameCode, final String value) {
+        if (attributeSize == attributeNameCodes.length) {
+            final int capacity = 2 * attributeNameCodes.length;
+            attributeNameCodes = Arrays.copyOf(attributeNameCodes, capacity);
+            attributeOwners = Arrays.copyOf(attributeOwners, capacity);
+            attributeValues = Arrays.copyOf(attributeValues, capacity);
+            attributeViews = Arrays.copyOf(attributeViews, capacity);
+        }
+        attributeNameCodes[attributeSize] = nameCode;
+        attributeOwners[attributeSize] = owner;
+        attributeValues[attributeSize] = value;
+        ++attributeSize;
+        ++attributeCounts[owner];
+    }
+
+    private void addCharacterData(final short kind, final int parent, final int depth, final XMLStreamReader reader) {
+        final int node = addNode(kind, parent, depth);
+        textStarts[node] = textSize;
+        textLengths[node] = appendText(reader);
+    }
+
+    private int addNode(final short kind, final int parent, final int depth) {
+        if (size == kinds.length) {
+            grow();
+        }
+        final int node = size++;
+        kinds[node] = kind;
+        nameCodes[node] = NONE;
+        depths[node] = depth + 1;
+        parents[node] = parent;
+        nextSiblings[node] = NONE;
+        textStarts[node] = 0;
+        textLengths[node] = 0;
+        attributeStarts[node] = attributeSize;
+        attributeCounts[node] = 0;
+        if (parent != NONE) {
+            final int previousSibling = lastChildren[depth];
+            if (previousSibling != NONE) {
+                nextSiblings[previousSibling] = node;
+            }
+            lastChildren[depth] = node;
+        }
+        return node;
+    }
+
+    private int appendText(final XMLStreamReader reader) {
+        final int length = reader.getTextLength();
+        ensureTextCapacity(textSize + length);
+        System.arraycopy(reader.getTextCharacters(), reader.getTextStart(), text, textSize, length);
+        textSize += length;
+        return length;
+    }
+
+    private int appendText(final String value) {
+        final int length = (value == null) ? 0 : value.length();
+        ensureTextCapacity(textSize + length);
+        if (length > 0) {
+            value.getChars(0, length, text, textSize);
+        }
+        textSize += length;
+        return length;
+    }
+
+    private void grow() {
+        final int capacity = 2 * kinds.length;
+        kinds = Arrays.copyOf(kinds, capacity);
+        nameCodes = Arrays.copyOf(nameCodes, capacity);
+        depths = Arrays.copyOf(depths, capacity);
+        parents = Arrays.copyOf(parents, capacity);
+        nextSiblings = Arrays.copyOf(nextSiblings, capacity);
+        textStarts = Arrays.copyOf(textStarts, capacity);
+        textLengths = Arrays.copyOf(textLengths, capacity);
+        attributeStarts = Arrays.copyOf(attributeStarts, capacity);
+        attributeCounts = Arrays.copyOf(attributeCounts, capacity);
+        views = Arrays.copyOf(views, capacity);
+    }
+
+    private void ensureDepth(final int minDepth) {
+        if (minDepth >= lastChildren.length) {
+            lastChildren = Arrays.copyOf(lastChildren, Math.max(minDepth + 1, 2 * lastChildren.length));
+        }
+    }
+
+    private void ensureTextCapacity(final int minCapacity) {
+        if (minCapacity > text.length) {
+            text = Arrays.copyOf(text, Math.max(minCapacity, 2 * text.length));
+        }
+    }
+
+    // Accessors used by the DOM views:
+
+    short kind(final int node) {
+        return kinds[node];
+    }
+
+    int nameCode(final int node) {
+        return nameCodes[node];
+    }
+
+    int depth(final int node) {
+        return depths[node];
+    }
+
+    int parent(final int node) {
+        return parents[node];
+    }
+
+    int nextSibling(final int node) {
+        return nextSiblings[node];
+    }
+
+    int firstChild(final int node) {
+        final int child = node + 1;
+        return ((child < size) && (parents[child] == node)) ? child : NONE;
+    }
+
+    /**
+     * @return index of the first node after the subtree rooted at the provided node, i.e. the end of its descendants, excluded.
+     */
+    int subtreeEnd(final int node) {
+        int end = node + 1;
+        while ((end < size) && (depths[end] > depths[node])) {
+            ++end;
+        }
+        return end;
+    }
+
+    String text(final int node) {
+        return new String(text, textStarts[node], textLengths[node]);
+    }
+
+    void appendText(final int node, final StringBuilder builder) {
+        builder.append(text, textStarts[node], textLengths[node]);
+    }
+
+    int textLength(final int node) {
+        return textLengths[node];
+    }
+
+    int attributeStart(final int node) {
+        return attributeStarts[node];
+    }
+
+    int attributeCount(final int node) {
+        return attributeCounts[node];
+    }
+
+    int attributeNameCode(final int attribute) {
+        return attributeNameCodes[attribute];
+    }
+
+    int attributeOwner(final int attribute) {
+        return attributeOwners[attribute];
+    }
+
+    String attributeValue(final int attribute) {
+        return attributeValues[attribute];
+    }
+
+    /**
+     * @return index of the provided node's attribute with the provided namespace URI and local name, or {@link TinyTree#NONE}.
+     */
+    int attribute(final int node, final String namespaceUri, final String localName) {
+        final String uri = (namespaceUri == null) ? "" : namespaceUri;
+        final int end = attributeStarts[node] + attributeCounts[node];
+        for (int i = attributeStarts[node]; i < end; ++i) {
+            final int nameCode = attributeNameCodes[i];
+            if (names.localName(nameCode).equals(localName) && names.namespaceUri(nameCode).equals(uri)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return index of the provided node's attribute with the provided qualified name, or {@link TinyTree#NONE}.
+     */
+    int attribute(final int node, final String qualifiedName) {
+        final int end = attributeStarts[node] + attributeCounts[node];
+        for (int i = attributeStarts[node]; i < end; ++i) {
+            if (names.qualifiedName(attributeNameCodes[i]).equals(qualifiedName)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * @return namespace URI bound to the provided prefix, by the provided node or its ancestors, within this tree, or {@code null}.
+     */
+    String lookupNamespaceUri(final int node, final String prefix) {
+        final String localName = ((prefix == null) || prefix.isEmpty()) ? XMLNS : prefix;
+        final String declarationPrefix = ((prefix == null) || prefix.isEmpty()) ? "" : XMLNS;
+        for (int n = node; n > 0; n = parents[n]) {
+            final int end = attributeStarts[n] + attributeCounts[n];
+            for (int i = attributeStarts[n]; i < end; ++i) {
+                final int nameCode = attributeNameCodes[i];
+                if (XMLNS_URI.equals(names.namespaceUri(nameCode)) && names.localName(nameCode).equals(localName) && names.prefix(nameCode).equals(declarationPrefix)) {
+                    final String uri = attributeValues[i];
+                    return uri.isEmpty() ? null : uri;
+                }
+            }
+        }
+        return null;
+    }
+
+    TinyNode node(final int node) {
+        final TinyNode view = views[node];
+        if ((view != null) && (view.getNodeType() == kinds[node])) {
+            return view;
+        }
+        return views[node] = newView(node);
+    }
+
+    TinyAttr attributeNode(final int attribute) {
+        final TinyAttr view = attributeViews[attribute];
+        if (view != null) {
+            return view;
+        }
+        return attributeViews[attribute] = new TinyAttr(this, attribute);
+    }
+
+    private TinyNode newView(final int node) {
+        switch (kinds[node]) {
+            case Node.DOCUMENT_NODE:
+                return new TinyDocument(this);
+            case Node.ELEMENT_NODE:
+                return new TinyElement(this, node);
+            case Node.TEXT_NODE:
+                return new TinyText(this, node);
+            case Node.CDATA_SECTION_NODE:
+                return new TinyCDATASection(this, node);
+            case Node.COMMENT_NODE:
+                return new TinyComment(this, node);
+            case Node.PROCESSING_INSTRUCTION_NODE:
+                return new TinyProcessingInstruction(this, node);
+            default:
+                throw new IllegalStateException("Unexpected node kind: " + kinds[node]);
+        }
+    }
+}
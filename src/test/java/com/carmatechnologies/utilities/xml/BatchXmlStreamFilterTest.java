@@ -0,0 +1,240 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.containsString;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class BatchXmlStreamFilterTest {
+    private static final int NUM_FILES = 20;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void outputsShouldBeMergedInTheSameOrderAsInputs() throws XMLStreamException, IOException {
+        List<Path> inputs = new ArrayList<>();
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < NUM_FILES; ++i) {
+            inputs.add(fileWith("file-" + i + ".txt", "content #" + i + "\n"));
+            expected.append("CONTENT #").append(i).append("\n");
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long selected = BatchXmlStreamFilter.builder(BatchXmlStreamFilterTest::upperCase).jobs(4).build().filter(inputs, out);
+
+        assertThat(out.toString(), is(expected.toString()));
+        assertThat(selected, is((long) NUM_FILES));
+    }
+
+    @Test
+    public void slowInputShouldDelayFilteringOfInputsFarAfterIt() throws XMLStreamException, IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < NUM_FILES; ++i) {
+            inputs.add(fileWith("file-" + i + ".txt", "content #" + i + "\n"));
+        }
+        AtomicInteger started = new AtomicInteger();
+        AtomicInteger startedWhileFirstWasFiltered = new AtomicInteger();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchXmlStreamFilter.builder(() -> (in, output) -> {
+            started.incrementAndGet();
+            final String content = new String(ByteStreams.toByteArray(in), UTF_8);
+            if (content.equals("content #0\n")) {
+                try {
+                    Thread.sleep(300);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                startedWhileFirstWasFiltered.set(started.get());
+            }
+            output.write(content.getBytes(UTF_8));
+            return 1;
+        }).jobs(2).build().filter(inputs, out);
+
+        // Outputs of at most twice the number of jobs are pending at once:
+        assertThat(startedWhileFirstWasFiltered.get() <= 4, is(true));
+        assertThat(out.toString().startsWith("content #0\ncontent #1\n"), is(true));
+    }
+
+    @Test
+    public void streamFiltersShouldBeCreatedOncePerWorkerThread() throws XMLStreamException, IOException {
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 0; i < NUM_FILES; ++i) {
+            inputs.add(fileWith("file-" + i + ".txt", "content #" + i + "\n"));
+        }
+        AtomicInteger created = new AtomicInteger();
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+
+        BatchXmlStreamFilter.builder(() -> {
+            created.incrementAndGet();
+            threads.add(Thread.currentThread());
+            return upperCase();
+        }).jobs(3).build().filter(inputs, new ByteArrayOutputStream());
+
+        assertThat(created.get(), is(threads.size()));
+    }
+
+    @Test
+    public void outputsShouldBeWrittenToOutputDirectoryOnePerInput() throws XMLStreamException, IOException {
+        Path first = fileWith("first.xml", "first\n");
+        Path second = fileWith("second.xml.gz", "second\n");
+        Path outputDirectory = folder.newFolder("out").toPath();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BatchXmlStreamFilter.builder(BatchXmlStreamFilterTest::upperCase).jobs(2).outputDirectory(outputDirectory).build()
+                .filter(Arrays.asList(first, second), out);
+
+        assertThat(out.toString(), is(""));
+        assertThat(new String(Files.readAllBytes(outputDirectory.resolve("first.xml")), UTF_8), is("FIRST\n"));
+        assertThat(new String(Files.readAllBytes(outputDirectory.resolve("second.xml")), UTF_8), is("SECOND\n"));
+    }
+
+    @Test
+    public void inputsWithSameNameShouldThrowIllegalArgumentExceptionWhenWritingToOutputDirectory() throws XMLStreamException, IOException {
+        Path first = fileWith("same.xml", "first\n");
+        Path second = fileWith("same.xml.gz", "second\n");
+        Path outputDirectory = folder.newFolder("out").toPath();
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Several input files would be written to the same output file: " + outputDirectory.resolve("same.xml") + "."));
+
+        BatchXmlStreamFilter.builder(BatchXmlStreamFilterTest::upperCase).outputDirectory(outputDirectory).build()
+                .filter(Arrays.asList(first, second), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void inputInOutputDirectoryShouldThrowIllegalArgumentExceptionAndBeLeftIntact() throws XMLStreamException, IOException {
+        Path input = fileWith("input.xml", "content\n");
+        Path outputDirectory = input.getParent();
+        try {
+            BatchXmlStreamFilter.builder(BatchXmlStreamFilterTest::upperCase).outputDirectory(outputDirectory).build()
+                    .filter(Collections.singletonList(outputDirectory.resolve(".").resolve("input.xml")), new ByteArrayOutputStream());
+            throw new AssertionError("Filtering should have failed.");
+        } catch (IllegalArgumentException e) {
+            assertThat(e.getMessage(), is("Input file would be overwritten by its output: " + input + "."));
+        }
+        assertThat(new String(Files.readAllBytes(input), UTF_8), is("content\n"));
+    }
+
+    @Test
+    public void failureShouldNotLeaveTruncatedOutputInOutputDirectory() throws XMLStreamException, IOException {
+        Path input = fileWith("input.xml", "content\n");
+        Path outputDirectory = folder.newFolder("out").toPath();
+        Files.write(outputDirectory.resolve("input.xml"), "previous output\n".getBytes(UTF_8));
+        try {
+            BatchXmlStreamFilter.builder(() -> (in, out) -> {
+                out.write("partial".getBytes(UTF_8));
+                out.flush();
+                throw new IllegalStateException("Failed on purpose.");
+            }).outputDirectory(outputDirectory).build().filter(Collections.singletonList(input), new ByteArrayOutputStream());
+            throw new AssertionError("Filtering should have failed.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Failed on purpose."));
+        }
+        assertThat(new String(Files.readAllBytes(outputDirectory.resolve("input.xml")), UTF_8), is("previous output\n"));
+        try (Stream<Path> files = Files.list(outputDirectory)) {
+            assertThat(files.count(), is(1L));
+        }
+    }
+
+    @Test
+    public void failureShouldBeRethrownWithPathOfFailingInput() throws XMLStreamException, IOException {
+        Path input = fileWith("invalid.xml", "<books><book></books>");
+        expectedException.expect(XMLStreamException.class);
+        expectedException.expectMessage(containsString("Failed to filter " + input + ": "));
+
+        BatchXmlStreamFilter.builder(() -> (in, out) -> {
+            throw new XMLStreamException("Unexpected close tag </books>.");
+        }).jobs(2).build().filter(Collections.singletonList(input), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void failureShouldDeleteTemporaryOutputOfFailingInput() throws XMLStreamException, IOException {
+        Path input = fileWith("invalid.xml", "<books><book></books>");
+        // Other tests may write temporary outputs concurrently, hence this one is recognized by its content:
+        byte[] marker = ("Partial output " + UUID.randomUUID()).getBytes(UTF_8);
+        try {
+            BatchXmlStreamFilter.builder(() -> (in, out) -> {
+                out.write(marker);
+                out.flush();
+                throw new IllegalStateException("Failed on purpose.");
+            }).build().filter(Collections.singletonList(input), new ByteArrayOutputStream());
+            throw new AssertionError("Filtering should have failed.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Failed on purpose."));
+        }
+        assertThat(temporaryOutputsContaining(marker), is(0L));
+    }
+
+    @Test
+    public void nonPositiveNumberOfJobsShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Number of jobs must be strictly positive."));
+
+        BatchXmlStreamFilter.builder(BatchXmlStreamFilterTest::upperCase).jobs(0).build();
+    }
+
+    @Test
+    public void nullStreamFilterSupplierShouldThrowNullPointerException() {
+        expectedException.expect(NullPointerException.class);
+        expectedException.expectMessage(equalTo("StreamFilter supplier must NOT be null."));
+
+        BatchXmlStreamFilter.builder(null).build();
+    }
+
+    private static CountingStreamFilter upperCase() {
+        return (in, out) -> {
+            long lines = 0;
+            int b;
+            while ((b = in.read()) != -1) {
+                out.write(Character.toUpperCase(b));
+                lines += (b == '\n') ? 1 : 0;
+            }
+            return lines;
+        };
+    }
+
+    private static long temporaryOutputsContaining(final byte[] content) throws IOException {
+        try (Stream<Path> files = Files.list(Paths.get(System.getProperty("java.io.tmpdir")))) {
+            return files.filter(path -> path.getFileName().toString().matches("xml-stream-filter-.*\\.out")).filter(path -> {
+                try {
+                    return Arrays.equals(Files.readAllBytes(path), content);
+                } catch (IOException e) {
+                    return false; // E.g. deleted meanwhile by another test.
+                }
+            }).count();
+        }
+    }
+
+    private Path fileWith(final String name, final String content) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(name);
+        Files.write(path, content.getBytes(UTF_8));
+        return path;
+    }
+}
@@ -0,0 +1,138 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Map;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ElementIndexTest {
+
+    private static final int NUM_ELEMENTS = 1000;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void lookupShouldReturnTheElementsIndexedUnderTheProvidedValuesInFileOrder() throws IOException, XMLStreamException {
+        final Path input = fileWith(items(NUM_ELEMENTS));
+        final Path indexPath = folder.getRoot().toPath().resolve("items.idx");
+        assertThat(ElementIndex.build(input, "item", Arrays.asList("//item/@id", "//item/tag"), indexPath), is((long) NUM_ELEMENTS));
+
+        try (ElementIndex index = ElementIndex.open(indexPath)) {
+            assertThat(index.elementLocalName(), is("item"));
+            assertThat(index.keyQueries(), is(Arrays.asList("//item/@id", "//item/tag")));
+            assertThat(index.isUpToDate(input), is(true));
+
+            final Map<Long, Long> elements = index.lookup("//item/@id", Arrays.asList("999", " 7 ", "0", "nope", "7"));
+            assertThat(read(input, elements), is("<items xmlns:x=\"urn:x\">" +
+                    "<item id=\"0\"><tag>even</tag><tag>0</tag></item>" +
+                    "<item id=\"7\"><tag>odd</tag><tag>7</tag></item>" +
+                    "<item id=\"999\"><tag>odd</tag><tag>9</tag></item>" +
+                    "</items>"));
+            assertThat(index.lookup("//item/tag", Collections.singletonList("odd")).size(), is(NUM_ELEMENTS / 2));
+            assertThat(index.lookup("//item/tag", Arrays.asList("odd", "even")).size(), is(NUM_ELEMENTS));
+            assertThat(index.lookup("//item/tag", Collections.singletonList("3")).size(), is(NUM_ELEMENTS / 10));
+            assertThat(index.lookup("//item/@id", Collections.singletonList("")).isEmpty(), is(true));
+        }
+    }
+
+    @Test
+    public void buildShouldMergeRunsSpilledToDiskIntoTheSameIndexAsInMemory() throws IOException, XMLStreamException {
+        final Path input = fileWith(items(NUM_ELEMENTS));
+        final Path inMemory = folder.getRoot().toPath().resolve("in-memory.idx");
+        final Path spilled = folder.getRoot().toPath().resolve("spilled.idx");
+        ElementIndex.build(input, "item", Arrays.asList("//item/@id", "//item/tag"), inMemory);
+        // Each run holds a handful of entries, hence hundreds of runs are merged:
+        ElementIndex.build(input, "item", Arrays.asList("//item/@id", "//item/tag"), spilled, 512);
+
+        assertThat(Arrays.equals(Files.readAllBytes(spilled), Files.readAllBytes(inMemory)), is(true));
+        try (Stream<Path> files = Files.list(folder.getRoot().toPath())) {
+            assertThat(files.filter(path -> path.toString().endsWith(".run")).count(), is(0L));
+        }
+    }
+
+    @Test
+    public void indexShouldBeOutOfDateOnceTheFileChanged() throws IOException, XMLStreamException {
+        final Path input = fileWith(items(10));
+        final Path indexPath = folder.getRoot().toPath().resolve("items.idx");
+        ElementIndex.build(input, "item", Collections.singletonList("//item/@id"), indexPath);
+        Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 1000));
+        try (ElementIndex index = ElementIndex.open(indexPath)) {
+            assertThat(index.isUpToDate(input), is(false));
+        }
+    }
+
+    @Test
+    public void lookupOfKeyQueryNotIndexedShouldThrowIllegalArgumentException() throws IOException, XMLStreamException {
+        final Path indexPath = folder.getRoot().toPath().resolve("items.idx");
+        ElementIndex.build(fileWith(items(10)), "item", Collections.singletonList("//item/@id"), indexPath);
+        try (ElementIndex index = ElementIndex.open(indexPath)) {
+            expectedException.expect(IllegalArgumentException.class);
+            expectedException.expectMessage("Key query is NOT indexed: //item/tag.");
+            index.lookup("//item/tag", Collections.singletonList("odd"));
+        }
+    }
+
+    @Test
+    public void buildingIndexOfGzippedFileShouldThrowIllegalArgumentException() throws IOException, XMLStreamException {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(items(10));
+        }
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Gzipped files cannot be indexed");
+        ElementIndex.build(fileWith(gzipped.toByteArray()), "item", Collections.singletonList("//item/@id"), folder.getRoot().toPath().resolve("items.idx"));
+    }
+
+    @Test
+    public void openingFileWhichIsNotAnIndexShouldThrowIOException() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("Not an element index file");
+        ElementIndex.open(fileWith(items(10)));
+    }
+
+    private static String read(final Path input, final Map<Long, Long> elements) throws IOException {
+        try (InputStream in = ElementIndex.newInputStream(input, elements)) {
+            return new String(ByteStreams.toByteArray(in), UTF_8).replace(SplitXmlStreamFilter.RANGE_ELEMENT, "items");
+        }
+    }
+
+    private static byte[] items(final int numElements) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<items xmlns:x=\"urn:x\">\n");
+        for (int i = 0; i < numElements; ++i) {
+            if (i % 5 == 0) {
+                xml.append("  <!-- <item id=\"").append(-i).append("\"> -->\n");
+            }
+            xml.append("  <item id=\"").append(i).append("\"><tag>").append((i % 2 == 0) ? "even" : "odd").append("</tag><tag>")
+                    .append(i % 10).append("</tag></item>\n");
+        }
+        return xml.append("</items>\n").toString().getBytes(UTF_8);
+    }
+
+    private Path fileWith(final byte[] content) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, content);
+        return path;
+    }
+}
@@ -0,0 +1,233 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.predicate.XPathPredicate;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XPathToOutputStreamTransformer;
+import com.google.common.base.Joiner;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ParallelXmlStreamFilterTest {
+
+    private static final int NUM_ELEMENTS = 2000;
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void filterShouldFilterBasedOnXPathQueryAndOutputFilteredElementsInInputOrder() throws TransformerConfigurationException, XMLStreamException, IOException {
+        StreamFilter streamFilter = ParallelXmlStreamFilter.builder("book")
+                .filter(() -> xpathPredicate("//book[@category = 'WEB']"))
+                .transformer(() -> xpathTransformer("//book/title/text()"))
+                .threads(4)
+                .build();
+
+        InputStream in = streamFor("/books.xml");
+        OutputStream out = new ByteArrayOutputStream();
+
+        streamFilter.filter(in, out);
+
+        assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
+    }
+
+    @Test
+    public void filterShouldKeepInputOrderForManyElementsAndFewElementsInFlight() throws TransformerConfigurationException, XMLStreamException, IOException {
+        StreamFilter streamFilter = ParallelXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("//item[@id mod 3 = 0]"))
+                .transformer(() -> xpathTransformer("//item/@id"))
+                .threads(8)
+                .maxInFlight(3)
+                .build();
+
+        OutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(new ByteArrayInputStream(items(NUM_ELEMENTS)), out);
+
+        assertThat(out.toString(), is(Joiner.on("\n").join(idsMultipleOfThree()) + "\n"));
+    }
+
+    @Test
+    public void filterShouldOutputOriginalBytesOfFilteredElementsInInputOrderWhenCapturingRawXml() throws TransformerConfigurationException, XMLStreamException, IOException {
+        StreamFilter streamFilter = ParallelXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("//item[@id mod 3 = 0]"))
+                .transformer(RawXmlToOutputStreamTransformer::new)
+                .threads(8)
+                .maxInFlight(3)
+                .rawXml()
+                .build();
+
+        OutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(new ByteArrayInputStream(items(NUM_ELEMENTS)), out);
+
+        StringBuilder expected = new StringBuilder();
+        for (String id : idsMultipleOfThree()) {
+            expected.append("<item id=\"").append(id).append("\"><name>Item #").append(id).append("</name></item>\n");
+        }
+        assertThat(out.toString(), is(expected.toString()));
+    }
+
+    @Test
+    public void filterShouldStopParsingOnceLimitIsReached() throws TransformerConfigurationException, XMLStreamException, IOException {
+        CountingStreamFilter streamFilter = ParallelXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("//item[@id mod 3 = 0]"))
+                .transformer(() -> xpathTransformer("//item/@id"))
+                .threads(4)
+                .limit(5)
+                .build();
+
+        // The input is truncated, hence would fail to be parsed entirely:
+        byte[] xml = Arrays.copyOf(items(NUM_ELEMENTS), 1000 * NUM_ELEMENTS / 50);
+        OutputStream out = new ByteArrayOutputStream();
+        long selected = streamFilter.filterAndCount(new ByteArrayInputStream(xml), out);
+
+        assertThat(out.toString(), is("0\n3\n6\n9\n12\n"));
+        assertThat(selected, is(5L));
+    }
+
+    @Test
+    public void filterShouldReturnNumberOfSelectedElements() throws TransformerConfigurationException, XMLStreamException, IOException {
+        CountingStreamFilter streamFilter = ParallelXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("//item[@id mod 3 = 0]"))
+                .transformer(() -> xpathTransformer("//item/@id"))
+                .threads(4)
+                .unordered()
+                .build();
+
+        long selected = streamFilter.filterAndCount(new ByteArrayInputStream(items(NUM_ELEMENTS)), new ByteArrayOutputStream());
+
+        assertThat(selected, is((long) idsMultipleOfThree().size()));
+    }
+
+    @Test
+    public void filterShouldInflateGZippedInputAheadOfParsingThread() throws TransformerConfigurationException, XMLStreamException, IOException {
+        StreamFilter streamFilter = ParallelXmlStreamFilter.builder("book")
+                .filter(() -> xpathPredicate("//book[@category = 'WEB']"))
+                .transformer(() -> xpathTransformer("//book/title/text()"))
+                .threads(4)
+                .inflaterThreads(2)
+                .build();
+
+        InputStream in = streamFor("/books.xml.gz");
+        OutputStream out = new ByteArrayOutputStream();
+
+        streamFilter.filter(in, out);
+
+        assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
+    }
+
+    @Test
+    public void unorderedFilterShouldOutputAllFilteredElements() throws TransformerConfigurationException, XMLStreamException, IOException {
+        StreamFilter streamFilter = ParallelXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("//item[@id mod 3 = 0]"))
+                .transformer(() -> xpathTransformer("//item/@id"))
+                .threads(8)
+                .unordered()
+                .build();
+
+        OutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(new ByteArrayInputStream(items(NUM_ELEMENTS)), out);
+
+        List<String> ids = new ArrayList<>(Arrays.asList(out.toString().split("\n")));
+        Collections.sort(ids, (a, b) -> Integer.valueOf(a).compareTo(Integer.valueOf(b)));
+        assertThat(ids, is(idsMultipleOfThree()));
+    }
+
+    @Test
+    public void failureInWorkerThreadShouldBeRethrownInCallingThread() throws TransformerConfigurationException, XMLStreamException, IOException {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage(equalTo("Failed on purpose."));
+
+        StreamFilter streamFilter = ParallelXmlStreamFilter.builder("item")
+                .filter(() -> domTree -> {
+                    throw new IllegalStateException("Failed on purpose.");
+                })
+                .transformer(() -> xpathTransformer("//item/@id"))
+                .threads(2)
+                .maxInFlight(1)
+                .build();
+
+        streamFilter.filter(new ByteArrayInputStream(items(NUM_ELEMENTS)), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void nullFilterSupplierShouldThrowNullPointerException() throws TransformerConfigurationException {
+        expectedException.expect(NullPointerException.class);
+        expectedException.expectMessage(equalTo("Filter supplier must NOT be null."));
+
+        ParallelXmlStreamFilter.builder("book").transformer(() -> xpathTransformer("//book/title/text()")).build();
+    }
+
+    @Test
+    public void nonPositiveNumberOfThreadsShouldThrowIllegalArgumentException() throws TransformerConfigurationException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Number of threads must be strictly positive."));
+
+        ParallelXmlStreamFilter.builder("book")
+                .filter(() -> xpathPredicate("//book"))
+                .transformer(() -> xpathTransformer("//book/title/text()"))
+                .threads(0)
+                .build();
+    }
+
+    @Test
+    public void emptyElementLocalNameShouldThrowIllegalArgumentException() throws TransformerConfigurationException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("XML element's local name must NOT be empty."));
+
+        ParallelXmlStreamFilter.builder("")
+                .filter(() -> xpathPredicate("//book"))
+                .transformer(() -> xpathTransformer("//book/title/text()"))
+                .build();
+    }
+
+    private static byte[] items(final int numElements) {
+        final StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < numElements; ++i) {
+            xml.append("<item id=\"").append(i).append("\"><name>Item #").append(i).append("</name></item>");
+        }
+        return xml.append("</items>").toString().getBytes(UTF_8);
+    }
+
+    private static List<String> idsMultipleOfThree() {
+        final List<String> ids = new ArrayList<>();
+        for (int i = 0; i < NUM_ELEMENTS; i += 3) {
+            ids.add(String.valueOf(i));
+        }
+        return ids;
+    }
+
+    private static XPathPredicate xpathPredicate(final String xpathQuery) {
+        try {
+            return new XPathPredicate(xpathQuery);
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static XPathToOutputStreamTransformer xpathTransformer(final String xpathQuery) {
+        try {
+            return new XPathToOutputStreamTransformer(xpathQuery);
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.predicate.XPathPredicate;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToTinyTreeTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XPathToOutputStreamTransformer;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.toUtf8String;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+public class RoutingXmlStreamFilterTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void filterShouldDispatchEachElementToEveryRouteSelectingIt() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        Path web = folder.getRoot().toPath().resolve("web.txt");
+        Path learning = folder.getRoot().toPath().resolve("learning.xml");
+        RoutingXmlStreamFilter streamFilter = RoutingXmlStreamFilter.builder("book")
+                .route("web", new XPathPredicate("//book[@category = 'WEB']"), new XPathToOutputStreamTransformer("//book/title/text()"), web)
+                .route("learning", new XPathPredicate("//book/tags/tag[text() = 'learning']"), new RawXmlToOutputStreamTransformer(), learning)
+                .route("cheap", new XPathPredicate("//book/price[text() < 30]"), new XPathToOutputStreamTransformer("//book/author/text()"), null)
+                .domTreeTransformer(new XMLStreamReaderToTinyTreeTransformer(true))
+                .rawXml()
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long selected = streamFilter.filterAndCount(streamFor("/books.xml"), out);
+
+        assertThat(selected, is(3L));
+        assertThat(out.toString(), is("J K. Rowling\n"));
+        assertThat(new String(Files.readAllBytes(web), UTF_8), is("XQuery Kick Start\nLearning XML\n"));
+        String learningXml = new String(Files.readAllBytes(learning), UTF_8);
+        assertThat(learningXml.startsWith("<book category=\"WEB\">"), is(true));
+        assertThat(learningXml.contains("<title lang=\"en\">XQuery Kick Start</title>"), is(true));
+        assertThat(learningXml.contains("<title lang=\"en\">Learning XML</title>"), is(true));
+        assertThat(learningXml.endsWith("</book>\n"), is(true));
+    }
+
+    @Test
+    public void routesSharingAnOutputFileShouldWriteToItInInputOrder() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        Path titles = folder.getRoot().toPath().resolve("titles.txt");
+        RoutingXmlStreamFilter streamFilter = RoutingXmlStreamFilter.builder("book")
+                .route("2005", new XPathPredicate("//book/year[text() = '2005']"), new XPathToOutputStreamTransformer("//book/title/text()"), titles)
+                .route("2003", new XPathPredicate("//book/year[text() = '2003']"), new XPathToOutputStreamTransformer("//book/year/text()"), titles)
+                .build();
+
+        long selected = streamFilter.filterAndCount(streamFor("/books.xml"), new ByteArrayOutputStream());
+
+        assertThat(selected, is(4L));
+        assertThat(new String(Files.readAllBytes(titles), UTF_8), is("Everyday Italian\nHarry Potter\n2003\n2003\n"));
+    }
+
+    @Test
+    public void failureToWriteTheLastBytesOfAnOutputFileShouldThrowIOException() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        Path full = Paths.get("/dev/full");
+        assumeTrue(Files.isWritable(full));
+        RoutingXmlStreamFilter streamFilter = RoutingXmlStreamFilter.builder("book")
+                .route("titles", new XPathPredicate("//book"), new XPathToOutputStreamTransformer("//book/title/text()"), full)
+                .build();
+
+        expectedException.expect(IOException.class);
+        streamFilter.filter(streamFor("/books.xml"), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void inputShouldOnlyBeReadOnceWhateverTheNumberOfRoutes() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        AtomicLong bytesRead = new AtomicLong();
+        InputStream in = new FilterInputStream(streamFor("/books.xml")) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) {
+                    bytesRead.incrementAndGet();
+                }
+                return b;
+            }
+
+            @Override
+            public int read(final byte[] bytes, final int offset, final int length) throws IOException {
+                int read = super.read(bytes, offset, length);
+                if (read > 0) {
+                    bytesRead.addAndGet(read);
+                }
+                return read;
+            }
+        };
+        RoutingXmlStreamFilter.Builder builder = RoutingXmlStreamFilter.builder("book");
+        for (int i = 0; i < 10; ++i) {
+            builder.route("route-" + i, new XPathPredicate("//book"), new XPathToOutputStreamTransformer("//book/year/text()"), null);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long selected = builder.build().filterAndCount(in, out);
+
+        assertThat(selected, is(4L));
+        assertThat(out.toString().split("\n").length, is(40));
+        assertThat(bytesRead.get(), is((long) toUtf8String(streamFor("/books.xml")).getBytes(UTF_8).length));
+    }
+
+    @Test
+    public void routesShouldHaveUniqueNames() throws XPathExpressionException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Several routes are named \"web\".");
+        RoutingXmlStreamFilter.builder("book")
+                .route("web", new XPathPredicate("//book"), new RawXmlToOutputStreamTransformer(), null)
+                .route("web", new XPathPredicate("//book"), new RawXmlToOutputStreamTransformer(), null);
+    }
+
+    @Test
+    public void filterShouldRequireAtLeastOneRoute() throws TransformerConfigurationException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Routes must NOT be empty.");
+        RoutingXmlStreamFilter.builder("book").build();
+    }
+}
@@ -0,0 +1,512 @@
+package com.carmatechnologies.utilities.xml;
+
+import com.carmatechnologies.utilities.xml.common.GzipIndex;
+import com.carmatechnologies.utilities.xml.predicate.XPathPredicate;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToTinyTreeTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XPathToOutputStreamTransformer;
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.junit.Assert.assertThat;
+
+public class SplitXmlStreamFilterTest {
+
+    private static final int NUM_ELEMENTS = 500;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void filterShouldOutputSameBytesAsSequentialFilterWhateverTheRangeSize() throws TransformerConfigurationException, XMLStreamException, IOException {
+        byte[] xml = items(NUM_ELEMENTS);
+        String expected = sequentiallyFiltered(xml);
+        assertThat(expected, is(not("")));
+
+        Path input = fileWith(xml);
+        for (long rangeSize : new long[]{1, 37, 256, 4096, xml.length}) {
+            SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                    .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                    .transformer(RawXmlToOutputStreamTransformer::new)
+                    .threads(4)
+                    .rangeSize(rangeSize)
+                    .rawXml()
+                    .build();
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            streamFilter.filter(input, out);
+
+            assertThat("Range size: " + rangeSize, new String(out.toByteArray(), UTF_8), is(expected));
+        }
+    }
+
+    @Test
+    public void filterShouldResolvePrefixesDeclaredOnRootElement() throws XMLStreamException, IOException {
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 7 = 0]"))
+                .transformer(() -> xpathTransformer("namespace-uri(/*)"))
+                .threads(4)
+                .rangeSize(64)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(fileWith(items(30)), out);
+
+        assertThat(out.toString(), is("urn:x\nurn:x\nurn:x\nurn:x\nurn:x\n"));
+    }
+
+    @Test
+    public void filterShouldParseFilesSequentiallyFromNamespacesDeclaredOnOtherElementsThanRoot() throws XMLStreamException, IOException {
+        StringBuilder xml = new StringBuilder("<items xmlns:x=\"urn:x\">\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; ++i) {
+            xml.append("  <x:item id='").append(i).append("'/>\n");
+            expected.append((i % 3 == 0) ? i + " urn:x\n" : "");
+        }
+        // Elements of both ranges before and after these declarations are selected, and each of them is output exactly once:
+        xml.append("  <group xmlns=\"urn:default\" xmlns:y=\"urn:y\">\n");
+        for (int i = 40; i < 80; ++i) {
+            xml.append((i % 2 == 0) ? "    <y:item id='" : "    <item id='").append(i).append("'/>\n");
+            expected.append((i % 3 == 0) ? i + ((i % 2 == 0) ? " urn:y\n" : " urn:default\n") : "");
+        }
+        xml.append("  </group>\n</items>\n");
+
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(() -> xpathTransformer("concat(/*/@id, ' ', namespace-uri(/*))"))
+                .threads(4)
+                .rangeSize(64)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long selected = streamFilter.filter(fileWith(xml.toString().getBytes(UTF_8)), out);
+
+        assertThat(out.toString(), is(expected.toString()));
+        assertThat(selected, is(27L));
+    }
+
+    @Test
+    public void filterShouldKeepCheckpointingWhenParsingSequentiallyFromNamespacesDeclaredOnOtherElementsThanRoot() throws TransformerConfigurationException, XMLStreamException, IOException {
+        StringBuilder xml = new StringBuilder("<items>\n");
+        for (int i = 0; i < 20; ++i) {
+            xml.append("  <item id='").append(i).append("'/>\n");
+        }
+        xml.append("  <group xmlns:y=\"urn:y\">\n");
+        for (int i = 20; i < 80; ++i) {
+            xml.append((i % 2 == 0) ? "    <y:item id='" : "    <item id='").append(i).append("'/>\n");
+        }
+        xml.append("  </group>\n</items>\n");
+        final byte[] bytes = xml.toString().getBytes(UTF_8);
+        final Path input = fileWith(bytes);
+        final Path checkpoint = folder.getRoot().toPath().resolve("filter.checkpoint");
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final long selected = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(RawXmlToOutputStreamTransformer::new)
+                .threads(4)
+                .rangeSize(64)
+                .rawXml()
+                .checkpoints(checkpoint)
+                .build()
+                .filter(input, out);
+
+        assertThat(new String(out.toByteArray(), UTF_8), is(sequentiallyFiltered(bytes)));
+        assertThat(selected, is(27L));
+        // Ranges following the first failing one are still checkpointed, and the last checkpoint carries the group's namespaces:
+        final FilterCheckpoint lastCheckpoint = FilterCheckpoint.read(checkpoint);
+        assertThat(lastCheckpoint.inputOffset(), is((long) bytes.length));
+        assertThat(lastCheckpoint.outputLength(), is((long) out.size()));
+        assertThat(lastCheckpoint.selected(), is(27L));
+    }
+
+    @Test
+    public void filterShouldResumeInContextFromCheckpointsRecordedWithinElementsDeclaringNamespaces() throws TransformerConfigurationException, XMLStreamException, IOException {
+        StringBuilder xml = new StringBuilder("<items>\n  <group xmlns:y=\"urn:y\">\n");
+        for (int i = 0; i < 80; ++i) {
+            xml.append((i % 2 == 0) ? "    <y:item id='" : "    <item id='").append(i).append("'/>\n");
+        }
+        xml.append("  </group>\n</items>\n");
+        final byte[] bytes = xml.toString().getBytes(UTF_8);
+        final String expected = sequentiallyFiltered(bytes);
+        final Path input = fileWith(bytes);
+        final Path checkpoint = folder.getRoot().toPath().resolve("filter.checkpoint");
+
+        final ByteArrayOutputStream interruptedOut = new ByteArrayOutputStream();
+        try {
+            SplitXmlStreamFilter.builder("item")
+                    .filter(() -> {
+                        final XPathPredicate predicate = xpathPredicate("/*[@id mod 3 = 0]");
+                        final XPathPredicate failure = xpathPredicate("/*[@id = 60]");
+                        return domTree -> {
+                            if (failure.test(domTree)) {
+                                throw new IllegalStateException("Interrupted on purpose.");
+                            }
+                            return predicate.test(domTree);
+                        };
+                    })
+                    .transformer(RawXmlToOutputStreamTransformer::new)
+                    .threads(1)
+                    .rangeSize(64)
+                    .rawXml()
+                    .checkpoints(checkpoint)
+                    .build()
+                    .filter(input, interruptedOut);
+            throw new AssertionError("Run should have been interrupted.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Interrupted on purpose."));
+        }
+
+        final FilterCheckpoint lastCheckpoint = FilterCheckpoint.read(checkpoint);
+        assertThat(lastCheckpoint.inputOffset() > 0, is(true));
+        assertThat(lastCheckpoint.outputLength(), is((long) interruptedOut.size()));
+        assertThat(new String(lastCheckpoint.namespaceDeclarations(), UTF_8).contains("xmlns:y=\"urn:y\""), is(true));
+
+        final ByteArrayOutputStream resumedOut = new ByteArrayOutputStream();
+        final long selected = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(RawXmlToOutputStreamTransformer::new)
+                .threads(4)
+                .rangeSize(64)
+                .rawXml()
+                .checkpoints(checkpoint)
+                .resumeFrom(lastCheckpoint)
+                .build()
+                .filter(input, resumedOut);
+
+        assertThat(new String(interruptedOut.toByteArray(), UTF_8) + new String(resumedOut.toByteArray(), UTF_8), is(expected));
+        assertThat(selected, is(27L));
+    }
+
+    @Test
+    public void filterShouldParseFilesWithDocumentTypeDeclarationSequentially() throws XMLStreamException, IOException {
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\"?>\n<!DOCTYPE items [<!ENTITY name \"Item\">]>\n<items>\n");
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 40; ++i) {
+            xml.append("  <item id='").append(i).append("'><name>&name; #").append(i).append("</name></item>\n");
+            expected.append((i % 3 == 0) ? "Item #" + i + "\n" : "");
+        }
+        xml.append("</items>\n");
+
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(() -> xpathTransformer("/*/name"))
+                .threads(4)
+                .rangeSize(64)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(fileWith(xml.toString().getBytes(UTF_8)), out);
+
+        assertThat(out.toString(), is(expected.toString()));
+    }
+
+    @Test
+    public void filterShouldProcessGZippedFilesSequentially() throws XMLStreamException, IOException {
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("book")
+                .filter(() -> xpathPredicate("//book[@category = 'WEB']"))
+                .transformer(() -> xpathTransformer("//book/title/text()"))
+                .threads(4)
+                .rangeSize(16)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(fileWith(ByteStreams.toByteArray(streamFor("/books.xml.gz"))), out);
+
+        assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
+    }
+
+    @Test
+    public void filterShouldSplitGZippedFilesAtTheCheckpointsOfTheirIndex() throws TransformerConfigurationException, XMLStreamException, IOException {
+        byte[] xml = items(20 * NUM_ELEMENTS);
+        ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped)) {
+            out.write(xml);
+        }
+        Path input = fileWith(gzipped.toByteArray());
+        GzipIndex index = GzipIndex.build(input, 4096);
+        assertThat(index.checkpoints() > 1, is(true));
+
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(RawXmlToOutputStreamTransformer::new)
+                .threads(4)
+                .rangeSize(4096)
+                .rawXml()
+                .gzipIndex(index)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(input, out);
+
+        assertThat(new String(out.toByteArray(), UTF_8), is(sequentiallyFiltered(xml)));
+    }
+
+    @Test
+    public void filterShouldResumeFromLastCheckpointOfInterruptedRun() throws TransformerConfigurationException, XMLStreamException, IOException {
+        assertResumesFromLastCheckpoint(NUM_ELEMENTS, false);
+    }
+
+    @Test
+    public void filterShouldResumeGZippedFilesFromLastCheckpointOfInterruptedRun() throws TransformerConfigurationException, XMLStreamException, IOException {
+        assertResumesFromLastCheckpoint(NUM_ELEMENTS, true);
+    }
+
+    @Test
+    public void resumingFromCheckpointOfAnotherFileShouldThrowIllegalStateException() throws XMLStreamException, IOException {
+        Path checkpoint = folder.getRoot().toPath().resolve("filter.checkpoint");
+        SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(RawXmlToOutputStreamTransformer::new)
+                .rawXml()
+                .checkpoints(checkpoint)
+                .build()
+                .filter(fileWith(items(30)), new ByteArrayOutputStream());
+
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage("Checkpoint was NOT recorded for this file, or the file was modified since");
+
+        SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(RawXmlToOutputStreamTransformer::new)
+                .rawXml()
+                .resumeFrom(FilterCheckpoint.read(checkpoint))
+                .build()
+                .filter(fileWith(items(31)), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void filterShouldProcessFilesSequentiallyWhenElementIsGivenByPath() throws XMLStreamException, IOException {
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("/items/item|/items/{urn:x}item")
+                .filter(() -> xpathPredicate("/*[@id mod 7 = 0]"))
+                .transformer(() -> xpathTransformer("/*/@id"))
+                .threads(4)
+                .rangeSize(64)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(fileWith(items(30)), out);
+
+        assertThat(out.toString(), is("0\n7\n14\n21\n28\n"));
+    }
+
+    @Test
+    public void filterShouldProcessFilesSequentiallyAndStopOnceLimitIsReached() throws XMLStreamException, IOException {
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 7 = 0]"))
+                .transformer(() -> xpathTransformer("/*/@id"))
+                .threads(4)
+                .rangeSize(64)
+                .limit(3)
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        long selected = streamFilter.filter(fileWith(items(NUM_ELEMENTS)), out);
+
+        assertThat(out.toString(), is("0\n7\n14\n"));
+        assertThat(selected, is(3L));
+    }
+
+    @Test
+    public void filterShouldReturnNumberOfSelectedElementsInAllRanges() throws XMLStreamException, IOException {
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 7 = 0]"))
+                .transformer(() -> xpathTransformer("/*/@id"))
+                .threads(4)
+                .rangeSize(64)
+                .build();
+
+        assertThat(streamFilter.filter(fileWith(items(NUM_ELEMENTS)), new ByteArrayOutputStream()), is((long) (NUM_ELEMENTS + 6) / 7));
+    }
+
+    @Test
+    public void filterShouldProcessStreamsSequentially() throws XMLStreamException, IOException {
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("book")
+                .filter(() -> xpathPredicate("//book[@category = 'WEB']"))
+                .transformer(() -> xpathTransformer("//book/title/text()"))
+                .build();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(streamFor("/books.xml"), out);
+
+        assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
+    }
+
+    @Test
+    public void failureInRangeThreadShouldBeRethrownInCallingThread() throws XMLStreamException, IOException {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage(equalTo("Failed on purpose."));
+
+        SplitXmlStreamFilter streamFilter = SplitXmlStreamFilter.builder("item")
+                .filter(() -> domTree -> {
+                    throw new IllegalStateException("Failed on purpose.");
+                })
+                .transformer(() -> xpathTransformer("//item/@id"))
+                .threads(2)
+                .rangeSize(64)
+                .build();
+
+        streamFilter.filter(fileWith(items(NUM_ELEMENTS)), new ByteArrayOutputStream());
+    }
+
+    @Test
+    public void nullFilterSupplierShouldThrowNullPointerException() {
+        expectedException.expect(NullPointerException.class);
+        expectedException.expectMessage(equalTo("Filter supplier must NOT be null."));
+
+        SplitXmlStreamFilter.builder("item").transformer(() -> xpathTransformer("//item/@id")).build();
+    }
+
+    @Test
+    public void nonPositiveRangeSizeShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Range size must be strictly positive."));
+
+        SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("//item"))
+                .transformer(() -> xpathTransformer("//item/@id"))
+                .rangeSize(0)
+                .build();
+    }
+
+    /**
+     * Interrupts a run by failing on an element, and checks that resuming it from its last checkpoint completes its output.
+     */
+    private void assertResumesFromLastCheckpoint(final int numElements, final boolean gzip) throws TransformerConfigurationException, XMLStreamException, IOException {
+        final byte[] xml = items(numElements);
+        final String expected = sequentiallyFiltered(xml);
+        final Path input;
+        final GzipIndex gzipIndex;
+        if (gzip) {
+            final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(gzipped, true)) {
+                // Each flush ends a deflate block, hence the index gets several checkpoints, even for a small file:
+                for (int offset = 0; offset < xml.length; offset += 4096) {
+                    out.write(xml, offset, Math.min(4096, xml.length - offset));
+                    out.flush();
+                }
+            }
+            input = fileWith(gzipped.toByteArray());
+            gzipIndex = GzipIndex.build(input, 4096);
+        } else {
+            input = fileWith(xml);
+            gzipIndex = null;
+        }
+        final Path checkpoint = folder.getRoot().toPath().resolve("filter.checkpoint");
+        final ByteArrayOutputStream interruptedOut = new ByteArrayOutputStream();
+        try {
+            SplitXmlStreamFilter.builder("item")
+                    .filter(() -> {
+                        final XPathPredicate predicate = xpathPredicate("/*[@id mod 3 = 0]");
+                        final XPathPredicate failure = xpathPredicate("/*[@id = " + (numElements * 4 / 5) + "]");
+                        return domTree -> {
+                            if (failure.test(domTree)) {
+                                throw new IllegalStateException("Interrupted on purpose.");
+                            }
+                            return predicate.test(domTree);
+                        };
+                    })
+                    .transformer(RawXmlToOutputStreamTransformer::new)
+                    .threads(1)
+                    .rangeSize(xml.length / 16)
+                    .rawXml()
+                    .gzipIndex(gzipIndex)
+                    .checkpoints(checkpoint)
+                    .build()
+                    .filter(input, interruptedOut);
+            throw new AssertionError("Run should have been interrupted.");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), is("Interrupted on purpose."));
+        }
+
+        final FilterCheckpoint lastCheckpoint = FilterCheckpoint.read(checkpoint);
+        assertThat(lastCheckpoint.inputOffset() > 0, is(true));
+        assertThat(lastCheckpoint.outputLength(), is((long) interruptedOut.size()));
+
+        final ByteArrayOutputStream resumedOut = new ByteArrayOutputStream();
+        final long selected = SplitXmlStreamFilter.builder("item")
+                .filter(() -> xpathPredicate("/*[@id mod 3 = 0]"))
+                .transformer(RawXmlToOutputStreamTransformer::new)
+                .threads(4)
+                .rangeSize(xml.length / 16)
+                .rawXml()
+                .gzipIndex(gzipIndex)
+                .checkpoints(checkpoint)
+                .resumeFrom(lastCheckpoint)
+                .build()
+                .filter(input, resumedOut);
+
+        assertThat(new String(interruptedOut.toByteArray(), UTF_8) + new String(resumedOut.toByteArray(), UTF_8), is(expected));
+        assertThat(selected, is((long) (numElements + 2) / 3));
+        assertThat(FilterCheckpoint.read(checkpoint).outputLength(), is((long) expected.getBytes(UTF_8).length));
+    }
+
+    /**
+     * Items, some of them prefixed, nested in one another, or preceded by comments and CDATA sections which look like items.
+     */
+    private static byte[] items(final int numElements) {
+        final StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<items xmlns:x=\"urn:x\">\n");
+        for (int i = 0; i < numElements; ++i) {
+            if (i % 5 == 0) {
+                xml.append("  <!-- <item id=\"").append(i).append("\"> -->\n");
+            }
+            if (i % 7 == 0) {
+                xml.append("  <x:item id=\"").append(i).append("\" note=\"a > b\"><item id=\"0\"/><name><![CDATA[<item id=\"0\">]]></name></x:item>\n");
+            } else {
+                xml.append("  <item id='").append(i).append("'>\r\n    <name>Item #").append(i).append(" 😀 é</name>\r\n  </item>\n");
+            }
+        }
+        return xml.append("</items>\n").toString().getBytes(UTF_8);
+    }
+
+    private static String sequentiallyFiltered(final byte[] xml) throws TransformerConfigurationException, XMLStreamException, IOException {
+        final StreamFilter streamFilter = XmlStreamFilter.builder("item").filter(xpathPredicate("/*[@id mod 3 = 0]")).transformer(new RawXmlToOutputStreamTransformer())
+                .domTreeTransformer(new XMLStreamReaderToTinyTreeTransformer(true)).rawXml().build();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        streamFilter.filter(new ByteArrayInputStream(xml), out);
+        return new String(out.toByteArray(), UTF_8);
+    }
+
+    private Path fileWith(final byte[] content) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, content);
+        return path;
+    }
+
+    private static XPathPredicate xpathPredicate(final String xpathQuery) {
+        try {
+            return new XPathPredicate(xpathQuery);
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static XPathToOutputStreamTransformer xpathTransformer(final String xpathQuery) {
+        try {
+            return new XPathToOutputStreamTransformer(xpathQuery);
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
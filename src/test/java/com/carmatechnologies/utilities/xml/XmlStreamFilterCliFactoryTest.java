@@ -1,17 +1,31 @@
 package com.carmatechnologies.utilities.xml;
 
+import com.google.common.collect.ObjectArrays;
+import com.google.common.io.ByteStreams;
 import com.google.common.io.Resources;
 import org.junit.BeforeClass;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.zip.GZIPInputStream;
 
 import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.google.common.base.Charsets.UTF_8;
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
@@ -22,37 +36,283 @@ public class XmlStreamFilterCliFactoryTest {
 
     private static final String NEW_LINE = System.getProperty("line.separator");
 
-    private static final String USAGE = "usage: java -jar com.carmatechnologies.utilities.xml.XmlStreamFilter [-e" + NEW_LINE +
-            "       <arg>] [-f <arg>] [-h] [-i] [-s <arg>] [-t <arg>] [-v]" + NEW_LINE +
-            " -e,--element <arg>     Local name of the XML element to detect in the" + NEW_LINE +
-            "                        input XML stream and, potentially, select." + NEW_LINE +
-            "                        Example: \"book\"." + NEW_LINE +
-            " -f,--file <arg>        [Optional] Define white-list of patterns from" + NEW_LINE +
-            "                        file, one per line. XML elements will be selected" + NEW_LINE +
-            "                        if the value returned by the provided XPath query" + NEW_LINE +
-            "                        is in the white-list. Example: if file contains" + NEW_LINE +
-            "                        \"magician\\nxquery\\n\" and filter is:" + NEW_LINE +
-            "                        \"//book/tags/tag/text()\", then \"book\" elements" + NEW_LINE +
-            "                        with either a \"magician\" or \"xquery\" tag will be" + NEW_LINE +
-            "                        returned." + NEW_LINE +
-            " -h,--help              Print this, i.e. a usage message briefly" + NEW_LINE +
-            "                        summarizing the command-line options, then exit." + NEW_LINE +
-            " -i,--indent            [Optional] Indent returned XML elements, for" + NEW_LINE +
-            "                        potentially better readability. Default: keep the" + NEW_LINE +
-            "                        same formatting and indentation as in the input" + NEW_LINE +
-            "                        XML stream." + NEW_LINE +
-            " -s,--select <arg>      XPath query used to select XML elements among the" + NEW_LINE +
-            "                        ones detected. Example: \"//book/tags/tag[text() =" + NEW_LINE +
-            "                        'magician']\" will select all \"book\" elements with" + NEW_LINE +
-            "                        \"magician\" as a \"tag\"." + NEW_LINE +
-            " -t,--transform <arg>   [Optional] XPath expression used to transform the" + NEW_LINE +
-            "                        selected XML elements. Example:" + NEW_LINE +
-            "                        \"//book/title/text()\". Default: the entire XML" + NEW_LINE +
-            "                        element will be returned." + NEW_LINE +
-            " -v,--version           Print \"1.0\", i.e. the version number of" + NEW_LINE +
-            "                        com.carmatechnologies.utilities.xml.XmlStreamFilte" + NEW_LINE +
-            "                        r to the standard output stream. This version" + NEW_LINE +
-            "                        number should be included in all bug reports." + NEW_LINE;
+    private static final String USAGE = "usage: java -jar com.carmatechnologies.utilities.xml.XmlStreamFilter" + NEW_LINE +
+            "       [--any] [--buckets <arg>] [--buffer-kb <arg>] [--buffers <arg>]" + NEW_LINE +
+            "       [--checkpoint <arg>] [--column <arg>] [-e <arg>] [--element-index" + NEW_LINE +
+            "       <arg>] [--exists] [-f <arg>] [--file-index <arg>] [--follow]" + NEW_LINE +
+            "       [--format <arg>] [--gzip-index <arg>] [-h] [-i] [--input <arg>]" + NEW_LINE +
+            "       [--jobs <arg>] [--json] [--json-array <arg>] [--limit <arg>]" + NEW_LINE +
+            "       [--match <arg>] [--output-compress <arg>] [--output-dir <arg>]" + NEW_LINE +
+            "       [--partition <arg>] [--partition-prefix <arg>] [--prescan]" + NEW_LINE +
+            "       [--resume] [--routes <arg>] [-s <arg>] [-t <arg>] [--threads <arg>]" + NEW_LINE +
+            "       [--unordered] [-v] [--where <arg>]" + NEW_LINE +
+            "    --any                      [Optional] Select XML elements matching any" + NEW_LINE +
+            "                               of the queries provided with \"select\"." + NEW_LINE +
+            "                               Default: select XML elements matching all" + NEW_LINE +
+            "                               of these." + NEW_LINE +
+            "    --buckets <arg>            [Optional] Number of partitions to hash" + NEW_LINE +
+            "                               keys into, see \"partition\", e.g. to spread" + NEW_LINE +
+            "                               XML elements evenly across a fixed number" + NEW_LINE +
+            "                               of files, whatever the number of keys." + NEW_LINE +
+            "                               Default: one partition per key." + NEW_LINE +
+            "    --buffer-kb <arg>          [Optional] Size of each output buffer, in" + NEW_LINE +
+            "                               KB, see \"buffers\". Default: 1024." + NEW_LINE +
+            "    --buffers <arg>            [Optional] Number of output buffers:" + NEW_LINE +
+            "                               selected XML elements are copied into one," + NEW_LINE +
+            "                               while the others are written by a dedicated" + NEW_LINE +
+            "                               thread, in a single system call, so that" + NEW_LINE +
+            "                               slow consumers do not stall parsing, until" + NEW_LINE +
+            "                               all buffers are full. Default: 4 if" + NEW_LINE +
+            "                               \"buffer-kb\" is provided, otherwise XML" + NEW_LINE +
+            "                               elements are written by the parsing thread." + NEW_LINE +
+            "    --checkpoint <arg>         [Optional] File where to record," + NEW_LINE +
+            "                               atomically, each time a range of the" + NEW_LINE +
+            "                               \"input\" file is output, the offset right" + NEW_LINE +
+            "                               after the last XML element processed, the" + NEW_LINE +
+            "                               length of the output, and the namespaces in" + NEW_LINE +
+            "                               scope, so that an interrupted run can be" + NEW_LINE +
+            "                               resumed from there, see \"resume\". Ranges" + NEW_LINE +
+            "                               are then at most 64 MB. Requires a single" + NEW_LINE +
+            "                               \"input\" file, and a single local name for" + NEW_LINE +
+            "                               the XML elements to detect. Gzipped files" + NEW_LINE +
+            "                               are indexed first, in memory, unless" + NEW_LINE +
+            "                               \"gzip-index\" is provided. Default: no" + NEW_LINE +
+            "                               checkpoint." + NEW_LINE +
+            "    --column <arg>             [Optional] XPath query of a column to write" + NEW_LINE +
+            "                               for each selected XML element, instead of" + NEW_LINE +
+            "                               the element. Can be repeated: each XML" + NEW_LINE +
+            "                               element is then written as a row of the" + NEW_LINE +
+            "                               columns' values, in the format provided" + NEW_LINE +
+            "                               with \"format\", and all queries are" + NEW_LINE +
+            "                               evaluated at once. Example: --column" + NEW_LINE +
+            "                               //book/@category --column //book/title." + NEW_LINE +
+            " -e,--element <arg>            Local name of the XML element to detect in" + NEW_LINE +
+            "                               the input XML stream and, potentially," + NEW_LINE +
+            "                               select. Example: \"book\". Alternatively," + NEW_LINE +
+            "                               absolute path of the XML element, to only" + NEW_LINE +
+            "                               detect it at this position, and not nested" + NEW_LINE +
+            "                               in another one, with names optionally" + NEW_LINE +
+            "                               qualified by a namespace URI in Clark" + NEW_LINE +
+            "                               notation, and several names or paths" + NEW_LINE +
+            "                               separated by \"|\". Example:" + NEW_LINE +
+            "                               \"/{http://www.w3.org/2005/Atom}feed/{http:/" + NEW_LINE +
+            "                               /www.w3.org/2005/Atom}entry|item\"." + NEW_LINE +
+            "    --element-index <arg>      [Optional] Index file of the XML elements" + NEW_LINE +
+            "                               of the input file, by the values of the" + NEW_LINE +
+            "                               \"select\" queries, so that only the XML" + NEW_LINE +
+            "                               elements of the patterns of the white-list" + NEW_LINE +
+            "                               are read and parsed, instead of the whole" + NEW_LINE +
+            "                               file. Built if it does not exist, or is out" + NEW_LINE +
+            "                               of date, and otherwise used as is. Requires" + NEW_LINE +
+            "                               a single, uncompressed, \"input\" file, a" + NEW_LINE +
+            "                               \"file\" white-list, and \"select\" queries in" + NEW_LINE +
+            "                               the streamable subset of XPath. Gzipped" + NEW_LINE +
+            "                               files are NOT supported, not even with" + NEW_LINE +
+            "                               \"gzip-index\". Default: read the whole file." + NEW_LINE +
+            "    --exists                   [Optional] Only print whether any XML" + NEW_LINE +
+            "                               element is selected, i.e. \"true\" or" + NEW_LINE +
+            "                               \"false\", and stop reading the input XML" + NEW_LINE +
+            "                               stream as soon as one is. Default: print" + NEW_LINE +
+            "                               the selected XML elements." + NEW_LINE +
+            " -f,--file <arg>               [Optional] Define white-list of patterns" + NEW_LINE +
+            "                               from file, one per line. XML elements will" + NEW_LINE +
+            "                               be selected if the value returned by the" + NEW_LINE +
+            "                               provided XPath query is in the white-list." + NEW_LINE +
+            "                               Example: if file contains" + NEW_LINE +
+            "                               \"magician\\nxquery\\n\" and filter is:" + NEW_LINE +
+            "                               \"//book/tags/tag/text()\", then \"book\"" + NEW_LINE +
+            "                               elements with either a \"magician\" or" + NEW_LINE +
+            "                               \"xquery\" tag will be returned." + NEW_LINE +
+            "    --file-index <arg>         [Optional] Index file of the white-list," + NEW_LINE +
+            "                               memory-mapped instead of loading the" + NEW_LINE +
+            "                               white-list in memory, for white-lists of" + NEW_LINE +
+            "                               millions of patterns. Built from the file" + NEW_LINE +
+            "                               provided with \"file\" if it does not exist," + NEW_LINE +
+            "                               or is older than this file, and otherwise" + NEW_LINE +
+            "                               used as is. Default: load the white-list in" + NEW_LINE +
+            "                               memory." + NEW_LINE +
+            "    --follow                   [Optional] Keep reading the \"input\" file as" + NEW_LINE +
+            "                               it grows, like tail -f, and write each" + NEW_LINE +
+            "                               selected XML element as soon as it is" + NEW_LINE +
+            "                               complete, even if the root element is not" + NEW_LINE +
+            "                               closed yet, until the root element is" + NEW_LINE +
+            "                               closed, until interrupted, or until \"limit\"" + NEW_LINE +
+            "                               XML elements are selected. Requires a" + NEW_LINE +
+            "                               single \"input\" file, processed" + NEW_LINE +
+            "                               sequentially, and written synchronously, as" + NEW_LINE +
+            "                               buffered XML elements would otherwise wait" + NEW_LINE +
+            "                               for further ones while the file does not" + NEW_LINE +
+            "                               grow. Default: stop at the end of the" + NEW_LINE +
+            "                               input." + NEW_LINE +
+            "    --format <arg>             [Optional] Format of the rows written with" + NEW_LINE +
+            "                               \"column\": \"tsv\", i.e. tab-separated values," + NEW_LINE +
+            "                               with backslashes, tabs and new lines in" + NEW_LINE +
+            "                               values escaped as \\\\, \\t and \\n, or \"csv\"," + NEW_LINE +
+            "                               i.e. comma-separated values, double-quoted" + NEW_LINE +
+            "                               when required. Default: tsv." + NEW_LINE +
+            "    --gzip-index <arg>         [Optional] Index file of checkpoints of the" + NEW_LINE +
+            "                               gzipped input file, every MB of inflated" + NEW_LINE +
+            "                               bytes, from which it can be inflated" + NEW_LINE +
+            "                               without inflating what precedes them, so" + NEW_LINE +
+            "                               that it is split in ranges, inflated and" + NEW_LINE +
+            "                               filtered in parallel, like an uncompressed" + NEW_LINE +
+            "                               file. Built if it does not exist, or is out" + NEW_LINE +
+            "                               of date, and otherwise used as is. Requires" + NEW_LINE +
+            "                               a single \"input\" file. Default: gzipped" + NEW_LINE +
+            "                               files are inflated and parsed sequentially." + NEW_LINE +
+            " -h,--help                     Print this, i.e. a usage message briefly" + NEW_LINE +
+            "                               summarizing the command-line options, then" + NEW_LINE +
+            "                               exit." + NEW_LINE +
+            " -i,--indent                   [Optional] Indent returned XML elements," + NEW_LINE +
+            "                               for potentially better readability." + NEW_LINE +
+            "                               Default: return XML elements exactly as" + NEW_LINE +
+            "                               they are in the input XML stream." + NEW_LINE +
+            "    --input <arg>              [Optional] Paths of the XML files to read," + NEW_LINE +
+            "                               instead of the standard input stream." + NEW_LINE +
+            "                               Directories are read recursively, and" + NEW_LINE +
+            "                               globs, e.g. \"logs/*.xml.gz\", are expanded." + NEW_LINE +
+            "                               If only one file is read and it is" + NEW_LINE +
+            "                               uncompressed, it is memory-mapped and split" + NEW_LINE +
+            "                               in ranges, each parsed by one of the" + NEW_LINE +
+            "                               threads, and XML elements are returned in" + NEW_LINE +
+            "                               the same order as in the file. Files with a" + NEW_LINE +
+            "                               document type declaration, or with" + NEW_LINE +
+            "                               namespaces declared on other elements than" + NEW_LINE +
+            "                               the root element and the XML elements, are" + NEW_LINE +
+            "                               parsed sequentially instead, from where" + NEW_LINE +
+            "                               this is detected. Default: read the input" + NEW_LINE +
+            "                               XML stream from the standard input stream." + NEW_LINE +
+            "    --jobs <arg>               [Optional] Number of input files filtered" + NEW_LINE +
+            "                               concurrently, each with its own thread(s)," + NEW_LINE +
+            "                               and results returned in the same order as" + NEW_LINE +
+            "                               the input files, staged in the temporary" + NEW_LINE +
+            "                               directory, i.e. java.io.tmpdir, for at most" + NEW_LINE +
+            "                               twice this number of files at once." + NEW_LINE +
+            "                               Default: 1." + NEW_LINE +
+            "    --json                     [Optional] Write each selected XML element" + NEW_LINE +
+            "                               as a JSON object, on its own line, with" + NEW_LINE +
+            "                               attributes as \"@\"-prefixed fields, child" + NEW_LINE +
+            "                               elements as fields, arrays if repeated, and" + NEW_LINE +
+            "                               text as a \"#text\" field, or as a string for" + NEW_LINE +
+            "                               child elements with neither attributes nor" + NEW_LINE +
+            "                               child elements. Default: write XML" + NEW_LINE +
+            "                               elements." + NEW_LINE +
+            "    --json-array <arg>         [Optional] Name of child elements to always" + NEW_LINE +
+            "                               write as arrays with \"json\", even if not" + NEW_LINE +
+            "                               repeated, or \"*\" for all of them. Can be" + NEW_LINE +
+            "                               repeated. Default: only repeated child" + NEW_LINE +
+            "                               elements are written as arrays." + NEW_LINE +
+            "    --limit <arg>              [Optional] Maximum number of XML elements" + NEW_LINE +
+            "                               to select: once reached, the rest of the" + NEW_LINE +
+            "                               input XML stream is neither read nor" + NEW_LINE +
+            "                               parsed. When reading several input files," + NEW_LINE +
+            "                               the limit applies to each of them. Default:" + NEW_LINE +
+            "                               no limit." + NEW_LINE +
+            "    --match <arg>              [Optional] How values returned by the XPath" + NEW_LINE +
+            "                               query are matched against the white-list:" + NEW_LINE +
+            "                               \"exact\", \"prefix\", i.e. values starting" + NEW_LINE +
+            "                               with any pattern, or \"substring\", i.e." + NEW_LINE +
+            "                               values containing any pattern. Patterns are" + NEW_LINE +
+            "                               compiled into a single automaton, so that" + NEW_LINE +
+            "                               each value is scanned once, whatever the" + NEW_LINE +
+            "                               number of patterns. Default: exact." + NEW_LINE +
+            "    --output-compress <arg>    [Optional] Compression of the standard" + NEW_LINE +
+            "                               output stream: \"gzip\", in independent" + NEW_LINE +
+            "                               blocks, compressed in parallel by all" + NEW_LINE +
+            "                               cores, and readable by gzip, or, in" + NEW_LINE +
+            "                               parallel, with \"threads\". Default: no" + NEW_LINE +
+            "                               compression." + NEW_LINE +
+            "    --output-dir <arg>         [Optional] Existing directory where to" + NEW_LINE +
+            "                               write one output file per input file, named" + NEW_LINE +
+            "                               after it, without any \".gz\" extension," + NEW_LINE +
+            "                               instead of the standard output stream." + NEW_LINE +
+            "                               Default: write to the standard output" + NEW_LINE +
+            "                               stream." + NEW_LINE +
+            "    --partition <arg>          [Optional] XPath query of the key of the" + NEW_LINE +
+            "                               partition of each selected XML element," + NEW_LINE +
+            "                               which is then written to the file of this" + NEW_LINE +
+            "                               partition, i.e. <prefix>-<key>.xml, or" + NEW_LINE +
+            "                               .xml.gz with \"output-compress\", instead of" + NEW_LINE +
+            "                               the standard output stream, with at most" + NEW_LINE +
+            "                               256 files open at once. Example:" + NEW_LINE +
+            "                               \"//book/@category\". Default: no partitions." + NEW_LINE +
+            "    --partition-prefix <arg>   [Optional] Path of the files of partitions," + NEW_LINE +
+            "                               without their keys, see \"partition\"." + NEW_LINE +
+            "                               Default: \"partition\"." + NEW_LINE +
+            "    --prescan                  [Optional] Locate the XML elements to" + NEW_LINE +
+            "                               detect with a byte-level scan of the input" + NEW_LINE +
+            "                               XML stream, and only parse these, skipping" + NEW_LINE +
+            "                               everything else, e.g. large headers or" + NEW_LINE +
+            "                               other XML elements, faster than parsing it." + NEW_LINE +
+            "                               Requires a UTF-8 input XML stream, and a" + NEW_LINE +
+            "                               single local name for the XML elements to" + NEW_LINE +
+            "                               detect. Default: parse the entire input XML" + NEW_LINE +
+            "                               stream." + NEW_LINE +
+            "    --resume                   [Optional] Resume from the \"checkpoint\"" + NEW_LINE +
+            "                               file, if it exists: the standard output" + NEW_LINE +
+            "                               stream, which must be appended to the" + NEW_LINE +
+            "                               output file of the interrupted run, e.g." + NEW_LINE +
+            "                               with >>, is truncated to its length at the" + NEW_LINE +
+            "                               checkpoint, and filtering continues right" + NEW_LINE +
+            "                               after the last XML element processed." + NEW_LINE +
+            "                               Default: filter the input from its start." + NEW_LINE +
+            "    --routes <arg>             [Optional] File of routes, one per line," + NEW_LINE +
+            "                               each made of a unique name, an output file," + NEW_LINE +
+            "                               or \"-\" for the standard output stream, an" + NEW_LINE +
+            "                               XPath query selecting XML elements, and," + NEW_LINE +
+            "                               optionally, an XPath expression" + NEW_LINE +
+            "                               transforming these, separated by tabs." + NEW_LINE +
+            "                               Empty lines and lines starting with \"#\" are" + NEW_LINE +
+            "                               ignored. The input XML stream is then read" + NEW_LINE +
+            "                               and parsed once, and each XML element" + NEW_LINE +
+            "                               detected is written by every route" + NEW_LINE +
+            "                               selecting it, instead of using \"select\"." + NEW_LINE +
+            "                               Default: a single selection, from the other" + NEW_LINE +
+            "                               arguments." + NEW_LINE +
+            " -s,--select <arg>             XPath query used to select XML elements" + NEW_LINE +
+            "                               among the ones detected. Example:" + NEW_LINE +
+            "                               \"//book/tags/tag[text() = 'magician']\" will" + NEW_LINE +
+            "                               select all \"book\" elements with \"magician\"" + NEW_LINE +
+            "                               as a \"tag\". Can be repeated: XML elements" + NEW_LINE +
+            "                               are then selected if they match all" + NEW_LINE +
+            "                               queries, or any of these with \"any\", with" + NEW_LINE +
+            "                               the white-list, if any, applying to the" + NEW_LINE +
+            "                               first query, and queries evaluated cheapest" + NEW_LINE +
+            "                               and most selective first." + NEW_LINE +
+            " -t,--transform <arg>          [Optional] XPath expression used to" + NEW_LINE +
+            "                               transform the selected XML elements." + NEW_LINE +
+            "                               Example: \"//book/title/text()\". Default:" + NEW_LINE +
+            "                               the entire XML element will be returned." + NEW_LINE +
+            "    --threads <arg>            [Optional] Number of threads used to select" + NEW_LINE +
+            "                               and transform XML elements in parallel," + NEW_LINE +
+            "                               while the input XML stream is parsed by" + NEW_LINE +
+            "                               another thread. Gzipped input XML streams" + NEW_LINE +
+            "                               are also inflated ahead of the parser, in" + NEW_LINE +
+            "                               parallel if these are BGZF files, e.g. as" + NEW_LINE +
+            "                               produced by bgzip. Default: 1, i.e." + NEW_LINE +
+            "                               everything is done sequentially." + NEW_LINE +
+            "    --unordered                [Optional] When processing XML elements in" + NEW_LINE +
+            "                               parallel, return them as soon as they are" + NEW_LINE +
+            "                               selected and transformed, for extra" + NEW_LINE +
+            "                               throughput. Default: return XML elements in" + NEW_LINE +
+            "                               the same order as in the input XML stream." + NEW_LINE +
+            " -v,--version                  Print \"1.0\", i.e. the version number of" + NEW_LINE +
+            "                               com.carmatechnologies.utilities.xml.XmlStre" + NEW_LINE +
+            "                               amFilter to the standard output stream." + NEW_LINE +
+            "                               This version number should be included in" + NEW_LINE +
+            "                               all bug reports." + NEW_LINE +
+            "    --where <arg>              [Optional] Typed condition on the XML" + NEW_LINE +
+            "                               elements to select: XPath query, comparison" + NEW_LINE +
+            "                               operator, i.e. one of =, !=, <, <=, >, >=," + NEW_LINE +
+            "                               and value, either a number, e.g. \"30\" or" + NEW_LINE +
+            "                               \"1.5e3\", or an ISO-8601 date or date-time," + NEW_LINE +
+            "                               e.g. \"2005-01-01\". XML elements are" + NEW_LINE +
+            "                               selected if the text of any node returned" + NEW_LINE +
+            "                               by the query compares to the value, parsed" + NEW_LINE +
+            "                               as the same type. Can be repeated, and" + NEW_LINE +
+            "                               combined with \"select\": all conditions must" + NEW_LINE +
+            "                               then be met. Example: --where //book/price" + NEW_LINE +
+            "                               \">\" 30 --where //book/year \">=\" 2005." + NEW_LINE;
 
     private static String XPATH_EXCEPTION_MESSAGE;
 
@@ -66,6 +326,9 @@ public class XmlStreamFilterCliFactoryTest {
                 : " Original error: \njavax.xml.transform.TransformerException: A location path was expected, but the following token was encountered:  ~~~clearly";
     }
 
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
     private final OutputStream stdOut = new ByteArrayOutputStream();
     private final OutputStream stdErr = new ByteArrayOutputStream();
     private final PrintWriter stdOutWriter = new PrintWriter(stdOut);
@@ -81,17 +344,16 @@ public class XmlStreamFilterCliFactoryTest {
         InputStream in = streamFor("/books.xml");
         filter.filter(in, stdOut);
 
-        assertThat(stdOut.toString(), is("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" +
-                "<book category=\"CHILDREN\">" + NEW_LINE +
-                "        <title lang=\"en\">Harry Potter</title>" + NEW_LINE +
-                "        <author>J K. Rowling</author>" + NEW_LINE +
-                "        <year>2005</year>" + NEW_LINE +
-                "        <price>29.99</price>" + NEW_LINE +
-                "        <tags>" + NEW_LINE +
-                "            <tag>fantasy</tag>" + NEW_LINE +
-                "            <tag>magician</tag>" + NEW_LINE +
-                "        </tags>" + NEW_LINE +
-                "    </book>"));
+        assertThat(stdOut.toString(), is("<book category=\"CHILDREN\">\n" +
+                "        <title lang=\"en\">Harry Potter</title>\n" +
+                "        <author>J K. Rowling</author>\n" +
+                "        <year>2005</year>\n" +
+                "        <price>29.99</price>\n" +
+                "        <tags>\n" +
+                "            <tag>fantasy</tag>\n" +
+                "            <tag>magician</tag>\n" +
+                "        </tags>\n" +
+                "    </book>\n"));
         assertThat(stdErr.toString(), is(""));
     }
 
@@ -127,17 +389,16 @@ public class XmlStreamFilterCliFactoryTest {
         InputStream in = streamFor("/books.xml.gz");
         filter.filter(in, stdOut);
 
-        assertThat(stdOut.toString(), is("<?xml version=\"1.0\" encoding=\"UTF-8\" standalone=\"no\"?>" +
-                "<book category=\"CHILDREN\">" + NEW_LINE +
-                "        <title lang=\"en\">Harry Potter</title>" + NEW_LINE +
-                "        <author>J K. Rowling</author>" + NEW_LINE +
-                "        <year>2005</year>" + NEW_LINE +
-                "        <price>29.99</price>" + NEW_LINE +
-                "        <tags>" + NEW_LINE +
-                "            <tag>fantasy</tag>" + NEW_LINE +
-                "            <tag>magician</tag>" + NEW_LINE +
-                "        </tags>" + NEW_LINE +
-                "    </book>"));
+        assertThat(stdOut.toString(), is("<book category=\"CHILDREN\">\n" +
+                "        <title lang=\"en\">Harry Potter</title>\n" +
+                "        <author>J K. Rowling</author>\n" +
+                "        <year>2005</year>\n" +
+                "        <price>29.99</price>\n" +
+                "        <tags>\n" +
+                "            <tag>fantasy</tag>\n" +
+                "            <tag>magician</tag>\n" +
+                "        </tags>\n" +
+                "    </book>\n"));
         assertThat(stdErr.toString(), is(""));
     }
 
@@ -177,11 +438,559 @@ public class XmlStreamFilterCliFactoryTest {
         assertThat(stdErr.toString(), is(""));
     }
 
+    @Test
+    public void parallelFilterUsingXPathToBothSelectAndTransformAndUsingWhiteListFromFilePrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--threads", "4"});
+        assertThat(filter, is(not(nullValue())));
+        assertThat(filter, is(instanceOf(ParallelXmlStreamFilter.class)));
+
+        InputStream in = streamFor("/books.xml");
+        filter.filter(in, stdOut);
+
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void filterUsingIndexedWhiteListBuildsIndexOnceAndPrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        final String index = new File(folder.getRoot(), "white_list.idx").getPath();
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--file-index", index});
+        assertThat(filter, is(instanceOf(XmlStreamFilter.class)));
+        assertThat(new File(index).exists(), is(true));
+
+        filter.filter(streamFor("/books.xml"), stdOut);
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+
+        // The index alone is then enough:
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "--file-index", index, "--threads", "4"});
+        assertThat(filter, is(instanceOf(ParallelXmlStreamFilter.class)));
+
+        filter.filter(streamFor("/books.xml"), out);
+        assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void filterMatchingWhiteListPatternsAsPrefixesOrSubstringsPrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/title/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--match", "substring"});
+        filter.filter(streamFor("/books.xml"), stdOut);
+        assertThat(stdOut.toString(), is(""));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--match", "prefix", "--threads", "2"});
+        filter.filter(streamFor("/books.xml"), out);
+        assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingInvalidMatchModePrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--match", "regex"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: please provide either \"exact\", \"prefix\" or \"substring\" for argument \"match\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterUsingColumnsPrintsRowsOfSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "--column", "//book/title", "--column", "//book/price", "--format", "csv"});
+        filter.filter(streamFor("/books.xml"), stdOut);
+        assertThat(stdOut.toString(), is("XQuery Kick Start,49.99\nLearning XML,39.95\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingColumnsAlongSideTransformPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book", "--column", "//book/title", "-t", "//book/title/text()"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: argument \"column\" cannot be used with arguments \"transform\" or \"indent\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterUsingJsonPrintsSelectedXmlAsJsonLinesToStandardOutput() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag[text() = 'xml']", "--json", "--json-array", "tag"});
+        filter.filter(streamFor("/books.xml"), stdOut);
+        assertThat(stdOut.toString(), is("{\"@category\":\"WEB\",\"title\":{\"@lang\":\"en\",\"#text\":\"Learning XML\"},\"author\":\"Erik T. Ray\"," +
+                "\"year\":\"2003\",\"price\":\"39.95\",\"tags\":{\"tag\":[\"learning\",\"xml\"]}}\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void filterUsingOutputBuffersPrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--buffers", "2", "--buffer-kb", "1"});
+        assertThat(filter.filterAndCount(streamFor("/books.xml"), stdOut), is(2L));
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingInvalidNumberOfOutputBuffersPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/title/text()", "--buffers", "0"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: please provide a strictly positive integer for argument \"buffers\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterUsingOutputCompressionPrintsGzippedSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--output-compress", "gzip"});
+        assertThat(filter.filterAndCount(streamFor("/books.xml"), stdOut), is(2L));
+        assertThat(new String(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(((ByteArrayOutputStream) stdOut).toByteArray()))), UTF_8), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingInvalidOutputCompressionPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/title/text()", "--output-compress", "zip"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: please provide \"gzip\" for argument \"output-compress\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void rawXmlOfElementsDeclaresPrefixesDeclaredOnItsAncestors() throws XMLStreamException, IOException {
+        final File file = folder.newFile("prefixed.xml");
+        Files.write(file.toPath(), "<catalog xmlns:x=\"urn:x\"><book><x:tag>q</x:tag></book></catalog>".getBytes(UTF_8));
+        for (String[] args : Arrays.asList(new String[]{}, new String[]{"--prescan"}, new String[]{"--input", file.getPath(), "--threads", "2"})) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final StreamFilter filter = factory.newStreamFilter(ObjectArrays.concat(new String[]{"-e", "tag", "-s", "/*"}, args, String.class));
+            filter.filter(new FileInputStream(file), out);
+            assertThat(out.toString("UTF-8"), is("<x:tag xmlns:x=\"urn:x\">q</x:tag>\n"));
+        }
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void rawXmlOfElementsDeclaresDefaultNamespaceDeclaredOnItsAncestors() throws XMLStreamException, IOException {
+        final File file = folder.newFile("default.xml");
+        Files.write(file.toPath(), "<f xmlns=\"urn:a\"><e>1</e></f>".getBytes(UTF_8));
+        for (String[] args : Arrays.asList(new String[]{}, new String[]{"--prescan"}, new String[]{"--input", file.getPath(), "--threads", "2"})) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final StreamFilter filter = factory.newStreamFilter(ObjectArrays.concat(new String[]{"-e", "e", "-s", "/*"}, args, String.class));
+            filter.filter(new FileInputStream(file), out);
+            assertThat(out.toString("UTF-8"), is("<e xmlns=\"urn:a\">1</e>\n"));
+        }
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void filterUsingPartitionWritesSelectedXmlToTheFileOfItsKey() throws XMLStreamException, IOException {
+        final String prefix = new File(folder.getRoot(), "books").getPath();
+        CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/title", "-t", "//book/title/text()", "--partition", "//book/@category", "--partition-prefix", prefix});
+        assertThat(filter.filterAndCount(streamFor("/books.xml"), stdOut), is(4L));
+        assertThat(new String(Files.readAllBytes(new File(prefix + "-COOKING.xml").toPath()), UTF_8), is("Everyday Italian\n"));
+        assertThat(new String(Files.readAllBytes(new File(prefix + "-CHILDREN.xml").toPath()), UTF_8), is("Harry Potter\n"));
+        assertThat(new String(Files.readAllBytes(new File(prefix + "-WEB.xml").toPath()), UTF_8), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingBucketsWithoutPartitionPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/title/text()", "--buckets", "4"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: argument \"buckets\" requires argument \"partition\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterUsingElementIndexBuildsIndexOnceAndPrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        final String index = new File(folder.getRoot(), "books.idx").getPath();
+        final String[] args = {"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(),
+                "--input", Resources.getResource("books.xml").getFile(), "--element-index", index};
+        CountingStreamFilter filter = factory.newStreamFilter(args);
+        assertThat(new File(index).exists(), is(true));
+        final long lastModified = new File(index).lastModified();
+        assertThat(filter.filterAndCount(streamFor("/books.xml"), stdOut), is(2L));
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+
+        // The index is then used as is:
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter = factory.newStreamFilter(args);
+        assertThat(new File(index).lastModified(), is(lastModified));
+        filter.filter(streamFor("/books.xml"), out);
+        assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingElementIndexWithoutWhiteListPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/@category", "--input", Resources.getResource("books.xml").getFile(),
+                "--element-index", new File(folder.getRoot(), "books.idx").getPath()});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: argument \"element-index\" requires argument \"file\", with \"exact\" for argument \"match\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterUsingGzipIndexBuildsIndexOnceAndPrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        final String index = new File(folder.getRoot(), "books.xml.gz.idx").getPath();
+        final String[] args = {"-e", "book", "-s", "//book[@category = 'WEB']", "-t", "//book/title/text()", "--threads", "2",
+                "--input", Resources.getResource("books.xml.gz").getFile(), "--gzip-index", index};
+        CountingStreamFilter filter = factory.newStreamFilter(args);
+        assertThat(new File(index).exists(), is(true));
+        final long lastModified = new File(index).lastModified();
+        assertThat(filter.filterAndCount(streamFor("/books.xml.gz"), stdOut), is(2L));
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+
+        // The index is then used as is:
+        filter = factory.newStreamFilter(args);
+        assertThat(new File(index).lastModified(), is(lastModified));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingGzipIndexWithoutInputPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/@category", "--gzip-index", new File(folder.getRoot(), "books.idx").getPath()});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: argument \"gzip-index\" requires a single file for argument \"input\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterFollowingGrowingFileWritesEachSelectedXmlElementOnceComplete() throws IOException, InterruptedException {
+        final File log = folder.newFile("events.xml");
+        Files.write(log.toPath(), "<events>\n  <event type=\"a\" id=\"1\"/>\n  <event type=\"b\" id=\"2\"/>\n  <event type=\"a\" id=".getBytes(UTF_8));
+        final CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "event", "-s", "//event[@type = 'a']", "-t", "//event/@id",
+                "--input", log.getPath(), "--follow", "--limit", "2"});
+        assertThat(filter, is(not(instanceOf(NoOpStreamFilter.class))));
+
+        final long[] selected = {-1};
+        final Thread follower = new Thread(() -> {
+            try {
+                selected[0] = filter.filterAndCount(new ByteArrayInputStream(new byte[0]), stdOut);
+            } catch (XMLStreamException | IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        follower.start();
+        // The first element is output without waiting for the rest of the file:
+        for (int i = 0; (i < 100) && stdOut.toString().isEmpty(); ++i) {
+            Thread.sleep(50);
+        }
+        assertThat(stdOut.toString(), is("1\n"));
+
+        // The root element is never closed, and the follower stops once the limit is reached:
+        Files.write(log.toPath(), "\"3\"/>\n".getBytes(UTF_8), StandardOpenOption.APPEND);
+        follower.join(5000);
+        assertThat(follower.isAlive(), is(false));
+        assertThat(selected[0], is(2L));
+        assertThat(stdOut.toString(), is("1\n3\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void filterFollowingCompleteFileStopsOnceItsRootElementIsClosed() throws IOException, InterruptedException {
+        final File log = folder.newFile("complete.xml");
+        Files.write(log.toPath(), "<events>\n  <event type=\"a\" id=\"1\"/>\n  <event type=\"b\" id=\"2\"/>\n</events>\n".getBytes(UTF_8));
+        for (String[] args : Arrays.asList(new String[]{}, new String[]{"--prescan"})) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final CountingStreamFilter filter = factory.newStreamFilter(ObjectArrays.concat(new String[]{"-e", "event", "-s", "//event[@type = 'a']", "-t", "//event/@id",
+                    "--input", log.getPath(), "--follow"}, args, String.class));
+            final long[] selected = {-1};
+            final Thread follower = new Thread(() -> {
+                try {
+                    selected[0] = filter.filterAndCount(new ByteArrayInputStream(new byte[0]), out);
+                } catch (XMLStreamException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            follower.start();
+            follower.join(5000);
+            assertThat(follower.isAlive(), is(false));
+            assertThat(selected[0], is(1L));
+            assertThat(out.toString("UTF-8"), is("1\n"));
+        }
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingFollowWithThreadsPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/@category", "--input", Resources.getResource("books.xml").getFile(),
+                "--follow", "--threads", "2"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: arguments \"follow\" and \"threads\" cannot be used together." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void providingFollowWithBuffersPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/@category", "--input", Resources.getResource("books.xml").getFile(),
+                "--follow", "--buffers", "2"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: arguments \"follow\" and \"buffers\" cannot be used together." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void providingFollowWithBufferSizePrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/@category", "--input", Resources.getResource("books.xml").getFile(),
+                "--follow", "--buffer-kb", "64"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: arguments \"follow\" and \"buffer-kb\" cannot be used together." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterWithCheckpointResumesRightAfterLastXmlElementProcessed() throws XMLStreamException, IOException {
+        final File input = new File(Resources.getResource("books.xml").getFile());
+        final File checkpoint = new File(folder.getRoot(), "books.checkpoint");
+        final String[] args = {"-e", "book", "-s", "//book[@category = 'WEB']", "-t", "//book/title/text()",
+                "--input", input.getPath(), "--checkpoint", checkpoint.getPath(), "--resume"};
+        assertThat(factory.newStreamFilter(args).filterAndCount(streamFor("/books.xml"), stdOut), is(2L));
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(FilterCheckpoint.read(checkpoint.toPath()).outputLength(), is(31L));
+
+        // Checkpoint of a run interrupted right after the first selected book:
+        final String xml = new String(Files.readAllBytes(input.toPath()), UTF_8);
+        final long offset = xml.indexOf("<book", xml.indexOf("XQuery Kick Start"));
+        FilterCheckpoint.of(input.toPath(), offset, 18, 1, new byte[0]).write(checkpoint.toPath());
+        final ByteArrayOutputStream resumedOut = new ByteArrayOutputStream();
+        assertThat(factory.newStreamFilter(args).filterAndCount(streamFor("/books.xml"), resumedOut), is(2L));
+        assertThat(resumedOut.toString(), is("Learning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingResumeWithoutCheckpointPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/@category", "--input", Resources.getResource("books.xml").getFile(),
+                "--resume"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: argument \"resume\" requires argument \"checkpoint\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterUsingRoutesWritesSelectedXmlOfEachRouteToItsOutput() throws XMLStreamException, IOException {
+        final File web = new File(folder.getRoot(), "web.txt");
+        final File routes = folder.newFile("routes.tsv");
+        Files.write(routes.toPath(), Arrays.asList(
+                "# name\toutput\tselect\ttransform",
+                "web\t" + web.getPath() + "\t//book[@category = 'WEB']\t//book/title/text()",
+                "",
+                "children\t-\t//book[@category = 'CHILDREN']\t//book/author/text()"), UTF_8);
+        CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "--routes", routes.getPath()});
+        assertThat(filter, is(instanceOf(RoutingXmlStreamFilter.class)));
+
+        assertThat(filter.filterAndCount(streamFor("/books.xml"), stdOut), is(3L));
+        assertThat(stdOut.toString(), is("J K. Rowling\n"));
+        assertThat(new String(Files.readAllBytes(web.toPath()), UTF_8), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingInvalidRouteOrRoutesAlongSideSelectQueryPrintsErrorMessageAndUsage() throws IOException {
+        final File routes = folder.newFile("routes.tsv");
+        Files.write(routes.toPath(), Collections.singletonList("web\t-"), UTF_8);
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "--routes", routes.getPath()});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: Invalid route \"web\t-\" in file: " + routes.getPath() + ". " +
+                "Please provide a name, an output file, an XPath query and, optionally, an XPath expression, separated by tabs." + NEW_LINE + USAGE));
+
+        final StringWriter err = new StringWriter();
+        filter = new XmlStreamFilterCliFactory(new PrintWriter(new StringWriter()), new PrintWriter(err))
+                .newStreamFilter(new String[]{"-e", "book", "--routes", routes.getPath(), "-s", "//book"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(err.toString(), is("Invalid command line arguments: arguments \"routes\" and \"select\" cannot be used together." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void providingRoutesAndFollowPrintsErrorMessageAndUsage() throws IOException {
+        final File routes = folder.newFile("routes.tsv");
+        Files.write(routes.toPath(), Collections.singletonList("web\t-\t//book[@category = 'WEB']"), UTF_8);
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "--routes", routes.getPath(), "--follow"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: arguments \"routes\" and \"follow\" cannot be used together." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void filterUsingTypedConditionsPrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "--where", "//book/price", ">", "30", "--where", "//book/year", "<", "2005", "-t", "//book/title/text()"});
+        assertThat(filter, is(instanceOf(XmlStreamFilter.class)));
+        filter.filter(streamFor("/books.xml"), stdOut);
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+
+        // Combined with a query to select elements, and evaluated on DOM trees, as "last()" is not streamable:
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "--where", "//book/price[last()]", "<", "40",
+                "--where", "//book/year", "=", "2003", "-t", "//book/title/text()", "--threads", "2"});
+        assertThat(filter, is(instanceOf(ParallelXmlStreamFilter.class)));
+        filter.filter(streamFor("/books.xml"), out);
+        assertThat(out.toString(), is("Learning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void filterUsingSeveralSelectQueriesPrintsXmlMatchingAllOrAnyOfTheseToStandardOutput() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "-s", "//book/tags/tag[text() = 'xml']", "-t", "//book/title/text()"});
+        filter.filter(streamFor("/books.xml"), stdOut);
+        assertThat(stdOut.toString(), is("Learning XML\n"));
+
+        // Evaluated on DOM trees, as "contains" is not streamable, with the white-list applying to the first query:
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-s", "//book/title[contains(., 'Italian')]", "--any",
+                "-f", Resources.getResource("white_list.txt").getFile(), "-t", "//book/title/text()"});
+        filter.filter(streamFor("/books.xml"), out);
+        assertThat(out.toString(), is("Everyday Italian\nXQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingInvalidTypedConditionPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "--where", "//book/price", "=>", "30"});
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: Invalid condition \"//book/price => 30\" for argument \"where\". Original error: \n" +
+                "Invalid comparison operator \"=>\": expected one of =, !=, <, <=, >, >=." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void splitFilterReadingInputFileIgnoresStandardInputAndPrintsSelectedXmlToStandardOutput() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag/text()", "-t", "//book/title/text()", "-f", Resources.getResource("white_list.txt").getFile(), "--threads", "4", "--input", Resources.getResource("books.xml").getFile()});
+        assertThat(filter, is(not(nullValue())));
+
+        InputStream in = new ByteArrayInputStream(new byte[0]);
+        filter.filter(in, stdOut);
+
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void batchFilterReadingSeveralInputFilesPrintsSelectedXmlToStandardOutputInSameOrderAsFiles() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "-t", "//book/title/text()", "--jobs", "2",
+                "--input", Resources.getResource("books.xml").getFile(), Resources.getResource("books_no_indentation.xml.gz").getFile()});
+        assertThat(filter, is(not(nullValue())));
+
+        InputStream in = new ByteArrayInputStream(new byte[0]);
+        filter.filter(in, stdOut);
+
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\nXQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingMissingInputFilePrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "--input", "missing.xml"});
+        assertThat(filter, is(not(nullValue())));
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: Failed to list input files: missing.xml." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void providingJobsWithoutInputFilesPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "--jobs", "2"});
+        assertThat(filter, is(not(nullValue())));
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: please provide a value for argument \"input\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void providingRelativeElementPathPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "bookstore/book", "-s", "//book[@category = 'WEB']"});
+        assertThat(filter, is(not(nullValue())));
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: Relative XML element paths are not supported: \"bookstore/book\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void elementPathOnlyDetectsElementsAtThisPosition() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "/bookstore/book", "-s", "//book[@category = 'WEB']", "-t", "//book/title/text()"});
+        assertThat(filter, is(not(nullValue())));
+
+        filter.filter(streamFor("/books.xml"), stdOut);
+
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void existsPrintsTrueWhenAnyElementIsSelected() throws XMLStreamException, IOException {
+        CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "--exists"});
+        assertThat(filter, is(not(nullValue())));
+
+        long selected = filter.filterAndCount(streamFor("/books.xml"), stdOut);
+
+        assertThat(stdOut.toString(), is("true\n"));
+        assertThat(selected, is(1L));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void existsPrintsFalseWhenNoElementIsSelected() throws XMLStreamException, IOException {
+        CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'POETRY']", "--exists", "--threads", "2"});
+        assertThat(filter, is(not(nullValue())));
+
+        long selected = filter.filterAndCount(streamFor("/books.xml"), stdOut);
+
+        assertThat(stdOut.toString(), is("false\n"));
+        assertThat(selected, is(0L));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void limitStopsOnceNumberOfSelectedElementsIsReached() throws XMLStreamException, IOException {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "-t", "//book/title/text()", "--limit", "1"});
+        assertThat(filter, is(not(nullValue())));
+
+        filter.filter(streamFor("/books.xml"), stdOut);
+
+        assertThat(stdOut.toString(), is("XQuery Kick Start\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void limitLargerThanIntegerMaxValueIsAccepted() throws XMLStreamException, IOException {
+        CountingStreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "-t", "//book/title/text()",
+                "--limit", Long.toString(Integer.MAX_VALUE + 1L)});
+        assertThat(filter, is(not(instanceOf(NoOpStreamFilter.class))));
+        assertThat(filter.filterAndCount(streamFor("/books.xml"), stdOut), is(2L));
+        assertThat(stdOut.toString(), is("XQuery Kick Start\nLearning XML\n"));
+        assertThat(stdErr.toString(), is(""));
+    }
+
+    @Test
+    public void providingInvalidLimitPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book[@category = 'WEB']", "--limit", "0"});
+        assertThat(filter, is(not(nullValue())));
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(true));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: please provide a strictly positive integer for argument \"limit\"." + NEW_LINE + USAGE));
+    }
+
+    @Test
+    public void providingInvalidNumberOfThreadsPrintsErrorMessageAndUsage() {
+        StreamFilter filter = factory.newStreamFilter(new String[]{"-e", "book", "-s", "//book/tags/tag[text() = 'magician']", "--threads", "zero"});
+        assertThat(filter, is(not(nullValue())));
+        assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(stdOut.toString(), is(""));
+        assertThat(stdErr.toString(), is("Invalid command line arguments: please provide a strictly positive integer for argument \"threads\"." + NEW_LINE + USAGE));
+    }
+
     @Test
     public void printHelpShortArgument() {
         StreamFilter filter = factory.newStreamFilter(new String[]{"-h"});
         assertThat(filter, is(not(nullValue())));
         assertThat(filter, is(instanceOf(NoOpStreamFilter.class)));
+        assertThat(factory.hasInvalidArguments(), is(false));
         assertThat(stdOut.toString(), is(USAGE));
         assertThat(stdErr.toString(), is(""));
     }
@@ -4,6 +4,7 @@ import com.carmatechnologies.utilities.xml.common.Pair;
 import com.carmatechnologies.utilities.xml.predicate.XPathPredicate;
 import com.carmatechnologies.utilities.xml.predicate.XPathSetPredicate;
 import com.carmatechnologies.utilities.xml.transformer.DomTreeToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.RawXmlToOutputStreamTransformer;
 import com.carmatechnologies.utilities.xml.transformer.XPathToOutputStreamTransformer;
 import com.google.common.collect.Sets;
 import org.junit.Rule;
@@ -14,14 +15,18 @@ import org.w3c.dom.Node;
 import javax.xml.stream.XMLStreamException;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Function;
 import java.util.function.Predicate;
 
 import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.google.common.base.Charsets.UTF_8;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -71,6 +76,114 @@ public class XmlStreamFilterTest {
         assertThat(out.toString(), is("XQuery Kick Start\nLearning XML\n"));
     }
 
+    @Test
+    public void filterShouldOutputOriginalBytesOfFilteredElementsWhenCapturingRawXml() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+                "<bookstore xmlns:x='urn:extra'>\r\n" +
+                "  <book category='COOKING'><title   lang = \"en\">Caf\u00e9 \ud83c\udf70</title><tags><tag>food</tag></tags></book>\r\n" +
+                "  <book category='WEB' x:id='42'><title lang='en'><![CDATA[<XQuery>]]> Kick Start</title><!-- xquery --><tags><tag>xquery</tag></tags></book>\r\n" +
+                "  <book/><book category='CHILDREN'><title>Harry Potter</title><tags><tag>magician</tag></tags></book>\r\n" +
+                "</bookstore>\r\n";
+        Predicate<Node> filter = new XPathPredicate("//book/tags/tag[text() != 'magician']");
+        XmlStreamFilter streamFilter = XmlStreamFilter.builder("book").filter(filter).transformer(new RawXmlToOutputStreamTransformer()).rawXml().build();
+
+        InputStream in = new ByteArrayInputStream(xml.getBytes(UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        streamFilter.filter(in, out);
+
+        // Namespaces declared by ancestors are declared again, so that each element is namespace-well-formed on its own:
+        assertThat(new String(out.toByteArray(), UTF_8), is(
+                "<book xmlns:x=\"urn:extra\" category='COOKING'><title   lang = \"en\">Caf\u00e9 \ud83c\udf70</title><tags><tag>food</tag></tags></book>\n" +
+                "<book xmlns:x=\"urn:extra\" category='WEB' x:id='42'><title lang='en'><![CDATA[<XQuery>]]> Kick Start</title><!-- xquery --><tags><tag>xquery</tag></tags></book>\n"));
+    }
+
+    @Test
+    public void filterShouldOutputSameElementsWhenPrescanning() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\r\n" +
+                "<bookstore xmlns:x='urn:extra'>\r\n" +
+                "  <!-- <book category='COMMENTED'><tags><tag>xml</tag></tags></book> -->\r\n" +
+                "  <header><![CDATA[<book category='CDATA'>]]></header>\r\n" +
+                "  <book category='COOKING' x:id='1'><title lang=\"en\">Caf\u00e9</title><tags><tag>food</tag></tags></book>\r\n" +
+                "  <shelf xmlns='urn:shelf' xmlns:x='urn:shelf-extra'><book category='WEB' x:id='2'><tags><tag>xquery</tag></tags></book></shelf>\r\n" +
+                "  <book category='CHILDREN'><title>Harry Potter</title><tags><tag>magician</tag></tags></book>\r\n" +
+                "</bookstore>\r\n";
+        Predicate<Node> filter = new XPathPredicate("//*[local-name() = 'tag'][text() != 'magician']");
+        XmlStreamFilter streamFilter = XmlStreamFilter.builder("book").filter(filter).transformer(new RawXmlToOutputStreamTransformer()).rawXml().prescan().build();
+
+        InputStream in = new ByteArrayInputStream(xml.getBytes(UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        assertThat(streamFilter.filterAndCount(in, out), is(2L));
+        assertThat(new String(out.toByteArray(), UTF_8), is(
+                "<book xmlns:x=\"urn:extra\" category='COOKING' x:id='1'><title lang=\"en\">Caf\u00e9</title><tags><tag>food</tag></tags></book>\n" +
+                "<book xmlns:x=\"urn:shelf-extra\" xmlns=\"urn:shelf\" category='WEB' x:id='2'><tags><tag>xquery</tag></tags></book>\n"));
+    }
+
+    @Test
+    public void prescanningPathsShouldThrowIllegalArgumentException() throws XPathExpressionException, TransformerConfigurationException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Prescanning requires a single local name, NOT paths or namespaces: \"/bookstore/book\"."));
+
+        XmlStreamFilter.builder("/bookstore/book").filter(new XPathPredicate("//book")).transformer(new DomTreeToOutputStreamTransformer()).prescan().build();
+    }
+
+    @Test
+    public void filterShouldOnlyDetectElementsAtProvidedPath() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        String xml = "<feed><entry id='1'><related><entry id='2'/></related></entry><other><entry id='3'/></other><entry id='4'/><item id='5'/></feed>";
+        Predicate<Node> filter = new XPathPredicate("/*[@id != '4']");
+        XmlStreamFilter streamFilter = XmlStreamFilter.builder("/feed/entry|item").filter(filter).transformer(new XPathToOutputStreamTransformer("/*/@id")).rawXml().build();
+
+        InputStream in = new ByteArrayInputStream(xml.getBytes(UTF_8));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        streamFilter.filter(in, out);
+
+        assertThat(out.toString(), is("1\n5\n"));
+    }
+
+    @Test
+    public void filterShouldStopReadingAndCloseInputOnceLimitIsReached() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        StringBuilder xml = new StringBuilder("<items>");
+        for (int i = 0; i < 100000; ++i) {
+            xml.append("<item id='").append(i).append("'/>");
+        }
+        // Truncated, hence would fail to be parsed entirely:
+        xml.append("<item");
+        AtomicBoolean closed = new AtomicBoolean();
+        InputStream in = new FilterInputStream(new ByteArrayInputStream(xml.toString().getBytes(UTF_8))) {
+            @Override
+            public void close() throws IOException {
+                closed.set(true);
+                super.close();
+            }
+        };
+        XmlStreamFilter streamFilter = XmlStreamFilter.builder("item").filter(new XPathPredicate("/*[@id mod 2 = 1]"))
+                .transformer(new XPathToOutputStreamTransformer("/*/@id")).limit(3).build();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        long selected = streamFilter.filterAndCount(in, out);
+
+        assertThat(out.toString(), is("1\n3\n5\n"));
+        assertThat(selected, is(3L));
+        assertThat(closed.get(), is(true));
+    }
+
+    @Test
+    public void filterShouldReturnNumberOfSelectedElements() throws XPathExpressionException, TransformerConfigurationException, XMLStreamException, IOException {
+        XmlStreamFilter streamFilter = new XmlStreamFilter("book", new XPathPredicate("//book[@category = 'WEB']"), new XPathToOutputStreamTransformer("//book/title/text()"));
+
+        assertThat(streamFilter.filterAndCount(streamFor("/books.xml"), new ByteArrayOutputStream()), is(2L));
+    }
+
+    @Test
+    public void nonPositiveLimitShouldThrowIllegalArgumentException() throws XPathExpressionException, TransformerConfigurationException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Limit must be strictly positive."));
+
+        XmlStreamFilter.builder("book").filter(new XPathPredicate("//book")).transformer(new DomTreeToOutputStreamTransformer()).limit(0).build();
+    }
+
     @Test
     public void nullElementLocalNameShouldThrowNullPointerException() throws XPathExpressionException, TransformerConfigurationException {
         expectedException.expect(NullPointerException.class);
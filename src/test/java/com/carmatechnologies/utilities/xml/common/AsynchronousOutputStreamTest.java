@@ -0,0 +1,158 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AsynchronousOutputStreamTest {
+    private static final byte[] CONTENT = content(1_000_000);
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    @Test
+    public void bytesShouldBeWrittenInOrderWhateverTheSizeOfWrites() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream async = new AsynchronousOutputStream(out, 1000, 1)) {
+            async.write(CONTENT, 0, 10);
+            async.write(CONTENT[10]);
+            async.write(CONTENT, 11, 2989);
+            async.write(CONTENT, 3000, CONTENT.length - 3000);
+        }
+        assertThat(out.toByteArray(), is(CONTENT));
+
+        out.reset();
+        try (OutputStream async = new AsynchronousOutputStream(out, 1000, 3)) {
+            async.write(CONTENT, 0, 10);
+            async.write(CONTENT[10]);
+            async.write(CONTENT, 11, 2989);
+            async.write(CONTENT, 3000, CONTENT.length - 3000);
+        }
+
+        assertThat(out.toByteArray(), is(CONTENT));
+    }
+
+    @Test
+    public void bytesShouldBeWrittenToFilesWithGatheringWrites() throws IOException {
+        Path file = temporaryFolder.newFile().toPath();
+        try (OutputStream async = new AsynchronousOutputStream(new FileOutputStream(file.toFile()), 4096, 8)) {
+            for (int i = 0; i < CONTENT.length; i += 100) {
+                async.write(CONTENT, i, Math.min(100, CONTENT.length - i));
+            }
+        }
+
+        assertThat(Files.readAllBytes(file), is(CONTENT));
+    }
+
+    @Test
+    public void flushShouldHandBytesOverToIdleWriterWithoutWaitingForThese() throws IOException, InterruptedException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream async = new AsynchronousOutputStream(out, 1000, 2);
+        async.write(CONTENT, 0, 500);
+        async.flush();
+
+        for (int i = 0; (i < 100) && (out.size() < 500); ++i) {
+            Thread.sleep(10);
+        }
+        assertThat(out.toByteArray(), is(Arrays.copyOf(CONTENT, 500)));
+        async.close();
+    }
+
+    @Test
+    public void closeShouldWaitForAllBytesToBeWritten() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream async = new AsynchronousOutputStream(out, 1000, 2);
+        async.write(CONTENT, 0, 2500);
+        async.close();
+
+        assertThat(out.toByteArray(), is(Arrays.copyOf(CONTENT, 2500)));
+    }
+
+    @Test
+    public void writesShouldBlockUntilSlowConsumerCatchesUp() throws IOException, InterruptedException {
+        CountDownLatch slowConsumer = new CountDownLatch(1);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        OutputStream blockingOut = new OutputStream() {
+            @Override
+            public void write(final int b) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void write(final byte[] bytes, final int offset, final int length) throws IOException {
+                try {
+                    slowConsumer.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                out.write(bytes, offset, length);
+            }
+        };
+        CountDownLatch written = new CountDownLatch(1);
+        Thread writer = new Thread(() -> {
+            try (OutputStream async = new AsynchronousOutputStream(blockingOut, 100, 2)) {
+                async.write(CONTENT, 0, 1000);
+                written.countDown();
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        writer.start();
+
+        // At most two buffers of 100 bytes can be in flight, hence writing 1000 bytes must wait for the consumer:
+        assertThat(written.await(200, TimeUnit.MILLISECONDS), is(false));
+        slowConsumer.countDown();
+        writer.join();
+        assertThat(out.toByteArray(), is(Arrays.copyOf(CONTENT, 1000)));
+    }
+
+    @Test
+    public void failureOfUnderlyingStreamShouldBeRethrown() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage(equalTo("Failed to write output."));
+
+        OutputStream failingOut = new OutputStream() {
+            @Override
+            public void write(final int b) throws IOException {
+                throw new IOException("Broken pipe");
+            }
+        };
+        try (OutputStream async = new AsynchronousOutputStream(failingOut, 100, 2)) {
+            async.write(CONTENT);
+        }
+    }
+
+    @Test
+    public void nonPositiveNumberOfBuffersShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Number of buffers must be strictly positive."));
+
+        new AsynchronousOutputStream(new ByteArrayOutputStream(), 1000, 0);
+    }
+
+    private static byte[] content(final int size) {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; ++i) {
+            content[i] = (byte) (i % 251);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,48 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ByteBuffersTest {
+    @Test
+    public void indexOfShouldReturnFirstOccurrenceInRangeWhateverTheByteOrder() {
+        final Random random = new Random(42);
+        final byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; ++i) {
+            // Few distinct values, including the searched byte plus and minus one, which could be mistaken for it by borrows and carries:
+            bytes[i] = (byte) ('<' - 1 + random.nextInt(3));
+        }
+        for (final ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN}) {
+            final ByteBuffer buffer = ByteBuffer.wrap(bytes).order(order);
+            for (int from = 0; from < 50; ++from) {
+                for (int to = from; to < from + 50; ++to) {
+                    assertThat(ByteBuffers.indexOf(buffer, from, to, (byte) '<'), is(naiveIndexOf(bytes, from, to, (byte) '<')));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void indexOfShouldReturnMinusOneIfByteIsNotInRange() {
+        final ByteBuffer buffer = ByteBuffer.wrap("abcdefghijklmnopqrstuvwxyz<".getBytes());
+
+        assertThat(ByteBuffers.indexOf(buffer, 0, 26, (byte) '<'), is(-1));
+        assertThat(ByteBuffers.indexOf(buffer, 0, 27, (byte) '<'), is(26));
+        assertThat(ByteBuffers.indexOf(buffer, 0, 26, (byte) 0xFF), is(-1));
+    }
+
+    private static int naiveIndexOf(final byte[] bytes, final int from, final int to, final byte b) {
+        for (int i = from; i < to; ++i) {
+            if (bytes[i] == b) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,76 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class CapturingInputStreamTest {
+
+    // 1-byte, 2-byte, 3-byte and 4-byte (i.e. 2 UTF-16 code units) UTF-8 characters:
+    private static final String TEXT = "<a>é€🍰</a>";
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void copyShouldReturnOriginalBytesOfProvidedRangeOfCharacters() throws IOException {
+        CapturingInputStream in = capture(TEXT);
+
+        assertThat(copy(in, 0, TEXT.length()), is(TEXT));
+        assertThat(copy(in, 3, 7), is("é€🍰"));
+        assertThat(copy(in, 5, 7), is("🍰"));
+        assertThat(copy(in, 7, 11), is("</a>"));
+    }
+
+    @Test
+    public void discardBeforeShouldKeepCharactersFromProvidedOffsetOnwards() throws IOException {
+        CapturingInputStream in = capture(TEXT);
+
+        in.discardBefore(4);
+
+        assertThat(in.size(), is(TEXT.getBytes(UTF_8).length - 5));
+        assertThat(copy(in, 4, 7), is("€🍰"));
+    }
+
+    @Test
+    public void copyOfDiscardedCharactersShouldThrowIllegalArgumentException() throws IOException {
+        CapturingInputStream in = capture(TEXT);
+        in.discardBefore(4);
+
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Characters before offset 4 have already been discarded."));
+
+        in.copy(3, 7);
+    }
+
+    @Test
+    public void copyOfCharactersNotReadYetShouldThrowIllegalStateException() throws IOException {
+        CapturingInputStream in = new CapturingInputStream(new ByteArrayInputStream(TEXT.getBytes(UTF_8)));
+        in.read();
+
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage(equalTo("Characters after offset 1 have not been read yet."));
+
+        in.copy(0, 2);
+    }
+
+    private static CapturingInputStream capture(final String text) throws IOException {
+        CapturingInputStream in = new CapturingInputStream(new ByteArrayInputStream(text.getBytes(UTF_8)));
+        ByteStreams.exhaust(in);
+        return in;
+    }
+
+    private static String copy(final CapturingInputStream in, final long startCharOffset, final long endCharOffset) {
+        return new String(in.copy(startCharOffset, endCharOffset), UTF_8);
+    }
+
+}
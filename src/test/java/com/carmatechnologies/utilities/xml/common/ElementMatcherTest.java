@@ -0,0 +1,134 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class ElementMatcherTest {
+    private static final String FEED = "<feed xmlns:x=\"urn:x\">" +
+            "<entry id=\"1\"><related><entry id=\"2\"/></related></entry>" +
+            "<x:entry id=\"3\"><x:entry id=\"4\"/></x:entry>" +
+            "<other><entry id=\"5\"/><item id=\"6\"/></other>" +
+            "<item id=\"7\"/>" +
+            "</feed>";
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void localNameShouldMatchElementsAtAnyDepthInAnyNamespace() throws XMLStreamException {
+        assertThat(matched("entry"), is(Arrays.asList("1", "2", "3", "4", "5")));
+    }
+
+    @Test
+    public void absolutePathShouldOnlyMatchElementsAtThisPosition() throws XMLStreamException {
+        assertThat(matched("/feed/entry"), is(Arrays.asList("1", "3")));
+        assertThat(matched("/feed/entry/related/entry"), is(Arrays.asList("2")));
+        assertThat(matched("/entry"), is(Arrays.<String>asList()));
+    }
+
+    @Test
+    public void namespaceUriShouldBeMatchedWhenProvided() throws XMLStreamException {
+        assertThat(matched("{urn:x}entry"), is(Arrays.asList("3", "4")));
+        assertThat(matched("/feed/{urn:x}entry"), is(Arrays.asList("3")));
+        assertThat(matched("/{}feed/{}entry"), is(Arrays.asList("1")));
+    }
+
+    @Test
+    public void namespaceUriContainingSeparatorsShouldBeSupported() throws XMLStreamException {
+        String xml = "<feed xmlns=\"http://www.w3.org/2005/Atom\"><entry id=\"1\"/></feed>";
+        assertThat(matched("/{http://www.w3.org/2005/Atom}feed/{http://www.w3.org/2005/Atom}entry", xml), is(Arrays.asList("1")));
+    }
+
+    @Test
+    public void unionShouldMatchAnyOfTheProvidedNamesAndPaths() throws XMLStreamException {
+        assertThat(matched("/feed/entry|/feed/other/item|item"), is(Arrays.asList("1", "3", "6", "7")));
+        assertThat(matched("/feed/entry|/feed/{urn:x}entry/{urn:x}entry"), is(Arrays.asList("1", "3", "4")));
+    }
+
+    @Test
+    public void namesShouldBeMatchedWhetherOrNotTheParserInternsThem() throws XMLStreamException {
+        ElementMatcher matcher = ElementMatcher.compile("/feed/other/" + new String("item".toCharArray()));
+        assertThat(matched(matcher, FEED, true), is(Arrays.asList("6")));
+        assertThat(matched(matcher, FEED, false), is(Arrays.asList("6")));
+    }
+
+    @Test
+    public void localNameShouldOnlyBeReturnedForSingleLocalName() {
+        assertThat(ElementMatcher.compile("entry").localName(), is("entry"));
+        assertThat(ElementMatcher.compile("/feed/entry").localName(), is(nullValue()));
+        assertThat(ElementMatcher.compile("{urn:x}entry").localName(), is(nullValue()));
+        assertThat(ElementMatcher.compile("entry|item").localName(), is(nullValue()));
+    }
+
+    @Test
+    public void relativePathShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Relative XML element paths are not supported: \"feed/entry\"."));
+
+        ElementMatcher.compile("feed/entry");
+    }
+
+    @Test
+    public void emptyStepShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Invalid XML element path: \"/feed//entry|item\"."));
+
+        ElementMatcher.compile("/feed//entry|item");
+    }
+
+    @Test
+    public void emptyAlternativeShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Invalid XML element path: \"entry|\"."));
+
+        ElementMatcher.compile("entry|");
+    }
+
+    @Test
+    public void nullExpressionShouldThrowNullPointerException() {
+        expectedException.expect(NullPointerException.class);
+        expectedException.expectMessage(equalTo("XML element's local name must NOT be null."));
+
+        ElementMatcher.compile(null);
+    }
+
+    private static List<String> matched(final String expression) throws XMLStreamException {
+        return matched(expression, FEED);
+    }
+
+    private static List<String> matched(final String expression, final String xml) throws XMLStreamException {
+        return matched(ElementMatcher.compile(expression), xml, true);
+    }
+
+    /**
+     * Unlike readers, which consume matched elements, walks through all elements, hence also returns elements nested in matched ones.
+     */
+    private static List<String> matched(final ElementMatcher matcher, final String xml, final boolean internedNames) throws XMLStreamException {
+        final XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(new StringReader(xml));
+        final ElementMatcher.Tracker tracker = matcher.newTracker(internedNames);
+        final List<String> ids = new ArrayList<>();
+        while (reader.hasNext()) {
+            final int event = reader.next();
+            if ((event == XMLEvent.START_ELEMENT) && tracker.startElement(reader)) {
+                ids.add(reader.getAttributeValue(null, "id"));
+            } else if (event == XMLEvent.END_ELEMENT) {
+                tracker.endElement();
+            }
+        }
+        return ids;
+    }
+}
@@ -0,0 +1,88 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class FollowingInputStreamTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void readShouldFlushAndWaitForFileToGrowOnceItsEndIsReached() throws IOException, InterruptedException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, "<items>".getBytes(UTF_8));
+        final AtomicInteger flushes = new AtomicInteger();
+        try (InputStream in = new FollowingInputStream(path, flushes::incrementAndGet, 20)) {
+            assertThat(read(in, 7), is("<items>"));
+            assertThat(flushes.get(), is(0));
+
+            final Thread appender = new Thread(() -> {
+                try {
+                    Thread.sleep(100);
+                    Files.write(path, "<item/>".getBytes(UTF_8), StandardOpenOption.APPEND);
+                } catch (InterruptedException | IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            appender.start();
+            assertThat(read(in, 7), is("<item/>"));
+            assertThat(flushes.get(), is(1));
+            appender.join();
+        }
+    }
+
+    @Test
+    public void readingTruncatedFileShouldThrowIOException() throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, "<items><item/>".getBytes(UTF_8));
+        try (InputStream in = new FollowingInputStream(path, () -> { })) {
+            assertThat(read(in, 14), is("<items><item/>"));
+            Files.write(path, "<items>".getBytes(UTF_8));
+
+            expectedException.expect(IOException.class);
+            expectedException.expectMessage("File was truncated or replaced while being followed");
+            in.read();
+        }
+    }
+
+    @Test
+    public void readingRotatedFileShouldThrowIOException() throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, "<items><item/>".getBytes(UTF_8));
+        try (InputStream in = new FollowingInputStream(path, () -> { })) {
+            assertThat(read(in, 14), is("<items><item/>"));
+            Files.move(path, path.resolveSibling(path.getFileName() + ".1"));
+            Files.write(path, "<items><item/><item/>".getBytes(UTF_8));
+
+            expectedException.expect(IOException.class);
+            expectedException.expectMessage("File was truncated or replaced while being followed");
+            in.read();
+        }
+    }
+
+    private static String read(final InputStream in, final int length) throws IOException {
+        final byte[] bytes = new byte[length];
+        int count = 0;
+        while (count < length) {
+            count += in.read(bytes, count, length - count);
+        }
+        return new String(bytes, UTF_8);
+    }
+}
@@ -0,0 +1,202 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class GzipIndexTest {
+    private static final int SPAN = 16 * 1024;
+    private static final int SLICE_SIZE = 4096;
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void newInputStreamShouldInflateFromAnyOffset() throws IOException {
+        final byte[] content = words(512 * 1024);
+        final Path input = fileWith(gzipped(content, Deflater.DEFAULT_COMPRESSION));
+        final GzipIndex index = writtenAndRead(GzipIndex.build(input, SPAN));
+
+        assertThat(index.size(), is((long) content.length));
+        assertTrue("Checkpoints: " + index.checkpoints(), index.checkpoints() > 4);
+        assertThat(index.isUpToDate(input), is(true));
+        for (long offset = 0; offset <= content.length; offset += content.length / 50 + 1) {
+            assertThat(index.checkpointBefore(offset) <= offset, is(true));
+            try (InputStream in = index.newInputStream(input, offset)) {
+                assertThat("Offset: " + offset, inflated(in), is(slice(content, offset)));
+            }
+        }
+    }
+
+    @Test
+    public void newInputStreamShouldInflateConcatenatedMembers() throws IOException {
+        final byte[] first = words(100 * 1024);
+        final byte[] second = words(200 * 1024);
+        final ByteArrayOutputStream members = new ByteArrayOutputStream();
+        members.write(gzipped(first, Deflater.NO_COMPRESSION));
+        members.write(gzipped(second, Deflater.BEST_COMPRESSION));
+        final byte[] content = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, content, first.length, second.length);
+        final Path input = fileWith(members.toByteArray());
+        final GzipIndex index = writtenAndRead(GzipIndex.build(input, SPAN));
+
+        assertThat(index.size(), is((long) content.length));
+        for (long offset = 0; offset <= content.length; offset += content.length / 20 + 1) {
+            try (InputStream in = index.newInputStream(input, offset)) {
+                assertThat("Offset: " + offset, inflated(in), is(slice(content, offset)));
+            }
+        }
+    }
+
+    @Test
+    public void newInputStreamShouldInflateFromAnyOffsetOfSyncFlushedFile() throws IOException {
+        final byte[] content = words(128 * 1024);
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped, true)) {
+            // Each flush ends a deflate block with an empty stored block, mostly starting in the middle of a byte:
+            for (int offset = 0; offset < content.length; offset += 1000) {
+                out.write(content, offset, Math.min(1000, content.length - offset));
+                out.flush();
+            }
+        }
+        final Path input = fileWith(gzipped.toByteArray());
+        final GzipIndex index = GzipIndex.build(input, SPAN);
+
+        assertTrue("Checkpoints: " + index.checkpoints(), index.checkpoints() > 4);
+        for (long offset = 0; offset <= content.length; offset += content.length / 20 + 1) {
+            try (InputStream in = index.newInputStream(input, offset)) {
+                assertThat("Offset: " + offset, inflated(in), is(slice(content, offset)));
+            }
+        }
+    }
+
+    @Test
+    public void cursorShouldReadInflatedBytesInAnyOrder() throws IOException {
+        final byte[] content = words(256 * 1024);
+        final Path input = fileWith(gzipped(content, Deflater.DEFAULT_COMPRESSION));
+        final GzipIndex index = GzipIndex.build(input, SPAN);
+        final Random random = new Random(42);
+        try (GzipIndex.Cursor cursor = index.newCursor(input)) {
+            assertThat(cursor.size(), is((long) content.length));
+            for (int i = 0; i < 200; ++i) {
+                final int position = random.nextInt(content.length);
+                assertThat("Position: " + position, cursor.get(position), is(content[position] & 0xFF));
+            }
+            assertThat(cursor.indexOf((byte) '\n', 0), is((long) new String(content, UTF_8).indexOf('\n')));
+            assertThat(cursor.get(content.length), is(-1));
+        }
+    }
+
+    @Test
+    public void bitShiftingInputStreamShouldSkipShiftedBytes() throws IOException {
+        // 0x12 0x34 0x56, shifted by 4 bits: 0x41 0x63 0x05.
+        try (InputStream in = new GzipIndex.BitShiftingInputStream(new ByteArrayInputStream(new byte[]{0x12, 0x34, 0x56}), 4)) {
+            assertThat(in.skip(1), is(1L));
+            assertThat(in.read(), is(0x63));
+            assertThat(in.skip(5), is(1L));
+            assertThat(in.read(), is(-1));
+        }
+    }
+
+    @Test
+    public void indexShouldBeOutOfDateOnceTheFileChanged() throws IOException {
+        final Path input = fileWith(gzipped(words(1024), Deflater.DEFAULT_COMPRESSION));
+        final GzipIndex index = GzipIndex.build(input, SPAN);
+        Files.setLastModifiedTime(input, FileTime.fromMillis(Files.getLastModifiedTime(input).toMillis() + 1000));
+        assertThat(index.isUpToDate(input), is(false));
+    }
+
+    @Test
+    public void buildingIndexOfUncompressedFileShouldThrowZipException() throws IOException {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Not in GZIP format.");
+        GzipIndex.build(fileWith(words(1024)), SPAN);
+    }
+
+    @Test
+    public void buildingIndexOfCorruptFileShouldThrowZipException() throws IOException {
+        final byte[] gzipped = gzipped(words(1024), Deflater.DEFAULT_COMPRESSION);
+        gzipped[gzipped.length - 8] ^= 1; // CRC of the inflated bytes.
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage("Corrupt GZIP trailer.");
+        GzipIndex.build(fileWith(gzipped), SPAN);
+    }
+
+    @Test
+    public void readingFileWhichIsNotAnIndexShouldThrowIOException() throws IOException {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("Not a gzip index file");
+        GzipIndex.read(fileWith(words(1024)));
+    }
+
+    private static String inflated(final InputStream in) throws IOException {
+        return new String(ByteStreams.toByteArray(ByteStreams.limit(in, SLICE_SIZE)), UTF_8);
+    }
+
+    private static String slice(final byte[] content, final long offset) {
+        return new String(content, (int) offset, (int) Math.min(SLICE_SIZE, content.length - offset), UTF_8);
+    }
+
+    private GzipIndex writtenAndRead(final GzipIndex index) throws IOException {
+        final Path indexPath = folder.getRoot().toPath().resolve("input.gzidx");
+        index.write(indexPath);
+        return GzipIndex.read(indexPath);
+    }
+
+    /**
+     * Lines of pseudo-random words, which deflate in many blocks, most of them starting in the middle of a byte.
+     */
+    private static byte[] words(final int size) {
+        final Random random = new Random(size);
+        final StringBuilder words = new StringBuilder(size + 16);
+        while (words.length() < size) {
+            final int length = 1 + random.nextInt(8);
+            for (int i = 0; i < length; ++i) {
+                words.append((char) ('a' + random.nextInt(26)));
+            }
+            words.append((random.nextInt(10) == 0) ? '\n' : ' ');
+        }
+        return words.substring(0, size).getBytes(UTF_8);
+    }
+
+    private static byte[] gzipped(final byte[] content, final int level) throws IOException {
+        final ByteArrayOutputStream gzipped = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(gzipped) {
+            {
+                def.setLevel(level);
+            }
+        }) {
+            out.write(content);
+        }
+        return gzipped.toByteArray();
+    }
+
+    private Path fileWith(final byte[] content) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, content);
+        return path;
+    }
+}
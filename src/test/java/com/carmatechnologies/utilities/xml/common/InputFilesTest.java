@@ -0,0 +1,88 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class InputFilesTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void filesShouldBeKeptInTheProvidedOrder() throws IOException {
+        Path b = newFile("b.xml");
+        Path a = newFile("a.xml");
+
+        assertThat(InputFiles.expand(Arrays.asList(b.toString(), a.toString())), is(Arrays.asList(b, a)));
+    }
+
+    @Test
+    public void directoriesShouldBeExpandedRecursivelyInLexicographicOrder() throws IOException {
+        Path b = newFile("dir/b.xml");
+        Path a = newFile("dir/sub/a.xml");
+        Path c = newFile("dir/c.xml.gz");
+
+        assertThat(InputFiles.expand(Collections.singletonList(folder.getRoot().toPath().resolve("dir").toString())), is(Arrays.asList(b, c, a)));
+    }
+
+    @Test
+    public void globsShouldOnlyMatchWithinDirectoryUnlessRecursive() throws IOException {
+        Path a = newFile("dir/a.xml");
+        Path b = newFile("dir/b.xml");
+        newFile("dir/c.txt");
+        Path d = newFile("dir/sub/d.xml");
+        String dir = folder.getRoot().toPath().resolve("dir").toString();
+
+        assertThat(InputFiles.expand(Collections.singletonList(dir + "/*.xml")), is(Arrays.asList(a, b)));
+        assertThat(InputFiles.expand(Collections.singletonList(dir + "/**.xml")), is(Arrays.asList(a, b, d)));
+    }
+
+    @Test
+    public void filesShouldOnlyBeReturnedOnce() throws IOException {
+        Path a = newFile("dir/a.xml");
+        Path b = newFile("dir/b.xml");
+        String dir = folder.getRoot().toPath().resolve("dir").toString();
+
+        assertThat(InputFiles.expand(Arrays.asList(b.toString(), dir + "/*.xml")), is(Arrays.asList(b, a)));
+    }
+
+    @Test
+    public void missingFileShouldThrowNoSuchFileException() throws IOException {
+        String missing = folder.getRoot().toPath().resolve("missing.xml").toString();
+        expectedException.expect(NoSuchFileException.class);
+        expectedException.expectMessage(equalTo(missing));
+
+        InputFiles.expand(Collections.singletonList(missing));
+    }
+
+    @Test
+    public void globMatchingNoFileShouldThrowNoSuchFileException() throws IOException {
+        newFile("dir/a.xml");
+        String glob = folder.getRoot().toPath().resolve("dir").toString() + "/*.json";
+        expectedException.expect(NoSuchFileException.class);
+        expectedException.expectMessage(equalTo(glob));
+
+        InputFiles.expand(Collections.singletonList(glob));
+    }
+
+    private Path newFile(final String relativePath) throws IOException {
+        final Path path = folder.getRoot().toPath().resolve(relativePath);
+        Files.createDirectories(path.getParent());
+        return Files.createFile(path);
+    }
+}
@@ -0,0 +1,73 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class InputStreamWindowTest {
+    private static final byte[] CONTENT = "<items><item id='1'/><item id='2'/><item id='3'/></items>".getBytes(UTF_8);
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void getShouldReadStreamAheadAsFarAsRequested() throws IOException {
+        InputStreamWindow window = new InputStreamWindow(new ByteArrayInputStream(CONTENT), 4);
+
+        assertThat(window.size(), is(Long.MAX_VALUE));
+        assertThat(window.get(20), is((int) '>'));
+        assertThat(window.get(0), is((int) '<'));
+        assertThat(window.get(CONTENT.length), is(-1));
+        assertThat(window.size(), is((long) CONTENT.length));
+    }
+
+    @Test
+    public void indexOfShouldFindBytesBeyondBufferedBytes() throws IOException {
+        InputStreamWindow window = new InputStreamWindow(new ByteArrayInputStream(CONTENT), 4);
+
+        assertThat(window.indexOf((byte) '/', 0), is(19L));
+        assertThat(window.indexOf((byte) '<', 1), is(7L));
+        assertThat(window.indexOf((byte) '#', 0), is(-1L));
+    }
+
+    @Test
+    public void discardedBytesShouldBeReleasedWhileOthersAreKept() throws IOException {
+        InputStreamWindow window = new InputStreamWindow(new ByteArrayInputStream(CONTENT), 4);
+
+        for (long i = 0; i < CONTENT.length; ++i) {
+            window.discardBefore(i - 2);
+            assertThat(window.get(i), is(CONTENT[(int) i] & 0xFF));
+        }
+        assertThat(new String(ByteStreams.toByteArray(window.newInputStream(CONTENT.length - 2, CONTENT.length)), UTF_8), is("s>"));
+    }
+
+    @Test
+    public void positionsShouldBeOffsetByTheStartOfTheStream() throws IOException {
+        InputStreamWindow window = new InputStreamWindow(new ByteArrayInputStream(CONTENT), 1000L);
+
+        assertThat(window.get(1000), is((int) '<'));
+        assertThat(window.indexOf((byte) '/', 1000), is(1019L));
+        assertThat(window.get(1000 + CONTENT.length), is(-1));
+        assertThat(window.size(), is(1000L + CONTENT.length));
+    }
+
+    @Test
+    public void getDiscardedByteShouldThrowIllegalArgumentException() throws IOException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Position 0 was already discarded."));
+
+        InputStreamWindow window = new InputStreamWindow(new ByteArrayInputStream(CONTENT), 4);
+        window.discardBefore(16);
+        window.get(CONTENT.length - 1);
+        window.get(0);
+    }
+}
@@ -37,6 +37,15 @@ public class InputStreamsTest {
         assertThat(toUtf8String(in), is(HELLO_WORLD));
     }
 
+    @Test
+    public void autoGUnzippedStreamInflatedByOtherThreadsShouldBeReadableInClear() throws IOException {
+        assertThat(toUtf8String(InputStreams.autoGUnzip(streamFor("/sample_text.txt"), 2)), is(HELLO_WORLD));
+
+        InputStream in = InputStreams.autoGUnzip(streamFor("/sample_text.txt.gz"), 2);
+        assertThat(in, is(instanceOf(ParallelGZIPInputStream.class)));
+        assertThat(toUtf8String(in), is(HELLO_WORLD));
+    }
+
     @Test
     public void autoGUnzippedNonMarkableStreamShouldBeReadableInClear() throws IOException {
         InputStream nonMarkableStream = new NonMarkableByteArrayInputStream(HELLO_WORLD.getBytes(UTF_8));
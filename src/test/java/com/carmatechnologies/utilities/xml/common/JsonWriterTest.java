@@ -0,0 +1,62 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class JsonWriterTest {
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void writerShouldWriteCommasAndColonsBetweenValues() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonWriter().to(out)
+                .beginObject().name("a").value("1").name("@", "b").beginArray().value("x").nullValue().beginObject().endObject().endArray().endObject()
+                .endLine()
+                .beginArray().endArray()
+                .endLine();
+
+        assertThat(out.toString(), is("{\"a\":\"1\",\"@b\":[\"x\",null,{}]}\n[]\n"));
+    }
+
+    @Test
+    public void stringsShouldBeEscapedAndEncodedToUtf8() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        char[] chars = "\"quoted\"\\ é€😀".toCharArray();
+        new JsonWriter().to(out)
+                .beginString().appendString("tab\tnew line\n\u0001 ").appendString(chars, 0, chars.length).endString()
+                .endLine();
+
+        assertThat(new String(out.toByteArray(), UTF_8), is("\"tab\\tnew line\\n\\u0001 \\\"quoted\\\"\\\\ é€😀\"\n"));
+    }
+
+    @Test
+    public void valuesLargerThanTheBufferShouldBeWrittenInSeveralChunks() throws IOException {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            value.append("é😀\"");
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new JsonWriter(16).to(out).beginObject().name("value").value(value).endObject().endLine();
+
+        assertThat(new String(out.toByteArray(), UTF_8), is("{\"value\":\"" + value.toString().replace("\"", "\\\"") + "\"}\n"));
+    }
+
+    @Test
+    public void linesShouldOnlyEndAfterTopLevelValues() throws IOException {
+        expectedException.expect(IllegalStateException.class);
+        expectedException.expectMessage(equalTo("Lines must end after top-level values."));
+
+        new JsonWriter().to(new ByteArrayOutputStream()).beginObject().endLine();
+    }
+}
@@ -0,0 +1,68 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class MappedFileTest {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void getShouldReturnBytesAcrossWindowsAndMinusOneBeyondEndOfFile() throws IOException {
+        try (MappedFile file = new MappedFile(fileWith("0123456789"), 4)) {
+            MappedFile.Cursor cursor = file.newCursor();
+
+            assertThat(file.size(), is(10L));
+            assertThat(cursor.get(0), is((int) '0'));
+            assertThat(cursor.get(9), is((int) '9'));
+            assertThat(cursor.get(3), is((int) '3'));
+            assertThat(cursor.get(4), is((int) '4'));
+            assertThat(cursor.get(10), is(-1));
+        }
+    }
+
+    @Test
+    public void getShouldReturnUnsignedBytes() throws IOException {
+        try (MappedFile file = new MappedFile(fileWith("é"), 4)) {
+            assertThat(file.newCursor().get(0), is(0xC3));
+        }
+    }
+
+    @Test
+    public void inputStreamShouldReadBytesBetweenProvidedPositionsAcrossWindows() throws IOException {
+        try (MappedFile file = new MappedFile(fileWith("0123456789"), 4)) {
+            byte[] bytes = ByteStreams.toByteArray(file.newCursor().newInputStream(2, 9));
+
+            assertThat(new String(bytes, UTF_8), is("2345678"));
+        }
+    }
+
+    @Test
+    public void nonPositiveWindowSizeShouldThrowIllegalArgumentException() throws IOException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Window size must be strictly positive."));
+
+        new MappedFile(fileWith("0123456789"), 0);
+    }
+
+    private Path fileWith(final String content) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, content.getBytes(UTF_8));
+        return path;
+    }
+}
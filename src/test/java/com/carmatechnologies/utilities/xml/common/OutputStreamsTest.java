@@ -4,11 +4,13 @@ import org.junit.Test;
 
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
 
 import static org.hamcrest.CoreMatchers.instanceOf;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.junit.Assert.assertThat;
 
 public class OutputStreamsTest {
@@ -20,4 +22,10 @@ public class OutputStreamsTest {
         assertThat(OutputStreams.buffered(in), is(instanceOf(BufferedOutputStream.class)));
     }
 
+    @Test
+    public void bufferedShouldNotWrapAsynchronousOutputStream() throws IOException {
+        try (OutputStream out = new AsynchronousOutputStream(new ByteArrayOutputStream())) {
+            assertThat(OutputStreams.buffered(out), is(sameInstance(out)));
+        }
+    }
 }
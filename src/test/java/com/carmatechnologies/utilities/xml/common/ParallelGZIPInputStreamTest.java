@@ -0,0 +1,147 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipException;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ParallelGZIPInputStreamTest {
+    private static final byte[] CONTENT = content(1_000_000);
+    private static final int BGZF_BLOCK_SIZE = 60 * 1024;
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void bgzfMembersShouldBeInflatedInOrder() throws IOException {
+        InputStream in = new ParallelGZIPInputStream(new ByteArrayInputStream(bgzf(CONTENT)), 4);
+
+        assertThat(ByteStreams.toByteArray(in), is(CONTENT));
+    }
+
+    @Test
+    public void singleMemberShouldBeInflatedAhead() throws IOException {
+        InputStream in = new ParallelGZIPInputStream(new ByteArrayInputStream(gzip(CONTENT)), 4);
+
+        assertThat(ByteStreams.toByteArray(in), is(CONTENT));
+    }
+
+    @Test
+    public void multipleMembersShouldBeInflatedAhead() throws IOException {
+        byte[] first = Arrays.copyOfRange(CONTENT, 0, 300_000);
+        byte[] second = Arrays.copyOfRange(CONTENT, 300_000, CONTENT.length);
+        InputStream in = new ParallelGZIPInputStream(new ByteArrayInputStream(concat(gzip(first), gzip(second))), 2);
+
+        assertThat(ByteStreams.toByteArray(in), is(CONTENT));
+    }
+
+    @Test
+    public void bgzfMembersFollowedByOtherMembersShouldBeInflatedInOrder() throws IOException {
+        byte[] first = Arrays.copyOfRange(CONTENT, 0, 300_000);
+        byte[] second = Arrays.copyOfRange(CONTENT, 300_000, CONTENT.length);
+        InputStream in = new ParallelGZIPInputStream(new ByteArrayInputStream(concat(bgzf(first), gzip(second))), 2);
+
+        assertThat(ByteStreams.toByteArray(in), is(CONTENT));
+    }
+
+    @Test
+    public void corruptBgzfMemberShouldThrowZipException() throws IOException {
+        expectedException.expect(ZipException.class);
+        expectedException.expectMessage(equalTo("Corrupt BGZF block: CRC mismatch."));
+
+        byte[] bgzf = bgzf(CONTENT);
+        bgzf[BGZF_BLOCK_SIZE / 2] ^= 0x01;
+        ByteStreams.toByteArray(new ParallelGZIPInputStream(new ByteArrayInputStream(bgzf), 2));
+    }
+
+    @Test
+    public void nonGZippedStreamShouldThrowZipException() throws IOException {
+        expectedException.expect(ZipException.class);
+
+        ByteStreams.toByteArray(new ParallelGZIPInputStream(new ByteArrayInputStream(CONTENT), 2));
+    }
+
+    @Test
+    public void nonPositiveNumberOfThreadsShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Number of threads must be strictly positive."));
+
+        new ParallelGZIPInputStream(new ByteArrayInputStream(CONTENT), 0);
+    }
+
+    private static byte[] content(final int size) {
+        final StringBuilder content = new StringBuilder();
+        for (int i = 0; content.length() < size; ++i) {
+            content.append("<item id=\"").append(i).append("\"><name>Item #").append(i).append("</name></item>\n");
+        }
+        return content.substring(0, size).getBytes(UTF_8);
+    }
+
+    private static byte[] gzip(final byte[] content) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(content);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Same format as bgzip's: one member per block of content, each with a "BC" extra subfield, followed by an empty member.
+     */
+    private static byte[] bgzf(final byte[] content) throws IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset < content.length; offset += BGZF_BLOCK_SIZE) {
+            out.write(bgzfMember(Arrays.copyOfRange(content, offset, Math.min(content.length, offset + BGZF_BLOCK_SIZE))));
+        }
+        out.write(bgzfMember(new byte[0]));
+        return out.toByteArray();
+    }
+
+    private static byte[] bgzfMember(final byte[] block) {
+        final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(block);
+        deflater.finish();
+        final byte[] deflated = new byte[2 * block.length + 64];
+        final int deflatedSize = deflater.deflate(deflated);
+        deflater.end();
+
+        final int memberSize = 18 + deflatedSize + 8;
+        final ByteArrayOutputStream member = new ByteArrayOutputStream();
+        member.write(new byte[]{0x1F, (byte) 0x8B, 8, 4, 0, 0, 0, 0, 0, (byte) 0xFF, 6, 0, 'B', 'C', 2, 0}, 0, 16);
+        writeShort(member, memberSize - 1);
+        member.write(deflated, 0, deflatedSize);
+        final CRC32 crc = new CRC32();
+        crc.update(block);
+        writeShort(member, (int) crc.getValue());
+        writeShort(member, (int) (crc.getValue() >>> 16));
+        writeShort(member, block.length);
+        writeShort(member, block.length >>> 16);
+        return member.toByteArray();
+    }
+
+    private static void writeShort(final ByteArrayOutputStream out, final int value) {
+        out.write(value & 0xFF);
+        out.write((value >>> 8) & 0xFF);
+    }
+
+    private static byte[] concat(final byte[] first, final byte[] second) {
+        final byte[] bytes = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, bytes, first.length, second.length);
+        return bytes;
+    }
+}
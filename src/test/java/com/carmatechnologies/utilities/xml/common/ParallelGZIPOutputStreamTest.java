@@ -0,0 +1,94 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.instanceOf;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ParallelGZIPOutputStreamTest {
+    private static final byte[] CONTENT = content(1_000_000);
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void gzippedBytesShouldBeReadableByGZIPInputStream() throws IOException {
+        byte[] gzipped = gzip(CONTENT, 4);
+
+        assertThat(gzipped.length < CONTENT.length / 2, is(true));
+        assertThat(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))), is(CONTENT));
+    }
+
+    @Test
+    public void gzippedBytesShouldBeInflatedInParallelAsBgzfMembers() throws IOException {
+        byte[] gzipped = gzip(CONTENT, 4);
+
+        assertThat(InputStreams.autoGUnzip(new ByteArrayInputStream(gzipped), 4), is(instanceOf(ParallelGZIPInputStream.class)));
+        assertThat(ByteStreams.toByteArray(InputStreams.autoGUnzip(new ByteArrayInputStream(gzipped), 4)), is(CONTENT));
+    }
+
+    @Test
+    public void incompressibleBytesShouldFitInBgzfMembers() throws IOException {
+        byte[] random = new byte[300_000];
+        new Random(42).nextBytes(random);
+
+        assertThat(ByteStreams.toByteArray(new ParallelGZIPInputStream(new ByteArrayInputStream(gzip(random, 2)), 2)), is(random));
+    }
+
+    @Test
+    public void emptyOutputShouldOnlyContainEndOfFileMember() throws IOException {
+        byte[] gzipped = gzip(new byte[0], 1);
+
+        assertThat(gzipped.length, is(28));
+        assertThat(ByteStreams.toByteArray(new GZIPInputStream(new ByteArrayInputStream(gzipped))).length, is(0));
+    }
+
+    @Test
+    public void flushShouldNotCutPendingBlock() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzipOut = new ParallelGZIPOutputStream(out, 2)) {
+            for (int i = 0; i < CONTENT.length; i += 1000) {
+                gzipOut.write(CONTENT, i, Math.min(1000, CONTENT.length - i));
+                gzipOut.flush();
+            }
+        }
+
+        assertThat(out.toByteArray(), is(gzip(CONTENT, 2)));
+    }
+
+    @Test
+    public void invalidCompressionLevelShouldThrowIllegalArgumentException() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Compression level must be between 0 and 9."));
+
+        new ParallelGZIPOutputStream(new ByteArrayOutputStream(), 1, 10);
+    }
+
+    private static byte[] gzip(final byte[] bytes, final int threads) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream gzipOut = new ParallelGZIPOutputStream(out, threads)) {
+            gzipOut.write(bytes);
+        }
+        return out.toByteArray();
+    }
+
+    private static byte[] content(final int size) {
+        StringBuilder content = new StringBuilder();
+        for (int i = 0; content.length() < size; ++i) {
+            content.append("<book id=\"").append(i).append("\"><title>Title ").append(i % 97).append("</title></book>\n");
+        }
+        return content.substring(0, size).getBytes();
+    }
+}
@@ -0,0 +1,58 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import com.google.common.io.ByteStreams;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PrescanningInputStreamTest {
+    @Test
+    public void onlyElementsWithProvidedLocalNameShouldBeRead() throws IOException {
+        String xml = "<?xml version=\"1.0\"?>\n" +
+                "<!DOCTYPE items [<!ENTITY e \"<item>\">]>\n" +
+                "<items version='1'>" +
+                "<!-- <item id=\"commented\"> -->" +
+                "<item id=\"1\" note=\"a > b\"><item id=\"nested\"/><name><![CDATA[</item>]]></name></item>" +
+                "<other><itemized/></other>" +
+                "<?pi <item>?>" +
+                "<item id=\"2\">é</item>" +
+                "</items>";
+
+        assertThat(prescan(xml, "item"), is("<xml-stream-filter-prescan>" +
+                "<item id=\"1\" note=\"a > b\"><item id=\"nested\"/><name><![CDATA[</item>]]></name></item>" +
+                "<item id=\"2\">é</item>" +
+                "</xml-stream-filter-prescan>"));
+    }
+
+    @Test
+    public void elementsShouldBeWrappedInTheirNamespaceContext() throws IOException {
+        String xml = "<feed xmlns='urn:feed' xmlns:x='urn:x'>" +
+                "<x:item id='1'/><x:item id='2'/>" +
+                "<group xmlns:x='urn:group'><x:item id='3'/></group>" +
+                "<x:item id='4'/>" +
+                "</feed>";
+
+        assertThat(prescan(xml, "item"), is("<xml-stream-filter-prescan>" +
+                "<xml-stream-filter-context xmlns='urn:feed' xmlns:x='urn:x'><x:item id='1'/><x:item id='2'/></xml-stream-filter-context>" +
+                "<xml-stream-filter-context xmlns='urn:feed' xmlns:x='urn:group'><x:item id='3'/></xml-stream-filter-context>" +
+                "<xml-stream-filter-context xmlns='urn:feed' xmlns:x='urn:x'><x:item id='4'/></xml-stream-filter-context>" +
+                "</xml-stream-filter-prescan>"));
+    }
+
+    @Test
+    public void streamWithoutElementsShouldOnlyContainSyntheticRootElement() throws IOException {
+        assertThat(prescan("<items><other/></items>", "item"), is("<xml-stream-filter-prescan></xml-stream-filter-prescan>"));
+    }
+
+    private static String prescan(final String xml, final String localName) throws IOException {
+        try (InputStream in = new PrescanningInputStream(new ByteArrayInputStream(xml.getBytes(UTF_8)), localName)) {
+            return new String(ByteStreams.toByteArray(in), UTF_8);
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class SidecarFilesTest {
+    private static final long[] VALUES = {0, 1, 0x7F, 0x80, 0x3FFF, 0x4000, Integer.MAX_VALUE, Long.MAX_VALUE};
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void varLongsShouldBeReadAsWritten() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (final DataOutputStream out = new DataOutputStream(bytes)) {
+            for (final long value : VALUES) {
+                SidecarFiles.writeVarLong(out, value);
+            }
+        }
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (final long value : VALUES) {
+            assertThat(SidecarFiles.readVarLong(in), is(value));
+        }
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test
+    public void varLongsShouldBeReadFromMappedFilesAsPutInBuffers() throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[SidecarFiles.MAX_VAR_LONG_SIZE];
+        for (final long value : VALUES) {
+            final int length = SidecarFiles.putVarLong(buffer, value);
+            assertThat(length, is(SidecarFiles.varLongSize(value)));
+            bytes.write(buffer, 0, length);
+        }
+        final Path path = folder.newFile().toPath();
+        Files.write(path, bytes.toByteArray());
+        try (final MappedFile file = new MappedFile(path)) {
+            long position = 0;
+            for (final long value : VALUES) {
+                assertThat(SidecarFiles.readVarLong(file, position), is(value));
+                position += SidecarFiles.varLongSize(value);
+            }
+            assertThat(position, is(file.size()));
+        }
+    }
+
+    @Test
+    public void writeAtomicallyShouldReplaceTheFileOnceWritten() throws IOException {
+        final Path path = folder.newFile("file.idx").toPath();
+        Files.write(path, "old".getBytes(UTF_8));
+
+        SidecarFiles.writeAtomically(path, temporaryFile -> {
+            assertThat(temporaryFile.getParent(), is(path.getParent()));
+            assertThat(new String(Files.readAllBytes(path), UTF_8), is("old"));
+            Files.write(temporaryFile, "new".getBytes(UTF_8));
+        });
+
+        assertThat(new String(Files.readAllBytes(path), UTF_8), is("new"));
+        assertThat(Arrays.asList(folder.getRoot().list()), is(Arrays.asList("file.idx")));
+    }
+
+    @Test
+    public void failureToWriteShouldKeepThePreviousFileAndDeleteTheTemporaryFile() throws IOException {
+        final Path path = folder.newFile("file.idx").toPath();
+        Files.write(path, "old".getBytes(UTF_8));
+
+        try {
+            SidecarFiles.writeAtomically(path, temporaryFile -> {
+                Files.write(temporaryFile, "corrupt".getBytes(UTF_8));
+                throw new IOException("Failed on purpose.");
+            });
+            throw new AssertionError("Write should have failed.");
+        } catch (IOException e) {
+            assertThat(e.getMessage(), is("Failed on purpose."));
+        }
+
+        assertThat(new String(Files.readAllBytes(path), UTF_8), is("old"));
+        assertThat(Arrays.asList(folder.getRoot().list()), is(Arrays.asList("file.idx")));
+    }
+
+    @Test
+    public void fileShouldNoLongerBeUpToDateOnceModified() throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, "content".getBytes(UTF_8));
+        final long size = Files.size(path);
+        final long lastModified = SidecarFiles.lastModified(path);
+        assertThat(SidecarFiles.isUpToDate(path, size, lastModified), is(true));
+
+        Files.write(path, "modified content".getBytes(UTF_8));
+        assertThat(SidecarFiles.isUpToDate(path, size, lastModified), is(false));
+    }
+}
@@ -0,0 +1,148 @@
+package com.carmatechnologies.utilities.xml.common;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class XmlElementScannerTest {
+    private static final String XML = "<?xml version=\"1.0\"?>\n" +
+            "<!DOCTYPE items [<!ENTITY e \"<item>\">]>\n" +
+            "<items xmlns:x=\"urn:x\" version='1'>" +
+            "<!-- <item id=\"commented\"> -->" +
+            "<item id=\"1\" note=\"a > b\"><item id=\"nested\"/><name><![CDATA[</item>]]></name></item>" +
+            "<other><itemized/></other>" +
+            "<x:item id=\"2\"/>" +
+            "<?pi <item>?>" +
+            "<item id=\"3\">é</item>" +
+            "</items>";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private MappedFile file;
+
+    @After
+    public void tearDown() throws IOException {
+        if (file != null) {
+            file.close();
+        }
+    }
+
+    @Test
+    public void nextShouldSkipCommentsCDataProcessingInstructionsAndNestedElements() throws IOException {
+        MappedFile.Cursor cursor = cursorFor(XML);
+        XmlElementScanner scanner = new XmlElementScanner(cursor, "item", 0, file.size());
+
+        assertThat(elements(scanner), is(Arrays.asList(
+                "<item id=\"1\" note=\"a > b\"><item id=\"nested\"/><name><![CDATA[</item>]]></name></item>",
+                "<x:item id=\"2\"/>",
+                "<item id=\"3\">é</item>")));
+        assertThat(scanner.nextStart(), is(file.size()));
+    }
+
+    @Test
+    public void nextShouldLeaveElementsStartingAtOrAfterEndToNextRange() throws IOException {
+        MappedFile.Cursor cursor = cursorFor(XML);
+        long secondElement = XML.getBytes(UTF_8).length - "<x:item id=\"2\"/><?pi <item>?><item id=\"3\">é</item></items>".getBytes(UTF_8).length;
+        XmlElementScanner scanner = new XmlElementScanner(cursor, "item", 0, secondElement);
+
+        assertThat(elements(scanner).size(), is(1));
+        assertThat(scanner.nextStart(), is(secondElement));
+    }
+
+    @Test
+    public void namespaceContextShouldReturnDeclarationsOfAncestorsWhenScanningWholeInput() throws IOException {
+        MappedFile.Cursor cursor = cursorFor("<feed xmlns='urn:feed' xmlns:x=\"urn:x\"><item id='1'/>" +
+                "<group xmlns:x='urn:group' xmlns:y='urn:y'><empty xmlns:z='urn:z'/><x:item id='2'/></group>" +
+                "<item id='3'/></feed>");
+        XmlElementScanner scanner = new XmlElementScanner(cursor, "item");
+
+        assertThat(scanner.next(), is(true));
+        assertThat(new String(scanner.namespaceContext(), UTF_8), is(" xmlns='urn:feed' xmlns:x=\"urn:x\""));
+        assertThat(scanner.next(), is(true));
+        assertThat(new String(scanner.namespaceContext(), UTF_8), is(" xmlns='urn:feed' xmlns:x='urn:group' xmlns:y='urn:y'"));
+        assertThat(scanner.next(), is(true));
+        assertThat(new String(scanner.namespaceContext(), UTF_8), is(" xmlns='urn:feed' xmlns:x=\"urn:x\""));
+        assertThat(scanner.next(), is(false));
+    }
+
+    @Test
+    public void requiresContextShouldDetectDocumentTypeDeclaration() throws IOException {
+        MappedFile.Cursor cursor = cursorFor(XML);
+        XmlElementScanner fromStart = new XmlElementScanner(cursor, "item", 0, file.size());
+        elements(fromStart);
+        XmlElementScanner afterRootStartTag = new XmlElementScanner(cursor, "item", XML.indexOf("<!-- <item"), file.size());
+        elements(afterRootStartTag);
+
+        assertThat(fromStart.requiresContext(), is(true));
+        assertThat(afterRootStartTag.requiresContext(), is(false));
+    }
+
+    @Test
+    public void requiresContextShouldDetectNamespacesDeclaredOnOtherElementsThanRootAndElements() throws IOException {
+        assertThat(requiresContext("<feed xmlns='urn:feed'><item xmlns:x='urn:x'/><group id='1'><item/></group></feed>"), is(false));
+        assertThat(requiresContext("<feed xmlns='urn:feed'><item/><group xmlns:x='urn:x'><item/></group></feed>"), is(true));
+        assertThat(requiresContext("<feed><item/><group id='1' xmlns='urn:group'><item/></group></feed>"), is(true));
+    }
+
+    @Test
+    public void alignShouldReturnFirstMatchingStartTagEvenInMarkup() throws IOException {
+        MappedFile.Cursor cursor = cursorFor(XML);
+
+        assertThat(XmlElementScanner.align(cursor, "item", 0), is((long) XML.indexOf("<item>")));
+        assertThat(XmlElementScanner.align(cursor, "item", XML.indexOf("-->")), is((long) XML.indexOf("<item id=\"1\"")));
+        assertThat(XmlElementScanner.align(cursor, "item", XML.indexOf("<x:item")), is((long) XML.indexOf("<x:item")));
+        assertThat(XmlElementScanner.align(cursor, "unknown", 0), is(file.size()));
+    }
+
+    @Test
+    public void rootNamespaceDeclarationsShouldOnlyReturnNamespaceDeclarationsOfRootElement() throws IOException {
+        MappedFile.Cursor cursor = cursorFor(XML);
+
+        assertThat(new String(XmlElementScanner.rootNamespaceDeclarations(cursor), UTF_8), is(" xmlns:x=\"urn:x\""));
+    }
+
+    private boolean requiresContext(final String xml) throws IOException {
+        final MappedFile.Cursor cursor = cursorFor(xml);
+        final XmlElementScanner scanner = new XmlElementScanner(cursor, "item", 0, file.size());
+        try {
+            int elements = 0;
+            while (scanner.next()) {
+                ++elements;
+            }
+            assertThat(elements, is(2));
+            return scanner.requiresContext();
+        } finally {
+            file.close();
+            file = null;
+        }
+    }
+
+    private MappedFile.Cursor cursorFor(final String xml) throws IOException {
+        final Path path = folder.newFile().toPath();
+        Files.write(path, xml.getBytes(UTF_8));
+        file = new MappedFile(path, 16);
+        return file.newCursor();
+    }
+
+    private List<String> elements(final XmlElementScanner scanner) throws IOException {
+        final byte[] bytes = Files.readAllBytes(folder.getRoot().listFiles()[0].toPath());
+        final List<String> elements = new ArrayList<>();
+        while (scanner.next()) {
+            elements.add(new String(bytes, (int) scanner.elementStart(), (int) (scanner.elementEnd() - scanner.elementStart()), UTF_8));
+        }
+        return elements;
+    }
+}
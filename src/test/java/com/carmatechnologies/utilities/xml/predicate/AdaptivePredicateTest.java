@@ -0,0 +1,92 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AdaptivePredicateTest {
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    private final Predicate<Integer> even = i -> (i % 2) == 0;
+    private final Predicate<Integer> multipleOfThree = i -> (i % 3) == 0;
+
+    @Test
+    public void allOfShouldMatchValuesMatchedByAllPredicates() {
+        final Predicate<Integer> predicate = AdaptivePredicate.allOf(Arrays.asList(even, multipleOfThree));
+        for (int i = 0; i < 10000; ++i) {
+            assertThat(predicate.test(i), is((i % 6) == 0));
+        }
+    }
+
+    @Test
+    public void anyOfShouldMatchValuesMatchedByAnyPredicate() {
+        final Predicate<Integer> predicate = AdaptivePredicate.anyOf(Arrays.asList(even, multipleOfThree));
+        for (int i = 0; i < 10000; ++i) {
+            assertThat(predicate.test(i), is(((i % 2) == 0) || ((i % 3) == 0)));
+        }
+    }
+
+    @Test
+    public void notShouldMatchValuesNotMatchedByPredicate() {
+        final Predicate<Integer> predicate = AdaptivePredicate.not(AdaptivePredicate.anyOf(Arrays.asList(even, multipleOfThree)));
+        assertThat(predicate.test(7), is(true));
+        assertThat(predicate.test(9), is(false));
+    }
+
+    @Test
+    public void allOfShouldEvaluateTheCheapestMostSelectivePredicateFirst() {
+        final AtomicLong slowCalls = new AtomicLong();
+        final Predicate<Integer> slowAndUnselective = i -> {
+            slowCalls.incrementAndGet();
+            busyWait(20000);
+            return true;
+        };
+        final Predicate<Integer> fastAndSelective = i -> (i % 10) == 0;
+        final AdaptivePredicate<Integer> predicate = AdaptivePredicate.allOf(Arrays.asList(slowAndUnselective, fastAndSelective));
+        for (int i = 0; i < 10000; ++i) {
+            assertThat(predicate.test(i), is((i % 10) == 0));
+        }
+        assertThat(predicate.branches(), is(Arrays.asList(fastAndSelective, slowAndUnselective)));
+        assertThat(slowCalls.get() < 3000, is(true)); // 1024 before the first reordering, then about 1 in 10, and sampled ones.
+    }
+
+    @Test
+    public void anyOfShouldEvaluateTheCheapestMostSelectivePredicateFirst() {
+        final Predicate<Integer> slow = i -> {
+            busyWait(20000);
+            return (i % 10) == 0;
+        };
+        final Predicate<Integer> fast = i -> (i % 10) == 0;
+        final AdaptivePredicate<Integer> predicate = AdaptivePredicate.anyOf(Arrays.asList(slow, fast));
+        for (int i = 0; i < 5000; ++i) {
+            predicate.test(i);
+        }
+        assertThat(predicate.branches(), is(Arrays.asList(fast, slow)));
+    }
+
+    @Test
+    public void allOfShouldThrowIllegalArgumentExceptionIfThereIsNoPredicate() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Predicates must NOT be empty."));
+
+        AdaptivePredicate.allOf(Collections.<Predicate<Integer>>emptyList());
+    }
+
+    private static void busyWait(final long nanos) {
+        final long end = System.nanoTime() + nanos;
+        while (System.nanoTime() < end) {
+            // Simulates an expensive predicate.
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.parseDomTree;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class AhoCorasickWhiteListTest {
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void containingShouldMatchValuesContainingAnyKeyword() {
+        final WhiteList whiteList = WhiteList.containing(Sets.newHashSet("he", "she", "his", "hers"));
+        assertThat(whiteList.contains("ushers"), is(true));
+        assertThat(whiteList.contains("this"), is(true));
+        assertThat(whiteList.contains("he"), is(true));
+        assertThat(whiteList.contains("ahishe"), is(true));
+        assertThat(whiteList.contains("hi"), is(false));
+        assertThat(whiteList.contains("sh"), is(false));
+        assertThat(whiteList.contains(""), is(false));
+    }
+
+    @Test
+    public void containingShouldFollowFailureLinksToFindKeywordsEndingInsideOthers() {
+        final WhiteList whiteList = WhiteList.containing(Sets.newHashSet("abcd", "bc"));
+        assertThat(whiteList.contains("xabcx"), is(true));
+        assertThat(whiteList.contains("xabx"), is(false));
+
+        final WhiteList overlapping = WhiteList.containing(Sets.newHashSet("aab"));
+        assertThat(overlapping.contains("aaab"), is(true));
+        assertThat(overlapping.contains("abaa"), is(false));
+    }
+
+    @Test
+    public void startingWithShouldOnlyMatchValuesStartingWithAnyPrefix() {
+        final WhiteList whiteList = WhiteList.startingWith(Sets.newHashSet("978-0", "979-10", "ISBN"));
+        assertThat(whiteList.contains("978-0-596-00292-4"), is(true));
+        assertThat(whiteList.contains("979-10-90636-07-1"), is(true));
+        assertThat(whiteList.contains("ISBN"), is(true));
+        assertThat(whiteList.contains("979-1"), is(false));
+        assertThat(whiteList.contains("0-978-0"), is(false));
+        assertThat(whiteList.contains("isbn"), is(false));
+    }
+
+    @Test
+    public void whiteListsShouldCheckRangesOfCharacters() {
+        final char[] chars = "a magician!".toCharArray();
+        assertThat(WhiteList.containing(Sets.newHashSet("magic")).contains(chars, 2, 8), is(true));
+        assertThat(WhiteList.containing(Sets.newHashSet("magician!")).contains(chars, 2, 8), is(false));
+        assertThat(WhiteList.startingWith(Sets.newHashSet("magic")).contains(chars, 2, 8), is(true));
+        assertThat(WhiteList.startingWith(Sets.newHashSet("magic")).contains(chars, 0, 8), is(false));
+    }
+
+    @Test
+    public void containingShouldMatchLikeStringContainsForManyKeywords() {
+        final Random random = new Random(42);
+        final Set<String> keywords = new HashSet<>();
+        while (keywords.size() < 2000) {
+            keywords.add(randomString(random, 1 + random.nextInt(6)));
+        }
+        final WhiteList containing = WhiteList.containing(keywords);
+        final WhiteList startingWith = WhiteList.startingWith(keywords);
+        for (int i = 0; i < 2000; ++i) {
+            final String value = randomString(random, random.nextInt(20));
+            assertThat(value, containing.contains(value), is(keywords.stream().anyMatch(value::contains)));
+            assertThat(value, startingWith.contains(value), is(keywords.stream().anyMatch(value::startsWith)));
+        }
+    }
+
+    @Test
+    public void containingShouldFilterDomTrees() throws XPathExpressionException {
+        final WhiteList whiteList = WhiteList.containing(Sets.newHashSet("gic", "ppp"));
+        assertThat(new XPathSetPredicate("//book/tags/tag/text()", whiteList).test(parseDomTree(streamFor("/books.xml"))), is(true));
+        assertThat(new XPathSetPredicate("//book/title/text()", whiteList).test(parseDomTree(streamFor("/books.xml"))), is(false));
+    }
+
+    @Test
+    public void containingShouldSanitizeInputAndThrowIllegalArgumentExceptionIfSetIsEmptyAfterSanitization() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("White-list set must NOT be empty."));
+
+        WhiteList.containing(Sets.newHashSet("  ", null, "", "      "));
+    }
+
+    private static String randomString(final Random random, final int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            builder.append((char) ('a' + random.nextInt(4)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,131 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.math.BigDecimal;
+import java.time.OffsetDateTime;
+import java.util.Random;
+
+import static com.carmatechnologies.utilities.xml.predicate.ComparisonPredicate.Operator.GREATER;
+import static com.carmatechnologies.utilities.xml.predicate.ComparisonPredicate.Operator.LESS;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class ComparisonPredicateTest {
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void decimalComparisonsShouldBeExactWhateverTheScale() {
+        assertThat(test(">", "30", "30.00"), is(false));
+        assertThat(test(">=", "30", "30.00"), is(true));
+        assertThat(test("=", "30", " 30.000 \n"), is(true));
+        assertThat(test(">", "30", "30.01"), is(true));
+        assertThat(test("<", "29.99", "29.989"), is(true));
+        assertThat(test("!=", "-4.99", "-4.990"), is(false));
+        assertThat(test("<", "0", "-0.001"), is(true));
+        assertThat(test(">", "9223372036854775807", "9223372036854775808"), is(true));
+        assertThat(test("<", "0.5", ".4"), is(true));
+    }
+
+    @Test
+    public void textWhichIsNotANumberShouldNeverMatch() {
+        for (final String operator : new String[]{"=", "!=", "<", "<=", ">", ">="}) {
+            assertThat(operator, test(operator, "30", ""), is(false));
+            assertThat(operator, test(operator, "30", "thirty"), is(false));
+            assertThat(operator, test(operator, "30", "30 EUR"), is(false));
+            assertThat(operator, test(operator, "30", "3.0.0"), is(false));
+            assertThat(operator, test(operator, "1e3", "1e"), is(false));
+            assertThat(operator, test(operator, "2005-01-01", "2005-02-30"), is(false));
+        }
+    }
+
+    @Test
+    public void decimalComparisonsShouldMatchBigDecimalComparisons() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            final BigDecimal value = randomDecimal(random);
+            final BigDecimal text = randomDecimal(random);
+            final String textString = text.toPlainString();
+            assertThat(value + " < " + textString, ComparisonPredicate.ofDecimal(LESS, value).test(textString.toCharArray(), 0, textString.length()),
+                    is(text.compareTo(value) < 0));
+            assertThat(value + " > " + textString, ComparisonPredicate.ofDecimal(GREATER, value).test(textString.toCharArray(), 0, textString.length()),
+                    is(text.compareTo(value) > 0));
+        }
+    }
+
+    @Test
+    public void doubleComparisonsShouldMatchParsedDoubleComparisons() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 10000; ++i) {
+            final double value = Double.parseDouble(randomDecimal(random) + "e" + (random.nextInt(60) - 30));
+            final String text = randomDecimal(random).toPlainString() + ((random.nextInt(4) == 0) ? "" : ("E" + (random.nextInt(60) - 30)));
+            final double parsed = Double.parseDouble(text);
+            assertThat(value + " < " + text, ComparisonPredicate.ofDouble(LESS, value).test(text.toCharArray(), 0, text.length()), is(parsed < value));
+            assertThat(value + " > " + text, ComparisonPredicate.ofDouble(GREATER, value).test(text.toCharArray(), 0, text.length()), is(parsed > value));
+        }
+        assertThat(test("=", "1.5e3", "1500"), is(true));
+        assertThat(test("<", "1e400", "1e308"), is(true));
+    }
+
+    @Test
+    public void dateComparisonsShouldBeChronologicalWhateverTheOffset() {
+        assertThat(test(">=", "2005-01-01", "2005-01-01"), is(true));
+        assertThat(test(">", "2005-01-01", "2004-12-31T23:59:59.999"), is(false));
+        assertThat(test(">", "2005-01-01", "2005-01-01T00:00:00.001Z"), is(true));
+        assertThat(test("=", "2005-01-01T10:00Z", "2005-01-01T11:00+01:00"), is(true));
+        assertThat(test("<", "2005-01-01T10:00:00Z", "2005-01-01T10:00:00-00:30"), is(false));
+        assertThat(test(">", "2005-01-01T10:00:00Z", "2005-01-01T10:00:00-00:30"), is(true));
+        assertThat(test("=", "2004-02-29", "2004-02-29"), is(true));
+        assertThat(test("=", "2005-03-01", "2005-02-29"), is(false));
+    }
+
+    @Test
+    public void datesShouldBeConvertedToTheSameInstantsAsJavaTime() {
+        final Random random = new Random(42);
+        for (int i = 0; i < 1000; ++i) {
+            final OffsetDateTime dateTime = OffsetDateTime.parse(String.format("%04d-%02d-%02dT%02d:%02d:%02d.%03d+%02d:%02d", random.nextInt(10000),
+                    1 + random.nextInt(12), 1 + random.nextInt(28), random.nextInt(24), random.nextInt(60), random.nextInt(60), random.nextInt(1000),
+                    random.nextInt(15), random.nextInt(60)));
+            final String text = dateTime.toString();
+            final OffsetDateTime next = dateTime.plusNanos(1000000);
+            assertThat(text, test("=", next.toString(), text), is(false));
+            assertThat(text, test("<", next.toString(), text), is(true));
+            assertThat(text, test("=", dateTime.atZoneSameInstant(java.time.ZoneOffset.UTC).toString(), text), is(true));
+        }
+    }
+
+    @Test
+    public void ofShouldThrowIllegalArgumentExceptionForInvalidOperator() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Invalid comparison operator \"=>\": expected one of =, !=, <, <=, >, >=."));
+
+        ComparisonPredicate.of("=>", "30");
+    }
+
+    @Test
+    public void ofShouldThrowIllegalArgumentExceptionForInvalidValue() {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("Invalid value \"30 EUR\": expected a number, or an ISO-8601 date or date-time."));
+
+        ComparisonPredicate.of(">", "30 EUR");
+    }
+
+    private static boolean test(final String operator, final String value, final String text) {
+        final char[] chars = ("[" + text + "]").toCharArray();
+        return ComparisonPredicate.of(operator, value).test(chars, 1, text.length());
+    }
+
+    private static BigDecimal randomDecimal(final Random random) {
+        final int digits = 1 + random.nextInt(22);
+        final StringBuilder builder = new StringBuilder(random.nextBoolean() ? "-" : "");
+        for (int i = 0; i < digits; ++i) {
+            builder.append((char) ('0' + random.nextInt(10)));
+        }
+        return new BigDecimal(builder.toString()).movePointLeft(random.nextInt(digits + 2));
+    }
+}
@@ -0,0 +1,130 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import com.google.common.collect.Lists;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.parseDomTree;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+public class MappedWhiteListTest {
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void mappedWhiteListShouldContainAllValuesOfTheWhiteListAndOnlyThese() throws IOException {
+        final List<String> values = new ArrayList<>();
+        for (int i = 0; i < 10000; ++i) {
+            values.add("value-" + i);
+        }
+        try (MappedWhiteList whiteList = open(values)) {
+            for (int i = 0; i < 10000; ++i) {
+                assertThat(whiteList.contains("value-" + i), is(true));
+                assertThat(whiteList.contains("value-" + (10000 + i)), is(false));
+            }
+            assertThat(whiteList.contains(""), is(false));
+            assertThat(whiteList.contains("value-"), is(false));
+        }
+    }
+
+    @Test
+    public void mappedWhiteListShouldSanitizeValuesLikeInMemoryWhiteLists() throws IOException {
+        try (MappedWhiteList whiteList = open(Lists.newArrayList("  magician  ", "", "     xml    ", "   ", "xml"))) {
+            assertThat(whiteList.contains("magician"), is(true));
+            assertThat(whiteList.contains("xml"), is(true));
+            assertThat(whiteList.contains("  magician  "), is(false));
+        }
+    }
+
+    @Test
+    public void mappedWhiteListShouldCompareNonAsciiValuesOnTheirUtf8Bytes() throws IOException {
+        final String longValue = new String(new char[1000]).replace('\0', 'é');
+        try (MappedWhiteList whiteList = open(Lists.newArrayList("café", "日本語", "😀 smile", longValue))) {
+            assertThat(whiteList.contains("café"), is(true));
+            assertThat(whiteList.contains("日本語"), is(true));
+            assertThat(whiteList.contains("😀 smile"), is(true));
+            assertThat(whiteList.contains(longValue), is(true));
+            assertThat(whiteList.contains(new StringBuilder("xcafé").deleteCharAt(0)), is(true));
+            assertThat(whiteList.contains("cafe"), is(false));
+            assertThat(whiteList.contains("日本"), is(false));
+            assertThat(whiteList.contains("\uD83D smile"), is(false));
+        }
+    }
+
+    @Test
+    public void mappedWhiteListShouldCheckRangesOfCharacters() throws IOException {
+        try (MappedWhiteList whiteList = open(Lists.newArrayList("magician"))) {
+            final char[] chars = "a magician!".toCharArray();
+            assertThat(whiteList.contains(chars, 2, 8), is(true));
+            assertThat(whiteList.contains(chars, 2, 9), is(false));
+        }
+    }
+
+    @Test
+    public void mappedWhiteListShouldFilterDomTreesLikeInMemoryWhiteLists() throws Exception {
+        try (MappedWhiteList whiteList = open(Lists.newArrayList("magician", "xml"))) {
+            assertThat(new XPathSetPredicate("//book/tags/tag/text()", whiteList).test(parseDomTree(streamFor("/books.xml"))), is(true));
+        }
+        try (MappedWhiteList whiteList = open(Lists.newArrayList("non-existant", "not here!"))) {
+            assertThat(new XPathSetPredicate("//book/tags/tag/text()", whiteList).test(parseDomTree(streamFor("/books.xml"))), is(false));
+        }
+    }
+
+    @Test
+    public void buildShouldReplaceExistingIndex() throws IOException {
+        final Path source = folder.newFile().toPath();
+        final Path index = folder.newFile().toPath();
+        Files.write(source, Lists.newArrayList("magician"), UTF_8);
+        MappedWhiteList.build(source, index);
+        Files.write(source, Lists.newArrayList("xml"), UTF_8);
+        MappedWhiteList.build(source, index);
+        try (MappedWhiteList whiteList = MappedWhiteList.open(index)) {
+            assertThat(whiteList.contains("xml"), is(true));
+            assertThat(whiteList.contains("magician"), is(false));
+        }
+    }
+
+    @Test
+    public void buildShouldThrowIllegalArgumentExceptionIfWhiteListIsEmptyAfterSanitization() throws IOException {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage(equalTo("White-list set must NOT be empty."));
+
+        open(Lists.newArrayList("  ", "", "      "));
+    }
+
+    @Test
+    public void openShouldThrowIOExceptionIfFileIsNotAnIndex() throws IOException {
+        final Path index = folder.newFile().toPath();
+        Files.write(index, Lists.newArrayList("magician", "xml"), UTF_8);
+
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage(startsWith("Not a white-list index file: "));
+
+        MappedWhiteList.open(index);
+    }
+
+    private MappedWhiteList open(final List<String> values) throws IOException {
+        final Path source = folder.newFile().toPath();
+        final Path index = folder.newFile().toPath();
+        Files.write(source, values, UTF_8);
+        MappedWhiteList.build(source, index);
+        return MappedWhiteList.open(index);
+    }
+}
@@ -0,0 +1,209 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import com.carmatechnologies.utilities.xml.common.DocumentBuilderFactoryImpl;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.xpath.XPath;
+import javax.xml.xpath.XPathExpression;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StreamingXPathPredicateTest {
+
+    private static final String BOOKS = "<bookstore>" +
+            "<book category=\"COOKING\"><title lang=\"en\">Everyday Italian</title><author>Giada De Laurentiis</author>" +
+            "<tags><tag>italian</tag><tag>food</tag></tags></book>" +
+            "<book category=\"WEB\"><title lang=\"fr\">XQuery <![CDATA[Kick]]> Start</title><author>James McGovern</author><author>Per Bothner</author>" +
+            "<tags><tag>learning</tag><!-- comment --><tag>xq<b>u</b>ery</tag></tags></book>" +
+            "<book><title>Nested <book category=\"INNER\"><title>Inner</title></book></title></book>" +
+            "<book xmlns=\"urn:other\" category=\"WEB\"><title>Namespaced</title></book>" +
+            "</bookstore>";
+
+    private static final String PRICED_BOOKS = "<bookstore>" +
+            "<book category=\"COOKING\"><title>Everyday Italian</title><year>2005</year><price>30.00</price></book>" +
+            "<book category=\"WEB\"><title>XQuery Kick Start</title><year>2006</year><price> 49.99 </price></book>" +
+            "<book category=\"WEB\"><title>Learning XML</title><year>2003-01-01</year><price>39.95</price></book>" +
+            "<book><title>Priceless</title><price>N/A</price></book>" +
+            "</bookstore>";
+
+    private static final String[] QUERIES = {
+            "//book",
+            "/book",
+            "book",
+            "//book[@category]",
+            "//book[@category = 'WEB']",
+            "/book[@category = 'WEB']/title",
+            "//book/title[@lang = 'fr']",
+            "//title/@lang",
+            "//book/author[2]",
+            "//book/author[3]",
+            "/book/*[1]",
+            "//*[@category = 'INNER']",
+            "//book//title",
+            "//book/tags/tag[text() = 'food']",
+            "//book/tags/tag[text() = 'xq']",
+            "//book/tags/tag[text() = 'xquery']",
+            "//book/tags/tag[. = 'xquery']",
+            "//title[. = 'XQuery Kick Start']",
+            "//title[text() = 'XQuery Kick Start']",
+            "//title[text() = 'Nested ']",
+            "//book/tags/tag/text()",
+            "//nonexistent",
+    };
+
+    @Test
+    public void streamingXPathPredicateShouldMatchTheSameElementsAsXPathPredicate() throws Exception {
+        for (final String query : QUERIES) {
+            final StreamingXPathPredicate streaming = StreamingXPathPredicate.exists(StreamingXPath.compile(query).get());
+            assertThat(query, evaluate(streaming), is(evaluate(new XPathPredicate(query))));
+        }
+    }
+
+    @Test
+    public void streamingXPathPredicateShouldMatchTheSameElementsAsXPathSetPredicate() throws Exception {
+        final Set<String> whiteList = Sets.newHashSet("food", "xquery", "en", "Inner", "XQuery Kick Start", "Per Bothner");
+        for (final String query : QUERIES) {
+            final StreamingXPathPredicate streaming = StreamingXPathPredicate.in(StreamingXPath.compile(query).get(), whiteList);
+            assertThat(query, evaluate(streaming), is(evaluate(new XPathSetPredicate(query, whiteList))));
+        }
+    }
+
+    @Test
+    public void streamingXPathPredicateShouldMatchTheSameElementsAsXPathTextPredicate() throws Exception {
+        final String[] comparisons = {"=", "2005", "!=", "0", "<", "40", ">", "2004-12-31"};
+        for (final String query : new String[]{"//book/@category", "//book/title", "//year", "//book/price/text()", "//book[@category = 'WEB']/price"}) {
+            for (int i = 0; i < comparisons.length; i += 2) {
+                final ComparisonPredicate condition = ComparisonPredicate.of(comparisons[i], comparisons[i + 1]);
+                final StreamingXPathPredicate streaming = new StreamingXPathPredicate(StreamingXPath.compile(query).get(), condition);
+                assertThat(query, evaluate(streaming, PRICED_BOOKS), is(evaluate(new XPathTextPredicate(query, condition), PRICED_BOOKS)));
+            }
+        }
+    }
+
+    @Test
+    public void allOfShouldOnlyMatchElementsMatchedByAllPredicates() throws Exception {
+        final StreamingPredicate predicate = StreamingPredicates.allOf(Arrays.asList(
+                new StreamingXPathPredicate(StreamingXPath.compile("//price").get(), ComparisonPredicate.of(">", "30")),
+                new StreamingXPathPredicate(StreamingXPath.compile("//year").get(), ComparisonPredicate.of(">=", "2005"))));
+        assertThat(evaluate(predicate, PRICED_BOOKS), is(Arrays.asList(false, true, false, false)));
+    }
+
+    @Test
+    public void anyOfShouldMatchElementsMatchedByAnyPredicate() throws Exception {
+        final StreamingPredicate predicate = StreamingPredicates.anyOf(Arrays.asList(
+                new StreamingXPathPredicate(StreamingXPath.compile("//price").get(), ComparisonPredicate.of(">", "40")),
+                StreamingXPathPredicate.exists(StreamingXPath.compile("//book[@category = 'COOKING']").get())));
+        assertThat(evaluate(predicate, PRICED_BOOKS), is(Arrays.asList(true, true, false, false)));
+    }
+
+    @Test
+    public void observingShouldOnlyMatchElementsMatchedByThePredicate() throws Exception {
+        final StreamingXPathValue category = new StreamingXPathValue(StreamingXPath.compile("//book/@category").get());
+        final StreamingPredicate predicate = StreamingPredicates.observing(
+                new StreamingXPathPredicate(StreamingXPath.compile("//price").get(), ComparisonPredicate.of(">", "35")), category);
+        assertThat(evaluate(predicate, PRICED_BOOKS), is(Arrays.asList(false, true, true, false)));
+        assertThat(evaluate(predicate, PRICED_BOOKS, category::value), is(Arrays.asList("COOKING", "WEB", "WEB", "")));
+    }
+
+    @Test
+    public void streamingXPathValueShouldBeTheStringValueOfTheFirstSelectedNode() throws Exception {
+        final XPath xpath = XPathFactory.newInstance().newXPath();
+        for (final String query : new String[]{"//book/@category", "//title/@lang", "//book/author", "//book/tags/tag", "//book/tags/tag/text()", "//nonexistent"}) {
+            final StreamingXPathValue value = new StreamingXPathValue(StreamingXPath.compile(query).get());
+            final XPathExpression expression = xpath.compile(query);
+            assertThat(query, evaluate(value, BOOKS, value::value), is(map(domTree -> {
+                try {
+                    return expression.evaluate(domTree);
+                } catch (XPathExpressionException e) {
+                    throw new RuntimeException(e);
+                }
+            }, BOOKS)));
+        }
+    }
+
+    @Test
+    public void streamingXPathPredicateShouldBeReusable() throws XMLStreamException {
+        final StreamingXPathPredicate predicate = StreamingXPathPredicate.exists(StreamingXPath.compile("//book[@category = 'WEB']").get());
+        assertThat(evaluate(predicate), is(evaluate(predicate)));
+    }
+
+    /**
+     * @return, for each top-level "book" element, whether the streaming predicate matches.
+     */
+    private static List<Boolean> evaluate(final StreamingPredicate predicate) throws XMLStreamException {
+        return evaluate(predicate, BOOKS);
+    }
+
+    private static List<Boolean> evaluate(final StreamingPredicate predicate, final String books) throws XMLStreamException {
+        return evaluate(predicate, books, predicate::matches);
+    }
+
+    /**
+     * @return, for each top-level "book" element, the result provided once the streaming predicate has seen all of its events.
+     */
+    private static <T> List<T> evaluate(final StreamingPredicate predicate, final String books, final Supplier<T> result) throws XMLStreamException {
+        final XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(new ByteArrayInputStream(books.getBytes(UTF_8)));
+        final List<T> results = new ArrayList<>();
+        reader.nextTag(); // <bookstore>
+        while (reader.nextTag() == XMLEvent.START_ELEMENT) {
+            predicate.reset();
+            int depth = 0;
+            do {
+                if (reader.getEventType() == XMLEvent.START_ELEMENT) {
+                    ++depth;
+                } else if (reader.getEventType() == XMLEvent.END_ELEMENT) {
+                    --depth;
+                }
+                predicate.accept(reader);
+                if (depth > 0) {
+                    reader.next();
+                }
+            } while (depth > 0);
+            results.add(result.get());
+        }
+        return results;
+    }
+
+    /**
+     * @return, for each top-level "book" element, whether the DOM predicate matches the element's DOM tree.
+     */
+    private static List<Boolean> evaluate(final Predicate<Node> predicate) throws Exception {
+        return evaluate(predicate, BOOKS);
+    }
+
+    private static List<Boolean> evaluate(final Predicate<Node> predicate, final String books) throws Exception {
+        return map(predicate::test, books);
+    }
+
+    private static <T> List<T> map(final Function<Node, T> function, final String books) throws Exception {
+        final DocumentBuilder documentBuilder = DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder();
+        final Node bookstore = documentBuilder.parse(new ByteArrayInputStream(books.getBytes(UTF_8))).getDocumentElement();
+        final List<T> results = new ArrayList<>();
+        for (Node book = bookstore.getFirstChild(); book != null; book = book.getNextSibling()) {
+            final Document domTree = documentBuilder.newDocument();
+            domTree.appendChild(domTree.importNode(book, true));
+            results.add(function.apply(domTree));
+        }
+        return results;
+    }
+}
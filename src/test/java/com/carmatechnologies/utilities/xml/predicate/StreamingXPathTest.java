@@ -0,0 +1,50 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import org.junit.Test;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class StreamingXPathTest {
+
+    @Test
+    public void streamableXPathQueriesShouldCompile() {
+        assertStreamable("//book/tags/tag[text() = 'magician']");
+        assertStreamable("//book/tags/tag/text()");
+        assertStreamable("/book[@category='WEB']/title/@lang");
+        assertStreamable("book/author[2]");
+        assertStreamable("//book//tag[. = \"xml\"]");
+        assertStreamable("//*[@category][1]/price");
+        assertStreamable(" //book / title ");
+    }
+
+    @Test
+    public void nonStreamableXPathQueriesShouldNotCompile() {
+        assertNotStreamable("//book[price > 35]/title");
+        assertNotStreamable("//book[title = 'Learning XML']");
+        assertNotStreamable("//book/descendant::*/text()");
+        assertNotStreamable("//ns:book");
+        assertNotStreamable("//book/tags/tag[text() = 'xml']/text()");
+        assertNotStreamable("//book/tags[tag = 'xml']/tag");
+        assertNotStreamable("//book[last()]");
+        assertNotStreamable("//book[0]");
+        assertNotStreamable("count(//book)");
+        assertNotStreamable("//book/..");
+        assertNotStreamable("//@lang");
+        assertNotStreamable("/");
+        assertNotStreamable("~~~clearly not XPath~~");
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void nullXPathQueryShouldThrowNullPointerException() {
+        StreamingXPath.compile(null);
+    }
+
+    private static void assertStreamable(final String xpathQuery) {
+        assertThat(xpathQuery, StreamingXPath.compile(xpathQuery).isPresent(), is(true));
+    }
+
+    private static void assertNotStreamable(final String xpathQuery) {
+        assertThat(xpathQuery, StreamingXPath.compile(xpathQuery).isPresent(), is(false));
+    }
+}
@@ -0,0 +1,77 @@
+package com.carmatechnologies.utilities.xml.predicate;
+
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.transformer.XMLStreamReaderToTinyTreeTransformer;
+import com.google.common.base.Strings;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.moveToFirstElementNamed;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.parseDomTree;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class XPathTextPredicateTest {
+    private static final String LONG_TEXT = Strings.repeat("0123456789", 100);
+    private static final String XML = "<book id=\"42\">" +
+            "<title>Harry <!-- comment --><i>Potter</i><?pi data?> &amp; <![CDATA[<the>]]> Philosopher's Stone</title>" +
+            "<summary>" + LONG_TEXT + "</summary>" +
+            "<price>29.99</price>" +
+            "</book>";
+
+    @Test
+    public void textOfElementsShouldBeTheirTextContent() throws Exception {
+        for (final Node domTree : domTrees()) {
+            assertThat(texts("/book/title", domTree), is(Arrays.asList("Harry Potter & <the> Philosopher's Stone")));
+            assertThat(texts("/book/*", domTree), is(Arrays.asList("Harry Potter & <the> Philosopher's Stone", LONG_TEXT, "29.99")));
+            assertThat(texts("/book/price/text()", domTree), is(Arrays.asList("29.99")));
+        }
+    }
+
+    @Test
+    public void textOfAttributesShouldBeTheirValue() throws Exception {
+        for (final Node domTree : domTrees()) {
+            assertThat(texts("/book/@id", domTree), is(Arrays.asList("42")));
+        }
+    }
+
+    @Test
+    public void xpathTextPredicateShouldEvaluateTheProvidedCondition() throws Exception {
+        for (final Node domTree : domTrees()) {
+            assertThat(new XPathTextPredicate("/book/price", ComparisonPredicate.of(">", "20")).test(domTree), is(true));
+            assertThat(new XPathTextPredicate("/book/price", ComparisonPredicate.of(">", "30")).test(domTree), is(false));
+        }
+    }
+
+    /**
+     * @return the text of each node selected by the provided query, as passed to the predicate's condition.
+     */
+    private static List<String> texts(final String xpathQuery, final Node domTree) throws XPathExpressionException {
+        final List<String> texts = new ArrayList<>();
+        new XPathTextPredicate(xpathQuery, (text, start, length) -> {
+            texts.add(new String(text, start, length));
+            return false; // So that all selected nodes are evaluated.
+        }).test(domTree);
+        return texts;
+    }
+
+    /**
+     * @return the same element, as a DOM tree, and as a {@code TinyTree}.
+     */
+    private static List<Node> domTrees() throws XMLStreamException {
+        final List<Node> domTrees = new ArrayList<>();
+        domTrees.add(parseDomTree(XML));
+        final XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(new StringReader(XML));
+        moveToFirstElementNamed("book", reader);
+        domTrees.add(new XMLStreamReaderToTinyTreeTransformer().apply(reader));
+        return domTrees;
+    }
+}
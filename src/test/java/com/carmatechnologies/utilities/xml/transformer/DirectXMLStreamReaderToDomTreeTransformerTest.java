@@ -0,0 +1,94 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.DocumentBuilderFactoryImpl;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.transform.TransformerConfigurationException;
+import java.io.ByteArrayInputStream;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.moveToFirstElementNamed;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class DirectXMLStreamReaderToDomTreeTransformerTest {
+
+    private static final String XML = "<library xmlns:x=\"urn:extra\">" +
+            "<book category=\"WEB\" x:id=\"42\" xmlns=\"urn:books\"><title lang=\"en\">XQuery <![CDATA[<Kick>]]> Start &amp; more</title>" +
+            "<!-- comment --><?pi data?><x:tags><x:tag>xquery</x:tag></x:tags></book>" +
+            "<book category=\"CHILDREN\"><title>Harry Potter</title></book>" +
+            "</library>";
+
+    @Test
+    public void directTransformerShouldKeepCDataSectionsCommentsAndNamespaceDeclarations() throws XMLStreamException, ParserConfigurationException {
+        XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        moveToFirstElementNamed("book", reader);
+
+        Node domTree = new DirectXMLStreamReaderToDomTreeTransformer().apply(reader);
+
+        assertThat(domTree.getChildNodes().getLength(), is(1));
+        Element book = (Element) domTree.getFirstChild();
+        assertThat(book.getNamespaceURI(), is("urn:books"));
+        assertThat(book.getAttributeNS("urn:extra", "id"), is("42"));
+        // Declared by an ancestor, outside of the DOM tree:
+        assertThat(book.getAttributeNS(XMLConstants.XMLNS_ATTRIBUTE_NS_URI, "x"), is("urn:extra"));
+
+        NodeList title = book.getFirstChild().getChildNodes();
+        assertThat(title.getLength(), is(3));
+        assertThat(title.item(0).getNodeValue(), is("XQuery "));
+        assertThat(title.item(1).getNodeType(), is(Node.CDATA_SECTION_NODE));
+        assertThat(title.item(1).getNodeValue(), is("<Kick>"));
+        assertThat(title.item(2).getNodeValue(), is(" Start & more"));
+
+        assertThat(book.getChildNodes().item(1).getNodeType(), is(Node.COMMENT_NODE));
+        assertThat(book.getChildNodes().item(2).getNodeType(), is(Node.PROCESSING_INSTRUCTION_NODE));
+        assertThat(book.getLastChild().getFirstChild().getTextContent(), is("xquery"));
+
+        // The reader should have moved to the next book:
+        assertThat(reader.getEventType(), is(XMLEvent.START_ELEMENT));
+        assertThat(reader.getLocalName(), is("book"));
+    }
+
+    @Test
+    public void directTransformerShouldBuildSameDomTreesAsIdentityTransformerForIndentedInput() throws XMLStreamException, ParserConfigurationException, TransformerConfigurationException {
+        XMLStreamReader directReader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(streamFor("/books.xml"));
+        XMLStreamReader identityReader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(streamFor("/books.xml"));
+        moveToFirstElementNamed("book", directReader);
+        moveToFirstElementNamed("book", identityReader);
+
+        Node actual = new DirectXMLStreamReaderToDomTreeTransformer().apply(directReader);
+        Node expected = new XMLStreamReaderToDomTreeTransformer().apply(identityReader);
+
+        assertTrue(actual.isEqualNode(expected));
+        assertThat(directReader.getEventType(), is(XMLEvent.CHARACTERS));
+    }
+
+    @Test
+    public void directTransformerShouldRecycleDocumentWhenConfiguredTo() throws XMLStreamException, ParserConfigurationException {
+        XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        DirectXMLStreamReaderToDomTreeTransformer transformer = new DirectXMLStreamReaderToDomTreeTransformer(DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder(), true);
+
+        moveToFirstElementNamed("book", reader);
+        Node first = transformer.apply(reader);
+        assertThat(first.getFirstChild().getAttributes().getNamedItem("category").getNodeValue(), is("WEB"));
+
+        Node second = transformer.apply(reader);
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.getChildNodes().getLength(), is(1));
+        assertThat(second.getFirstChild().getAttributes().getNamedItem("category").getNodeValue(), is("CHILDREN"));
+        assertThat(second.getFirstChild().getTextContent(), is("Harry Potter"));
+    }
+
+}
@@ -0,0 +1,85 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.moveToFirstElementNamed;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.parseDomTree;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class DomTreeToJsonOutputStreamTransformerTest {
+
+    private static final String XML = "<book category=\"WEB\" xmlns:x=\"urn:x\">\n" +
+            "  <title lang=\"en\">XQuery <![CDATA[<Kick>]]> Start</title>\n" +
+            "  <!-- comment -->\n" +
+            "  <author>James McGovern</author>\n" +
+            "  <author>Per \"Quoted\" Bothner</author>\n" +
+            "  <year>2003</year>\n" +
+            "  <x:tags><x:tag>xquery</x:tag></x:tags>\n" +
+            "  <summary/>\n" +
+            "</book>";
+
+    @Test
+    public void elementShouldBeWrittenAsJsonObjectOnItsOwnLine() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new DomTreeToJsonOutputStreamTransformer().apply(MutablePair.of(parseDomTree(XML), out));
+
+        assertThat(new String(out.toByteArray(), UTF_8), is("{\"@category\":\"WEB\"," +
+                "\"title\":{\"@lang\":\"en\",\"#text\":\"XQuery <Kick> Start\"}," +
+                "\"author\":[\"James McGovern\",\"Per \\\"Quoted\\\" Bothner\"]," +
+                "\"year\":\"2003\"," +
+                "\"x:tags\":{\"x:tag\":\"xquery\"}," +
+                "\"summary\":\"\"}\n"));
+    }
+
+    @Test
+    public void mappingsShouldBeConfigurable() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        DomTreeToJsonOutputStreamTransformer transformer = DomTreeToJsonOutputStreamTransformer.builder()
+                .attributePrefix("")
+                .textKey("value")
+                .arrays(Sets.newHashSet("x:tag"))
+                .build();
+
+        transformer.apply(MutablePair.of(parseDomTree("<book id=\"1\"><title lang=\"en\">Learning XML</title><x:tags xmlns:x=\"urn:x\"><x:tag>xml</x:tag></x:tags></book>"), out));
+        transformer.apply(MutablePair.of(parseDomTree("<book>Text <b>only</b></book>"), out));
+
+        assertThat(out.toString(), is("{\"id\":\"1\",\"title\":{\"lang\":\"en\",\"value\":\"Learning XML\"},\"x:tags\":{\"x:tag\":[\"xml\"]}}\n" +
+                "{\"b\":\"only\",\"value\":\"Text \"}\n"));
+    }
+
+    @Test
+    public void allChildElementsShouldBeWrittenAsArraysIfConfigured() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        DomTreeToJsonOutputStreamTransformer.builder().alwaysArrays().build()
+                .apply(MutablePair.of(parseDomTree("<book><title>Learning XML</title><tags><tag>xml</tag></tags></book>"), out));
+
+        assertThat(out.toString(), is("{\"title\":[\"Learning XML\"],\"tags\":[{\"tag\":[\"xml\"]}]}\n"));
+    }
+
+    @Test
+    public void tinyTreesShouldBeWrittenLikeDomTrees() throws XMLStreamException {
+        XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        moveToFirstElementNamed("book", reader);
+        Node tinyTree = new XMLStreamReaderToTinyTreeTransformer(true).apply(reader);
+        ByteArrayOutputStream tinyOut = new ByteArrayOutputStream();
+        ByteArrayOutputStream domOut = new ByteArrayOutputStream();
+
+        new DomTreeToJsonOutputStreamTransformer().apply(MutablePair.of(tinyTree, tinyOut));
+        new DomTreeToJsonOutputStreamTransformer().apply(MutablePair.of(parseDomTree(XML), domOut));
+
+        assertThat(tinyOut.toString(), is(domOut.toString()));
+    }
+}
@@ -0,0 +1,52 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPath;
+import com.carmatechnologies.utilities.xml.predicate.StreamingXPathPredicate;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.moveToFirstElementNamed;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.removeWhitespaceNodes;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.not;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+
+public class FilteringXMLStreamReaderToDomTreeTransformerTest {
+
+    @Test
+    public void filteringTransformerShouldOnlyTransformMatchingElementsAsDomTrees() throws XMLStreamException, ParserConfigurationException {
+        XMLStreamReader reader = XMLInputFactoryImpl.newInstance().createXMLStreamReader(streamFor("/books.xml"));
+        moveToFirstElementNamed("book", reader);
+        FilteringXMLStreamReaderToDomTreeTransformer transformer = new FilteringXMLStreamReaderToDomTreeTransformer(
+                StreamingXPathPredicate.exists(StreamingXPath.compile("//book/tags/tag[text() = 'magician']").get()));
+
+        // First book does not match, and the reader should have moved past it:
+        assertThat(transformer.apply(reader), is(nullValue()));
+        assertThat(reader.getEventType(), is(XMLEvent.CHARACTERS));
+
+        // Second book matches:
+        moveToFirstElementNamed("book", reader);
+        Node domTree = transformer.apply(reader);
+
+        removeWhitespaceNodes(domTree);
+        assertThat(domTree, is(not(nullValue())));
+        assertThat(domTree.getChildNodes().getLength(), is(1));
+
+        Node book = domTree.getFirstChild();
+        assertThat(book.getLocalName(), is("book"));
+        assertThat(book.getAttributes().getNamedItem("category").getNodeValue(), is("CHILDREN"));
+
+        Node title = book.getFirstChild();
+        assertThat(title.getLocalName(), is("title"));
+        assertThat(title.getFirstChild().getNodeValue(), is("Harry Potter"));
+    }
+
+}
@@ -0,0 +1,134 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.google.common.io.ByteStreams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.parseDomTree;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class PartitioningOutputStreamTransformerTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void elementsShouldBeWrittenToTheFileOfTheirKey() throws XPathExpressionException, IOException {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (PartitioningOutputStreamTransformer transformer = PartitioningOutputStreamTransformer.builder("//book/@category", titles(), prefix()).build()) {
+            transform(transformer, out, "COOKING", "Everyday Italian");
+            transform(transformer, out, "WEB", "Learning XML");
+            transform(transformer, out, "COOKING", "Pasta");
+            transform(transformer, out, "web/../news", "Daily");
+        }
+
+        assertThat(read("books-COOKING.xml"), is("Everyday Italian\nPasta\n"));
+        assertThat(read("books-WEB.xml"), is("Learning XML\n"));
+        assertThat(read("books-web%2F..%2Fnews.xml"), is("Daily\n"));
+        assertThat(out.size(), is(0));
+    }
+
+    @Test
+    public void keysDifferingOnlyByUnsafeCharactersShouldBeWrittenToDistinctFiles() throws XPathExpressionException, IOException {
+        try (PartitioningOutputStreamTransformer transformer = PartitioningOutputStreamTransformer.builder("//book/@category", titles(), prefix()).build()) {
+            transform(transformer, null, "C++", "Plus");
+            transform(transformer, null, "C__", "Underscore");
+            transform(transformer, null, "a/b", "Slash");
+            transform(transformer, null, "a_b", "Underscore");
+            transform(transformer, null, "a%2Fb", "Percent");
+            transform(transformer, null, "caf\u00e9", "Accent");
+        }
+
+        assertThat(read("books-C%2B%2B.xml"), is("Plus\n"));
+        assertThat(read("books-C__.xml"), is("Underscore\n"));
+        assertThat(read("books-a%2Fb.xml"), is("Slash\n"));
+        assertThat(read("books-a_b.xml"), is("Underscore\n"));
+        assertThat(read("books-a%252Fb.xml"), is("Percent\n"));
+        assertThat(read("books-caf%C3%A9.xml"), is("Accent\n"));
+        assertThat(folder.getRoot().list().length, is(6));
+    }
+
+    @Test
+    public void leastRecentlyUsedFilesShouldBeClosedAndAppendedToWhenReopened() throws XPathExpressionException, IOException {
+        try (PartitioningOutputStreamTransformer transformer = PartitioningOutputStreamTransformer.builder("//book/@category", titles(), prefix())
+                .maxOpenFiles(1).build()) {
+            for (int i = 0; i < 3; ++i) {
+                transform(transformer, null, "COOKING", "Cooking " + i);
+                transform(transformer, null, "WEB", "Web " + i);
+            }
+        }
+
+        assertThat(read("books-COOKING.xml"), is("Cooking 0\nCooking 1\nCooking 2\n"));
+        assertThat(read("books-WEB.xml"), is("Web 0\nWeb 1\nWeb 2\n"));
+    }
+
+    @Test
+    public void keysShouldBeHashedIntoBuckets() throws XPathExpressionException, IOException {
+        try (PartitioningOutputStreamTransformer transformer = PartitioningOutputStreamTransformer.builder("//book/@category", titles(), prefix())
+                .buckets(2).build()) {
+            for (int i = 0; i < 10; ++i) {
+                transform(transformer, null, "category" + i, "Title " + i);
+            }
+        }
+
+        final String[] files = folder.getRoot().list();
+        Arrays.sort(files);
+        assertThat(files, is(new String[]{"books-0.xml", "books-1.xml"}));
+        assertThat((read("books-0.xml") + read("books-1.xml")).split("\n").length, is(10));
+    }
+
+    @Test
+    public void gzippedFilesShouldRemainValidWhenReopened() throws XPathExpressionException, IOException {
+        try (PartitioningOutputStreamTransformer transformer = PartitioningOutputStreamTransformer.builder("//book/@category", titles(), prefix())
+                .maxOpenFiles(1).gzip().build()) {
+            for (int i = 0; i < 2; ++i) {
+                transform(transformer, null, "COOKING", "Cooking " + i);
+                transform(transformer, null, "WEB", "Web " + i);
+            }
+        }
+
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(new File(folder.getRoot(), "books-COOKING.xml.gz").toPath()))) {
+            assertThat(new String(ByteStreams.toByteArray(in), UTF_8), is("Cooking 0\nCooking 1\n"));
+        }
+    }
+
+    @Test
+    public void filesShouldBeOverwrittenOnceTransformerIsClosedAndUsedAgain() throws XPathExpressionException, IOException {
+        final PartitioningOutputStreamTransformer transformer = PartitioningOutputStreamTransformer.builder("//book/@category", titles(), prefix()).build();
+        transform(transformer, null, "COOKING", "First run");
+        transformer.close();
+        transform(transformer, null, "COOKING", "Second run");
+        transformer.close();
+
+        assertThat(read("books-COOKING.xml"), is("Second run\n"));
+    }
+
+    private String prefix() {
+        return new File(folder.getRoot(), "books").getPath();
+    }
+
+    private static XPathToOutputStreamTransformer titles() throws XPathExpressionException {
+        return new XPathToOutputStreamTransformer("//book/title/text()");
+    }
+
+    private static void transform(final PartitioningOutputStreamTransformer transformer, final ByteArrayOutputStream out, final String category, final String title) {
+        transformer.apply(MutablePair.of(parseDomTree("<book category=\"" + category + "\"><title>" + title + "</title></book>"), out));
+    }
+
+    private String read(final String fileName) throws IOException {
+        return new String(Files.readAllBytes(new File(folder.getRoot(), fileName).toPath()), UTF_8);
+    }
+}
@@ -0,0 +1,42 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.w3c.dom.Node;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.parseDomTree;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class RawXmlToOutputStreamTransformerTest {
+
+    private static final String XML = "<book category='COOKING'><title lang=\"en\">Everyday Italian</title></book>";
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void rawXmlToOutputStreamShouldWriteCapturedBytesFollowedByNewLine() {
+        Node domTree = parseDomTree("<book/>");
+        domTree.setUserData(RawXmlToOutputStreamTransformer.RAW_XML, XML.getBytes(UTF_8), null);
+        OutputStream out = new ByteArrayOutputStream();
+
+        new RawXmlToOutputStreamTransformer().apply(MutablePair.of(domTree, out));
+
+        assertThat(out.toString(), is(XML + "\n"));
+    }
+
+    @Test
+    public void rawXmlToOutputStreamShouldThrowIllegalStateExceptionWhenBytesWereNotCaptured() {
+        expectedException.expect(IllegalStateException.class);
+
+        new RawXmlToOutputStreamTransformer().apply(MutablePair.of(parseDomTree(XML), new ByteArrayOutputStream()));
+    }
+
+}
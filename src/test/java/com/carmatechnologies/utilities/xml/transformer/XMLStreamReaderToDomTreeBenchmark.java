@@ -0,0 +1,90 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.DocumentBuilderFactoryImpl;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import org.w3c.dom.Node;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.stream.events.XMLEvent;
+import java.io.ByteArrayInputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.function.Function;
+
+import static com.google.common.base.Charsets.UTF_8;
+
+/**
+ * Compares the throughput, and allocation rate, of the various XMLStreamReader-to-DOM tree transformers, on many small elements.
+ * This is NOT run as part of the tests: run its {@code main} method with the test classpath, e.g. from your IDE.
+ */
+public final class XMLStreamReaderToDomTreeBenchmark {
+    private static final int NUM_ELEMENTS = 200000;
+    private static final int WARM_UP_ITERATIONS = 3;
+    private static final int ITERATIONS = 5;
+
+    public static void main(final String[] args) throws Exception {
+        final byte[] xml = books(NUM_ELEMENTS);
+        final XMLInputFactory xmlInputFactory = XMLInputFactoryImpl.newInstance();
+        benchmark("Identity Transformer", new XMLStreamReaderToDomTreeTransformer(), xmlInputFactory, xml);
+        benchmark("Direct", new DirectXMLStreamReaderToDomTreeTransformer(), xmlInputFactory, xml);
+        benchmark("Direct, recycling Documents", new DirectXMLStreamReaderToDomTreeTransformer(DocumentBuilderFactoryImpl.newInstance().newDocumentBuilder(), true), xmlInputFactory, xml);
+        benchmark("TinyTree", new XMLStreamReaderToTinyTreeTransformer(), xmlInputFactory, xml);
+        benchmark("TinyTree, recycling trees", new XMLStreamReaderToTinyTreeTransformer(true), xmlInputFactory, xml);
+    }
+
+    private static void benchmark(final String name, final Function<XMLStreamReader, Node> transformer, final XMLInputFactory xmlInputFactory, final byte[] xml) throws XMLStreamException {
+        for (int i = 0; i < WARM_UP_ITERATIONS; ++i) {
+            run(transformer, xmlInputFactory, xml);
+        }
+        final long startBytes = allocatedBytes();
+        final long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; ++i) {
+            run(transformer, xmlInputFactory, xml);
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9;
+        final double bytesPerElement = (allocatedBytes() - startBytes) / (ITERATIONS * (double) NUM_ELEMENTS);
+        System.out.printf("%-30s %,12.0f elements/s %,10.0f bytes allocated/element%n", name, (ITERATIONS * (double) NUM_ELEMENTS) / seconds, bytesPerElement);
+    }
+
+    /**
+     * @return bytes allocated so far by the current thread, including the parser's own allocations, or 0 if the JVM cannot tell.
+     */
+    private static long allocatedBytes() {
+        final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+        return (threadMXBean instanceof com.sun.management.ThreadMXBean)
+                ? ((com.sun.management.ThreadMXBean) threadMXBean).getThreadAllocatedBytes(Thread.currentThread().getId())
+                : 0;
+    }
+
+    private static void run(final Function<XMLStreamReader, Node> transformer, final XMLInputFactory xmlInputFactory, final byte[] xml) throws XMLStreamException {
+        final XMLStreamReader reader = xmlInputFactory.createXMLStreamReader(new ByteArrayInputStream(xml), UTF_8.name());
+        int numElements = 0;
+        while (reader.hasNext()) {
+            reader.next();
+            while ((reader.getEventType() == XMLEvent.START_ELEMENT) && "book".equals(reader.getLocalName())) {
+                transformer.apply(reader);
+                ++numElements;
+            }
+        }
+        reader.close();
+        if (numElements != NUM_ELEMENTS) {
+            throw new IllegalStateException("Expected " + NUM_ELEMENTS + " elements but got " + numElements);
+        }
+    }
+
+    private static byte[] books(final int numElements) {
+        final StringBuilder xml = new StringBuilder("<bookstore>\n");
+        for (int i = 0; i < numElements; ++i) {
+            xml.append("  <book category=\"WEB\" id=\"").append(i).append("\">\n")
+                    .append("    <title lang=\"en\">Title #").append(i).append("</title>\n")
+                    .append("    <author>Author #").append(i % 100).append("</author>\n")
+                    .append("    <year>2005</year>\n")
+                    .append("    <price>39.95</price>\n")
+                    .append("    <tags><tag>xml</tag><tag>tag-").append(i % 10).append("</tag></tags>\n")
+                    .append("  </book>\n");
+        }
+        return xml.append("</bookstore>\n").toString().getBytes(UTF_8);
+    }
+}
@@ -0,0 +1,74 @@
+package com.carmatechnologies.utilities.xml.transformer;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.transformer.XPathColumnsToOutputStreamTransformer.Format;
+import org.junit.Test;
+import org.w3c.dom.Node;
+
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.parseDomTree;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+public class XPathColumnsToOutputStreamTransformerTest {
+
+    private static final String XML = "<book category=\"COOKING\">" +
+            "<title lang=\"en\">Everyday Italian</title>" +
+            "<author>Giada De Laurentiis</author>" +
+            "<author>Other, \"Quoted\"</author>" +
+            "<price>30.00</price>" +
+            "<summary>Pasta\tand\\pizza\nrecipes</summary>" +
+            "</book>";
+
+    @Test
+    public void columnsShouldBeWrittenAsTabSeparatedValuesWithEscapes() throws XPathExpressionException {
+        ByteArrayOutputStream out = transform(Format.TSV, "/book/@category", "/book/title", "/book/price/text()", "/book/summary", "/book/isbn");
+
+        assertThat(out.toString(), is("COOKING\tEveryday Italian\t30.00\tPasta\\tand\\\\pizza\\nrecipes\t\n"));
+    }
+
+    @Test
+    public void columnsShouldBeWrittenAsCommaSeparatedValuesQuotedWhenRequired() throws XPathExpressionException {
+        ByteArrayOutputStream out = transform(Format.CSV, "//book/title", "//book/author[2]", "//book/summary", "count(//author)");
+
+        assertThat(out.toString(), is("Everyday Italian,\"Other, \"\"Quoted\"\"\",\"Pasta\tand\\pizza\nrecipes\",2\n"));
+    }
+
+    @Test
+    public void eachColumnShouldBeTheStringValueOfTheFirstNodeItSelects() throws XPathExpressionException {
+        String xml = "<shelf><book><title>First</title></book><book><title>Second</title><price>10</price></book></shelf>";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        XPathColumnsToOutputStreamTransformer transformer = new XPathColumnsToOutputStreamTransformer(
+                Arrays.asList("/shelf/book/title", "/shelf/book/price"), Format.TSV);
+        transformer.apply(MutablePair.of(parseDomTree(xml), out));
+        transformer.apply(MutablePair.of(parseDomTree("<shelf><book><title>Only</title><price>5</price></book></shelf>"), out));
+        transformer.apply(MutablePair.of(parseDomTree("<shelf/>"), out));
+
+        assertThat(out.toString(), is("First\t10\nOnly\t5\n\t\n"));
+    }
+
+    @Test
+    public void rowsShouldBeEncodedAsUtf8WhateverTheirLength() throws XPathExpressionException {
+        StringBuilder title = new StringBuilder();
+        for (int i = 0; i < 10000; ++i) {
+            title.append("é€");
+        }
+        Node domTree = parseDomTree("<book><title>" + title + "</title></book>");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        new XPathColumnsToOutputStreamTransformer(Collections.singletonList("/book/title"), Format.CSV).apply(MutablePair.of(domTree, out));
+
+        assertThat(new String(out.toByteArray(), UTF_8), is(title + "\n"));
+    }
+
+    private static ByteArrayOutputStream transform(final Format format, final String... xpathQueries) throws XPathExpressionException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new XPathColumnsToOutputStreamTransformer(Arrays.asList(xpathQueries), format).apply(MutablePair.of(parseDomTree(XML), out));
+        return out;
+    }
+}
@@ -0,0 +1,152 @@
+package com.carmatechnologies.utilities.xml.tree;
+
+import com.carmatechnologies.utilities.xml.common.MutablePair;
+import com.carmatechnologies.utilities.xml.common.XMLInputFactoryImpl;
+import com.carmatechnologies.utilities.xml.predicate.XPathPredicate;
+import com.carmatechnologies.utilities.xml.predicate.XPathSetPredicate;
+import com.carmatechnologies.utilities.xml.transformer.DirectXMLStreamReaderToDomTreeTransformer;
+import com.carmatechnologies.utilities.xml.transformer.DomTreeToOutputStreamTransformer;
+import com.carmatechnologies.utilities.xml.transformer.XPathToOutputStreamTransformer;
+import com.google.common.collect.Sets;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.w3c.dom.DOMException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.xpath.XPathExpressionException;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.carmatechnologies.utilities.xml.TestingUtilities.moveToFirstElementNamed;
+import static com.carmatechnologies.utilities.xml.TestingUtilities.streamFor;
+import static com.google.common.base.Charsets.UTF_8;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.CoreMatchers.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.assertTrue;
+
+public class TinyTreeTest {
+
+    private static final String XML = "<library xmlns:x=\"urn:extra\">" +
+            "<book category=\"WEB\" x:id=\"42\" xmlns=\"urn:books\"><title lang=\"en\">XQuery <![CDATA[<Kick>]]> Start &amp; more</title>" +
+            "<!-- comment --><?pi data?><x:tags><x:tag>xquery</x:tag></x:tags></book>" +
+            "<book category=\"CHILDREN\"><title>Harry Potter</title><tags><tag>fantasy</tag><tag>magician</tag></tags></book>" +
+            "</library>";
+
+    @Rule
+    public final ExpectedException expectedException = ExpectedException.none();
+
+    @Test
+    public void tinyTreeShouldBeEqualToDomTreeBuiltFromSameElements() throws XMLStreamException, ParserConfigurationException {
+        XMLStreamReader tinyReader = readerFor(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        XMLStreamReader domReader = readerFor(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        DirectXMLStreamReaderToDomTreeTransformer transformer = new DirectXMLStreamReaderToDomTreeTransformer();
+        TinyTree tree = new TinyTree();
+        moveToFirstElementNamed("book", tinyReader);
+        moveToFirstElementNamed("book", domReader);
+
+        // The second book follows the first one immediately, hence the readers are already on it after the first one:
+        for (int i = 0; i < 2; ++i) {
+            tree.read(tinyReader);
+            Node domTree = transformer.apply(domReader);
+
+            assertTrue(tree.getDocument().isEqualNode(domTree));
+            assertThat(tree.getDocument().getFirstChild().getTextContent(), is(domTree.getFirstChild().getTextContent()));
+            assertThat(tinyReader.getEventType(), is(domReader.getEventType()));
+        }
+    }
+
+    @Test
+    public void xpathPredicatesAndTransformersShouldGiveSameResultsOnTinyTreesAsOnDomTrees() throws Exception {
+        Predicate<Node> predicate = new XPathPredicate("//book[tags/tag = 'magician' or @category = 'WEB']");
+        Predicate<Node> setPredicate = new XPathSetPredicate("//book/author/text()", Sets.newHashSet("James McGovern", "Erik T. Ray"));
+        Function<MutablePair<Node, ByteArrayOutputStream>, Void> xpathTransformer = pair -> xpathTransformer().apply(MutablePair.of(pair.first(), pair.second()));
+        XMLStreamReader tinyReader = readerFor(streamFor("/books.xml"));
+        XMLStreamReader domReader = readerFor(streamFor("/books.xml"));
+        DirectXMLStreamReaderToDomTreeTransformer transformer = new DirectXMLStreamReaderToDomTreeTransformer();
+        TinyTree tree = new TinyTree();
+
+        int numBooks = 0;
+        for (moveToFirstElementNamed("book", tinyReader), moveToFirstElementNamed("book", domReader);
+             tinyReader.hasNext(); moveToFirstElementNamed("book", tinyReader), moveToFirstElementNamed("book", domReader)) {
+            tree.read(tinyReader);
+            Document tinyTree = tree.getDocument();
+            Node domTree = transformer.apply(domReader);
+            ++numBooks;
+
+            assertThat(predicate.test(tinyTree), is(predicate.test(domTree)));
+            assertThat(setPredicate.test(tinyTree), is(setPredicate.test(domTree)));
+            assertThat(transform(xpathTransformer, tinyTree), is(transform(xpathTransformer, domTree)));
+            assertThat(serialize(tinyTree), is(serialize(domTree)));
+        }
+        assertThat(numBooks, is(4));
+    }
+
+    @Test
+    public void readingNextElementShouldReuseTreeAndClearUserData() throws XMLStreamException {
+        XMLStreamReader reader = readerFor(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        moveToFirstElementNamed("book", reader);
+        TinyTree tree = new TinyTree();
+
+        tree.read(reader);
+        Document first = tree.getDocument();
+        first.setUserData("key", "value", null);
+        assertThat(first.getUserData("key"), is((Object) "value"));
+        assertThat(first.getDocumentElement().getAttribute("category"), is("WEB"));
+
+        tree.read(reader);
+        Document second = tree.getDocument();
+        assertThat(second, is(sameInstance(first)));
+        assertThat(second.getUserData("key"), is(nullValue()));
+        assertThat(second.getDocumentElement().getAttribute("category"), is("CHILDREN"));
+        assertThat(second.getDocumentElement().getLastChild().getLastChild().getTextContent(), is("magician"));
+        assertThat(tree.size(), is(9));
+    }
+
+    @Test
+    public void modifyingTinyTreeShouldThrowDOMException() throws XMLStreamException {
+        XMLStreamReader reader = readerFor(new ByteArrayInputStream(XML.getBytes(UTF_8)));
+        moveToFirstElementNamed("book", reader);
+        TinyTree tree = new TinyTree();
+        tree.read(reader);
+
+        expectedException.expect(DOMException.class);
+
+        tree.getDocument().getDocumentElement().setAttribute("category", "COOKING");
+    }
+
+    private static XMLStreamReader readerFor(final InputStream in) throws XMLStreamException {
+        return XMLInputFactoryImpl.newInstance().createXMLStreamReader(in);
+    }
+
+    private static XPathToOutputStreamTransformer xpathTransformer() {
+        try {
+            return new XPathToOutputStreamTransformer("//book/title/text()");
+        } catch (XPathExpressionException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static String transform(final Function<MutablePair<Node, ByteArrayOutputStream>, Void> transformer, final Node domTree) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        transformer.apply(MutablePair.of(domTree, out));
+        return out.toString();
+    }
+
+    private static String serialize(final Node domTree) throws TransformerConfigurationException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new DomTreeToOutputStreamTransformer().apply(MutablePair.of(domTree, out));
+        return out.toString();
+    }
+
+}